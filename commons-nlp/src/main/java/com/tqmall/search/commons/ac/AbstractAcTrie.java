@@ -1,8 +1,10 @@
 package com.tqmall.search.commons.ac;
 
 import com.tqmall.search.commons.match.AbstractTextMatch;
+import com.tqmall.search.commons.trie.CursorTrie;
 import com.tqmall.search.commons.trie.Node;
 import com.tqmall.search.commons.trie.Trie;
+import com.tqmall.search.commons.trie.TrieCursor;
 
 import java.util.List;
 import java.util.Map;
@@ -13,7 +15,7 @@ import java.util.Map;
  *
  * @author xing
  */
-public abstract class AbstractAcTrie<V> extends AbstractTextMatch<V> implements AcTrie<V> {
+public abstract class AbstractAcTrie<V> extends AbstractTextMatch<V> implements AcTrie<V>, CursorTrie<V> {
 
     private final Trie<V> trie;
 
@@ -27,8 +29,8 @@ public abstract class AbstractAcTrie<V> extends AbstractTextMatch<V> implements
     }
 
     @Override
-    public final boolean remove(String key) {
-        throw  new UnsupportedOperationException();
+    public boolean remove(String key) {
+        return trie.remove(key);
     }
 
     @Override
@@ -46,6 +48,23 @@ public abstract class AbstractAcTrie<V> extends AbstractTextMatch<V> implements
         return trie.prefixSearch(word);
     }
 
+    @Override
+    public final TrieCursor<V> prefixIterator(String prefix) {
+        return cursorTrie().prefixIterator(prefix);
+    }
+
+    @Override
+    public final TrieCursor<V> prefixIterator(String prefix, String afterKey) {
+        return cursorTrie().prefixIterator(prefix, afterKey);
+    }
+
+    private CursorTrie<V> cursorTrie() {
+        if (!(trie instanceof CursorTrie)) {
+            throw new UnsupportedOperationException("trie: " + trie.getClass().getName() + " can not support prefixIterator");
+        }
+        return (CursorTrie<V>) trie;
+    }
+
     @Override
     public final boolean updateValue(String key, V value) {
         Node<V> node = trie.getNode(key);
@@ -1,19 +1,27 @@
 package com.tqmall.search.commons.ac;
 
+import com.tqmall.search.commons.match.AbstractTextMatch;
 import com.tqmall.search.commons.match.Hit;
+import com.tqmall.search.commons.match.HitHandler;
 import com.tqmall.search.commons.nlp.NlpUtils;
 import com.tqmall.search.commons.trie.BinaryTrie;
+import com.tqmall.search.commons.trie.DoubleArrayTrie;
 import com.tqmall.search.commons.trie.Node;
 import com.tqmall.search.commons.trie.NodeChildHandle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.TreeMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -36,6 +44,13 @@ public class AcBinaryTrie<V> extends AbstractAcTrie<V> {
      */
     private volatile boolean buildingFailed = false;
 
+    /**
+     * 冻结之后不能再修改, failed字段不会再变化, 匹配不需要加读锁
+     *
+     * @see #freeze()
+     */
+    private volatile boolean frozen = false;
+
     private final Node<V> trieRoot;
 
     /**
@@ -50,94 +65,351 @@ public class AcBinaryTrie<V> extends AbstractAcTrie<V> {
         buildFailed();
     }
 
+    /**
+     * 添加词, 增量维护failed, output字段, 立即生效, 不需要{@link #buildFailed()}
+     * 只需要更新新加节点以及failed链经过新加节点前缀的节点, 如果新加节点的父节点就是root, 影响的节点太多, 直接全部重建
+     */
     @Override
     public boolean put(String key, V value) {
+        checkNotFrozen();
         failedRwLock.writeLock().lock();
         try {
+            char[] charArray = NlpUtils.stringToCharArray(key);
+            Node<V> preNode = charArray == null ? null : getNode(charArray, 0, charArray.length);
+            boolean preAccept = preNode != null && preNode.accept();
             boolean added = super.put(key, value);
-            AcNormalNode<V> node;
-            if (added && (node = (AcNormalNode<V>) getNode(key)) != null) {
+            if (charArray == null || !added) return added;
+            //新加的节点failed为null, 包括之前删除的节点
+            List<AcNormalNode<V>> newNodes = new ArrayList<>();
+            AcNormalNode<V> node = null;
+            for (char c : charArray) {
+                AcNormalNode<V> child = (AcNormalNode<V>) (node == null ? trieRoot : node).getChild(c);
+                if (child.getFailed() == null) {
+                    child.setParent(node);
+                    newNodes.add(child);
+                }
+                node = child;
+            }
+            if (node != null && node.accept()) {
                 node.setSingleOutput(key);
             }
-            return added;
+            if (!newNodes.isEmpty() && newNodes.get(0).getParent() == null) {
+                buildFailedInner();
+                return true;
+            }
+            List<AcNormalNode<V>> changedNodes = new ArrayList<>();
+            for (AcNormalNode<V> newNode : newNodes) {
+                newNode.linkFailed(findFailed(newNode));
+                changedNodes.add(newNode);
+                relinkFailed(newNode, changedNodes);
+            }
+            if (node != null && !preAccept && node.accept()) {
+                changedNodes.add(node);
+            }
+            refreshOutput(changedNodes);
+            return true;
+        } finally {
+            failedRwLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除词, 增量维护failed, output字段, 立即生效
+     * 删除节点的反向failed节点改为指向删除节点的failed节点
+     */
+    @Override
+    public boolean remove(String key) {
+        checkNotFrozen();
+        failedRwLock.writeLock().lock();
+        try {
+            char[] charArray = NlpUtils.stringToCharArray(key);
+            if (charArray == null) return false;
+            Node<V> wordNode = getNode(charArray, 0, charArray.length);
+            if (wordNode == null || !wordNode.accept()) return false;
+            List<AcNormalNode<V>> path = new ArrayList<>(charArray.length);
+            Node<V> node = trieRoot;
+            for (char c : charArray) {
+                node = node.getChild(c);
+                path.add((AcNormalNode<V>) node);
+            }
+            if (!super.remove(key)) return false;
+            List<AcNormalNode<V>> changedNodes = new ArrayList<>();
+            AcNormalNode<V> endNode = path.get(path.size() - 1);
+            if (endNode.getStatus() != Node.Status.DELETE) {
+                //还有子节点, 只是不再是接收态
+                changedNodes.add(endNode);
+            }
+            //从深到浅处理删除的节点, 保证删除节点的failed字段还是有效的
+            for (int i = path.size() - 1; i >= 0; i--) {
+                AcNormalNode<V> deleted = path.get(i);
+                if (deleted.getStatus() != Node.Status.DELETE) break;
+                Node<V> newFailed = deleted.getFailed();
+                while (newFailed.getStatus() == Node.Status.DELETE) {
+                    newFailed = ((AcNormalNode<V>) newFailed).getFailed();
+                }
+                AcNormalNode<V>[] failedChildren = deleted.failedChildren();
+                if (failedChildren != null) {
+                    for (AcNormalNode<V> n : failedChildren) {
+                        n.linkFailed(newFailed);
+                        changedNodes.add(n);
+                    }
+                }
+                deleted.unlink();
+                deleted.setSingleOutput(null);
+            }
+            refreshOutput(changedNodes);
+            return true;
         } finally {
             failedRwLock.writeLock().unlock();
         }
     }
 
     /**
-     * 初始化failed {@link AcNormalNode} failed等字段
+     * 计算新节点的failed节点, 父节点的failed需要已经是正确的
+     */
+    private Node<V> findFailed(AcNormalNode<V> node) {
+        char c = node.getChar();
+        Node<V> f = node.getParent().getFailed();
+        while (true) {
+            Node<V> child = AcNormalNode.liveChild(f, c);
+            if (child != null) return child;
+            if (f == trieRoot) return trieRoot;
+            f = ((AcNormalNode<V>) f).getFailed();
+        }
+    }
+
+    /**
+     * 新加节点newNode后, failed链经过newNode父节点的节点y, 如果y有字符c的子节点x, 并且y到newNode父节点之间没有其他节点有字符c的子节点,
+     * 则x的failed节点改为newNode. 沿着反向failed深度遍历, 遇到有字符c子节点的就不用继续往下找了
+     *
+     * @param changedNodes failed修改的节点添加到该列表
+     */
+    private void relinkFailed(AcNormalNode<V> newNode, List<AcNormalNode<V>> changedNodes) {
+        char c = newNode.getChar();
+        List<AcNormalNode<V>> relinkNodes = new ArrayList<>();
+        Deque<AcNormalNode<V>> stack = new LinkedList<>();
+        pushFailedChildren(newNode.getParent(), stack);
+        while (!stack.isEmpty()) {
+            AcNormalNode<V> y = stack.pop();
+            Node<V> x = AcNormalNode.liveChild(y, c);
+            if (x == null) {
+                pushFailedChildren(y, stack);
+            } else if (x != newNode && ((AcNormalNode<V>) x).getFailed() != null) {
+                relinkNodes.add((AcNormalNode<V>) x);
+            }
+        }
+        for (AcNormalNode<V> x : relinkNodes) {
+            x.linkFailed(newNode);
+            changedNodes.add(x);
+        }
+    }
+
+    private static <V> void pushFailedChildren(AcNormalNode<V> node, Deque<AcNormalNode<V>> stack) {
+        AcNormalNode<V>[] failedChildren = node.failedChildren();
+        if (failedChildren != null) {
+            for (AcNormalNode<V> n : failedChildren) {
+                stack.push(n);
+            }
+        }
+    }
+
+    /**
+     * 按照深度从小到大更新output字段, 并沿着反向failed传递, output没有变化的节点不再往下传递
+     *
+     * @param changedNodes failed字段或者接收态有变化的节点
+     */
+    private void refreshOutput(List<AcNormalNode<V>> changedNodes) {
+        if (changedNodes.isEmpty()) return;
+        //Node的equals只比较字符和状态, 这儿需要按照对象区分
+        final Map<AcNormalNode<V>, Integer> depthMap = new IdentityHashMap<>();
+        for (AcNormalNode<V> n : changedNodes) {
+            depthMap.put(n, n.depth());
+        }
+        List<AcNormalNode<V>> sortedNodes = new ArrayList<>(depthMap.keySet());
+        Collections.sort(sortedNodes, new Comparator<AcNormalNode<V>>() {
+            @Override
+            public int compare(AcNormalNode<V> o1, AcNormalNode<V> o2) {
+                return Integer.compare(depthMap.get(o1), depthMap.get(o2));
+            }
+        });
+        Deque<AcNormalNode<V>> stack = new LinkedList<>();
+        for (AcNormalNode<V> n : sortedNodes) {
+            n.refreshOutput();
+            pushFailedChildren(n, stack);
+            while (!stack.isEmpty()) {
+                AcNormalNode<V> cur = stack.pop();
+                if (cur.refreshOutput()) {
+                    pushFailedChildren(cur, stack);
+                }
+            }
+        }
+    }
+
+    /**
+     * 初始化failed {@link AcNormalNode} failed, output等字段
      * 重复调用直接返回false
      */
     @Override
     public boolean buildFailed() {
+        checkNotFrozen();
         if (buildingFailed) return false;
-        long startTime = System.currentTimeMillis();
         failedRwLock.writeLock().lock();
         buildingFailed = true;
         try {
-            final List<AcNormalNode<V>> rootChildNodes = new ArrayList<>();
-            trieRoot.childHandle(new NodeChildHandle<V>() {
-                @Override
-                public boolean onHandle(final Node<V> child) {
-                    AcNormalNode<V> acNode = (AcNormalNode<V>) child;
-                    acNode.initRootChildNode(trieRoot);
-                    rootChildNodes.add(acNode);
-                    return true;
-                }
-            });
-            for (AcNormalNode<V> acNode : rootChildNodes) {
-                acNode.buildFailed(trieRoot);
-            }
+            buildFailedInner();
             return true;
         } finally {
             failedRwLock.writeLock().unlock();
             buildingFailed = false;
-            log.info("build failed time cost: " + (System.currentTimeMillis() - startTime) + "ms");
         }
     }
 
+    /**
+     * 冻结, 之后不能再修改词库, 修改操作抛出{@link IllegalStateException}, failed字段不再变化, 匹配不需要加锁
+     * 用于构造完成之后只读的场景, 比如{@link CopyOnWriteAcTrie}中提供匹配的AcTrie, 修改通过重建新的AcTrie完成
+     */
+    public void freeze() {
+        //等待正在进行的修改完成
+        failedRwLock.writeLock().lock();
+        try {
+            frozen = true;
+        } finally {
+            failedRwLock.writeLock().unlock();
+        }
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) throw new IllegalStateException("AcBinaryTrie is frozen, can not modify");
+    }
+
+    @Override
+    public void clear() {
+        checkNotFrozen();
+        super.clear();
+    }
+
+    /**
+     * 需要持有写锁
+     */
+    private void buildFailedInner() {
+        long startTime = System.currentTimeMillis();
+        final List<AcNormalNode<V>> rootChildNodes = new ArrayList<>();
+        trieRoot.childHandle(new NodeChildHandle<V>() {
+            @Override
+            public boolean onHandle(final Node<V> child) {
+                AcNormalNode<V> acNode = (AcNormalNode<V>) child;
+                acNode.initRootChildNode(trieRoot);
+                rootChildNodes.add(acNode);
+                return true;
+            }
+        });
+        for (AcNormalNode<V> acNode : rootChildNodes) {
+            acNode.buildFailed(trieRoot);
+        }
+        AcNormalNode.buildOutput(rootChildNodes);
+        log.info("build failed time cost: " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
     @Override
     public final List<Hit<V>> match(char[] text, final int off, final int len) {
         final int endPos = off + len;
         NlpUtils.arrayIndexCheck(text, off, endPos);
         if (len == 0) return null;
+        final List<Hit<V>> hits = new LinkedList<>();
+        if (frozen) {
+            runMatch(trieRoot, text, off, endPos, 0, AbstractTextMatch.collectHandler(hits));
+            return hits;
+        }
         failedRwLock.readLock().lock();
         try {
-            List<Hit<V>> hits = new LinkedList<>();
-            Node<V> currentNode = trieRoot;
-            int cursor = off;
-            while (cursor < endPos) {
-                AcNormalNode<V> nextNode = (AcNormalNode<V>) currentNode.getChild(text[cursor]);
-                if (nextNode == null) {
-                    if (currentNode == trieRoot) {
-                        //当前节点已经是rootNode, 则不匹配
-                        cursor++;
-                    } else {
-                        //当前节点不是rootNode, 可以尝试failed节点, 再来一次查找
-                        currentNode = ((AcNormalNode<V>) currentNode).getFailed();
-                        if (currentNode == null) currentNode = trieRoot;
-                    }
-                } else {
-                    //匹配到了
+            runMatch(trieRoot, text, off, endPos, 0, AbstractTextMatch.collectHandler(hits));
+            return hits;
+        } finally {
+            failedRwLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public final boolean match(char[] text, int off, int len, HitHandler<V> handler) {
+        final int endPos = off + len;
+        NlpUtils.arrayIndexCheck(text, off, endPos);
+        if (len == 0) return true;
+        if (frozen) return runMatch(trieRoot, text, off, endPos, 0, handler) != null;
+        failedRwLock.readLock().lock();
+        try {
+            return runMatch(trieRoot, text, off, endPos, 0, handler) != null;
+        } finally {
+            failedRwLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 流式匹配, state记录当前节点
+     */
+    @Override
+    public final boolean match(AcMatchState state, char[] text, int off, int len, int positionOffset,
+                               HitHandler<V> handler) {
+        final int endPos = off + len;
+        NlpUtils.arrayIndexCheck(text, off, endPos);
+        if (!state.bind(this)) state.node = trieRoot;
+        @SuppressWarnings("unchecked")
+        Node<V> node = (Node<V>) state.node;
+        if (frozen) {
+            node = runMatch(node, text, off, endPos, positionOffset, handler);
+        } else {
+            failedRwLock.readLock().lock();
+            try {
+                //两次调用之间节点可能已经被删除了
+                if (node != trieRoot && node.getStatus() == Node.Status.DELETE) node = trieRoot;
+                node = runMatch(node, text, off, endPos, positionOffset, handler);
+            } finally {
+                failedRwLock.readLock().unlock();
+            }
+        }
+        state.node = node == null ? trieRoot : node;
+        return node != null;
+    }
+
+    /**
+     * 需要持有读锁, 冻结之后不需要
+     *
+     * @return 匹配结束时的节点, 如果hitHandle停止了匹配, 返回null
+     */
+    private Node<V> runMatch(Node<V> currentNode, char[] text, int off, int endPos, int positionOffset,
+                             HitHandler<V> hitHandle) {
+        int cursor = off;
+        while (cursor < endPos) {
+            AcNormalNode<V> nextNode = (AcNormalNode<V>) AcNormalNode.liveChild(currentNode, text[cursor]);
+            if (nextNode == null) {
+                if (currentNode == trieRoot) {
+                    //当前节点已经是rootNode, 则不匹配
                     cursor++;
-                    if (nextNode.accept()) {
-                        //匹配到, 将所有结果添加进来
-                        hits.add(Hit.valueOf(cursor, nextNode));
-                        if (nextNode.getFailed() instanceof AcNormalNode) {
-                            AcNormalNode<V> failedNode = (AcNormalNode<V>) nextNode.getFailed();
-                            if (failedNode.accept()) {
-                                hits.add(Hit.valueOf(cursor, failedNode));
-                            }
-                        }
+                } else {
+                    //当前节点不是rootNode, 可以尝试failed节点, 再来一次查找
+                    currentNode = ((AcNormalNode<V>) currentNode).getFailed();
+                    if (currentNode == null) currentNode = trieRoot;
+                }
+            } else {
+                //匹配到了
+                cursor++;
+                int hitEnd = cursor + positionOffset;
+                if (nextNode.accept() && !hitHandle.onHit(hitEnd - nextNode.getSingleOutput().length(), hitEnd,
+                        nextNode.getValue())) return null;
+                //沿着output链, 将所有以cursor结尾的词都添加进来, 词长度从大到小
+                for (AcNormalNode<V> outputNode = nextNode.getOutput(); outputNode != null;
+                     outputNode = outputNode.getOutput()) {
+                    if (!hitHandle.onHit(hitEnd - outputNode.getSingleOutput().length(), hitEnd, outputNode.getValue())) {
+                        return null;
                     }
-                    currentNode = nextNode;
                 }
+                currentNode = nextNode;
             }
-            return hits;
-        } finally {
-            failedRwLock.readLock().unlock();
         }
+        return currentNode;
     }
 
     public static <V> Builder<V> build() {
@@ -166,12 +438,36 @@ public class AcBinaryTrie<V> extends AbstractAcTrie<V> {
         }
 
         public AcBinaryTrie<V> create(BinaryTrie<V> binaryTrie) {
+            return create(binaryTrie, null);
+        }
+
+        /**
+         * 通过executor并发构造trie树中各个首字符的子树
+         *
+         * @see BinaryTrie#putAll(Map, Executor)
+         */
+        public AcBinaryTrie<V> create(AcTrieNodeFactory<V> nodeFactory, Executor executor) {
+            return create(new BinaryTrie<>(nodeFactory), executor);
+        }
+
+        /**
+         * @param executor 构造trie树的executor, 为null则在当前线程构造
+         * @see BinaryTrie#putAll(Map, Executor)
+         */
+        public AcBinaryTrie<V> create(BinaryTrie<V> binaryTrie, Executor executor) {
             Objects.requireNonNull(binaryTrie);
-            for (Map.Entry<String, V> e : dataMap.entrySet()) {
-                binaryTrie.put(e.getKey(), e.getValue());
-            }
+            binaryTrie.putAll(dataMap, executor);
             return new AcBinaryTrie<>(binaryTrie);
         }
 
+        /**
+         * 构造双数组实现的AcTrie, 匹配效率更高, 占用内存更少, 但是构造之后不能再加词
+         *
+         * @see AcDoubleArrayTrie
+         */
+        public AcDoubleArrayTrie<V> createDoubleArray() {
+            return new AcDoubleArrayTrie<>(DoubleArrayTrie.valueOf(dataMap));
+        }
+
     }
 }
@@ -0,0 +1,292 @@
+package com.tqmall.search.commons.ac;
+
+import com.tqmall.search.commons.match.AbstractTextMatch;
+import com.tqmall.search.commons.match.Hit;
+import com.tqmall.search.commons.match.HitHandler;
+import com.tqmall.search.commons.nlp.NlpUtils;
+import com.tqmall.search.commons.trie.CursorTrie;
+import com.tqmall.search.commons.trie.DoubleArrayTrie;
+import com.tqmall.search.commons.trie.Node;
+import com.tqmall.search.commons.trie.TrieCursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Created by xing on 26/10/16.
+ * Aho-Corasick 模式匹配树, 双数组实现
+ * 状态转移通过{@link DoubleArrayTrie}完成, failed节点, 输出链以及词长度都存放在int数组中, 下标即为状态, 匹配过程中不创建节点对象, 也不需要加锁
+ * 同{@link DoubleArrayTrie}, 数组通过{@link IntBuffer}访问, 通过{@link #readFrom(ByteBuffer, Object[])}读取的直接使用映射文件上的视图
+ * <p/>
+ * 构造完成之后词库不能修改, {@link #put(String, Object)}, {@link #remove(String)}抛出{@link UnsupportedOperationException},
+ * 加词需要通过{@link AcBinaryTrie.Builder#createDoubleArray()}重新构造
+ *
+ * @author xing
+ * @see DoubleArrayTrie
+ * @see AcBinaryTrie.Builder#createDoubleArray()
+ */
+public class AcDoubleArrayTrie<V> extends AbstractTextMatch<V> implements AcTrie<V>, CursorTrie<V> {
+
+    private static final Logger log = LoggerFactory.getLogger(AcDoubleArrayTrie.class);
+
+    private final DoubleArrayTrie<V> trie;
+
+    /**
+     * 状态对应的failed状态
+     */
+    private final IntBuffer failed;
+
+    /**
+     * 输出链, 状态对应的后缀中最长的接收态, 没有则为-1
+     */
+    private final IntBuffer output;
+
+    /**
+     * 下标为词序号, 值为词长度, 用于计算匹配结果的开始位置
+     */
+    private final IntBuffer wordLengths;
+
+    public AcDoubleArrayTrie(DoubleArrayTrie<V> trie) {
+        Objects.requireNonNull(trie);
+        long startTime = System.currentTimeMillis();
+        this.trie = trie;
+        int capacity = trie.capacity();
+        int[] failedArray = new int[capacity];
+        int[] outputArray = new int[capacity];
+        int[] wordLengthArray = new int[trie.size()];
+        buildFailedArray(trie, failedArray, outputArray, wordLengthArray);
+        failed = IntBuffer.wrap(failedArray);
+        output = IntBuffer.wrap(outputArray);
+        wordLengths = IntBuffer.wrap(wordLengthArray);
+        log.info("build double array failed time cost: " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    private AcDoubleArrayTrie(DoubleArrayTrie<V> trie, IntBuffer failed, IntBuffer output, IntBuffer wordLengths) {
+        this.trie = trie;
+        this.failed = failed;
+        this.output = output;
+        this.wordLengths = wordLengths;
+    }
+
+    /**
+     * 按照广度优先遍历状态, 依次计算failed以及输出链
+     * 双数组中子状态的位置不一定比父状态大, 所以先通过check数组计算出每个状态的子状态列表
+     */
+    private static void buildFailedArray(DoubleArrayTrie<?> trie, int[] failed, int[] output, int[] wordLengths) {
+        final int capacity = trie.capacity();
+        //childStart[s], childStart[s + 1]之间为状态s的子状态
+        int[] childStart = new int[capacity + 1];
+        for (int s = 1; s < capacity; s++) {
+            if (trie.isState(s)) childStart[trie.parent(s) + 1]++;
+        }
+        for (int s = 0; s < capacity; s++) {
+            childStart[s + 1] += childStart[s];
+        }
+        int[] children = new int[childStart[capacity]];
+        int[] fillPos = new int[capacity];
+        for (int s = 1; s < capacity; s++) {
+            if (trie.isState(s)) {
+                int p = trie.parent(s);
+                children[childStart[p] + fillPos[p]++] = s;
+            }
+        }
+        int[] depth = new int[capacity];
+        int[] queue = new int[children.length + 1];
+        int head = 0, tail = 0;
+        queue[tail++] = DoubleArrayTrie.ROOT_STATE;
+        failed[DoubleArrayTrie.ROOT_STATE] = DoubleArrayTrie.ROOT_STATE;
+        output[DoubleArrayTrie.ROOT_STATE] = -1;
+        while (head < tail) {
+            int parent = queue[head++];
+            for (int i = childStart[parent]; i < childStart[parent + 1]; i++) {
+                int s = children[i];
+                depth[s] = depth[parent] + 1;
+                int f = DoubleArrayTrie.ROOT_STATE;
+                if (parent != DoubleArrayTrie.ROOT_STATE) {
+                    char c = trie.charOf(s);
+                    f = failed[parent];
+                    int next;
+                    while ((next = trie.transition(f, c)) < 0 && f != DoubleArrayTrie.ROOT_STATE) {
+                        f = failed[f];
+                    }
+                    if (next >= 0) f = next;
+                }
+                failed[s] = f;
+                output[s] = trie.accept(f) ? f : output[f];
+                int wordIndex = trie.wordIndex(s);
+                if (wordIndex >= 0) wordLengths[wordIndex] = depth[s];
+                queue[tail++] = s;
+            }
+        }
+    }
+
+    /**
+     * 词库不能修改
+     *
+     * @see AcBinaryTrie.Builder#createDoubleArray()
+     */
+    @Override
+    public boolean put(String key, V value) {
+        throw new UnsupportedOperationException("AcDoubleArrayTrie can't support put, please rebuild it by AcBinaryTrie.Builder");
+    }
+
+    @Override
+    public boolean remove(String key) {
+        throw new UnsupportedOperationException("AcDoubleArrayTrie can't support remove, please rebuild it by AcBinaryTrie.Builder");
+    }
+
+    @Override
+    public boolean updateValue(String key, V value) {
+        return trie.updateValue(key, value);
+    }
+
+    /**
+     * failed数组在构造的时候已经初始化完成, 词库又不能修改, 所以不需要重新构建
+     *
+     * @return 始终返回true
+     */
+    @Override
+    public boolean buildFailed() {
+        return true;
+    }
+
+    @Override
+    public final List<Hit<V>> match(char[] text, int off, int len) {
+        final int endPos = off + len;
+        NlpUtils.arrayIndexCheck(text, off, endPos);
+        if (len == 0) return null;
+        List<Hit<V>> hits = new ArrayList<>();
+        runMatch(DoubleArrayTrie.ROOT_STATE, text, off, endPos, 0, AbstractTextMatch.collectHandler(hits));
+        return hits;
+    }
+
+    @Override
+    public final boolean match(char[] text, int off, int len, HitHandler<V> handler) {
+        final int endPos = off + len;
+        NlpUtils.arrayIndexCheck(text, off, endPos);
+        return len == 0 || runMatch(DoubleArrayTrie.ROOT_STATE, text, off, endPos, 0, handler) >= 0;
+    }
+
+    /**
+     * 流式匹配, state记录双数组的当前状态
+     */
+    @Override
+    public final boolean match(AcMatchState state, char[] text, int off, int len, int positionOffset,
+                               HitHandler<V> handler) {
+        final int endPos = off + len;
+        NlpUtils.arrayIndexCheck(text, off, endPos);
+        if (!state.bind(this)) state.state = DoubleArrayTrie.ROOT_STATE;
+        int end = runMatch(state.state, text, off, endPos, positionOffset, handler);
+        state.state = end < 0 ? DoubleArrayTrie.ROOT_STATE : end;
+        return end >= 0;
+    }
+
+    /**
+     * @return 匹配结束时的状态, 如果handler停止了匹配, 返回-1
+     */
+    private int runMatch(int state, char[] text, int off, int endPos, int positionOffset, HitHandler<V> handler) {
+        for (int cursor = off; cursor < endPos; cursor++) {
+            char c = text[cursor];
+            int next;
+            while ((next = trie.transition(state, c)) < 0 && state != DoubleArrayTrie.ROOT_STATE) {
+                state = failed.get(state);
+            }
+            if (next < 0) continue;
+            state = next;
+            int end = cursor + 1 + positionOffset;
+            //先回调当前状态, 再沿着输出链回调, 词长度从大到小
+            int wordIndex = trie.wordIndex(state);
+            if (wordIndex >= 0 && !handler.onHit(end - wordLengths.get(wordIndex), end, trie.getValue(wordIndex))) {
+                return -1;
+            }
+            for (int s = output.get(state); s > 0; s = output.get(s)) {
+                wordIndex = trie.wordIndex(s);
+                if (!handler.onHit(end - wordLengths.get(wordIndex), end, trie.getValue(wordIndex))) return -1;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * 写入双数组以及failed, 输出链等数组, 不包括value, value由调用方自行序列化, 通过{@link #readFrom(ByteBuffer, Object[])}读取
+     *
+     * @see #readFrom(ByteBuffer, Object[])
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        trie.writeTo(out);
+        NlpUtils.writeIntBuffer(out, failed);
+        NlpUtils.writeIntBuffer(out, output);
+        NlpUtils.writeIntBuffer(out, wordLengths);
+    }
+
+    /**
+     * 读取{@link #writeTo(DataOutput)}写入的数据, failed数组直接使用buffer上的视图, 不需要重新构建, 也不复制到堆中
+     *
+     * @param values 下标为词序号, 长度必须与词的数量一致, 数组直接被引用, 不复制
+     * @throws IllegalArgumentException 数据长度不一致
+     * @see #writeTo(DataOutput)
+     */
+    public static <V> AcDoubleArrayTrie<V> readFrom(ByteBuffer buffer, Object[] values) {
+        DoubleArrayTrie<V> trie = DoubleArrayTrie.readFrom(buffer, values);
+        IntBuffer failed = NlpUtils.readIntBuffer(buffer);
+        IntBuffer output = NlpUtils.readIntBuffer(buffer);
+        IntBuffer wordLengths = NlpUtils.readIntBuffer(buffer);
+        if (failed.limit() != trie.capacity() || output.limit() != trie.capacity() || wordLengths.limit() != trie.size()) {
+            throw new IllegalArgumentException("ac double array data is invalid, capacity: " + trie.capacity()
+                    + ", failed length: " + failed.limit() + ", output length: " + output.limit());
+        }
+        return new AcDoubleArrayTrie<>(trie, failed, output, wordLengths);
+    }
+
+    @Override
+    public Node<V> getNode(String key) {
+        return trie.getNode(key);
+    }
+
+    @Override
+    public Node<V> getNode(char[] key, int off, int len) {
+        return trie.getNode(key, off, len);
+    }
+
+    @Override
+    public List<Map.Entry<String, V>> prefixSearch(String word) {
+        return trie.prefixSearch(word);
+    }
+
+    @Override
+    public TrieCursor<V> prefixIterator(String prefix) {
+        return trie.prefixIterator(prefix);
+    }
+
+    @Override
+    public TrieCursor<V> prefixIterator(String prefix, String afterKey) {
+        return trie.prefixIterator(prefix, afterKey);
+    }
+
+    @Override
+    public int size() {
+        return trie.size();
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("AcDoubleArrayTrie is read-only, just release the reference");
+    }
+
+    @Override
+    public Node<V> getRoot() {
+        return trie.getRoot();
+    }
+
+    public DoubleArrayTrie<V> getTrie() {
+        return trie;
+    }
+}
@@ -0,0 +1,54 @@
+package com.tqmall.search.commons.ac;
+
+import com.tqmall.search.commons.trie.DoubleArrayTrie;
+import com.tqmall.search.commons.trie.Node;
+
+/**
+ * Created by xing on 26/10/16.
+ * AcTrie流式匹配的状态, 在多次{@link AcTrie#match(AcMatchState, char[], int, int, int, com.tqmall.search.commons.match.HitHandler)}调用之间保留自动机的当前状态
+ * 状态在第一次匹配时绑定到实际执行匹配的AcTrie, 之后一直使用该AcTrie, {@link #reset()}之后解除绑定,
+ * 所以{@link CopyOnWriteAcTrie}重建替换之后, 正在匹配的文本流依然使用原先的AcTrie, 不会丢失跨越分块边界的匹配
+ * <p/>
+ * 该类有状态, 非线程安全, 每个文本流单独创建一个对象
+ *
+ * @author xing
+ * @see AcStreamMatcher
+ */
+public final class AcMatchState {
+
+    /**
+     * 绑定的AcTrie, 为null表示还没有开始匹配
+     */
+    AcTrie<?> trie;
+
+    /**
+     * {@link AcBinaryTrie}的当前节点
+     */
+    Node<?> node;
+
+    /**
+     * {@link AcDoubleArrayTrie}的当前状态
+     */
+    int state = DoubleArrayTrie.ROOT_STATE;
+
+    /**
+     * 重置为初始状态, 解除绑定的AcTrie, 用于匹配下一个文本
+     */
+    public void reset() {
+        trie = null;
+        node = null;
+        state = DoubleArrayTrie.ROOT_STATE;
+    }
+
+    /**
+     * 是否绑定到trie, 没有绑定则绑定并返回false, 绑定到其他AcTrie抛出{@link IllegalArgumentException}
+     */
+    boolean bind(AcTrie<?> trie) {
+        if (this.trie == trie) return true;
+        if (this.trie != null) {
+            throw new IllegalArgumentException("the AcMatchState is bound to another AcTrie, reset it first");
+        }
+        this.trie = trie;
+        return false;
+    }
+}
@@ -3,8 +3,10 @@ package com.tqmall.search.commons.ac;
 import com.tqmall.search.commons.trie.Node;
 import com.tqmall.search.commons.trie.NormalNode;
 
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.LinkedList;
+import java.util.List;
 
 /**
  * Created by xing on 16/1/28.
@@ -18,10 +20,23 @@ public class AcNormalNode<V> extends NormalNode<V> {
      */
     private Node<V> failed;
 
+    /**
+     * 输出节点, 即dictionary suffix link, failed链上第一个接收态的节点, 没有则为null
+     * 匹配时沿着该链表就能拿到所有以当前位置结尾的词, 不用遍历整个failed链
+     */
+    private AcNormalNode<V> output;
+
     /**
      * 父节点, 如果深度为1的节点, 则父节点为null
      */
     private AcNormalNode<V> parent;
+
+    /**
+     * 反向failed, 即failed节点为当前节点的所有节点, 增量维护failed字段时使用, 数组容量不够时翻倍扩展
+     */
+    private AcNormalNode<V>[] failedChildren;
+
+    private int failedChildCount;
     /**
      * 输出
      */
@@ -51,16 +66,107 @@ public class AcNormalNode<V> extends NormalNode<V> {
         super(ch, status, value);
     }
 
+    public Node<V> getFailed() {
+        return failed;
+    }
+
+    public AcNormalNode<V> getOutput() {
+        return output;
+    }
+
+    AcNormalNode<V> getParent() {
+        return parent;
+    }
+
+    void setParent(AcNormalNode<V> parent) {
+        this.parent = parent;
+    }
+
     /**
-     * {@link AcNormalNode}不支持节点删除操作
+     * 节点深度, 深度为1的节点parent为null
      */
-    @Override
-    public boolean deleteNode(char[] word, int deep) {
-        throw new UnsupportedOperationException("AcNode can't support remove");
+    int depth() {
+        int depth = 1;
+        for (AcNormalNode<V> p = parent; p != null; p = p.parent) {
+            depth++;
+        }
+        return depth;
     }
 
-    public Node<V> getFailed() {
-        return failed;
+    /**
+     * 修改failed节点, 同时维护反向failed
+     *
+     * @param failed 为null表示节点删除, 解除关联
+     */
+    void linkFailed(Node<V> failed) {
+        if (this.failed instanceof AcNormalNode) {
+            ((AcNormalNode<V>) this.failed).removeFailedChild(this);
+        }
+        this.failed = failed;
+        if (failed instanceof AcNormalNode) {
+            ((AcNormalNode<V>) failed).addFailedChild(this);
+        }
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private void addFailedChild(AcNormalNode<V> node) {
+        if (failedChildren == null) {
+            failedChildren = new AcNormalNode[2];
+        } else if (failedChildCount == failedChildren.length) {
+            failedChildren = Arrays.copyOf(failedChildren, failedChildCount * 2);
+        }
+        failedChildren[failedChildCount++] = node;
+    }
+
+    private void removeFailedChild(AcNormalNode<V> node) {
+        for (int i = 0; i < failedChildCount; i++) {
+            if (failedChildren[i] == node) {
+                //顺序无所谓, 直接拿最后一个填上
+                failedChildren[i] = failedChildren[--failedChildCount];
+                failedChildren[failedChildCount] = null;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return 反向failed节点的拷贝, 遍历过程中可以修改failed
+     */
+    AcNormalNode<V>[] failedChildren() {
+        return failedChildren == null ? null : Arrays.copyOf(failedChildren, failedChildCount);
+    }
+
+    /**
+     * 计算当前节点的output, 依赖failed节点的output已经是正确的
+     *
+     * @return output是否有变化
+     */
+    boolean refreshOutput() {
+        AcNormalNode<V> newOutput = null;
+        if (failed instanceof AcNormalNode) {
+            AcNormalNode<V> failedNode = (AcNormalNode<V>) failed;
+            newOutput = failedNode.accept() ? failedNode : failedNode.output;
+        }
+        boolean changed = newOutput != output;
+        output = newOutput;
+        return changed;
+    }
+
+    /**
+     * 节点删除之后解除关联, 再次添加时当做新节点处理
+     */
+    void unlink() {
+        linkFailed(null);
+        output = null;
+        parent = null;
+    }
+
+    /**
+     * 获取未删除的子节点
+     */
+    static <V> Node<V> liveChild(Node<V> node, char c) {
+        Node<V> child = node.getChild(c);
+        return child == null || child.getStatus() == Status.DELETE ? null : child;
     }
 
     /**
@@ -71,6 +177,9 @@ public class AcNormalNode<V> extends NormalNode<V> {
     void initRootChildNode(final Node<V> root) {
         //深度为1的节点需要单独设定
         this.failed = root;
+        this.parent = null;
+        this.failedChildren = null;
+        this.failedChildCount = 0;
         initChildParent(new StringBuilder().append(c));
     }
 
@@ -85,10 +194,14 @@ public class AcNormalNode<V> extends NormalNode<V> {
         }
         if (children != null) {
             for (int i = 0; i < childCount; i++) {
-                AcNormalNode acNode = (AcNormalNode) children[i];
+                @SuppressWarnings("unchecked")
+                AcNormalNode<V> acNode = (AcNormalNode<V>) children[i];
                 if (acNode.status != Status.DELETE) {
                     acNode.parent = this;
                     acNode.failed = null;
+                    acNode.output = null;
+                    acNode.failedChildren = null;
+                    acNode.failedChildCount = 0;
                     outputSb.append(acNode.c);
                     acNode.initChildParent(outputSb);
                     outputSb.deleteCharAt(outputSb.length() - 1);
@@ -109,7 +222,10 @@ public class AcNormalNode<V> extends NormalNode<V> {
     public void clear() {
         super.clear();
         failed = null;
+        output = null;
         parent = null;
+        failedChildren = null;
+        failedChildCount = 0;
         singleOutput = null;
     }
 
@@ -140,7 +256,7 @@ public class AcNormalNode<V> extends NormalNode<V> {
                     lParent = null;
                     continue;
                 }
-                Node<V> curFailedNode = lParent.failed.getChild(curNode.c);
+                Node<V> curFailedNode = liveChild(lParent.failed, curNode.c);
                 if (curFailedNode != null) {
                     //找到失败节点
                     curNode.failed = curFailedNode;
@@ -161,6 +277,43 @@ public class AcNormalNode<V> extends NormalNode<V> {
         }
     }
 
+    /**
+     * 初始化output字段以及反向failed, 必须在所有节点的failed字段初始化完成之后调用
+     * 按照广度优先遍历, failed节点深度比当前节点小, 所以failed节点的output已经初始化好了
+     *
+     * @param rootChildNodes 深度为1的节点
+     */
+    static <V> void buildOutput(List<AcNormalNode<V>> rootChildNodes) {
+        Deque<AcNormalNode<V>> queue = new LinkedList<>();
+        for (AcNormalNode<V> acNode : rootChildNodes) {
+            //深度为1的节点failed为root, root不是接收态
+            acNode.output = null;
+            acNode.addChildToQueue(queue);
+        }
+        while (!queue.isEmpty()) {
+            AcNormalNode<V> curNode = queue.pollFirst();
+            if (curNode.failed instanceof AcNormalNode) {
+                ((AcNormalNode<V>) curNode.failed).addFailedChild(curNode);
+            }
+            curNode.output = null;
+            curNode.refreshOutput();
+            curNode.addChildToQueue(queue);
+        }
+    }
+
+    /**
+     * 讲children添加到队列结尾
+     */
+    private void addChildToQueue(Deque<AcNormalNode<V>> deque) {
+        for (int i = 0; i < childCount; i++) {
+            @SuppressWarnings({"rawtypes", "unchecked"})
+            AcNormalNode<V> acNode = (AcNormalNode<V>) children[i];
+            if (acNode.status != Status.DELETE) {
+                deque.addLast(acNode);
+            }
+        }
+    }
+
     /**
      * 讲children添加到队列开始位置, 即入栈
      */
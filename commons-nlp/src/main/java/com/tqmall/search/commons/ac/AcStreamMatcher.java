@@ -0,0 +1,145 @@
+package com.tqmall.search.commons.ac;
+
+import com.tqmall.search.commons.lang.Function;
+import com.tqmall.search.commons.match.Hit;
+import com.tqmall.search.commons.match.HitHandler;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.Objects;
+
+/**
+ * Created by xing on 26/10/16.
+ * 基于{@link AcTrie}的流式匹配, 支持{@link AcBinaryTrie}, {@link AcDoubleArrayTrie}以及{@link CopyOnWriteAcTrie}, 文本可以分多次通过{@link #feed(CharBuffer)}传入, 或者直接从{@link Reader}读取,
+ * 匹配状态在多次调用之间保留, 跨越分块边界的词也能匹配到, 匹配结果的位置是在整个文本中的绝对位置
+ * 不需要将整个文本加载到内存中, 占用内存与文本长度无关
+ * <p/>
+ * 该类有状态, 非线程安全, 每个文本流单独创建一个对象, 对应的{@link AcTrie}可以共享
+ * 注: 位置通过int记录, 文本长度不能超过{@link Integer#MAX_VALUE}
+ *
+ * @author xing
+ * @see AcTrie#match(AcMatchState, char[], int, int, int, HitHandler)
+ * @see AcMatchState
+ */
+public class AcStreamMatcher<V> {
+
+    /**
+     * 从Reader读取时的缓存大小
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 4096;
+
+    private final AcTrie<V> acTrie;
+
+    private final HitHandler<V> hitHandle;
+
+    private final AcMatchState state = new AcMatchState();
+
+    /**
+     * 已经处理的字符数, 即下一个字符在整个文本中的位置
+     */
+    private int position;
+
+    /**
+     * 是否已经被hitHandle停止
+     */
+    private boolean stopped;
+
+    private char[] buffer;
+
+    /**
+     * @param hitHandle 匹配结果处理函数, 入参Hit: 匹配结果, 位置为绝对位置, 出参Boolean: true 继续, false 停止后续匹配
+     */
+    public AcStreamMatcher(AcTrie<V> acTrie, final Function<Hit<V>, Boolean> hitHandle) {
+        this(acTrie, new HitHandler<V>() {
+            @Override
+            public boolean onHit(int start, int end, V value) {
+                return hitHandle.apply(new Hit<>(start, end, value));
+            }
+        });
+        Objects.requireNonNull(hitHandle);
+    }
+
+    /**
+     * @param hitHandle 匹配结果回调, 位置为绝对位置, 不创建{@link Hit}对象
+     */
+    public AcStreamMatcher(AcTrie<V> acTrie, HitHandler<V> hitHandle) {
+        Objects.requireNonNull(acTrie);
+        Objects.requireNonNull(hitHandle);
+        this.acTrie = acTrie;
+        this.hitHandle = hitHandle;
+    }
+
+    /**
+     * 传入下一段文本, 匹配完成之后buffer的position移到limit
+     *
+     * @return 是否可以继续匹配, false表示hitHandle已经停止了匹配
+     */
+    public boolean feed(CharBuffer chunk) {
+        if (stopped) return false;
+        if (chunk.hasArray()) {
+            int len = chunk.remaining();
+            boolean ret = feed(chunk.array(), chunk.arrayOffset() + chunk.position(), len);
+            chunk.position(chunk.position() + len);
+            return ret;
+        }
+        char[] buf = buffer();
+        while (chunk.hasRemaining()) {
+            int len = Math.min(buf.length, chunk.remaining());
+            chunk.get(buf, 0, len);
+            if (!feed(buf, 0, len)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 传入下一段文本
+     *
+     * @return 是否可以继续匹配, false表示hitHandle已经停止了匹配
+     */
+    public boolean feed(char[] text, int off, int len) {
+        if (stopped) return false;
+        if (len == 0) return true;
+        if (!acTrie.match(state, text, off, len, position - off, hitHandle)) {
+            stopped = true;
+            return false;
+        }
+        position += len;
+        return true;
+    }
+
+    /**
+     * 读取reader中所有的字符进行匹配, reader不做关闭
+     *
+     * @return 是否完整读取了reader, false表示hitHandle停止了匹配
+     */
+    public boolean match(Reader reader) throws IOException {
+        char[] buf = buffer();
+        int n;
+        while ((n = reader.read(buf)) != -1) {
+            if (!feed(buf, 0, n)) return false;
+        }
+        return !stopped;
+    }
+
+    private char[] buffer() {
+        if (buffer == null) buffer = new char[DEFAULT_BUFFER_SIZE];
+        return buffer;
+    }
+
+    /**
+     * 已经处理的字符数
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * 重置状态, 用于匹配下一个文本
+     */
+    public void reset() {
+        state.reset();
+        position = 0;
+        stopped = false;
+    }
+}
@@ -1,6 +1,7 @@
 package com.tqmall.search.commons.ac;
 
 import com.tqmall.search.commons.match.Hit;
+import com.tqmall.search.commons.match.HitHandler;
 import com.tqmall.search.commons.trie.Trie;
 
 import java.util.List;
@@ -12,14 +13,15 @@ import java.util.List;
  */
 public interface AcTrie<V> extends Trie<V> {
     /**
-     * 该接口修改Trie树中的节点结构, 如果要生效, 必须从新{@link #buildFailed()}
+     * 该接口修改Trie树中的节点结构, 不同的实现生效时机不一样: {@link AcBinaryTrie}增量维护failed字段, 立即生效,
+     * {@link CopyOnWriteAcTrie}需要{@link #buildFailed()}之后才生效
      *
      * @see #buildFailed()
      */
     boolean put(String key, V value);
 
     /**
-     * AcTrie 不支持删除操作
+     * 删除词, 不同的实现对删除的支持不一样, 不支持的抛出{@link UnsupportedOperationException}
      *
      * @see UnsupportedOperationException
      */
@@ -55,4 +57,29 @@ public interface AcTrie<V> extends Trie<V> {
      * @return 匹配结果
      */
     List<Hit<V>> match(char[] text, int off, int len);
+
+    /**
+     * 匹配字符串, 每匹配到一个结果回调handler, 不创建{@link Hit}对象
+     *
+     * @param text    需要匹配的文本
+     * @param off     开始下标
+     * @param len     char数组的长度
+     * @param handler 匹配结果回调
+     * @return 是否匹配完整个文本, false表示handler终止了匹配
+     */
+    boolean match(char[] text, int off, int len, HitHandler<V> handler);
+
+    /**
+     * 流式匹配, 从state记录的状态开始匹配, 匹配完之后state更新为结束时的状态, 文本可以分多次传入, 跨越分块边界的词也能匹配到
+     *
+     * @param state          匹配状态, 新创建的或者{@link AcMatchState#reset()}之后从初始状态开始
+     * @param text           需要匹配的文本
+     * @param off            开始下标
+     * @param len            char数组的长度
+     * @param positionOffset 匹配结果的位置偏移, 即text[off]在整个文本中的位置 - off
+     * @param handler        匹配结果回调
+     * @return 是否匹配完, false表示handler终止了匹配
+     * @see AcStreamMatcher
+     */
+    boolean match(AcMatchState state, char[] text, int off, int len, int positionOffset, HitHandler<V> handler);
 }
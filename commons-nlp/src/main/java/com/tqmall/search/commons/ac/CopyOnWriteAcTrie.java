@@ -0,0 +1,362 @@
+package com.tqmall.search.commons.ac;
+
+import com.tqmall.search.commons.lang.Function;
+import com.tqmall.search.commons.match.AbstractTextMatch;
+import com.tqmall.search.commons.match.Hit;
+import com.tqmall.search.commons.match.HitHandler;
+import com.tqmall.search.commons.nlp.NlpUtils;
+import com.tqmall.search.commons.trie.CursorTrie;
+import com.tqmall.search.commons.trie.Node;
+import com.tqmall.search.commons.trie.Trie;
+import com.tqmall.search.commons.trie.TrieCursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Created by xing on 26/10/16.
+ * 写时复制的AcTrie, 匹配读取的是{@link #liveTrie}, 加词, 删词都写到暂存的词库中, 不影响匹配
+ * {@link #buildFailed()}在后台线程中通过暂存词库构造一个新的AcTrie, 构造完成之后直接替换{@link #liveTrie}引用,
+ * 所以匹配操作不需要加锁, 也不会因为重建failed而等待
+ * <p/>
+ * 新的AcTrie通过{@link #trieCreator}构造, 可以是{@link AcBinaryTrie}, 也可以是{@link AcDoubleArrayTrie}
+ * 暂存词库在第一次修改时才从{@link #liveTrie}中初始化, 重建替换之后如果没有新的变更则释放, 不修改词库的话不占额外内存
+ * 如果新的AcTrie是{@link AcBinaryTrie}, 替换之前{@link AcBinaryTrie#freeze()}, 之后不再修改, 匹配不需要加锁
+ *
+ * @author xing
+ * @see AcBinaryTrie.Builder
+ */
+public class CopyOnWriteAcTrie<V> extends AbstractTextMatch<V> implements AcTrie<V>, CursorTrie<V> {
+
+    private static final Logger log = LoggerFactory.getLogger(CopyOnWriteAcTrie.class);
+
+    /**
+     * 默认的重建线程, 所有实例共用一个daemon线程, 不阻止JVM退出
+     */
+    private static final Executor REBUILD_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "copy-on-write-ac-trie-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Function<AcBinaryTrie.Builder<V>, AcTrie<V>> trieCreator;
+
+    private final Executor executor;
+
+    /**
+     * 当前提供匹配的AcTrie
+     */
+    private volatile AcTrie<V> liveTrie;
+
+    /**
+     * 暂存词库, 懒加载, 重建替换之后没有新的变更则置为null, 所有的访问都需要对其加锁
+     */
+    private TreeMap<String, V> stagingWords;
+
+    private final Object stagingLock = new Object();
+
+    /**
+     * 重建过程中{@link #updateValue(String, Object)}的更新, 替换之前应用到新的AcTrie, 不在重建时为null, 访问需要对{@link #stagingLock}加锁
+     */
+    private Map<String, V> rebuildingUpdates;
+
+    /**
+     * 是否正在后台重建
+     */
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+
+    /**
+     * 暂存词库是否有变更还没有重建
+     */
+    private volatile boolean dirty;
+
+    /**
+     * 每次替换{@link #liveTrie}加1
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * 在默认的daemon线程中执行重建
+     *
+     * @see #CopyOnWriteAcTrie(AcBinaryTrie.Builder, Function, Executor)
+     */
+    public CopyOnWriteAcTrie(AcBinaryTrie.Builder<V> builder, Function<AcBinaryTrie.Builder<V>, AcTrie<V>> trieCreator) {
+        this(builder, trieCreator, REBUILD_EXECUTOR);
+    }
+
+    /**
+     * 在默认的daemon线程中执行重建
+     *
+     * @see #CopyOnWriteAcTrie(AcTrie, Function, Executor)
+     */
+    public CopyOnWriteAcTrie(AcTrie<V> initTrie, Function<AcBinaryTrie.Builder<V>, AcTrie<V>> trieCreator) {
+        this(initTrie, trieCreator, REBUILD_EXECUTOR);
+    }
+
+    /**
+     * @param builder     初始的词库, 当前线程直接构造
+     * @param trieCreator 通过Builder构造AcTrie, 比如{@link AcBinaryTrie.Builder#createDoubleArray()}
+     * @param executor    执行重建的Executor
+     */
+    public CopyOnWriteAcTrie(AcBinaryTrie.Builder<V> builder, Function<AcBinaryTrie.Builder<V>, AcTrie<V>> trieCreator,
+                             Executor executor) {
+        this(trieCreator.apply(builder), trieCreator, executor);
+    }
+
+    /**
+     * @param initTrie    初始的AcTrie, 比如从快照中读取的{@link AcDoubleArrayTrie}
+     * @param trieCreator 重建时通过Builder构造AcTrie
+     * @param executor    执行重建的Executor
+     */
+    public CopyOnWriteAcTrie(AcTrie<V> initTrie, Function<AcBinaryTrie.Builder<V>, AcTrie<V>> trieCreator,
+                             Executor executor) {
+        Objects.requireNonNull(initTrie);
+        Objects.requireNonNull(trieCreator);
+        Objects.requireNonNull(executor);
+        this.trieCreator = trieCreator;
+        this.executor = executor;
+        this.liveTrie = freeze(initTrie);
+    }
+
+    /**
+     * 当前匹配的AcTrie的版本, 每次重建替换之后加1, 用于判断匹配结果是否变化
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * 作为{@link #liveTrie}的AcTrie不会再修改, {@link AcBinaryTrie}冻结之后匹配不需要加锁
+     */
+    private static <V> AcTrie<V> freeze(AcTrie<V> trie) {
+        if (trie instanceof AcBinaryTrie) ((AcBinaryTrie<V>) trie).freeze();
+        return trie;
+    }
+
+    /**
+     * 需要持有{@link #stagingLock}
+     */
+    private TreeMap<String, V> stagingWords() {
+        if (stagingWords == null) {
+            stagingWords = new TreeMap<>();
+            AcTrie<V> trie = liveTrie;
+            Trie<V> source = trie instanceof AcDoubleArrayTrie ? ((AcDoubleArrayTrie<V>) trie).getTrie() : trie;
+            NlpUtils.collectWords(source, stagingWords);
+        }
+        return stagingWords;
+    }
+
+    /**
+     * 添加到暂存词库, 需要{@link #buildFailed()}之后才生效
+     *
+     * @return 是否新增了词, 词已经存在只更新value返回false
+     */
+    @Override
+    public boolean put(String key, V value) {
+        if (key == null || key.isEmpty()) return false;
+        synchronized (stagingLock) {
+            TreeMap<String, V> words = stagingWords();
+            boolean added = !words.containsKey(key);
+            if (added || !Objects.equals(words.get(key), value)) {
+                words.put(key, value);
+                dirty = true;
+            }
+            return added;
+        }
+    }
+
+    /**
+     * 从暂存词库删除, 需要{@link #buildFailed()}之后才生效
+     *
+     * @return 词是否存在并且删除
+     */
+    @Override
+    public boolean remove(String key) {
+        if (key == null || key.isEmpty()) return false;
+        synchronized (stagingLock) {
+            TreeMap<String, V> words = stagingWords();
+            if (!words.containsKey(key)) return false;
+            words.remove(key);
+            dirty = true;
+            return true;
+        }
+    }
+
+    /**
+     * 立即更新当前匹配的AcTrie, 同时更新暂存词库, 不需要重建
+     *
+     * @return 词是否存在, 包括只在暂存词库中还没有重建的词
+     */
+    @Override
+    public boolean updateValue(String key, V value) {
+        synchronized (stagingLock) {
+            boolean updated = liveTrie.updateValue(key, value);
+            if (stagingWords != null && stagingWords.containsKey(key)) {
+                stagingWords.put(key, value);
+                updated = true;
+            }
+            //正在构造的AcTrie来自更新之前的暂存词库, 记下来替换之前再更新一次
+            if (updated && rebuildingUpdates != null) rebuildingUpdates.put(key, value);
+            return updated;
+        }
+    }
+
+    /**
+     * 提交后台重建任务, 不阻塞当前线程, 也不阻塞匹配
+     * 如果正在重建, 本次变更会在当前重建完成之后再重建一次, 暂存词库没有变更则不重建
+     *
+     * @return 是否新提交了重建任务, 如果没有变更或者已经在重建中, 返回false
+     */
+    @Override
+    public boolean buildFailed() {
+        if (!dirty || !rebuilding.compareAndSet(false, true)) return false;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean success = false;
+                do {
+                    try {
+                        while (dirty) {
+                            rebuild();
+                        }
+                        success = true;
+                    } catch (RuntimeException e) {
+                        log.error("rebuild acTrie failed, the live acTrie is not changed", e);
+                        //变更还没有生效, 下次buildFailed()时再重建
+                        dirty = true;
+                        success = false;
+                    } finally {
+                        rebuilding.set(false);
+                    }
+                    //rebuilding标记清除之后, 可能又有新的变更进来, 而buildFailed()没有提交任务, 所以再检查一次
+                } while (success && dirty && rebuilding.compareAndSet(false, true));
+            }
+        });
+        return true;
+    }
+
+    private void rebuild() {
+        long startTime = System.currentTimeMillis();
+        AcBinaryTrie.Builder<V> builder = AcBinaryTrie.build();
+        synchronized (stagingLock) {
+            dirty = false;
+            builder.putAll(stagingWords());
+            rebuildingUpdates = new HashMap<>();
+        }
+        try {
+            AcTrie<V> newTrie = freeze(trieCreator.apply(builder));
+            synchronized (stagingLock) {
+                for (Map.Entry<String, V> e : rebuildingUpdates.entrySet()) {
+                    newTrie.updateValue(e.getKey(), e.getValue());
+                }
+                liveTrie = newTrie;
+                //重建过程中没有新的变更, 暂存词库与liveTrie一致, 释放掉, 下次修改时再初始化
+                if (!dirty) stagingWords = null;
+            }
+        } finally {
+            synchronized (stagingLock) {
+                rebuildingUpdates = null;
+            }
+        }
+        version.incrementAndGet();
+        log.info("rebuild acTrie and swap finish, cost: " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    /**
+     * 是否正在后台重建
+     */
+    public boolean isRebuilding() {
+        return rebuilding.get();
+    }
+
+    @Override
+    public final List<Hit<V>> match(char[] text, int off, int len) {
+        return liveTrie.match(text, off, len);
+    }
+
+    @Override
+    public final boolean match(char[] text, int off, int len, HitHandler<V> handler) {
+        return liveTrie.match(text, off, len, handler);
+    }
+
+    /**
+     * 流式匹配使用state绑定的AcTrie, 第一次匹配时为当前的{@link #liveTrie}, 重建替换之后正在匹配的文本流不受影响
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public final boolean match(AcMatchState state, char[] text, int off, int len, int positionOffset,
+                               HitHandler<V> handler) {
+        AcTrie<V> trie = state.trie == null ? liveTrie : (AcTrie<V>) state.trie;
+        return trie.match(state, text, off, len, positionOffset, handler);
+    }
+
+    @Override
+    public Node<V> getNode(String key) {
+        return liveTrie.getNode(key);
+    }
+
+    @Override
+    public Node<V> getNode(char[] key, int off, int len) {
+        return liveTrie.getNode(key, off, len);
+    }
+
+    @Override
+    public List<Map.Entry<String, V>> prefixSearch(String word) {
+        return liveTrie.prefixSearch(word);
+    }
+
+    /**
+     * @throws UnsupportedOperationException {@link #liveTrie}没有实现{@link CursorTrie}
+     */
+    @Override
+    public TrieCursor<V> prefixIterator(String prefix) {
+        return liveCursorTrie().prefixIterator(prefix);
+    }
+
+    @Override
+    public TrieCursor<V> prefixIterator(String prefix, String afterKey) {
+        return liveCursorTrie().prefixIterator(prefix, afterKey);
+    }
+
+    private CursorTrie<V> liveCursorTrie() {
+        AcTrie<V> trie = liveTrie;
+        if (!(trie instanceof CursorTrie)) {
+            throw new UnsupportedOperationException("trie: " + trie.getClass().getName() + " can not support prefixIterator");
+        }
+        return (CursorTrie<V>) trie;
+    }
+
+    @Override
+    public int size() {
+        return liveTrie.size();
+    }
+
+    /**
+     * 清空暂存词库, 同样需要{@link #buildFailed()}之后才生效
+     */
+    @Override
+    public void clear() {
+        synchronized (stagingLock) {
+            stagingWords = new TreeMap<>();
+            dirty = true;
+        }
+    }
+
+    @Override
+    public Node<V> getRoot() {
+        return liveTrie.getRoot();
+    }
+}
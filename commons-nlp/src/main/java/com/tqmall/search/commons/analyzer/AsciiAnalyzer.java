@@ -3,11 +3,11 @@ package com.tqmall.search.commons.analyzer;
 
 import com.tqmall.search.commons.match.AbstractTextMatch;
 import com.tqmall.search.commons.match.Hit;
+import com.tqmall.search.commons.match.HitHandler;
+import com.tqmall.search.commons.nlp.CharTable;
 import com.tqmall.search.commons.nlp.NlpUtils;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.ListIterator;
 
 /**
  * Created by xing on 16/3/8.
@@ -63,8 +63,9 @@ public class AsciiAnalyzer extends AbstractTextMatch<TokenType> {
      * 不识别小数数字, 获取当前字符类型
      */
     private TokenType tokenType(char c) {
-        if (c >= 'a' && c <= 'z') return TokenType.EN;
-        else if (c >= '0' && c <= '9') {
+        int flags = CharTable.flags(c);
+        if ((flags & CharTable.EN) != 0) return TokenType.EN;
+        else if ((flags & CharTable.NUM) != 0) {
             return TokenType.NUM;
         } else return TokenType.UNKNOWN;
     }
@@ -75,59 +76,73 @@ public class AsciiAnalyzer extends AbstractTextMatch<TokenType> {
      * @param text     字符串
      * @param startPos 需要匹配的开始pos
      * @param endPos   需要匹配的终止pos
-     * @return 匹配结果
+     * @param hits     匹配结果添加到末尾
      */
-    private List<Hit<TokenType>> enNumSplit(final char[] text, final int startPos, final int endPos) {
+    private void enNumSplit(final char[] text, final int startPos, final int endPos, HitBuffer hits) {
         TokenType preCharType = TokenType.UNKNOWN, curType;
         int start = -1;
-        List<Hit<TokenType>> hits = new ArrayList<>();
         for (int i = startPos; i < endPos; i++) {
             curType = tokenType(text[i]);
             if (curType == TokenType.UNKNOWN) {
                 if (start != -1) {
-                    hits.add(Hit.valueOf(start, i, preCharType));
+                    hits.add(start, i, preCharType);
                     start = -1;
                     preCharType = TokenType.UNKNOWN;
                 }
             } else {
                 if (curType != preCharType) {
-                    if (start != -1) hits.add(Hit.valueOf(start, i, preCharType));
+                    if (start != -1) hits.add(start, i, preCharType);
                     start = i;
                     preCharType = curType;
                 } else if (start == -1) start = i;
             }
         }
         if (start != -1) {
-            hits.add(Hit.valueOf(start, endPos, preCharType));
+            hits.add(start, endPos, preCharType);
         }
-        return hits;
     }
 
-    private void merge(final char[] text, List<Hit<TokenType>> hits, TokenType matchType,
+    /**
+     * 通过matchChar相连的两个词合并, 合并的右边的词不再作为左边的词参与合并
+     * append为true时新词添加到末尾, 再通过{@link HitBuffer#mergeSorted(int)}合并到两个词之间,
+     * 否则新词覆盖左边的词, 右边的词删除, 一次遍历完成
+     */
+    private void merge(final char[] text, HitBuffer hits, TokenType matchType,
                        TokenType newType, final char matchChar, final boolean append) {
-        ListIterator<Hit<TokenType>> it = hits.listIterator();
-        while (it.hasNext()) {
-            Hit<TokenType> hit = it.next();
-            if (hit.getValue() != matchType || !it.hasNext()
-                    || text[hit.getEnd()] != matchChar) continue;
-            Hit<TokenType> nextHit = it.next();
-            if (matchType == TokenType.NUM && nextHit.getValue() != matchType) continue;
-            if (hit.getEnd() + 1 != nextHit.getStart()) {
-                it.previous();
-                continue;
+        final int size = hits.size();
+        if (append) {
+            for (int i = 0; i + 1 < size; i++) {
+                if (canMerge(text, hits, i, matchType, matchChar)) {
+                    hits.add(hits.start(i), hits.end(i + 1), newType);
+                    i++;
+                }
             }
-            if (append) {
-                it.previous();
-                it.add(Hit.valueOf(hit.getStart(), nextHit.getEnd(), newType));
-                it.next();
-            } else {
-                hit.changePosition(hit.getStart(), nextHit.getEnd());
-                hit.changeValue(newType);
-                it.remove();
+            hits.mergeSorted(size);
+        } else {
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                if (i + 1 < size && canMerge(text, hits, i, matchType, matchChar)) {
+                    hits.set(n++, hits.start(i), hits.end(i + 1), newType);
+                    i++;
+                } else {
+                    if (n != i) hits.set(n, hits.start(i), hits.end(i), hits.type(i));
+                    n++;
+                }
             }
+            hits.truncate(n);
         }
     }
 
+    /**
+     * 下标index的词与下一个词通过matchChar相连, 数字合并时下一个词也需要是数字
+     */
+    private static boolean canMerge(final char[] text, HitBuffer hits, int index, TokenType matchType,
+                                    final char matchChar) {
+        int end = hits.end(index);
+        return hits.type(index) == matchType && text[end] == matchChar && end + 1 == hits.start(index + 1)
+                && (matchType != TokenType.NUM || hits.type(index + 1) == matchType);
+    }
+
     /**
      * 匹配数字, 英文单词, 或者通过'-'的英文连接词
      *
@@ -138,15 +153,36 @@ public class AsciiAnalyzer extends AbstractTextMatch<TokenType> {
         final int endPos = off + len;
         NlpUtils.arrayIndexCheck(text, off, endPos);
         if (len == 0) return null;
-        List<Hit<TokenType>> hits = enNumSplit(text, off, endPos);
-        if (hits.isEmpty()) return hits;
+        HitBuffer hits = new HitBuffer();
+        enNumSplit(text, off, endPos, hits);
         if (parseDecimal) {
             merge(text, hits, TokenType.NUM, TokenType.DECIMAL, '.', false);
         }
         if (parseEnMix) {
             merge(text, hits, TokenType.EN, TokenType.EN_MIX, '-', enMixAppend);
         }
-        return hits;
+        return hits.toList();
+    }
+
+    /**
+     * 逐个回调分词结果, 通过{@link #scanner(char[], int, int)}实现, 不创建{@link Hit}对象
+     */
+    @Override
+    public boolean match(char[] text, int off, int len, HitHandler<TokenType> handler) {
+        AsciiScanner scanner = scanner(text, off, len);
+        while (scanner.next()) {
+            if (!handler.onHit(scanner.start(), scanner.end(), scanner.type())) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 创建分词游标, 读取的结果同{@link #match(char[], int, int)}
+     */
+    public AsciiScanner scanner(char[] text, int off, int len) {
+        final int endPos = off + len;
+        NlpUtils.arrayIndexCheck(text, off, endPos);
+        return new Scanner(text, off, endPos);
     }
 
     @Override
@@ -191,4 +227,85 @@ public class AsciiAnalyzer extends AbstractTextMatch<TokenType> {
             return new AsciiAnalyzer(parseDecimal, parseEnMix, enMixAppend);
         }
     }
+
+    /**
+     * 小数和英文合成词在读取字符时直接识别, 等价于{@link #match(char[], int, int)}中先数字字母分离再依次merge
+     * 英文合成词右边的词不再作为左边的词参与合成, 同{@link #merge(char[], HitBuffer, TokenType, TokenType, char, boolean)}
+     */
+    private class Scanner extends AsciiScanner {
+
+        /**
+         * 英文合成词作为新词添加时, 一次得到3个结果: 左边的词, 合成词, 右边的词, 按顺序缓存
+         */
+        private final int[] pendingStart = new int[3];
+
+        private final int[] pendingEnd = new int[3];
+
+        private final TokenType[] pendingType = new TokenType[3];
+
+        private int pendingIndex, pendingCount;
+
+        Scanner(char[] text, int startPos, int endPos) {
+            super(text, startPos, endPos);
+        }
+
+        @Override
+        public boolean next() {
+            if (pendingIndex == pendingCount) {
+                pendingIndex = pendingCount = 0;
+                while (position < endPos && tokenType(text[position]) == TokenType.UNKNOWN) position++;
+                if (position == endPos) return false;
+                int leftStart = position;
+                TokenType leftType = readToken();
+                int leftEnd = position;
+                if (parseEnMix && leftType == TokenType.EN && leftEnd + 1 < endPos && text[leftEnd] == '-'
+                        && tokenType(text[leftEnd + 1]) != TokenType.UNKNOWN) {
+                    position = leftEnd + 1;
+                    TokenType rightType = readToken();
+                    if (enMixAppend) {
+                        addPending(leftStart, leftEnd, leftType);
+                        addPending(leftStart, position, TokenType.EN_MIX);
+                        addPending(leftEnd + 1, position, rightType);
+                    } else {
+                        addPending(leftStart, position, TokenType.EN_MIX);
+                    }
+                } else {
+                    addPending(leftStart, leftEnd, leftType);
+                }
+            }
+            start = pendingStart[pendingIndex];
+            end = pendingEnd[pendingIndex];
+            type = pendingType[pendingIndex];
+            pendingIndex++;
+            return true;
+        }
+
+        private void addPending(int start, int end, TokenType type) {
+            pendingStart[pendingCount] = start;
+            pendingEnd[pendingCount] = end;
+            pendingType[pendingCount] = type;
+            pendingCount++;
+        }
+
+        /**
+         * 从{@link #position}读取相连的字母或者数字, 如果需要识别小数, 将'.'之后相连的数字一起读取
+         *
+         * @return 读取到的词类型, {@link #position}移到词的结束位置
+         */
+        private TokenType readToken() {
+            TokenType tokenType = tokenType(text[position]);
+            position = skip(position + 1, tokenType);
+            if (parseDecimal && tokenType == TokenType.NUM && position + 1 < endPos && text[position] == '.'
+                    && tokenType(text[position + 1]) == TokenType.NUM) {
+                position = skip(position + 1, TokenType.NUM);
+                return TokenType.DECIMAL;
+            }
+            return tokenType;
+        }
+
+        private int skip(int pos, TokenType tokenType) {
+            while (pos < endPos && tokenType(text[pos]) == tokenType) pos++;
+            return pos;
+        }
+    }
 }
@@ -0,0 +1,65 @@
+package com.tqmall.search.commons.analyzer;
+
+/**
+ * Created by xing on 26/10/16.
+ * ascii分词的游标, 从左到右逐个返回分词结果, 结果顺序以及内容同对应分词器的{@link AsciiAnalyzer#match(char[], int, int)},
+ * {@link MaxAsciiAnalyzer#match(char[], int, int)}, 但是不创建{@link com.tqmall.search.commons.match.Hit}对象, 也不需要list合并
+ * 分词过程中可以和其他分词结果按照位置交替读取, 用于{@link com.tqmall.search.commons.nlp.Segment}的单次遍历分词
+ * <p/>
+ * 该类有状态, 非线程安全, 每次匹配单独创建
+ *
+ * @author xing
+ * @see AsciiAnalyzer#scanner(char[], int, int)
+ * @see MaxAsciiAnalyzer#scanner(char[], int, int)
+ */
+public abstract class AsciiScanner {
+
+    protected final char[] text;
+
+    protected final int startPos;
+
+    protected final int endPos;
+
+    /**
+     * 下一个需要读取的字符位置
+     */
+    protected int position;
+
+    protected int start;
+
+    protected int end;
+
+    protected TokenType type;
+
+    protected AsciiScanner(char[] text, int startPos, int endPos) {
+        this.text = text;
+        this.startPos = startPos;
+        this.endPos = endPos;
+        this.position = startPos;
+    }
+
+    /**
+     * 读取下一个分词结果
+     *
+     * @return 是否存在, false表示已经读取完了
+     */
+    public abstract boolean next();
+
+    /**
+     * 当前分词结果的开始位置
+     */
+    public final int start() {
+        return start;
+    }
+
+    /**
+     * 当前分词结果的结束位置, 即最后一个字符的下一个位置
+     */
+    public final int end() {
+        return end;
+    }
+
+    public final TokenType type() {
+        return type;
+    }
+}
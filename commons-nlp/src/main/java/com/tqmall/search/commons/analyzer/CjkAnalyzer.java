@@ -1,12 +1,15 @@
 package com.tqmall.search.commons.analyzer;
 
-import com.sun.org.apache.xalan.internal.xsltc.dom.BitArray;
 import com.tqmall.search.commons.lang.LazyInit;
 import com.tqmall.search.commons.lang.Supplier;
 import com.tqmall.search.commons.match.AbstractTextMatch;
 import com.tqmall.search.commons.match.Hit;
+import com.tqmall.search.commons.match.HitHandler;
+import com.tqmall.search.commons.nlp.CharTable;
 import com.tqmall.search.commons.nlp.NlpUtils;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
@@ -31,6 +34,49 @@ public abstract class CjkAnalyzer extends AbstractTextMatch<TokenType> {
 
     protected abstract List<Hit<TokenType>> doMatch(char[] text, int off, int len);
 
+    /**
+     * 字符是否可能出现在分词结果中, 返回false的字符不会出现在任何结果中, 可以作为长文本分词的切分位置
+     *
+     * @see CjkLexicon#mayInWord(char)
+     */
+    public final boolean mayInHit(char c) {
+        return cjkLexicon().mayInWord(c);
+    }
+
+    /**
+     * 词库的词ID表
+     *
+     * @see CjkLexicon#getTermDictionary()
+     */
+    public final TermDictionary termDictionary() {
+        return cjkLexicon().getTermDictionary();
+    }
+
+    /**
+     * 词库版本
+     *
+     * @see CjkLexicon#getVersion()
+     */
+    public final long lexiconVersion() {
+        return cjkLexicon().getVersion();
+    }
+
+    /**
+     * 词库匹配, 结果带词ID直接回调handler, 默认通过{@link #doMatch(char[], int, int)}的结果回调, 词ID通过{@link TermDictionary}查找
+     * 子类覆盖该方法, 直接使用词库前缀树中存储的词ID
+     *
+     * @return 是否匹配完, false表示handler终止了匹配
+     */
+    protected boolean doMatch(char[] text, int off, int len, TermHitHandler handler) {
+        List<Hit<TokenType>> hits = doMatch(text, off, len);
+        if (hits == null) return true;
+        TermDictionary termDictionary = termDictionary();
+        for (Hit<TokenType> h : hits) {
+            if (!handler.onHit(h.getStart(), h.getEnd(), h.getValue(), termDictionary.termId(text, h))) return false;
+        }
+        return true;
+    }
+
     private Hit<TokenType> getNumHit(int off, int numEndIndex) {
         return new Hit<>(off, numEndIndex + 1, TokenType.NUM);
     }
@@ -39,17 +85,14 @@ public abstract class CjkAnalyzer extends AbstractTextMatch<TokenType> {
     public final List<Hit<TokenType>> match(char[] text, int off, int len) {
         List<Hit<TokenType>> hits = doMatch(text, off, len);
         if (hits == null) return null;
-        BitArray bitArray = new BitArray(len);
+        BitSet matched = new BitSet(len);
         for (Hit<TokenType> h : hits) {
-            int endPos = h.getEnd();
-            for (int i = h.getStart(); i < endPos; i++) {
-                bitArray.setBit(i - off);
-            }
+            matched.set(h.getStart() - off, h.getEnd() - off);
         }
         //数词提取, 未匹配的cjk字符单个成词
         int numEndIndex = -1;
         for (int i = off + len - 1; i >= off; i--) {
-            if (bitArray.getBit(i) || !NlpUtils.isCjkChar(text[i])) {
+            if (matched.get(i - off) || !CharTable.is(text[i], CharTable.CJK)) {
                 if (numEndIndex != -1) {
                     hits.add(getNumHit(i + 1, numEndIndex));
                     numEndIndex = -1;
@@ -57,7 +100,7 @@ public abstract class CjkAnalyzer extends AbstractTextMatch<TokenType> {
                 continue;
             }
             char c = text[i];
-            if (CjkLexicon.CN_NUM.contains(c)) {
+            if (CharTable.is(c, CharTable.CN_NUM)) {
                 if (numEndIndex == -1) numEndIndex = i;
                 continue;
             } else if (numEndIndex != -1) {
@@ -77,6 +120,122 @@ public abstract class CjkAnalyzer extends AbstractTextMatch<TokenType> {
         return hits;
     }
 
+    /**
+     * 回调结果同{@link #match(char[], int, int)}, 但是不需要排序
+     *
+     * @see #match(char[], int, int, TermHitHandler)
+     */
+    @Override
+    public final boolean match(char[] text, int off, int len, final HitHandler<TokenType> handler) {
+        return match(text, off, len, new TermHitHandler() {
+            @Override
+            public boolean onHit(int start, int end, TokenType type, int termId) {
+                return handler.onHit(start, end, type);
+            }
+        });
+    }
+
+    /**
+     * 回调结果同{@link #match(char[], int, int)}, 带词ID, 但是不需要排序:
+     * 词库匹配结果按照开始位置记录到数组中, 然后从左到右遍历一次, 依次回调词库匹配结果, 数词以及未匹配的单个cjk字符
+     * 同一个开始位置的词库匹配结果按照结束位置回调, 数词以及未匹配的单个cjk字符的词ID为{@link TermDictionary#NO_TERM}
+     *
+     * @return 是否匹配完, false表示handler终止了匹配
+     */
+    public final boolean match(char[] text, int off, int len, TermHitHandler handler) {
+        final int endPos = off + len;
+        NlpUtils.arrayIndexCheck(text, off, endPos);
+        if (len == 0) return true;
+        LexiconHits lexiconHits = new LexiconHits(off, len);
+        doMatch(text, off, len, lexiconHits);
+        //已经遍历的词库匹配结果的最大结束位置, 小于该位置的字符都已经匹配
+        int matchedEnd = off;
+        for (int i = off; i < endPos; i++) {
+            int index = lexiconHits.head[i - off];
+            if (index != -1) {
+                for (; index != -1; index = lexiconHits.next[index]) {
+                    int end = lexiconHits.ends[index];
+                    if (!handler.onHit(i, end, lexiconHits.values[index], lexiconHits.termIds[index])) return false;
+                    if (end > matchedEnd) matchedEnd = end;
+                }
+                continue;
+            }
+            char c = text[i];
+            if (i < matchedEnd || !CharTable.is(c, CharTable.CJK)) continue;
+            if (CharTable.is(c, CharTable.CN_NUM)) {
+                int numEnd = i + 1;
+                while (numEnd < endPos && lexiconHits.head[numEnd - off] == -1
+                        && CharTable.is(text[numEnd], CharTable.CJK | CharTable.CN_NUM)) {
+                    numEnd++;
+                }
+                if (!handler.onHit(i, numEnd, TokenType.NUM, TermDictionary.NO_TERM)) return false;
+                i = numEnd - 1;
+            } else if (!handler.onHit(i, i + 1, cjkLexicon().isQuantifier(String.valueOf(c))
+                    ? TokenType.QUANTIFIER : TokenType.CN, TermDictionary.NO_TERM)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 词库匹配结果, 按照开始位置通过数组链表记录, 同一个开始位置的结果按照结束位置排序, 不创建{@link Hit}对象
+     */
+    private static final class LexiconHits implements TermHitHandler {
+
+        private final int off;
+
+        /**
+         * 每个开始位置对应第一个结果的下标, -1表示没有
+         */
+        private final int[] head;
+
+        private int[] ends;
+
+        private TokenType[] values;
+
+        private int[] termIds;
+
+        private int[] next;
+
+        private int size;
+
+        LexiconHits(int off, int len) {
+            this.off = off;
+            head = new int[len];
+            Arrays.fill(head, -1);
+            int capacity = Math.max(len, 16);
+            ends = new int[capacity];
+            values = new TokenType[capacity];
+            termIds = new int[capacity];
+            next = new int[capacity];
+        }
+
+        @Override
+        public boolean onHit(int start, int end, TokenType type, int termId) {
+            if (size == ends.length) {
+                int capacity = size << 1;
+                ends = Arrays.copyOf(ends, capacity);
+                values = Arrays.copyOf(values, capacity);
+                termIds = Arrays.copyOf(termIds, capacity);
+                next = Arrays.copyOf(next, capacity);
+            }
+            int index = size++;
+            ends[index] = end;
+            values[index] = type;
+            termIds[index] = termId;
+            int pre = -1, cur = head[start - off];
+            while (cur != -1 && ends[cur] < end) {
+                pre = cur;
+                cur = next[cur];
+            }
+            next[index] = cur;
+            if (pre == -1) head[start - off] = index;
+            else next[pre] = index;
+            return true;
+        }
+    }
+
     /**
      * 获取分词器
      */
@@ -107,6 +266,11 @@ public abstract class CjkAnalyzer extends AbstractTextMatch<TokenType> {
         protected List<Hit<TokenType>> doMatch(char[] text, int off, int len) {
             return cjkLexicon().fullMatch(text, off, len);
         }
+
+        @Override
+        protected boolean doMatch(char[] text, int off, int len, TermHitHandler handler) {
+            return cjkLexicon().fullMatch(text, off, len, handler);
+        }
     }
 
 
@@ -123,6 +287,11 @@ public abstract class CjkAnalyzer extends AbstractTextMatch<TokenType> {
         protected List<Hit<TokenType>> doMatch(char[] text, int off, int len) {
             return cjkLexicon().minMatch(text, off, len);
         }
+
+        @Override
+        protected boolean doMatch(char[] text, int off, int len, TermHitHandler handler) {
+            return cjkLexicon().minMatch(text, off, len, handler);
+        }
     }
 
     /**
@@ -138,6 +307,11 @@ public abstract class CjkAnalyzer extends AbstractTextMatch<TokenType> {
         protected List<Hit<TokenType>> doMatch(char[] text, int off, int len) {
             return cjkLexicon().maxMatch(text, off, len);
         }
+
+        @Override
+        protected boolean doMatch(char[] text, int off, int len, TermHitHandler handler) {
+            return cjkLexicon().maxMatch(text, off, len, handler);
+        }
     }
 
     /**
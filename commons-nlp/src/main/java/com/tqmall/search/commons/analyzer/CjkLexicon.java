@@ -1,16 +1,25 @@
 package com.tqmall.search.commons.analyzer;
 
 import com.tqmall.search.commons.ac.AcBinaryTrie;
+import com.tqmall.search.commons.ac.AcDoubleArrayTrie;
 import com.tqmall.search.commons.ac.AcTrie;
 import com.tqmall.search.commons.ac.AcTrieNodeFactory;
+import com.tqmall.search.commons.ac.CopyOnWriteAcTrie;
 import com.tqmall.search.commons.exception.LoadLexiconException;
 import com.tqmall.search.commons.lang.AsyncInit;
 import com.tqmall.search.commons.lang.Function;
 import com.tqmall.search.commons.lang.Supplier;
+import com.tqmall.search.commons.match.AbstractTextMatch;
 import com.tqmall.search.commons.match.Hit;
+import com.tqmall.search.commons.match.HitHandler;
+import com.tqmall.search.commons.match.LeftmostTextMatch;
 import com.tqmall.search.commons.match.MatchBinaryReverseTrie;
+import com.tqmall.search.commons.nlp.CharTable;
 import com.tqmall.search.commons.nlp.NlpConst;
 import com.tqmall.search.commons.nlp.NlpUtils;
+import com.tqmall.search.commons.trie.BinaryTrie;
+import com.tqmall.search.commons.trie.Dawg;
+import com.tqmall.search.commons.trie.OverlayNode;
 import com.tqmall.search.commons.trie.RootNodeType;
 import com.tqmall.search.commons.trie.TrieNodeFactory;
 import com.tqmall.search.commons.utils.CommonsUtils;
@@ -20,61 +29,257 @@ import org.slf4j.LoggerFactory;
 
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by xing on 16/2/8.
  * 中文分词词库, 包括汉语词库以及停止词, 提供最大, 最小, 全匹配, 通过{@link AcBinaryTrie}实现
+ * 全匹配也可以使用双数组实现的{@link AcDoubleArrayTrie}, 匹配更快, 内存更省, 具体见构造参数doubleArrayAcTrie
+ * 全匹配的AcTrie通过{@link CopyOnWriteAcTrie}封装, 加词之后在后台重建, 重建过程中分词不受影响
  * 词库文件中, 每个词可以指定词的{@link TokenType}, 通过{@link TokenType#fromString(String)}解析对应类型, 默认{@link TokenType#CN}
  * 要实现懒加载, 可通过{@link AsyncInit<CjkLexicon>}实现
+ * 词库文件也可以预先编译成二进制快照, 通过{@link CjkLexiconSnapshot#load(Path, RootNodeType)}加载, 不需要解析词库, 构建failed
+ * 每个词在加载时分配一个int ID, 见{@link #getTermDictionary()}, ID存储在前缀树的value中, 匹配时通过{@link TermHitHandler}直接带出
+ * 各业务方的自定义词可以通过{@link #overlay(CjkLexicon, Map)}叠加在共享的基础词库之上, 只存储增量的词, 基础词库不会被修改
  *
  * @see TokenType
  * @see TokenType#fromString(String)
  * @see AsyncInit
+ * @see CjkLexiconSnapshot
  */
 public class CjkLexicon {
 
     private static final Logger log = LoggerFactory.getLogger(CjkLexicon.class);
 
     /**
-     * 中文数字字符
+     * 中文数字字符, 分词时通过{@link CharTable#CN_NUM}判断
      */
     public static final Set<Character> CN_NUM;
 
     static {
         Set<Character> set = new HashSet<>();
-        for (char c : "零○〇一二两三四五六七八九十壹贰叁肆伍陆柒捌玖拾百千万亿拾佰仟萬億兆卅廿".toCharArray()) {
+        for (char c : CharTable.CN_NUM_CHARS.toCharArray()) {
             set.add(c);
         }
         CN_NUM = Collections.unmodifiableSet(set);
     }
 
-    private final AcTrie<TokenType> acTrie;
+    /**
+     * 增量词库叠加的基础词库, 普通词库为null
+     *
+     * @see #overlay(CjkLexicon, Map)
+     */
+    private final CjkLexicon base;
+
+    private final CopyOnWriteAcTrie<Term> acTrie;
 
-    private final MatchBinaryReverseTrie<TokenType> matchReverseBinaryTrie;
+    /**
+     * 基于{@link #acTrie}的最左最长匹配
+     */
+    private final LeftmostTextMatch<Term> leftmostLongest;
+
+    /**
+     * 基于{@link #acTrie}的最左最短匹配
+     */
+    private final LeftmostTextMatch<Term> leftmostShortest;
+
+    private final MatchBinaryReverseTrie<Term> matchReverseBinaryTrie;
 
     private final Set<String> quantifiers;
 
+    /**
+     * 词ID表, 增量词库有自己的ID表, 基础词库的ID表不会被修改
+     */
+    private final TermDictionary termDictionary;
+
+    /**
+     * 词中出现的特殊字符, 即{@link CharTable#flags(char)}为0的字符, 比如"x-1"中的'-', 用于长文本切分
+     * 写时复制, 动态加词时更新
+     *
+     * @see #mayInWord(char)
+     */
+    private volatile BitSet specialChars = new BitSet();
+
+    /**
+     * 最长的词的长度, 包括动态添加的词, 最左匹配只需要缓存这么多个开始位置的候选词
+     *
+     * @see LeftmostTextMatch
+     */
+    private volatile int maxWordLength;
+
+    /**
+     * 加词, 修改量词时加1
+     *
+     * @see #getVersion()
+     */
+    private final AtomicLong modCount = new AtomicLong();
+
     public CjkLexicon(RootNodeType rootNodeType, Path lexiconPaths) {
         this(rootNodeType, Collections.singletonList(lexiconPaths));
     }
 
+    public CjkLexicon(RootNodeType rootNodeType, Collection<Path> lexiconPaths) {
+        this(rootNodeType, lexiconPaths, false);
+    }
+
+    public CjkLexicon(RootNodeType rootNodeType, Collection<Path> lexiconPaths, boolean doubleArrayAcTrie) {
+        this(rootNodeType, lexiconPaths, doubleArrayAcTrie, null);
+    }
+
     /**
      * 读取词库文件, 如果存在异常则抛出{@link LoadLexiconException}
      *
-     * @param rootNodeType 根节点类型
-     * @param lexiconPaths 词库文件列表
+     * @param rootNodeType      根节点类型
+     * @param lexiconPaths      词库文件列表
+     * @param doubleArrayAcTrie 全匹配是否使用{@link AcDoubleArrayTrie}
+     * @param executor          并发读取词库文件, 构造前缀树的executor, 为null则在当前线程加载, 只在构造过程中使用
      * @see LoadLexiconException
      * @see TrieNodeFactory
      * @see AcTrieNodeFactory
+     * @see AcDoubleArrayTrie
+     * @see NlpUtils#loadLexicon(Function, Collection, Executor)
+     * @see BinaryTrie#putAll(Map, Executor)
      */
-    public CjkLexicon(RootNodeType rootNodeType, Collection<Path> lexiconPaths) {
+    public CjkLexicon(final RootNodeType rootNodeType, Collection<Path> lexiconPaths, final boolean doubleArrayAcTrie,
+                      Executor executor) {
         log.info("cjkLexicon init start");
-        matchReverseBinaryTrie = new MatchBinaryReverseTrie<>(rootNodeType.<TokenType>defaultTrie());
+        base = null;
+        matchReverseBinaryTrie = new MatchBinaryReverseTrie<>(rootNodeType.<Term>defaultTrie());
         long startTime = System.currentTimeMillis();
         quantifiers = new HashSet<>();
-        final AcBinaryTrie.Builder<TokenType> acBuilder = AcBinaryTrie.build();
+        final TreeMap<String, TokenType> words = new TreeMap<>();
         log.info("start loading cjk lexicon files: " + lexiconPaths);
-        long lineCount = NlpUtils.loadLexicon(new Function<String, Boolean>() {
+        long lineCount = loadWords(lexiconPaths, executor, words, quantifiers);
+        BitSet chars = new BitSet();
+        for (String word : words.keySet()) {
+            collectSpecialChars(word, chars);
+        }
+        specialChars = chars;
+        Dawg.Builder<Void> termBuilder = Dawg.build();
+        for (String word : words.keySet()) {
+            termBuilder.add(word, null);
+            maxWordLength = Math.max(maxWordLength, word.length());
+        }
+        termDictionary = new TermDictionary(termBuilder.create());
+        //words有序, 词ID即字典序序号
+        Map<String, Term> terms = new TreeMap<>();
+        int termId = 0;
+        for (Map.Entry<String, TokenType> e : words.entrySet()) {
+            terms.put(e.getKey(), new Term(e.getValue(), termId++, termDictionary));
+        }
+        matchReverseBinaryTrie.putAll(terms, executor);
+        matchReverseBinaryTrie.getRoot().trimChildNodes();
+        AcBinaryTrie.Builder<Term> acBuilder = AcBinaryTrie.<Term>build().putAll(terms);
+        AcTrie<Term> initAcTrie = doubleArrayAcTrie ? acBuilder.createDoubleArray()
+                : acBuilder.create(rootNodeType.<Term>defaultAcTrie(), executor);
+        acTrie = new CopyOnWriteAcTrie<>(initAcTrie, new Function<AcBinaryTrie.Builder<Term>, AcTrie<Term>>() {
+            @Override
+            public AcTrie<Term> apply(AcBinaryTrie.Builder<Term> builder) {
+                return doubleArrayAcTrie ? builder.createDoubleArray() : builder.create(rootNodeType.<Term>defaultAcTrie());
+            }
+        });
+        leftmostLongest = LeftmostTextMatch.longest(acTrie, maxWordLengthSupplier());
+        leftmostShortest = LeftmostTextMatch.shortest(acTrie, maxWordLengthSupplier());
+        log.info("load cjk lexicon finish, total load " + lineCount + " words, total cost: " + (System.currentTimeMillis() - startTime) + "ms");
+
+        NlpUtils.loadClassPathLexicon(CjkLexicon.class, NlpConst.QUANTIFIER_FILE_NAME, new Function<String, Boolean>() {
+            @Override
+            public Boolean apply(String s) {
+                quantifiers.add(s);
+                return true;
+            }
+        });
+        log.info("cjkLexicon init end");
+    }
+
+    /**
+     * 增量词库构造, 自己的前缀树只包含增量的词, 根节点使用{@link RootNodeType#NORMAL}, 不创建大数组, 内存占用只跟增量词的数量有关
+     *
+     * @see #overlay(CjkLexicon, Map)
+     */
+    private CjkLexicon(CjkLexicon base, Map<String, TokenType> overlayWords) {
+        Objects.requireNonNull(base);
+        this.base = base;
+        //增量的词在自己的ID表中分配ID, 基础词库的ID表只读
+        termDictionary = new TermDictionary(base.termDictionary);
+        matchReverseBinaryTrie = new MatchBinaryReverseTrie<>(RootNodeType.NORMAL.<Term>defaultTrie(),
+                base.matchReverseBinaryTrie);
+        quantifiers = new HashSet<>();
+        TreeMap<String, Term> words = new TreeMap<>();
+        BitSet chars = new BitSet();
+        for (Map.Entry<String, TokenType> e : overlayWords.entrySet()) {
+            String word = SearchStringUtils.filterString(e.getKey());
+            if (word == null) continue;
+            TokenType tokenType = e.getValue() == null ? TokenType.CN : e.getValue();
+            if (tokenType == TokenType.QUANTIFIER) quantifiers.add(word);
+            words.put(word, new Term(tokenType, termDictionary.addTerm(word), termDictionary));
+            collectSpecialChars(word, chars);
+            maxWordLength = Math.max(maxWordLength, word.length());
+        }
+        specialChars = chars;
+        matchReverseBinaryTrie.putAll(words, null);
+        matchReverseBinaryTrie.getRoot().trimChildNodes();
+        acTrie = new CopyOnWriteAcTrie<>(AcBinaryTrie.<Term>build().putAll(words)
+                .create(RootNodeType.NORMAL.<Term>defaultAcTrie()),
+                new Function<AcBinaryTrie.Builder<Term>, AcTrie<Term>>() {
+                    @Override
+                    public AcTrie<Term> apply(AcBinaryTrie.Builder<Term> builder) {
+                        return builder.create(RootNodeType.NORMAL.<Term>defaultAcTrie());
+                    }
+                });
+        //最左匹配需要基于合并之后的全匹配结果
+        AbstractTextMatch<Term> fullTextMatch = new AbstractTextMatch<Term>() {
+            @Override
+            public List<Hit<Term>> match(char[] text, int off, int len) {
+                NlpUtils.arrayIndexCheck(text, off, off + len);
+                if (len == 0) return null;
+                List<Hit<Term>> hits = new ArrayList<>();
+                doFullMatch(text, off, len, collectHandler(hits));
+                return hits;
+            }
+
+            @Override
+            public boolean match(char[] text, int off, int len, HitHandler<Term> handler) {
+                return doFullMatch(text, off, len, handler);
+            }
+        };
+        leftmostLongest = LeftmostTextMatch.longest(fullTextMatch, maxWordLengthSupplier());
+        leftmostShortest = LeftmostTextMatch.shortest(fullTextMatch, maxWordLengthSupplier());
+        log.info("cjkLexicon overlay init end, total " + words.size() + " words");
+    }
+
+    /**
+     * 通过快照中读取的数据构造, 全匹配使用{@link AcDoubleArrayTrie}, 特殊字符以及最长的词的长度也从快照中读取, 不需要遍历所有的词
+     *
+     * @see CjkLexiconSnapshot#load(Path, RootNodeType)
+     */
+    CjkLexicon(AcDoubleArrayTrie<Term> acDoubleArrayTrie, MatchBinaryReverseTrie<Term> matchReverseBinaryTrie,
+               Set<String> quantifiers, TermDictionary termDictionary, BitSet specialChars, int maxWordLength) {
+        base = null;
+        this.acTrie = new CopyOnWriteAcTrie<>(acDoubleArrayTrie, new Function<AcBinaryTrie.Builder<Term>, AcTrie<Term>>() {
+            @Override
+            public AcTrie<Term> apply(AcBinaryTrie.Builder<Term> builder) {
+                return builder.createDoubleArray();
+            }
+        });
+        leftmostLongest = LeftmostTextMatch.longest(acTrie, maxWordLengthSupplier());
+        leftmostShortest = LeftmostTextMatch.shortest(acTrie, maxWordLengthSupplier());
+        this.matchReverseBinaryTrie = matchReverseBinaryTrie;
+        this.quantifiers = quantifiers;
+        this.termDictionary = termDictionary;
+        this.specialChars = specialChars;
+        this.maxWordLength = maxWordLength;
+    }
+
+    /**
+     * 读取词库文件, 每行一个词, 词后面可以跟空格分隔的{@link TokenType}, 量词同时添加到quantifiers中
+     *
+     * @return 读取的行数
+     */
+    private static long loadWords(Collection<Path> lexiconPaths, Executor executor, final Map<String, TokenType> words,
+                                  final Set<String> quantifiers) {
+        return NlpUtils.loadLexicon(new Function<String, Boolean>() {
             @Override
             public Boolean apply(String s) {
                 int index = s.indexOf(' ');
@@ -91,28 +296,81 @@ public class CjkLexicon {
                         quantifiers.add(s);
                     }
                 }
-                acBuilder.put(s, tokenType);
-                matchReverseBinaryTrie.put(s, tokenType);
+                words.put(s, tokenType);
                 return true;
             }
-        }, lexiconPaths);
-        matchReverseBinaryTrie.getRoot().trimChildNodes();
-        acTrie = acBuilder.create(rootNodeType.<TokenType>defaultAcTrie());
-        log.info("load cjk lexicon finish, total load " + lineCount + " words, total cost: " + (System.currentTimeMillis() - startTime) + "ms");
+        }, lexiconPaths, executor);
+    }
 
-        NlpUtils.loadClassPathLexicon(CjkLexicon.class, NlpConst.QUANTIFIER_FILE_NAME, new Function<String, Boolean>() {
+    /**
+     * 记录word中的特殊字符
+     *
+     * @return 是否有新的字符添加到chars中
+     */
+    private static boolean collectSpecialChars(String word, BitSet chars) {
+        boolean added = false;
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (CharTable.flags(c) == 0 && !chars.get(c)) {
+                chars.set(c);
+                added = true;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * 最长的词的长度, 增量词库包括基础词库的词
+     */
+    int maxWordLength() {
+        return base == null ? maxWordLength : Math.max(maxWordLength, base.maxWordLength());
+    }
+
+    private Supplier<Integer> maxWordLengthSupplier() {
+        return new Supplier<Integer>() {
             @Override
-            public Boolean apply(String s) {
-                quantifiers.add(s);
-                return true;
+            public Integer get() {
+                return maxWordLength();
             }
-        });
-        log.info("cjkLexicon init end");
+        };
+    }
+
+    /**
+     * 匹配结果转换为{@link TokenType}
+     */
+    private static HitHandler<Term> typeHandler(final HitHandler<TokenType> handler) {
+        return new HitHandler<Term>() {
+            @Override
+            public boolean onHit(int start, int end, Term value) {
+                return handler.onHit(start, end, value.type);
+            }
+        };
+    }
+
+    /**
+     * 匹配结果直接带出插入时存储的词ID
+     */
+    private HitHandler<Term> termHandler(final TermHitHandler handler) {
+        return new HitHandler<Term>() {
+            @Override
+            public boolean onHit(int start, int end, Term value) {
+                return handler.onHit(start, end, value.type, termDictionary.termId(value));
+            }
+        };
+    }
+
+    private static List<Hit<TokenType>> typeHits(List<Hit<Term>> hits) {
+        if (hits == null) return null;
+        List<Hit<TokenType>> retList = new ArrayList<>(hits.size());
+        for (Hit<Term> h : hits) {
+            retList.add(new Hit<>(h.getStart(), h.getEnd(), h.getValue().type));
+        }
+        return retList;
     }
 
     /**
      * full匹配, 尽可能的返回所有能够匹配到的结果
-     * 该接口分词是通过AcTrie实现, 不建议动态加词
+     * 该接口分词是通过AcTrie实现, 动态加词之后需要{@link #buildAcTrieFailed()}才生效
      *
      * @param text 待分词文本
      * @param off  待处理文本的起始位置
@@ -122,7 +380,41 @@ public class CjkLexicon {
      * @see #buildAcTrieFailed()
      */
     public List<Hit<TokenType>> fullMatch(char[] text, int off, int len) {
-        return acTrie.match(text, off, len);
+        NlpUtils.arrayIndexCheck(text, off, off + len);
+        if (len == 0) return null;
+        List<Hit<TokenType>> hits = new ArrayList<>();
+        fullMatch(text, off, len, AbstractTextMatch.collectHandler(hits));
+        return hits;
+    }
+
+    /**
+     * full匹配, 匹配结果直接回调handler, 不创建{@link Hit}对象
+     *
+     * @return 是否匹配完, false表示handler终止了匹配
+     * @see #fullMatch(char[], int, int)
+     */
+    public boolean fullMatch(char[] text, int off, int len, HitHandler<TokenType> handler) {
+        return doFullMatch(text, off, len, typeHandler(handler));
+    }
+
+    /**
+     * full匹配, 匹配结果带词ID
+     *
+     * @return 是否匹配完, false表示handler终止了匹配
+     * @see #fullMatch(char[], int, int)
+     */
+    public boolean fullMatch(char[] text, int off, int len, TermHitHandler handler) {
+        return doFullMatch(text, off, len, termHandler(handler));
+    }
+
+    private boolean doFullMatch(char[] text, int off, int len, HitHandler<Term> handler) {
+        if (base == null) return acTrie.match(text, off, len, handler);
+        //增量词库的AcTrie很小, 先匹配并缓存结果, 再在基础词库的匹配过程中按照结束位置合并, 合并时按下标访问, 所以用ArrayList
+        List<Hit<Term>> overlayHits = new ArrayList<>();
+        acTrie.match(text, off, len, AbstractTextMatch.collectHandler(overlayHits));
+        if (overlayHits.isEmpty()) return base.doFullMatch(text, off, len, handler);
+        OverlayMergeHandler mergeHandler = new OverlayMergeHandler(overlayHits, handler);
+        return base.doFullMatch(text, off, len, mergeHandler) && mergeHandler.flush();
     }
 
     /**
@@ -134,7 +426,25 @@ public class CjkLexicon {
      * @return 匹配结果
      */
     public List<Hit<TokenType>> maxMatch(char[] text, int off, int len) {
-        return matchReverseBinaryTrie.maxMatch(text, off, len);
+        return typeHits(matchReverseBinaryTrie.maxMatch(text, off, len));
+    }
+
+    /**
+     * 最大匹配, 匹配结果按照正向顺序回调handler, 不创建{@link Hit}对象
+     *
+     * @return 是否匹配完, false表示handler终止了匹配
+     */
+    public boolean maxMatch(char[] text, int off, int len, HitHandler<TokenType> handler) {
+        return matchReverseBinaryTrie.maxMatch(text, off, len, typeHandler(handler));
+    }
+
+    /**
+     * 最大匹配, 匹配结果带词ID
+     *
+     * @return 是否匹配完, false表示handler终止了匹配
+     */
+    public boolean maxMatch(char[] text, int off, int len, TermHitHandler handler) {
+        return matchReverseBinaryTrie.maxMatch(text, off, len, termHandler(handler));
     }
 
     /**
@@ -146,30 +456,108 @@ public class CjkLexicon {
      * @return 匹配结果
      */
     public List<Hit<TokenType>> minMatch(char[] text, int off, int len) {
-        return matchReverseBinaryTrie.minMatch(text, off, len);
+        return typeHits(matchReverseBinaryTrie.minMatch(text, off, len));
+    }
+
+    /**
+     * 最小匹配, 匹配结果按照正向顺序回调handler, 不创建{@link Hit}对象
+     *
+     * @return 是否匹配完, false表示handler终止了匹配
+     */
+    public boolean minMatch(char[] text, int off, int len, HitHandler<TokenType> handler) {
+        return matchReverseBinaryTrie.minMatch(text, off, len, typeHandler(handler));
+    }
+
+    /**
+     * 最小匹配, 匹配结果带词ID
+     *
+     * @return 是否匹配完, false表示handler终止了匹配
+     */
+    public boolean minMatch(char[] text, int off, int len, TermHitHandler handler) {
+        return matchReverseBinaryTrie.minMatch(text, off, len, termHandler(handler));
+    }
+
+    /**
+     * 最左最长匹配, 基于AcTrie实现, 每个字符只扫描一次, 没有回溯
+     * 结果为从左向右每次选开始位置最小并且最长的词, 与逆向最大匹配{@link #maxMatch(char[], int, int)}的切分结果不一样, 不能直接替换
+     * 同{@link #fullMatch(char[], int, int)}, 动态加词之后需要{@link #buildAcTrieFailed()}才生效
+     *
+     * @param text 待分词文本
+     * @param off  待处理文本的起始位置
+     * @param len  待处理文本的长度
+     * @return 匹配结果
+     * @see LeftmostTextMatch
+     */
+    public List<Hit<TokenType>> leftmostLongestMatch(char[] text, int off, int len) {
+        return typeHits(leftmostLongest.match(text, off, len));
     }
 
     /**
-     * 添加一个新词, 添加新词很不推荐, 因为会影响搜索结果, 而且加完词之后需要{@link #buildAcTrieFailed()}, 该操作较耗时, 存在分词暂时不可用的情况, 所以不建议使用
+     * 最左最长匹配, 匹配结果按照正向顺序回调handler
+     *
+     * @return 是否匹配完, false表示handler终止了匹配
+     * @see #leftmostLongestMatch(char[], int, int)
+     */
+    public boolean leftmostLongestMatch(char[] text, int off, int len, HitHandler<TokenType> handler) {
+        return leftmostLongest.match(text, off, len, typeHandler(handler));
+    }
+
+    /**
+     * 最左最短匹配, 基于AcTrie实现, 每个字符只扫描一次, 没有回溯
+     * 结果为从左向右每次选开始位置最小并且最短的词, 与逆向最小匹配{@link #minMatch(char[], int, int)}的切分结果不一样, 不能直接替换
+     * 同{@link #fullMatch(char[], int, int)}, 动态加词之后需要{@link #buildAcTrieFailed()}才生效
+     *
+     * @param text 待分词文本
+     * @param off  待处理文本的起始位置
+     * @param len  待处理文本的长度
+     * @return 匹配结果
+     * @see LeftmostTextMatch
+     */
+    public List<Hit<TokenType>> leftmostShortestMatch(char[] text, int off, int len) {
+        return typeHits(leftmostShortest.match(text, off, len));
+    }
+
+    /**
+     * 最左最短匹配, 匹配结果按照正向顺序回调handler
+     *
+     * @return 是否匹配完, false表示handler终止了匹配
+     * @see #leftmostShortestMatch(char[], int, int)
+     */
+    public boolean leftmostShortestMatch(char[] text, int off, int len, HitHandler<TokenType> handler) {
+        return leftmostShortest.match(text, off, len, typeHandler(handler));
+    }
+
+    /**
+     * 添加一个新词, 添加新词会影响搜索结果, 需要谨慎
+     * 全匹配的新词写到{@link CopyOnWriteAcTrie}的暂存词库中, 需要{@link #buildAcTrieFailed()}之后才生效
      *
      * @return 是否添加成功
      * @see #buildAcTrieFailed()
      */
-    @Deprecated
     public boolean addWord(String word, TokenType tokenType) {
         if ((word = SearchStringUtils.filterString(word)) == null) return false;
         if (tokenType == null) tokenType = TokenType.CN;
-        boolean added = matchReverseBinaryTrie.put(word, tokenType);
-        acTrie.put(word, tokenType);
+        synchronized (this) {
+            BitSet chars = (BitSet) specialChars.clone();
+            if (collectSpecialChars(word, chars)) specialChars = chars;
+            if (word.length() > maxWordLength) maxWordLength = word.length();
+        }
+        //词ID在插入时确定, 存储在前缀树的value中
+        Term term = new Term(tokenType, termDictionary.addTerm(word), termDictionary);
+        acTrie.put(word, term);
+        boolean added = matchReverseBinaryTrie.put(word, term);
+        modCount.incrementAndGet();
         return added;
     }
 
     /**
-     * 重建{@link #acTrie} 的failed字段, 在重建的时候, 通过acTrie分词会等待, 这个操作还是比较耗时的,所以不到万不得已, 就别加词了, 不触发buildFailed操作
+     * 后台重建{@link #acTrie}, 构造完成之后替换原先的AcTrie, 重建过程中分词不受影响, 直接使用原先的AcTrie
+     * 多次加词之后调用一次即可
      *
+     * @return 是否新提交了重建任务, 如果正在重建返回false, 本次变更会在正在进行的重建完成之后再次重建
      * @see #addWord(String, TokenType)
+     * @see CopyOnWriteAcTrie#buildFailed()
      */
-    @Deprecated
     public boolean buildAcTrieFailed() {
         return acTrie.buildFailed();
     }
@@ -181,7 +569,9 @@ public class CjkLexicon {
      */
     public boolean addQuantifier(String quantifier) {
         quantifier = SearchStringUtils.filterString(quantifier);
-        return quantifier != null && quantifiers.add(quantifier.toLowerCase());
+        if (quantifier == null || !quantifiers.add(quantifier.toLowerCase())) return false;
+        modCount.incrementAndGet();
+        return true;
     }
 
     /**
@@ -191,14 +581,91 @@ public class CjkLexicon {
      */
     public boolean removeQuantifier(String quantifier) {
         quantifier = SearchStringUtils.filterString(quantifier);
-        return quantifier != null && quantifiers.remove(quantifier.toLowerCase());
+        if (quantifier == null || !quantifiers.remove(quantifier.toLowerCase())) return false;
+        modCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 字符是否可能出现在词库的词中, 只有{@link CharTable#flags(char)}为0的字符才会判断, 其他字符都返回true
+     * 返回false的字符不会出现在任何词库匹配结果中, 可以作为长文本分词的切分位置
+     */
+    public boolean mayInWord(char c) {
+        return CharTable.flags(c) != 0 || specialChars.get(c) || (base != null && base.mayInWord(c));
+    }
+
+    /**
+     * 词库版本, 加词, 修改量词以及全匹配的AcTrie重建完成之后都会变化, 版本不变则分词结果不变, 用于分词结果缓存
+     * 增量词库的版本包括基础词库的版本, 基础词库的变更同样会使增量词库的缓存失效
+     *
+     * @see com.tqmall.search.commons.nlp.SegmentCache
+     */
+    public long getVersion() {
+        long version = modCount.get() + acTrie.getVersion();
+        return base == null ? version : version + base.getVersion();
     }
 
     /**
      * 判断给定的词是否为量词
      */
     public boolean isQuantifier(String word) {
-        return quantifiers.contains(word);
+        return quantifiers.contains(word) || (base != null && base.isQuantifier(word));
+    }
+
+    /**
+     * 词ID表, 加载时每个词分配一个ID, 动态添加的词依次追加
+     * 增量词库返回自己的ID表, 基础词库的词沿用基础词库的ID, 增量的词从基础词库的ID之后分配, 基础词库的ID表不受影响
+     * 匹配结果的ID通过{@link TermHitHandler}直接获取, 比如{@link #fullMatch(char[], int, int, TermHitHandler)}
+     */
+    public TermDictionary getTermDictionary() {
+        return termDictionary;
+    }
+
+    /**
+     * 增量词库叠加的基础词库, 普通词库返回null
+     */
+    public CjkLexicon getBase() {
+        return base;
+    }
+
+    /**
+     * 最大, 最小匹配的逆向前缀树, 包含所有的词, 包括动态添加的
+     */
+    MatchBinaryReverseTrie<Term> getMatchReverseBinaryTrie() {
+        return matchReverseBinaryTrie;
+    }
+
+    Set<String> getQuantifiers() {
+        return quantifiers;
+    }
+
+    BitSet getSpecialChars() {
+        return specialChars;
+    }
+
+    /**
+     * 创建叠加在base之上的增量词库, 只存储增量的词, 匹配时一次使用基础词库和增量词库, 两边都有的词以增量词库的{@link TokenType}为准
+     * base不会被修改, 可以被多个增量词库共享, 每个业务方一个增量词库, 基于各自的增量词库创建{@link com.tqmall.search.commons.nlp.Segment},
+     * 额外的内存只有增量词的前缀树. base的加词对增量词库立即可见, 增量词库的{@link #addWord(String, TokenType)}只作用于增量的词
+     * 不同增量词库的Segment可以共享一个{@link com.tqmall.search.commons.nlp.SegmentCache}, 缓存按照Segment对象区分
+     *
+     * @param base         共享的基础词库
+     * @param overlayWords 增量的词, value为null则为{@link TokenType#CN}, {@link TokenType#QUANTIFIER}类型的词同时作为量词
+     * @see OverlayNode
+     */
+    public static CjkLexicon overlay(CjkLexicon base, Map<String, TokenType> overlayWords) {
+        return new CjkLexicon(base, overlayWords);
+    }
+
+    /**
+     * 从词库文件中读取增量的词, 文件格式同基础词库
+     *
+     * @see #overlay(CjkLexicon, Map)
+     */
+    public static CjkLexicon overlay(CjkLexicon base, Collection<Path> lexiconPaths) {
+        Map<String, TokenType> words = new HashMap<>();
+        loadWords(lexiconPaths, null, words, new HashSet<String>());
+        return new CjkLexicon(base, words);
     }
 
     public static Supplier<CjkLexicon> createAsyncSupplier(RootNodeType rootNodeType, Path lexiconPath) {
@@ -208,15 +675,78 @@ public class CjkLexicon {
     /**
      * 创建默认的异步加载CjkLexicon
      */
-    public static Supplier<CjkLexicon> createAsyncSupplier(final RootNodeType rootNodeType, final Collection<Path> lexiconPaths) {
+    public static Supplier<CjkLexicon> createAsyncSupplier(RootNodeType rootNodeType, Collection<Path> lexiconPaths) {
+        return createAsyncSupplier(rootNodeType, lexiconPaths, false);
+    }
+
+    /**
+     * 创建异步加载CjkLexicon
+     *
+     * @param doubleArrayAcTrie 全匹配是否使用{@link AcDoubleArrayTrie}
+     */
+    public static Supplier<CjkLexicon> createAsyncSupplier(RootNodeType rootNodeType, Collection<Path> lexiconPaths,
+                                                           boolean doubleArrayAcTrie) {
+        return createAsyncSupplier(rootNodeType, lexiconPaths, doubleArrayAcTrie, null);
+    }
+
+    /**
+     * 创建异步加载CjkLexicon
+     *
+     * @param doubleArrayAcTrie 全匹配是否使用{@link AcDoubleArrayTrie}
+     * @param executor          并发加载词库的executor, 为null则在异步加载线程中顺序加载
+     */
+    public static Supplier<CjkLexicon> createAsyncSupplier(final RootNodeType rootNodeType, final Collection<Path> lexiconPaths,
+                                                           final boolean doubleArrayAcTrie, final Executor executor) {
         Objects.requireNonNull(rootNodeType);
         if (CommonsUtils.isEmpty(lexiconPaths)) throw new IllegalArgumentException("lexiconPaths is empty");
         return new AsyncInit<>(new Supplier<CjkLexicon>() {
             @Override
             public CjkLexicon get() {
-                return new CjkLexicon(rootNodeType, lexiconPaths);
+                return new CjkLexicon(rootNodeType, lexiconPaths, doubleArrayAcTrie, executor);
             }
         }, AsyncInit.DEFAULT_WAIT_TIMEOUT);
     }
 
+    /**
+     * 合并增量词库和基础词库的全匹配结果, 两者都是按照结束位置, 开始位置排序的, 合并之后依然有序
+     * 同一个词两边都匹配到, 只保留增量词库的结果
+     */
+    private static class OverlayMergeHandler implements HitHandler<Term> {
+
+        private final List<Hit<Term>> overlayHits;
+
+        private final HitHandler<Term> handler;
+
+        private int index;
+
+        OverlayMergeHandler(List<Hit<Term>> overlayHits, HitHandler<Term> handler) {
+            this.overlayHits = overlayHits;
+            this.handler = handler;
+        }
+
+        @Override
+        public boolean onHit(int start, int end, Term value) {
+            while (index < overlayHits.size()) {
+                Hit<Term> overlayHit = overlayHits.get(index);
+                int overlayStart = overlayHit.getStart(), overlayEnd = overlayHit.getEnd();
+                if (overlayEnd > end || (overlayEnd == end && overlayStart > start)) break;
+                index++;
+                if (!handler.onHit(overlayStart, overlayEnd, overlayHit.getValue())) return false;
+                if (overlayEnd == end && overlayStart == start) return true;
+            }
+            return handler.onHit(start, end, value);
+        }
+
+        /**
+         * 输出剩余的增量词库结果
+         */
+        boolean flush() {
+            while (index < overlayHits.size()) {
+                Hit<Term> overlayHit = overlayHits.get(index++);
+                if (!handler.onHit(overlayHit.getStart(), overlayHit.getEnd(), overlayHit.getValue())) return false;
+            }
+            return true;
+        }
+    }
+
 }
@@ -0,0 +1,308 @@
+package com.tqmall.search.commons.analyzer;
+
+import com.tqmall.search.commons.ac.AcBinaryTrie;
+import com.tqmall.search.commons.ac.AcDoubleArrayTrie;
+import com.tqmall.search.commons.exception.LoadLexiconException;
+import com.tqmall.search.commons.lang.Function;
+import com.tqmall.search.commons.match.MatchBinaryReverseTrie;
+import com.tqmall.search.commons.nlp.NlpUtils;
+import com.tqmall.search.commons.trie.Dawg;
+import com.tqmall.search.commons.trie.DoubleArrayTrie;
+import com.tqmall.search.commons.trie.RootNodeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Created by xing on 26/10/16.
+ * {@link CjkLexicon}的二进制快照, 构建时通过{@link #write(CjkLexicon, Path)}或者{@link #main(String[])}将编译好的词库写到文件,
+ * 运行时通过{@link #load(Path, RootNodeType)}读取, 文件通过{@link FileChannel#map(FileChannel.MapMode, long, long)}映射,
+ * 全匹配的{@link AcDoubleArrayTrie}各个数组直接使用映射的文件, 不复制到堆中, 不需要解析词库文件, 也不需要构建failed,
+ * 词ID表的{@link Dawg}数组整块复制, 特殊字符以及最长的词的长度也直接读取, 加载时不需要逐个还原词
+ * <p/>
+ * 文件格式, 整数都是大端:
+ * <pre>
+ * int    MAGIC
+ * int    VERSION
+ * int    TokenType数量, 之后每个TokenType的名称, 词的value通过该表的下标存储, 不依赖枚举的定义顺序
+ * int    量词数量, 之后每个量词
+ * int    词数量, 之后每个词TokenType的下标, byte
+ * int[]  每个词的ID
+ * {@link TermDictionary}中加载时的词的Dawg结构, 见{@link Dawg#writeTo(DataOutput)}
+ * long[] 词中出现的特殊字符, {@link BitSet#toLongArray()}
+ * int    最长的词的长度
+ * AcDoubleArrayTrie数据, 见{@link AcDoubleArrayTrie#writeTo(DataOutput)}
+ * 逆向前缀树的结构, 见{@link com.tqmall.search.commons.trie.BinaryTrie#writeTo(DataOutput, Function)}, value下标为词序号, 词数量表示null
+ * </pre>
+ * 每个词按照双数组中的词序号存储, 词ID单独存储, 不按照字典序重新分配, 动态添加的词保持追加的ID, 加载时的词的ID也不受其影响,
+ * 所以快照写出, 加载之后所有的词ID都不变. ID小于Dawg词数量的为加载时的词, 其他的词按照ID顺序重新追加
+ * 字符串存储为int长度加上char数组, 数组存储为int长度加上各个元素
+ * <p/>
+ * 最大, 最小匹配的逆向前缀树为{@link com.tqmall.search.commons.trie.BinaryTrie}, 需要支持加词, 没法直接映射,
+ * 按照快照中的结构直接创建节点, 不需要逐个词从根节点插入
+ * 加载出来的CjkLexicon全匹配使用{@link AcDoubleArrayTrie}, 之后加词同样生效
+ *
+ * @author xing
+ * @see CjkLexicon
+ * @see AcDoubleArrayTrie#writeTo(DataOutput)
+ */
+public final class CjkLexiconSnapshot {
+
+    private static final Logger log = LoggerFactory.getLogger(CjkLexiconSnapshot.class);
+
+    /**
+     * 文件头, "TQLX"
+     */
+    public static final int MAGIC = 0x54514C58;
+
+    /**
+     * 文件格式版本, 格式有变化需要升级版本, 旧版本的快照需要重新生成
+     */
+    public static final int VERSION = 5;
+
+    private CjkLexiconSnapshot() {
+    }
+
+    /**
+     * 将词库写到快照文件中, 文件已经存在则覆盖
+     * 词从逆向前缀树中获取, 包括通过{@link CjkLexicon#addWord(String, TokenType)}动态添加的词
+     *
+     * @throws LoadLexiconException     写文件时发生{@link IOException}
+     * @throws IllegalArgumentException cjkLexicon为增量词库, 增量词库只有增量的词, 应该写其基础词库
+     */
+    public static void write(CjkLexicon cjkLexicon, Path snapshotPath) {
+        if (cjkLexicon.getBase() != null) {
+            throw new IllegalArgumentException("overlay cjkLexicon can not write snapshot, write its base instead");
+        }
+        long startTime = System.currentTimeMillis();
+        TreeMap<String, Term> reverseWords = new TreeMap<>();
+        NlpUtils.collectWords(cjkLexicon.getMatchReverseBinaryTrie(), reverseWords);
+        AcBinaryTrie.Builder<Term> builder = AcBinaryTrie.build();
+        for (Map.Entry<String, Term> e : reverseWords.entrySet()) {
+            builder.put(NlpUtils.reverseString(e.getKey()), e.getValue());
+        }
+        AcDoubleArrayTrie<Term> acTrie = builder.createDoubleArray();
+        final DoubleArrayTrie<Term> trie = acTrie.getTrie();
+        //每个词的value都是单独的对象, 逆向前缀树的value通过它找到词序号
+        final Map<Term, Integer> wordIndexes = new IdentityHashMap<>(trie.size() * 2);
+        for (int i = 0; i < trie.size(); i++) {
+            wordIndexes.put(trie.getValue(i), i);
+        }
+        TokenType[] tokenTypes = TokenType.values();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(snapshotPath)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(tokenTypes.length);
+            for (TokenType t : tokenTypes) {
+                writeString(out, t.name());
+            }
+            Set<String> quantifiers = cjkLexicon.getQuantifiers();
+            out.writeInt(quantifiers.size());
+            for (String q : quantifiers) {
+                writeString(out, q);
+            }
+            out.writeInt(trie.size());
+            for (int i = 0; i < trie.size(); i++) {
+                out.writeByte(trie.getValue(i).type.ordinal());
+            }
+            TermDictionary termDictionary = cjkLexicon.getTermDictionary();
+            out.writeInt(trie.size());
+            for (int i = 0; i < trie.size(); i++) {
+                out.writeInt(termDictionary.termId(trie.getValue(i)));
+            }
+            termDictionary.loadedTerms().writeTo(out);
+            long[] specialChars = cjkLexicon.getSpecialChars().toLongArray();
+            out.writeInt(specialChars.length);
+            for (long w : specialChars) {
+                out.writeLong(w);
+            }
+            out.writeInt(cjkLexicon.maxWordLength());
+            acTrie.writeTo(out);
+            cjkLexicon.getMatchReverseBinaryTrie().writeTo(out, new Function<Term, Integer>() {
+                @Override
+                public Integer apply(Term t) {
+                    return t == null ? trie.size() : wordIndexes.get(t);
+                }
+            });
+        } catch (IOException e) {
+            log.error("write cjk lexicon snapshot: " + snapshotPath + " have exception", e);
+            throw new LoadLexiconException("write cjk lexicon snapshot: " + snapshotPath + " have exception", e);
+        }
+        log.info("write cjk lexicon snapshot: " + snapshotPath + " finish, total " + trie.size() + " words, cost: "
+                + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    /**
+     * 读取快照文件构造CjkLexicon
+     *
+     * @param rootNodeType 逆向前缀树的根节点类型
+     * @throws LoadLexiconException 读取文件存在异常, 或者文件格式, 版本不对, 或者文件内容损坏
+     */
+    public static CjkLexicon load(Path snapshotPath, RootNodeType rootNodeType) {
+        long startTime = System.currentTimeMillis();
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            log.error("load cjk lexicon snapshot: " + snapshotPath + " have exception", e);
+            throw new LoadLexiconException("load cjk lexicon snapshot: " + snapshotPath + " have exception", e);
+        }
+        CjkLexicon cjkLexicon;
+        try {
+            cjkLexicon = read(buffer, rootNodeType);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new LoadLexiconException("cjk lexicon snapshot: " + snapshotPath + " is broken", e);
+        }
+        log.info("load cjk lexicon snapshot: " + snapshotPath + " finish, total cost: "
+                + (System.currentTimeMillis() - startTime) + "ms");
+        return cjkLexicon;
+    }
+
+    private static CjkLexicon read(ByteBuffer buffer, RootNodeType rootNodeType) {
+        if (buffer.getInt() != MAGIC) {
+            throw new LoadLexiconException("the file is not a cjk lexicon snapshot");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new LoadLexiconException("cjk lexicon snapshot version: " + version + " is not supported, expect: "
+                    + VERSION + ", please rebuild the snapshot");
+        }
+        TokenType[] tokenTypes = new TokenType[readCount(buffer, 4, "token type")];
+        for (int i = 0; i < tokenTypes.length; i++) {
+            tokenTypes[i] = TokenType.valueOf(readString(buffer));
+        }
+        int quantifierCount = readCount(buffer, 4, "quantifier");
+        Set<String> quantifiers = new HashSet<>(quantifierCount * 2);
+        for (int i = 0; i < quantifierCount; i++) {
+            quantifiers.add(readString(buffer));
+        }
+        TokenType[] wordTypes = new TokenType[readCount(buffer, 1, "word")];
+        for (int i = 0; i < wordTypes.length; i++) {
+            byte index = buffer.get();
+            if (index < 0 || index >= tokenTypes.length) {
+                throw new IllegalArgumentException("word: " + i + " token type index: " + index + " is invalid");
+            }
+            wordTypes[i] = tokenTypes[index];
+        }
+        IntBuffer termIdBuffer = NlpUtils.readIntBuffer(buffer);
+        if (termIdBuffer.limit() != wordTypes.length) {
+            throw new IllegalArgumentException("termId count: " + termIdBuffer.limit() + ", expect: " + wordTypes.length);
+        }
+        int[] termIds = new int[wordTypes.length];
+        BitSet seenTermIds = new BitSet(termIds.length);
+        for (int i = 0; i < termIds.length; i++) {
+            int termId = termIdBuffer.get(i);
+            if (termId < 0 || termId >= termIds.length || seenTermIds.get(termId)) {
+                throw new IllegalArgumentException("word: " + i + " termId: " + termId + " is invalid");
+            }
+            seenTermIds.set(termId);
+            termIds[i] = termId;
+        }
+        Dawg<Void> loadedTerms = Dawg.readFrom(buffer, null);
+        int loadedCount = loadedTerms.size();
+        if (loadedCount > wordTypes.length) {
+            throw new IllegalArgumentException("loaded word count: " + loadedCount + " is invalid, total: " + wordTypes.length);
+        }
+        int specialCharCount = readCount(buffer, 8, "special char");
+        ByteBuffer specialCharSlice = buffer.slice();
+        specialCharSlice.limit(specialCharCount << 3);
+        buffer.position(buffer.position() + (specialCharCount << 3));
+        BitSet specialChars = BitSet.valueOf(specialCharSlice.asLongBuffer());
+        int maxWordLength = buffer.getInt();
+        if (maxWordLength < 0) {
+            throw new IllegalArgumentException("max word length: " + maxWordLength + " is invalid");
+        }
+        //双数组直接引用trieValues, 词ID表创建之后再填充value
+        Object[] trieValues = new Object[wordTypes.length];
+        AcDoubleArrayTrie<Term> acTrie = AcDoubleArrayTrie.readFrom(buffer, trieValues);
+        DoubleArrayTrie<Term> trie = acTrie.getTrie();
+        //只需要还原动态添加的词, 按照ID顺序追加
+        String[] addedTerms = new String[wordTypes.length - loadedCount];
+        for (int i = 0; i < trie.size(); i++) {
+            if (termIds[i] >= loadedCount) addedTerms[termIds[i] - loadedCount] = trie.getWord(i);
+        }
+        TermDictionary termDictionary = new TermDictionary(loadedTerms);
+        for (int i = 0; i < addedTerms.length; i++) {
+            int termId = termDictionary.addTerm(addedTerms[i]);
+            if (termId != loadedCount + i) {
+                throw new IllegalArgumentException("added term: " + addedTerms[i] + " termId: " + termId + ", expect: "
+                        + (loadedCount + i));
+            }
+        }
+        //最后一个为null, 对应逆向前缀树中的null value
+        Object[] values = new Object[wordTypes.length + 1];
+        for (int i = 0; i < wordTypes.length; i++) {
+            values[i] = trieValues[i] = new Term(wordTypes[i], termIds[i], termDictionary);
+        }
+        MatchBinaryReverseTrie<Term> reverseTrie = new MatchBinaryReverseTrie<>(rootNodeType.<Term>defaultTrie());
+        reverseTrie.readFrom(buffer, values);
+        if (reverseTrie.size() != wordTypes.length) {
+            throw new IllegalArgumentException("reverse trie word count: " + reverseTrie.size() + ", expect: "
+                    + wordTypes.length);
+        }
+        return new CjkLexicon(acTrie, reverseTrie, quantifiers, termDictionary, specialChars, maxWordLength);
+    }
+
+    /**
+     * 读取数量, 数量为负数或者剩余的数据不够, 说明文件已经损坏
+     *
+     * @param unitBytes 每个元素至少占用的字节数
+     */
+    private static int readCount(ByteBuffer buffer, int unitBytes, String name) {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / unitBytes) {
+            throw new IllegalArgumentException(name + " count: " + count + " is invalid, remaining bytes: "
+                    + buffer.remaining());
+        }
+        return count;
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        out.writeInt(s.length());
+        out.writeChars(s);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        char[] chars = new char[readCount(buffer, 2, "string char")];
+        buffer.asCharBuffer().get(chars);
+        buffer.position(buffer.position() + (chars.length << 1));
+        return new String(chars);
+    }
+
+    /**
+     * 构建时工具, 读取词库文件生成快照
+     * 参数: 快照文件路径, 词库文件路径[, 词库文件路径...]
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: " + CjkLexiconSnapshot.class.getName() + " <snapshot file> <lexicon file>...");
+            System.exit(1);
+        }
+        List<Path> lexiconPaths = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            lexiconPaths.add(Paths.get(args[i]));
+        }
+        write(new CjkLexicon(RootNodeType.CJK, lexiconPaths), Paths.get(args[0]));
+    }
+}
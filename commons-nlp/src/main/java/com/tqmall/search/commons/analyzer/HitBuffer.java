@@ -0,0 +1,352 @@
+package com.tqmall.search.commons.analyzer;
+
+import com.tqmall.search.commons.match.Hit;
+import com.tqmall.search.commons.match.HitHandler;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Created by xing on 26/10/16.
+ * 分词结果缓存, 开始位置, 结束位置以及{@link TokenType}分别存储在数组中, 不为每个结果创建{@link Hit}对象以及list节点
+ * 分词的各个步骤: ascii分词, 数量词合并, 结果过滤等都直接在数组上修改, 数组在多次分词之间复用
+ * 通过{@link #local()}获取线程内复用的对象, 稳定之后分词过程中不再分配内存
+ * 需要list结果的通过{@link #asList()}或者{@link #toList()}转换
+ * <p/>
+ * 该类有状态, 非线程安全
+ *
+ * @author xing
+ * @see NumQuantifierMerge#merge(HitBuffer)
+ */
+public final class HitBuffer implements HitHandler<TokenType> {
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    /**
+     * type为null时存储的值
+     */
+    private static final byte NULL_TYPE = -1;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private static final ThreadLocal<HitBuffer> LOCAL = new ThreadLocal<HitBuffer>() {
+        @Override
+        protected HitBuffer initialValue() {
+            return new HitBuffer();
+        }
+    };
+
+    private int[] starts;
+
+    private int[] ends;
+
+    private byte[] types;
+
+    private int size;
+
+    /**
+     * {@link #mergeSorted(int)}时暂存后半部分的结果, 延迟创建
+     */
+    private int[] tmpStarts, tmpEnds;
+
+    private byte[] tmpTypes;
+
+    public HitBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public HitBuffer(int capacity) {
+        capacity = Math.max(capacity, 1);
+        starts = new int[capacity];
+        ends = new int[capacity];
+        types = new byte[capacity];
+    }
+
+    /**
+     * 获取当前线程复用的对象, 返回之前已经{@link #clear()}, 同一个线程内不能嵌套使用
+     */
+    public static HitBuffer local() {
+        HitBuffer buffer = LOCAL.get();
+        buffer.clear();
+        return buffer;
+    }
+
+    private static byte encode(TokenType type) {
+        return type == null ? NULL_TYPE : (byte) type.ordinal();
+    }
+
+    private static TokenType decode(byte type) {
+        return type == NULL_TYPE ? null : TOKEN_TYPES[type];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= starts.length) return;
+        int newCapacity = Math.max(capacity, starts.length << 1);
+        starts = Arrays.copyOf(starts, newCapacity);
+        ends = Arrays.copyOf(ends, newCapacity);
+        types = Arrays.copyOf(types, newCapacity);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 清空结果, 数组保留复用
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    public int start(int index) {
+        checkIndex(index);
+        return starts[index];
+    }
+
+    public int end(int index) {
+        checkIndex(index);
+        return ends[index];
+    }
+
+    public TokenType type(int index) {
+        checkIndex(index);
+        return decode(types[index]);
+    }
+
+    /**
+     * 添加到末尾
+     */
+    public void add(int start, int end, TokenType type) {
+        ensureCapacity(size + 1);
+        starts[size] = start;
+        ends[size] = end;
+        types[size] = encode(type);
+        size++;
+    }
+
+    /**
+     * 回调的结果添加到末尾, 可以直接作为{@link com.tqmall.search.commons.match.AbstractTextMatch#match(char[], int, int, HitHandler)}
+     * 的handler
+     */
+    @Override
+    public boolean onHit(int start, int end, TokenType value) {
+        add(start, end, value);
+        return true;
+    }
+
+    /**
+     * 在index位置插入, 原先index以及之后的结果后移
+     */
+    public void insert(int index, int start, int end, TokenType type) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+        ensureCapacity(size + 1);
+        int moved = size - index;
+        if (moved > 0) {
+            System.arraycopy(starts, index, starts, index + 1, moved);
+            System.arraycopy(ends, index, ends, index + 1, moved);
+            System.arraycopy(types, index, types, index + 1, moved);
+        }
+        starts[index] = start;
+        ends[index] = end;
+        types[index] = encode(type);
+        size++;
+    }
+
+    /**
+     * 有序插入, 排序规则同{@link Hit#compareTo(Hit)}, 相同位置的结果插入到已有结果之后
+     *
+     * @return 插入的位置
+     */
+    public int insertOrdered(int start, int end, TokenType type) {
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] < start || (starts[mid] == start && ends[mid] <= end)) low = mid + 1;
+            else high = mid;
+        }
+        insert(low, start, end, type);
+        return low;
+    }
+
+    /**
+     * 修改index位置的结果
+     */
+    public void set(int index, int start, int end, TokenType type) {
+        checkIndex(index);
+        starts[index] = start;
+        ends[index] = end;
+        types[index] = encode(type);
+    }
+
+    /**
+     * 删除index位置的结果, 之后的结果前移
+     */
+    public void remove(int index) {
+        checkIndex(index);
+        int moved = size - index - 1;
+        if (moved > 0) {
+            System.arraycopy(starts, index + 1, starts, index, moved);
+            System.arraycopy(ends, index + 1, ends, index, moved);
+            System.arraycopy(types, index + 1, types, index, moved);
+        }
+        size--;
+    }
+
+    /**
+     * 只保留前newSize个结果
+     */
+    public void truncate(int newSize) {
+        if (newSize < 0 || newSize > size) {
+            throw new IndexOutOfBoundsException("newSize: " + newSize + ", size: " + size);
+        }
+        size = newSize;
+    }
+
+    /**
+     * [0, mid)和[mid, size)两部分分别有序, 合并为一个有序的结果, 相同位置的结果前半部分在前
+     * 后半部分复制到暂存数组, 然后从后向前合并, 不需要创建新的数组
+     *
+     * @param mid 后半部分的开始下标
+     */
+    public void mergeSorted(int mid) {
+        if (mid < 0 || mid > size) {
+            throw new IndexOutOfBoundsException("mid: " + mid + ", size: " + size);
+        }
+        int tailSize = size - mid;
+        if (mid == 0 || tailSize == 0) return;
+        //已经有序, 不需要合并
+        if (starts[mid - 1] < starts[mid] || (starts[mid - 1] == starts[mid] && ends[mid - 1] <= ends[mid])) return;
+        if (tmpStarts == null || tmpStarts.length < tailSize) {
+            int capacity = Math.max(tailSize, starts.length);
+            tmpStarts = new int[capacity];
+            tmpEnds = new int[capacity];
+            tmpTypes = new byte[capacity];
+        }
+        System.arraycopy(starts, mid, tmpStarts, 0, tailSize);
+        System.arraycopy(ends, mid, tmpEnds, 0, tailSize);
+        System.arraycopy(types, mid, tmpTypes, 0, tailSize);
+        int i = mid - 1, j = tailSize - 1, k = size - 1;
+        while (j >= 0) {
+            if (i >= 0 && (starts[i] > tmpStarts[j] || (starts[i] == tmpStarts[j] && ends[i] > tmpEnds[j]))) {
+                starts[k] = starts[i];
+                ends[k] = ends[i];
+                types[k] = types[i];
+                i--;
+            } else {
+                starts[k] = tmpStarts[j];
+                ends[k] = tmpEnds[j];
+                types[k] = tmpTypes[j];
+                j--;
+            }
+            k--;
+        }
+    }
+
+    /**
+     * 过滤结果, 只保留filter接受的, 一次遍历完成, 剩下的结果保持原先的顺序
+     *
+     * @param text   分词的源文本, 传给filter
+     * @param filter 结果过滤器
+     */
+    public void filter(char[] text, Filter filter) {
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (!filter.accept(text, starts[i], ends[i], decode(types[i]))) continue;
+            if (n != i) {
+                starts[n] = starts[i];
+                ends[n] = ends[i];
+                types[n] = types[i];
+            }
+            n++;
+        }
+        size = n;
+    }
+
+    /**
+     * 按顺序回调所有结果
+     *
+     * @return 是否回调完, false表示handler终止了回调
+     */
+    public boolean forEach(HitHandler<TokenType> handler) {
+        for (int i = 0; i < size; i++) {
+            if (!handler.onHit(starts[i], ends[i], decode(types[i]))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 添加hits中的所有结果到末尾
+     */
+    public void addAll(List<Hit<TokenType>> hits) {
+        ensureCapacity(size + hits.size());
+        for (Hit<TokenType> h : hits) {
+            add(h.getStart(), h.getEnd(), h.getValue());
+        }
+    }
+
+    /**
+     * 只读的list视图, 每次get创建新的{@link Hit}对象, 之后对buffer的修改在视图中可见
+     * buffer复用之后视图内容也会改变, 需要保留结果的使用{@link #toList()}
+     */
+    public List<Hit<TokenType>> asList() {
+        return new ListView();
+    }
+
+    /**
+     * 复制为新的list, 与buffer独立
+     */
+    public List<Hit<TokenType>> toList() {
+        List<Hit<TokenType>> hits = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            hits.add(new Hit<>(starts[i], ends[i], decode(types[i])));
+        }
+        return hits;
+    }
+
+    @Override
+    public String toString() {
+        return asList().toString();
+    }
+
+    /**
+     * 结果过滤器
+     *
+     * @see #filter(char[], Filter)
+     */
+    public interface Filter {
+
+        /**
+         * @return 是否保留该结果
+         */
+        boolean accept(char[] text, int start, int end, TokenType type);
+    }
+
+    private final class ListView extends AbstractList<Hit<TokenType>> implements RandomAccess {
+
+        @Override
+        public Hit<TokenType> get(int index) {
+            checkIndex(index);
+            return new Hit<>(starts[index], ends[index], decode(types[index]));
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
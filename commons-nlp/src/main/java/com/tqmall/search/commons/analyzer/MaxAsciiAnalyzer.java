@@ -2,6 +2,8 @@ package com.tqmall.search.commons.analyzer;
 
 import com.tqmall.search.commons.match.AbstractTextMatch;
 import com.tqmall.search.commons.match.Hit;
+import com.tqmall.search.commons.match.HitHandler;
+import com.tqmall.search.commons.nlp.CharTable;
 import com.tqmall.search.commons.nlp.NlpUtils;
 
 import java.util.LinkedList;
@@ -21,11 +23,11 @@ public class MaxAsciiAnalyzer extends AbstractTextMatch<TokenType> {
     }
 
     private boolean usefulChar(char c) {
-        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9');
+        return (CharTable.flags(c) & (CharTable.EN | CharTable.NUM)) != 0;
     }
 
     private boolean isNumber(char c) {
-        return c >= '0' && c <= '9';
+        return CharTable.is(c, CharTable.NUM);
     }
 
     @Override
@@ -51,4 +53,42 @@ public class MaxAsciiAnalyzer extends AbstractTextMatch<TokenType> {
         return hits;
     }
 
+    /**
+     * 逐个回调分词结果, 通过{@link #scanner(char[], int, int)}实现, 不创建{@link Hit}对象
+     */
+    @Override
+    public boolean match(char[] text, int off, int len, HitHandler<TokenType> handler) {
+        AsciiScanner scanner = scanner(text, off, len);
+        while (scanner.next()) {
+            if (!handler.onHit(scanner.start(), scanner.end(), scanner.type())) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 创建分词游标, 读取的结果同{@link #match(char[], int, int)}
+     */
+    public AsciiScanner scanner(char[] text, int off, int len) {
+        final int endPos = off + len;
+        NlpUtils.arrayIndexCheck(text, off, endPos);
+        return new AsciiScanner(text, off, endPos) {
+            @Override
+            public boolean next() {
+                while (position < endPos && !accept(position)) position++;
+                if (position == endPos) return false;
+                start = position;
+                while (position < endPos && accept(position)) position++;
+                end = position;
+                type = TokenType.EN_MIX;
+                return true;
+            }
+
+            private boolean accept(int i) {
+                char c = text[i];
+                return usefulChar(c) || (c == '.' && i > startPos && (i + 1) < endPos
+                        && isNumber(text[i - 1]) && isNumber(text[i + 1]));
+            }
+        };
+    }
+
 }
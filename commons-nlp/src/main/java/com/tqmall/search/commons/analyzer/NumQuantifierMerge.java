@@ -4,7 +4,6 @@ import com.tqmall.search.commons.match.Hit;
 import com.tqmall.search.commons.utils.CommonsUtils;
 
 import java.util.List;
-import java.util.ListIterator;
 
 /**
  * Created by xing on 16/3/14.
@@ -23,36 +22,61 @@ public class NumQuantifierMerge {
         this.appendNumQuantifier = appendNumQuantifier;
     }
 
+    public boolean isAppendNumQuantifier() {
+        return appendNumQuantifier;
+    }
+
     /**
-     * 数量词合并
+     * 数量词合并, 通过{@link #merge(HitBuffer)}实现, 合并之后的结果写回hits
      *
-     * @param hits 有序的匹配结果
+     * @param hits 有序的匹配结果, 该List必须支持修改
      */
     public void merge(List<Hit<TokenType>> hits) {
         if (CommonsUtils.isEmpty(hits)) return;
-        ListIterator<Hit<TokenType>> it = hits.listIterator();
-        Hit<TokenType> preNumHit = null;
-        while (it.hasNext()) {
-            Hit<TokenType> curHit = it.next();
-            TokenType curType = curHit.getValue();
-            if (curType == TokenType.NUM || curType == TokenType.DECIMAL) {
-                preNumHit = curHit;
-                continue;
-            } else if (preNumHit != null && preNumHit.getEnd() == curHit.getStart()
-                    && (curType == TokenType.QUANTIFIER || curType == TokenType.NUM_QUANTIFIER)) {
-                if (appendNumQuantifier) {
-                    it.previous();
-                    //需要考虑插入字符的顺序
-                    it.add(new Hit<>(preNumHit.getStart(), curHit.getEnd(), TokenType.NUM_QUANTIFIER));
-                    it.next();
+        HitBuffer buffer = new HitBuffer(hits.size() << 1);
+        buffer.addAll(hits);
+        merge(buffer);
+        hits.clear();
+        hits.addAll(buffer.asList());
+    }
+
+    /**
+     * 数量词合并, 直接在buffer上修改
+     * 相连的数词和量词合并: 如果{@link #appendNumQuantifier}为true, 新的数量词添加到末尾, 再通过{@link HitBuffer#mergeSorted(int)}
+     * 合并到对应的位置, 新词的位置在数词和量词之间; 否则新词覆盖数词, 量词删除, 一次遍历完成
+     *
+     * @param hits 有序的匹配结果
+     */
+    public void merge(HitBuffer hits) {
+        final int size = hits.size();
+        if (size < 2) return;
+        if (appendNumQuantifier) {
+            for (int i = 1; i < size; i++) {
+                if (canMerge(hits, i)) hits.add(hits.start(i - 1), hits.end(i), TokenType.NUM_QUANTIFIER);
+            }
+            hits.mergeSorted(size);
+        } else {
+            //n为保留结果的个数, 下标i - 1的结果在遍历到i时还未被覆盖
+            int n = 1;
+            for (int i = 1; i < size; i++) {
+                if (canMerge(hits, i)) {
+                    hits.set(n - 1, hits.start(n - 1), hits.end(i), TokenType.NUM_QUANTIFIER);
                 } else {
-                    it.remove();
-                    Hit<TokenType> h = it.previous();
-                    h.changePosition(preNumHit.getStart(), curHit.getEnd());
-                    h.changeValue(TokenType.NUM_QUANTIFIER);
+                    if (n != i) hits.set(n, hits.start(i), hits.end(i), hits.type(i));
+                    n++;
                 }
             }
-            preNumHit = null;
+            hits.truncate(n);
         }
     }
+
+    /**
+     * 下标index的结果为量词, 并且与前一个数词相连
+     */
+    private static boolean canMerge(HitBuffer hits, int index) {
+        TokenType preType = hits.type(index - 1), curType = hits.type(index);
+        return (preType == TokenType.NUM || preType == TokenType.DECIMAL)
+                && (curType == TokenType.QUANTIFIER || curType == TokenType.NUM_QUANTIFIER)
+                && hits.end(index - 1) == hits.start(index);
+    }
 }
@@ -5,17 +5,17 @@ import com.tqmall.search.commons.lang.LazyInit;
 import com.tqmall.search.commons.lang.Supplier;
 import com.tqmall.search.commons.nlp.NlpConst;
 import com.tqmall.search.commons.nlp.NlpUtils;
-import com.tqmall.search.commons.trie.BinaryTrie;
-import com.tqmall.search.commons.trie.Node;
-import com.tqmall.search.commons.trie.NodeChildHandle;
-import com.tqmall.search.commons.trie.RootNodeType;
+import com.tqmall.search.commons.trie.DoubleArrayTrie;
 import com.tqmall.search.commons.utils.SearchStringUtils;
 
-import java.util.*;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by xing on 16/3/8.
  * 停止词, 不区分大小写
+ * 停止词通过{@link DoubleArrayTrie}存储, 停止词的判断只需要数组访问, 添加/删除停止词时重新构造, 停止词不多, 构造很快
  *
  * @author xing
  */
@@ -39,31 +39,50 @@ public class StopWords {
      * 判断是否为停止词
      */
     public static boolean isStopword(char[] text, int off, int len) {
-        Node node = INSTANCE.getInstance().stopWords.getNode(text, off, len);
-        return node != null && node.accept();
+        DoubleArrayTrie<Void> trie = INSTANCE.getInstance().stopWords;
+        int state = trie.getState(text, off, len);
+        return state >= 0 && trie.accept(state);
     }
 
-    private final BinaryTrie<Void> stopWords;
+    /**
+     * 修改停止词时整个替换
+     */
+    private volatile DoubleArrayTrie<Void> stopWords;
+
+    /**
+     * 修改停止词时加1
+     */
+    private final AtomicLong version = new AtomicLong();
 
     StopWords() {
-        stopWords = new BinaryTrie<>(RootNodeType.NORMAL.<Void>defaultTrie());
+        final DoubleArrayTrie.Builder<Void> builder = DoubleArrayTrie.build();
         NlpUtils.loadClassPathLexicon(StopWords.class, NlpConst.STOPWORD_FILE_NAME, new Function<String, Boolean>() {
             @Override
             public Boolean apply(String line) {
-                stopWords.put(line, null);
+                builder.put(line, null);
                 return true;
             }
         });
+        stopWords = builder.create();
     }
 
     /**
      * 添加停止词
      *
-     * @return 是否添加完成
+     * @return 是否添加完成, 已经是停止词返回false, 不重建
      */
-    public boolean addStopword(String word) {
+    public synchronized boolean addStopword(String word) {
         word = SearchStringUtils.filterString(word);
-        return word != null && stopWords.put(word.toLowerCase(), null);
+        if (word == null) return false;
+        char[] array = word.toLowerCase().toCharArray();
+        int state = stopWords.getState(array, 0, array.length);
+        if (state >= 0 && stopWords.accept(state)) return false;
+        stopWords = DoubleArrayTrie.<Void>build()
+                .putAll(stopWords)
+                .put(new String(array), null)
+                .create();
+        version.incrementAndGet();
+        return true;
     }
 
     /**
@@ -71,32 +90,35 @@ public class StopWords {
      *
      * @return 是否删除完成
      */
-    public boolean removeStopword(String word) {
+    public synchronized boolean removeStopword(String word) {
         word = SearchStringUtils.filterString(word);
-        return word != null && stopWords.remove(word);
+        if (word == null) return false;
+        char[] array = word.toCharArray();
+        int state = stopWords.getState(array, 0, array.length);
+        if (state < 0 || !stopWords.accept(state)) return false;
+        stopWords = DoubleArrayTrie.<Void>build()
+                .putAll(stopWords)
+                .remove(word)
+                .create();
+        version.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 停止词版本, 每次修改停止词加1
+     */
+    public long getVersion() {
+        return version.get();
     }
 
     /**
      * 获取所有的停止词
      */
     public Set<String> allStopwords() {
-        Node<Void> root = stopWords.getRoot();
-        final List<Character> list = new ArrayList<>();
-        root.childHandle(new NodeChildHandle<Void>() {
-            @Override
-            public boolean onHandle(Node<Void> child) {
-                list.add(child.getChar());
-                return true;
-            }
-        });
+        DoubleArrayTrie<Void> trie = stopWords;
         Set<String> allStopWords = new HashSet<>();
-        for (Character c : list) {
-            List<Map.Entry<String, Void>> ret = stopWords.prefixSearch(c.toString());
-            if (ret != null) {
-                for (Map.Entry<String, Void> e : ret) {
-                    allStopWords.add(e.getKey());
-                }
-            }
+        for (int i = 0; i < trie.size(); i++) {
+            allStopWords.add(trie.getWord(i));
         }
         return allStopWords;
     }
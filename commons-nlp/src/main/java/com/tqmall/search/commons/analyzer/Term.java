@@ -0,0 +1,31 @@
+package com.tqmall.search.commons.analyzer;
+
+/**
+ * Created by xing on 26/10/16.
+ * 词库前缀树中词的value, 词插入时分配好词ID, 匹配结果直接带出ID, 不需要根据结果的文本再查{@link TermDictionary}
+ *
+ * @author xing
+ * @see TermDictionary#termId(Term)
+ */
+final class Term {
+
+    final TokenType type;
+
+    final int id;
+
+    /**
+     * 分配ID的词ID表, 增量词库通过它区分基础词库在增量词库创建之后添加的词
+     */
+    final TermDictionary dictionary;
+
+    Term(TokenType type, int id, TermDictionary dictionary) {
+        this.type = type;
+        this.id = id;
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public String toString() {
+        return type + "." + id;
+    }
+}
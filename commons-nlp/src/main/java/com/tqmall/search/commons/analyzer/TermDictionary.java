@@ -0,0 +1,177 @@
+package com.tqmall.search.commons.analyzer;
+
+import com.tqmall.search.commons.match.Hit;
+import com.tqmall.search.commons.nlp.NlpUtils;
+import com.tqmall.search.commons.trie.BinaryTrie;
+import com.tqmall.search.commons.trie.Dawg;
+import com.tqmall.search.commons.trie.Node;
+import com.tqmall.search.commons.trie.RootNodeType;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Created by xing on 26/10/16.
+ * 词库的词ID表, 加载词库时为每个词分配一个int ID, 下游的索引, 去重, 特征提取等可以直接使用ID, 不需要为每个结果创建String
+ * 加载时的词存储在{@link Dawg}中, ID即词的字典序序号(最小完美hash), 同样的词库ID不变, 快照加载的词库ID也一样
+ * 之后动态添加的词依次追加ID, ID只增不减, 已经分配的ID不会改变
+ * <p/>
+ * 增量词库有自己的ID表, 基础词库中的词沿用基础词库的ID, 增量的词从创建时基础词库的{@link #size()}开始分配, 基础词库的ID表不会被修改,
+ * 各个增量词库之间的ID可以重复. 基础词库在增量词库创建之后添加的词不在增量词库的ID表中
+ * <p/>
+ * 词ID在词插入词库时就确定了, 存储在前缀树的value中, 分词结果直接带出, 见{@link TermHitHandler},
+ * 通过{@link #termId(char[], int, int)}查找需要沿着词走一遍自动机, 不创建任何对象, 通过{@link #term(int)}还原词
+ *
+ * @author xing
+ * @see CjkLexicon#getTermDictionary()
+ * @see TermHitHandler
+ */
+public final class TermDictionary {
+
+    /**
+     * 不在词典中的词的ID
+     */
+    public static final int NO_TERM = -1;
+
+    /**
+     * 加载时的词, 增量词库为null
+     */
+    private final Dawg<Void> loadedTerms;
+
+    /**
+     * 基础词库的ID表, 只读, 普通词库为null
+     */
+    private final TermDictionary base;
+
+    /**
+     * ID小于该值的词来自{@link #loadedTerms}或者{@link #base}
+     */
+    private final int baseSize;
+
+    /**
+     * 动态添加的词, value为ID
+     */
+    private final BinaryTrie<Integer> addedTrie = new BinaryTrie<>(RootNodeType.NORMAL.<Integer>defaultTrie());
+
+    /**
+     * 动态添加的词, 下标为ID - baseSize, 写时复制
+     */
+    private volatile String[] addedTerms = new String[0];
+
+    TermDictionary(Dawg<Void> loadedTerms) {
+        Objects.requireNonNull(loadedTerms);
+        this.loadedTerms = loadedTerms;
+        this.base = null;
+        this.baseSize = loadedTerms.size();
+    }
+
+    /**
+     * 增量词库的ID表
+     */
+    TermDictionary(TermDictionary base) {
+        Objects.requireNonNull(base);
+        this.loadedTerms = null;
+        this.base = base;
+        this.baseSize = base.size();
+    }
+
+    private int baseTermId(char[] text, int off, int len) {
+        if (loadedTerms != null) return loadedTerms.wordIndex(text, off, len);
+        int termId = base.termId(text, off, len);
+        return termId < baseSize ? termId : NO_TERM;
+    }
+
+    /**
+     * 参数数组不做数组越界检查
+     *
+     * @return 词ID, 不存在返回{@link #NO_TERM}
+     */
+    public int termId(char[] text, int off, int len) {
+        if (len <= 0) return NO_TERM;
+        int termId = baseTermId(text, off, len);
+        if (termId >= 0 || addedTerms.length == 0) return termId;
+        Node<Integer> node = addedTrie.getNode(text, off, len);
+        return node == null || !node.accept() ? NO_TERM : node.getValue();
+    }
+
+    public int termId(String term) {
+        char[] charArray = NlpUtils.stringToCharArray(term);
+        return charArray == null ? NO_TERM : termId(charArray, 0, charArray.length);
+    }
+
+    /**
+     * 匹配结果对应的词ID
+     *
+     * @param text 匹配的文本
+     */
+    public int termId(char[] text, Hit<?> hit) {
+        return termId(text, hit.getStart(), hit.getEnd() - hit.getStart());
+    }
+
+    /**
+     * 前缀树value中存储的ID, 不需要查找
+     * 基础词库在增量词库创建之后添加的词, ID可能与增量的词重复, 返回{@link #NO_TERM}
+     */
+    int termId(Term term) {
+        if (term.dictionary == this) return term.id;
+        return base != null && term.id < baseSize ? base.termId(term) : NO_TERM;
+    }
+
+    /**
+     * 通过ID还原词
+     *
+     * @throws IndexOutOfBoundsException termId不存在
+     */
+    public String term(int termId) {
+        if (termId < 0) throw new IndexOutOfBoundsException("termId: " + termId);
+        if (termId < baseSize) return loadedTerms != null ? loadedTerms.getWord(termId) : base.term(termId);
+        String[] terms = addedTerms;
+        if (termId - baseSize >= terms.length) {
+            throw new IndexOutOfBoundsException("termId: " + termId + ", size: " + (baseSize + terms.length));
+        }
+        return terms[termId - baseSize];
+    }
+
+    /**
+     * 词典中词的数量, ID的范围为[0, size)
+     */
+    public int size() {
+        return baseSize + addedTerms.length;
+    }
+
+    /**
+     * 加载时的词, 增量词库为null
+     */
+    Dawg<Void> loadedTerms() {
+        return loadedTerms;
+    }
+
+    /**
+     * ID小于该值的词来自加载时的词或者基础词库, 之后的为动态添加的词
+     */
+    int baseSize() {
+        return baseSize;
+    }
+
+    /**
+     * 添加词, 已经存在则返回原先的ID
+     *
+     * @return 词ID
+     */
+    synchronized int addTerm(String term) {
+        int termId = termId(term);
+        if (termId != NO_TERM) return termId;
+        String[] terms = addedTerms;
+        termId = baseSize + terms.length;
+        addedTrie.put(term, termId);
+        terms = Arrays.copyOf(terms, terms.length + 1);
+        terms[terms.length - 1] = term;
+        addedTerms = terms;
+        return termId;
+    }
+
+    @Override
+    public String toString() {
+        return "TermDictionary{size=" + size() + ", base=" + baseSize + '}';
+    }
+}
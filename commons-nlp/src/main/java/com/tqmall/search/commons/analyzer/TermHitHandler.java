@@ -0,0 +1,23 @@
+package com.tqmall.search.commons.analyzer;
+
+/**
+ * Created by xing on 26/10/16.
+ * 带词ID的匹配结果回调, 词ID在词插入词库时存储在前缀树的value中, 匹配时直接带出, 不需要再查{@link TermDictionary}
+ *
+ * @author xing
+ * @see TermDictionary
+ * @see CjkLexicon#fullMatch(char[], int, int, TermHitHandler)
+ * @see com.tqmall.search.commons.nlp.Segment#match(char[], int, int, TermHitHandler)
+ */
+public interface TermHitHandler {
+
+    /**
+     * @param start  开始位置
+     * @param end    结束位置
+     * @param type   词的类型
+     * @param termId 词ID, 只有词库匹配的结果有ID, 其他结果为{@link TermDictionary#NO_TERM}, 比如ascii分词器的结果(即使与词库中的词相同),
+     *               数词, 合并的数量词, 未匹配的单字
+     * @return 是否继续匹配, false表示终止
+     */
+    boolean onHit(int start, int end, TokenType type, int termId);
+}
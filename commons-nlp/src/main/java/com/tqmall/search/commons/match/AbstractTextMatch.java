@@ -22,10 +22,42 @@ public abstract class AbstractTextMatch<V> {
      */
     public abstract List<Hit<V>> match(char[] text, int off, int len);
 
+    /**
+     * 匹配字符串, 每匹配到一个结果回调handler, 结果顺序同{@link #match(char[], int, int)}
+     * 默认实现通过{@link #match(char[], int, int)}的结果回调, 子类可以覆盖, 直接在匹配过程中回调, 不创建{@link Hit}对象
+     *
+     * @param text    需要匹配的文本
+     * @param off     开始下标
+     * @param len     char数组的长度
+     * @param handler 匹配结果回调
+     * @return 是否匹配完整个文本, false表示handler终止了匹配
+     */
+    public boolean match(char[] text, int off, int len, HitHandler<V> handler) {
+        List<Hit<V>> hits = match(text, off, len);
+        if (hits == null) return true;
+        for (Hit<V> h : hits) {
+            if (!handler.onHit(h.getStart(), h.getEnd(), h.getValue())) return false;
+        }
+        return true;
+    }
+
     public final List<Hit<V>> match(String text) {
         char[] textArray = NlpUtils.stringToCharArray(text);
         if (textArray == null) return null;
         return match(textArray, 0, textArray.length);
     }
 
+    /**
+     * 将回调的匹配结果添加到hits中, 用于通过{@link #match(char[], int, int, HitHandler)}实现list结果的匹配
+     */
+    public static <V> HitHandler<V> collectHandler(final List<Hit<V>> hits) {
+        return new HitHandler<V>() {
+            @Override
+            public boolean onHit(int start, int end, V value) {
+                hits.add(new Hit<>(start, end, value));
+                return true;
+            }
+        };
+    }
+
 }
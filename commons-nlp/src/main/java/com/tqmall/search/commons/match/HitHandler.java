@@ -0,0 +1,20 @@
+package com.tqmall.search.commons.match;
+
+/**
+ * Created by xing on 26/10/16.
+ * 匹配结果回调处理, 匹配过程中每匹配到一个结果回调一次, 不需要为每个结果创建{@link Hit}对象
+ * 位置同{@link Hit}, 为[start, end)
+ *
+ * @author xing
+ * @see AbstractTextMatch#match(char[], int, int, HitHandler)
+ */
+public interface HitHandler<V> {
+
+    /**
+     * @param start 匹配到的开始位置
+     * @param end   匹配结果的结束位置, 即最后一个字符的下一个位置
+     * @param value 匹配到的词对应的value
+     * @return 是否继续, false表示终止后续匹配
+     */
+    boolean onHit(int start, int end, V value);
+}
@@ -0,0 +1,172 @@
+package com.tqmall.search.commons.match;
+
+import com.tqmall.search.commons.lang.Supplier;
+import com.tqmall.search.commons.nlp.NlpUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Created by xing on 26/10/16.
+ * 最左匹配, 在全匹配(一般为Aho-Corasick自动机)的结果之上选出不重叠的词:
+ * 从左向右, 每次选开始位置最小的词, 开始位置相同的取最长(leftmost-longest)或者最短(leftmost-shortest)的, 然后从该词的结束位置继续
+ * <p/>
+ * 选词在全匹配的过程中完成: 全匹配的结果按照结束位置有序, 结束位置为end时, 之后的结果开始位置不会小于end - maxWordLength,
+ * 所以之前的开始位置都已经确定, 可以直接回调handler. 只需要缓存最近maxWordLength个开始位置的候选词, 与文本长度无关,
+ * 文本中的每个字符只经过自动机一次, 没有回溯, 复杂度为O(n + z), z为全匹配的结果数.
+ * 不同于{@link TextMatcher.MaxTextMatcher}, {@link TextMatcher.MinTextMatcher}匹配失败之后回到之前的位置重新匹配,
+ * 对于大量较长的部分匹配(型号, 重复字符等)同样的字符会被扫描多次
+ * <p/>
+ * Note: 最左最长是正向选词, 与逆向最大匹配{@link MatchBinaryReverseTrie#maxMatch(char[], int, int)}的切分结果不一样,
+ * 比如词库中有"研究", "研究生", "生命", "命"时, "研究生命"的最左最长为"研究生", "命", 逆向最大匹配为"研究", "生命",
+ * 所以不能直接替换maxMatch, 最左最短同理
+ *
+ * @author xing
+ * @see TextMatcher
+ */
+public class LeftmostTextMatch<V> extends AbstractTextMatch<V> {
+
+    private final AbstractTextMatch<V> fullMatch;
+
+    private final Supplier<Integer> maxWordLength;
+
+    private final boolean longest;
+
+    /**
+     * @param fullMatch     全匹配, 返回所有能够匹配到的结果, 结果需要按照结束位置有序, 比如{@link com.tqmall.search.commons.ac.AcTrie}
+     * @param maxWordLength 全匹配中最长的词的长度, 每次匹配时获取, 动态加词之后可以变大, 只能大于等于实际值, 匹配中如果出现更长的词抛出{@link IllegalStateException}
+     * @param longest       true: leftmost-longest, false: leftmost-shortest
+     */
+    public LeftmostTextMatch(AbstractTextMatch<V> fullMatch, Supplier<Integer> maxWordLength, boolean longest) {
+        Objects.requireNonNull(fullMatch);
+        Objects.requireNonNull(maxWordLength);
+        this.fullMatch = fullMatch;
+        this.maxWordLength = maxWordLength;
+        this.longest = longest;
+    }
+
+    public static <V> LeftmostTextMatch<V> longest(AbstractTextMatch<V> fullMatch, Supplier<Integer> maxWordLength) {
+        return new LeftmostTextMatch<>(fullMatch, maxWordLength, true);
+    }
+
+    public static <V> LeftmostTextMatch<V> shortest(AbstractTextMatch<V> fullMatch, Supplier<Integer> maxWordLength) {
+        return new LeftmostTextMatch<>(fullMatch, maxWordLength, false);
+    }
+
+    @Override
+    public List<Hit<V>> match(char[] text, int off, int len) {
+        NlpUtils.arrayIndexCheck(text, off, off + len);
+        if (len == 0) return null;
+        List<Hit<V>> hits = new ArrayList<>();
+        match(text, off, len, collectHandler(hits));
+        return hits;
+    }
+
+    /**
+     * @throws IllegalStateException 全匹配的结果没有按照结束位置排序, 或者词长超过maxWordLength
+     */
+    @Override
+    public boolean match(char[] text, int off, int len, HitHandler<V> handler) {
+        final int endPos = off + len;
+        NlpUtils.arrayIndexCheck(text, off, endPos);
+        if (len == 0) return true;
+        int maxLen = Math.min(maxWordLength.get(), len);
+        if (maxLen <= 0) return true;
+        Selector<V> selector = new Selector<>(off, endPos, maxLen, longest, handler);
+        return fullMatch.match(text, off, len, selector) && selector.select(endPos);
+    }
+
+    public boolean isLongest() {
+        return longest;
+    }
+
+    /**
+     * 在全匹配的回调中选词, 候选词按照开始位置存放在长度为maxWordLength的环形数组中
+     */
+    private static final class Selector<V> implements HitHandler<V> {
+
+        private final int endPos;
+
+        private final boolean longest;
+
+        private final HitHandler<V> handler;
+
+        /**
+         * 下标为开始位置 % 数组长度, 值为选中的结束位置, 结束位置总是大于0, 0表示该位置开始没有候选词
+         */
+        private final int[] ends;
+
+        private final Object[] values;
+
+        /**
+         * 下一个待确定的开始位置, 之前的开始位置都已经处理完
+         */
+        private int next;
+
+        /**
+         * 上一个结果的结束位置
+         */
+        private int lastEnd;
+
+        Selector(int off, int endPos, int maxLen, boolean longest, HitHandler<V> handler) {
+            this.endPos = endPos;
+            this.longest = longest;
+            this.handler = handler;
+            ends = new int[maxLen];
+            values = new Object[maxLen];
+            next = off;
+            lastEnd = off;
+        }
+
+        @Override
+        public boolean onHit(int start, int end, V value) {
+            if (end < lastEnd) {
+                throw new IllegalStateException("full match hits are not sorted by end, end: " + end + " < " + lastEnd);
+            }
+            if (end - start > ends.length || end > endPos) {
+                throw new IllegalStateException("hit [" + start + ", " + end + ") is longer than maxWordLength: " + ends.length);
+            }
+            if (end > lastEnd) {
+                //之后的结果开始位置不小于end - ends.length
+                if (!select(end - ends.length)) return false;
+                lastEnd = end;
+            }
+            if (start < next) return true;
+            int i = start % ends.length;
+            int preEnd = ends[i];
+            if (preEnd == 0 || (longest ? end > preEnd : end < preEnd)) {
+                ends[i] = end;
+                values[i] = value;
+            }
+            return true;
+        }
+
+        /**
+         * 输出开始位置小于limit的选中词
+         *
+         * @return handler是否终止
+         */
+        @SuppressWarnings("unchecked")
+        boolean select(int limit) {
+            while (next < limit) {
+                int i = next % ends.length;
+                int end = ends[i];
+                if (end == 0) {
+                    next++;
+                    continue;
+                }
+                V value = (V) values[i];
+                //该词覆盖的开始位置上的候选词都作废
+                for (int start = next; start < end; start++) {
+                    i = start % ends.length;
+                    ends[i] = 0;
+                    values[i] = null;
+                }
+                if (!handler.onHit(next, end, value)) return false;
+                next = end;
+            }
+            return true;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.tqmall.search.commons.match;
 import com.tqmall.search.commons.nlp.NlpUtils;
 import com.tqmall.search.commons.trie.BinaryTrie;
 import com.tqmall.search.commons.trie.Node;
+import com.tqmall.search.commons.trie.OverlayNode;
 import com.tqmall.search.commons.trie.TrieNodeFactory;
 import com.tqmall.search.commons.utils.CommonsUtils;
 
@@ -34,26 +35,51 @@ public class MatchBinaryReverseTrie<V> extends BinaryTrie<V> {
      */
     public MatchBinaryReverseTrie(TrieNodeFactory<V> nodeFactory) {
         super(nodeFactory);
-        minTextMatcher = TextMatcher.minMatcher(root, false);
-        maxTextMatcher = TextMatcher.maxMatcher(root, false);
+        minTextMatcher = TextMatcher.backwardMinMatcher(root);
+        maxTextMatcher = TextMatcher.backwardMaxMatcher(root);
     }
 
-    @Override
-    public Node<V> getNode(char[] key, int off, int len) {
-        char[] array = Arrays.copyOfRange(key, off, off + len);
-        return getNodeInner(array, 0, len);
+    /**
+     * 叠加在base之上的增量树, 该树本身只存储增量的词, {@link #put(String, Object)}, {@link #remove(String)}等都只作用于增量的词
+     * 最大, 最小匹配基于{@link OverlayNode}合并视图, 一次匹配同时使用两棵树, 两边都存在的词以增量树的value为准
+     * base的修改对匹配立即可见, base本身不会被修改, 可以被多个增量树共享
+     *
+     * @param nodeFactory 构造增量树的nodeFactory, 增量词一般不多, 使用{@link com.tqmall.search.commons.trie.RootNodeType#NORMAL}即可
+     * @param base        共享的基础树
+     * @see OverlayNode
+     */
+    public MatchBinaryReverseTrie(TrieNodeFactory<V> nodeFactory, MatchBinaryReverseTrie<V> base) {
+        super(nodeFactory);
+        Node<V> matchRoot = OverlayNode.of(root, base.root);
+        minTextMatcher = TextMatcher.backwardMinMatcher(matchRoot);
+        maxTextMatcher = TextMatcher.backwardMaxMatcher(matchRoot);
     }
 
+    /**
+     * 从key的最后一个字符开始向前查找, 不需要复制, 翻转key
+     */
     @Override
     protected Node<V> getNodeInner(char[] key, int off, int len) {
-        NlpUtils.reverseCharArray(key, off, len);
-        return super.getNodeInner(key, off, len);
+        Node<V> currentNode = root;
+        for (int i = off + len - 1; i >= off; i--) {
+            currentNode = currentNode.getChild(key[i]);
+            if (currentNode == null || currentNode.getStatus() == Node.Status.DELETE) return null;
+        }
+        return currentNode;
     }
 
+    /**
+     * 树中存储的是逆序的词
+     */
     @Override
-    protected boolean put(char[] key, V value) {
+    protected char[] trieKey(char[] key) {
         NlpUtils.reverseCharArray(key);
-        return super.put(key, value);
+        return key;
+    }
+
+    @Override
+    protected boolean reverseKey() {
+        return true;
     }
 
     public List<Hit<V>> maxMatch(String text) {
@@ -72,6 +98,24 @@ public class MatchBinaryReverseTrie<V> extends BinaryTrie<V> {
         return doMatch(text, off, len, false);
     }
 
+    /**
+     * 最大匹配, 匹配结果按照正向顺序回调handler, 不创建{@link Hit}对象
+     *
+     * @return 是否匹配完, false表示handler终止了匹配
+     */
+    public boolean maxMatch(char[] text, int off, int len, HitHandler<V> handler) {
+        return doMatch(text, off, len, true, handler);
+    }
+
+    /**
+     * 最小匹配, 匹配结果按照正向顺序回调handler, 不创建{@link Hit}对象
+     *
+     * @return 是否匹配完, false表示handler终止了匹配
+     */
+    public boolean minMatch(char[] text, int off, int len, HitHandler<V> handler) {
+        return doMatch(text, off, len, false, handler);
+    }
+
     @Override
     public List<Map.Entry<String, V>> prefixSearch(String word) {
         List<Map.Entry<String, V>> result = super.prefixSearch(word);
@@ -85,19 +129,68 @@ public class MatchBinaryReverseTrie<V> extends BinaryTrie<V> {
         return result;
     }
 
+    /**
+     * 匹配器从后向前回调, 插入到list的头部, 返回的list就是正向顺序的
+     */
     private List<Hit<V>> doMatch(char[] text, int off, int len, boolean maxMatch) {
-        char[] array = Arrays.copyOfRange(text, off, off + len);
-        NlpUtils.reverseCharArray(array);
-        List<Hit<V>> hits = maxMatch ? maxTextMatcher.match(array, 0, len) : minTextMatcher.match(array, 0, len);
-        if (!CommonsUtils.isEmpty(hits)) {
-            int offsetIndex = off + len;
-            for (Hit<V> h : hits) {
-                h.changePosition(offsetIndex - h.getEnd(), offsetIndex - h.getStart());
+        NlpUtils.arrayIndexCheck(text, off, off + len);
+        if (len == 0) return null;
+        final LinkedList<Hit<V>> hits = new LinkedList<>();
+        HitHandler<V> handler = new HitHandler<V>() {
+            @Override
+            public boolean onHit(int start, int end, V value) {
+                hits.addFirst(new Hit<>(start, end, value));
+                return true;
             }
-            Collections.reverse(hits);
-        }
+        };
+        if (maxMatch) maxTextMatcher.match(text, off, len, handler);
+        else minTextMatcher.match(text, off, len, handler);
         return hits;
     }
 
+    /**
+     * 匹配器的回调是从后向前的, 先记录到数组中, 匹配完之后再正向回调handler
+     */
+    private boolean doMatch(char[] text, int off, int len, boolean maxMatch, HitHandler<V> handler) {
+        ReverseHitBuffer<V> buffer = new ReverseHitBuffer<>();
+        if (maxMatch) maxTextMatcher.match(text, off, len, buffer);
+        else minTextMatcher.match(text, off, len, buffer);
+        return buffer.replay(handler);
+    }
+
+    /**
+     * 记录从后向前回调的匹配结果, 通过{@link #replay(HitHandler)}正向输出
+     */
+    private static class ReverseHitBuffer<V> implements HitHandler<V> {
+
+        /**
+         * 每个结果占2个位置: start, end
+         */
+        private int[] positions = new int[16];
+
+        private Object[] values = new Object[8];
+
+        private int size;
+
+        @Override
+        public boolean onHit(int start, int end, V value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size << 1);
+                positions = Arrays.copyOf(positions, size << 2);
+            }
+            positions[size << 1] = start;
+            positions[(size << 1) + 1] = end;
+            values[size++] = value;
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        boolean replay(HitHandler<V> handler) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (!handler.onHit(positions[i << 1], positions[(i << 1) + 1], (V) values[i])) return false;
+            }
+            return true;
+        }
+    }
 
 }
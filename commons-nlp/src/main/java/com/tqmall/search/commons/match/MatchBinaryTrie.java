@@ -48,4 +48,22 @@ public class MatchBinaryTrie<V> extends BinaryTrie<V> {
         return minTextMatcher.match(text, off, len);
     }
 
+    /**
+     * 最大匹配, 匹配结果直接回调handler, 不创建{@link Hit}对象
+     *
+     * @return 是否匹配完, false表示handler终止了匹配
+     */
+    public boolean maxMatch(char[] text, int off, int len, HitHandler<V> handler) {
+        return maxTextMatcher.match(text, off, len, handler);
+    }
+
+    /**
+     * 最小匹配, 匹配结果直接回调handler, 不创建{@link Hit}对象
+     *
+     * @return 是否匹配完, false表示handler终止了匹配
+     */
+    public boolean minMatch(char[] text, int off, int len, HitHandler<V> handler) {
+        return minTextMatcher.match(text, off, len, handler);
+    }
+
 }
@@ -20,19 +20,29 @@ public abstract class TextMatcher<V> extends AbstractTextMatch<V> {
     }
 
     /**
-     * 具体匹配实现
+     * 具体匹配实现, 匹配到的结果直接回调handler
      *
-     * @param text 待匹配的字符数组
-     * @return 匹配结果, 如果返回的list认为错误,整个文本处理结果返回null
+     * @param text    待匹配的字符数组
+     * @param handler 匹配结果回调
+     * @return 是否匹配完, false表示handler终止了匹配
      */
-    protected abstract List<Hit<V>> runMatch(final char[] text, final int startPos, final int endPos);
+    protected abstract boolean runMatch(final char[] text, final int startPos, final int endPos, final HitHandler<V> handler);
 
     @Override
     public final List<Hit<V>> match(char[] text, int off, int len) {
         final int endPos = off + len;
         NlpUtils.arrayIndexCheck(text, off, endPos);
         if (len == 0) return null;
-        return runMatch(text, off, endPos);
+        List<Hit<V>> hits = new LinkedList<>();
+        runMatch(text, off, endPos, AbstractTextMatch.collectHandler(hits));
+        return hits;
+    }
+
+    @Override
+    public final boolean match(char[] text, int off, int len, HitHandler<V> handler) {
+        final int endPos = off + len;
+        NlpUtils.arrayIndexCheck(text, off, endPos);
+        return len == 0 || runMatch(text, off, endPos, handler);
     }
 
     public static <V> TextMatcher<V> minMatcher(Node<V> root, boolean reverse) {
@@ -43,6 +53,24 @@ public abstract class TextMatcher<V> extends AbstractTextMatch<V> {
         return reverse ? new MaxReverseTextMatcher<>(root) : new MaxTextMatcher<>(root);
     }
 
+    /**
+     * 逆向前缀树的最小匹配, root为存储逆序词的前缀树
+     *
+     * @see MinBackwardTextMatcher
+     */
+    public static <V> TextMatcher<V> backwardMinMatcher(Node<V> root) {
+        return new MinBackwardTextMatcher<>(root);
+    }
+
+    /**
+     * 逆向前缀树的最大匹配, root为存储逆序词的前缀树
+     *
+     * @see MaxBackwardTextMatcher
+     */
+    public static <V> TextMatcher<V> backwardMaxMatcher(Node<V> root) {
+        return new MaxBackwardTextMatcher<>(root);
+    }
+
     /**
      * 正向最小匹配, 正向顺序匹配到一个词key1, 如果key1非单字符词, 则尝试从key1的第二个字符匹配, 看key1中是否包含更小的词
      * 这儿只考虑一个字符的偏差, 这个匹配准确率, 多个的不考虑了, 不然效率太低
@@ -56,23 +84,24 @@ public abstract class TextMatcher<V> extends AbstractTextMatch<V> {
         }
 
         @Override
-        protected List<Hit<V>> runMatch(final char[] text, final int startPos, final int endPos) {
-            List<Hit<V>> hits = new LinkedList<>();
+        protected boolean runMatch(final char[] text, final int startPos, final int endPos, final HitHandler<V> handler) {
             Node<V> currentNode = root;
             int matchStartPos = -1, i = startPos, lastHitMaxIndex = endPos;
-            Hit<V> lastHit = null;
+            //lastHitStart为-1表示没有待输出的结果
+            int lastHitStart = -1, lastHitEnd = -1;
+            V lastHitValue = null;
             while (i < endPos) {
                 //如果是在尝试, 并且尝试的位置超出最大位置, 就没有必要搞了~~~
                 Node<V> nextNode = i >= lastHitMaxIndex ? null : currentNode.getChild(text[i]);
                 if (nextNode == null || nextNode.getStatus() == Node.Status.DELETE) {
-                    if (lastHit != null) {
+                    if (lastHitStart != -1) {
                         if (i + 1 < lastHitMaxIndex && currentNode == root) {
                             i++;
                             continue;
                         }
-                        hits.add(lastHit);
+                        if (!handler.onHit(lastHitStart, lastHitEnd, lastHitValue)) return false;
                         i = lastHitMaxIndex;
-                        lastHit = null;
+                        lastHitStart = -1;
                         lastHitMaxIndex = endPos;
                     } else if (matchStartPos != -1) {
                         //没有对应匹配的词, 跳过, 从记录的matchStartPos开始下一个
@@ -86,13 +115,15 @@ public abstract class TextMatcher<V> extends AbstractTextMatch<V> {
                     if (matchStartPos == -1) matchStartPos = i;
                     i++;
                     if (nextNode.accept()) {
-                        lastHit = new Hit<>(matchStartPos, i, nextNode.getValue());
                         if (i - matchStartPos == 1) {
                             //如果是一个字符, 就没有必要去尝试了
-                            hits.add(lastHit);
-                            lastHit = null;
+                            if (!handler.onHit(matchStartPos, i, nextNode.getValue())) return false;
+                            lastHitStart = -1;
                             lastHitMaxIndex = endPos;
                         } else {
+                            lastHitStart = matchStartPos;
+                            lastHitEnd = i;
+                            lastHitValue = nextNode.getValue();
                             lastHitMaxIndex = i;
                             //尝试下一个字符开始是否还有更小的
                             i = matchStartPos + 1;
@@ -104,8 +135,7 @@ public abstract class TextMatcher<V> extends AbstractTextMatch<V> {
                     }
                 }
             }
-            if (lastHit != null) hits.add(lastHit);
-            return hits;
+            return lastHitStart == -1 || handler.onHit(lastHitStart, lastHitEnd, lastHitValue);
         }
     }
 
@@ -119,8 +149,7 @@ public abstract class TextMatcher<V> extends AbstractTextMatch<V> {
         }
 
         @Override
-        protected List<Hit<V>> runMatch(final char[] text, final int startPos, final int endPos) {
-            List<Hit<V>> hits = new LinkedList<>();
+        protected boolean runMatch(final char[] text, final int startPos, final int endPos, final HitHandler<V> handler) {
             Node<V> currentNode = root;
             int i = endPos - 1, matchStartPos = endPos, lastPos = endPos;
             while (i >= startPos) {
@@ -139,7 +168,7 @@ public abstract class TextMatcher<V> extends AbstractTextMatch<V> {
                     i++;
                     if (nextNode.accept()) {
                         //匹配到一个词了~~~
-                        hits.add(new Hit<>(matchStartPos, i, nextNode.getValue()));
+                        if (!handler.onHit(matchStartPos, i, nextNode.getValue())) return false;
                         i = matchStartPos - 1;
                         lastPos = matchStartPos;
                         currentNode = root;
@@ -148,7 +177,7 @@ public abstract class TextMatcher<V> extends AbstractTextMatch<V> {
                     }
                 }
             }
-            return hits;
+            return true;
         }
     }
 
@@ -163,8 +192,7 @@ public abstract class TextMatcher<V> extends AbstractTextMatch<V> {
         }
 
         @Override
-        protected List<Hit<V>> runMatch(final char[] text, final int startPos, final int endPos) {
-            List<Hit<V>> hits = new LinkedList<>();
+        protected boolean runMatch(final char[] text, final int startPos, final int endPos, final HitHandler<V> handler) {
             Node<V> currentNode = root;
             int matchStartPos = -1, matchEndPos = -1, i = startPos;
             V lastMatchValue = null;
@@ -173,7 +201,7 @@ public abstract class TextMatcher<V> extends AbstractTextMatch<V> {
                 if (nextNode == null || nextNode.getStatus() == Node.Status.DELETE) {
                     if (matchEndPos != -1) {
                         //匹配到一个最大词~~~
-                        hits.add(new Hit<>(matchStartPos, matchEndPos, lastMatchValue));
+                        if (!handler.onHit(matchStartPos, matchEndPos, lastMatchValue)) return false;
                         i = matchEndPos;
                         matchEndPos = -1;
                     } else if (root == currentNode) {
@@ -192,11 +220,8 @@ public abstract class TextMatcher<V> extends AbstractTextMatch<V> {
                     currentNode = nextNode;
                 }
             }
-            if (matchEndPos != -1) {
-                //捡个漏
-                hits.add(new Hit<>(matchStartPos, matchEndPos, lastMatchValue));
-            }
-            return hits;
+            //捡个漏
+            return matchEndPos == -1 || handler.onHit(matchStartPos, matchEndPos, lastMatchValue);
         }
     }
 
@@ -232,7 +257,7 @@ public abstract class TextMatcher<V> extends AbstractTextMatch<V> {
         }
 
         @Override
-        protected List<Hit<V>> runMatch(final char[] text, final int startPos, final int endPos) {
+        protected boolean runMatch(final char[] text, final int startPos, final int endPos, final HitHandler<V> handler) {
             Node<V> currentNode = root;
             int i = endPos - 1, hitStartPos = endPos, hitEndPos = endPos;
             boolean lastAccept = false;
@@ -268,9 +293,122 @@ public abstract class TextMatcher<V> extends AbstractTextMatch<V> {
             if (lastAccept) {
                 appendHit(new Hit<>(hitStartPos, hitEndPos, hitValue), hits);
             }
-            return hits;
+            //后面匹配到的词可能会覆盖前面的结果, 所以只能匹配完之后再回调
+            for (Hit<V> h : hits) {
+                if (!handler.onHit(h.getStart(), h.getEnd(), h.getValue())) return false;
+            }
+            return true;
+        }
+
+    }
+
+    /**
+     * 逆向前缀树的最小匹配, 树中存储的是逆序的词, 从文本末尾向前扫描, 直接在原文本上匹配, 不需要复制, 翻转文本
+     * 匹配结果同将文本翻转之后通过{@link MinTextMatcher}匹配, 再转换回原文本位置, 只是回调的顺序为从后向前
+     * 下面的下标i都是从文本末尾开始计数的, 对应原文本中的字符text[endPos - 1 - i]
+     */
+    public static class MinBackwardTextMatcher<V> extends TextMatcher<V> {
+
+        public MinBackwardTextMatcher(Node<V> root) {
+            super(root);
+        }
+
+        @Override
+        protected boolean runMatch(final char[] text, final int startPos, final int endPos, final HitHandler<V> handler) {
+            final int len = endPos - startPos, last = endPos - 1;
+            Node<V> currentNode = root;
+            int matchStartPos = -1, i = 0, lastHitMaxIndex = len;
+            //lastHitStart为-1表示没有待输出的结果
+            int lastHitStart = -1, lastHitEnd = -1;
+            V lastHitValue = null;
+            while (i < len) {
+                //如果是在尝试, 并且尝试的位置超出最大位置, 就没有必要搞了~~~
+                Node<V> nextNode = i >= lastHitMaxIndex ? null : currentNode.getChild(text[last - i]);
+                if (nextNode == null || nextNode.getStatus() == Node.Status.DELETE) {
+                    if (lastHitStart != -1) {
+                        if (i + 1 < lastHitMaxIndex && currentNode == root) {
+                            i++;
+                            continue;
+                        }
+                        if (!handler.onHit(endPos - lastHitEnd, endPos - lastHitStart, lastHitValue)) return false;
+                        i = lastHitMaxIndex;
+                        lastHitStart = -1;
+                        lastHitMaxIndex = len;
+                    } else if (matchStartPos != -1) {
+                        i = matchStartPos + 1;
+                    } else {
+                        i++;
+                    }
+                    matchStartPos = -1;
+                    currentNode = root;
+                } else {
+                    if (matchStartPos == -1) matchStartPos = i;
+                    i++;
+                    if (nextNode.accept()) {
+                        if (i - matchStartPos == 1) {
+                            if (!handler.onHit(endPos - i, endPos - matchStartPos, nextNode.getValue())) return false;
+                            lastHitStart = -1;
+                            lastHitMaxIndex = len;
+                        } else {
+                            lastHitStart = matchStartPos;
+                            lastHitEnd = i;
+                            lastHitValue = nextNode.getValue();
+                            lastHitMaxIndex = i;
+                            i = matchStartPos + 1;
+                        }
+                        currentNode = root;
+                        matchStartPos = -1;
+                    } else {
+                        currentNode = nextNode;
+                    }
+                }
+            }
+            return lastHitStart == -1 || handler.onHit(endPos - lastHitEnd, endPos - lastHitStart, lastHitValue);
         }
+    }
+
+    /**
+     * 逆向前缀树的最大匹配, 树中存储的是逆序的词, 从文本末尾向前扫描, 直接在原文本上匹配, 不需要复制, 翻转文本
+     * 匹配结果同将文本翻转之后通过{@link MaxTextMatcher}匹配, 再转换回原文本位置, 只是回调的顺序为从后向前
+     * 下面的下标i都是从文本末尾开始计数的, 对应原文本中的字符text[endPos - 1 - i]
+     */
+    public static class MaxBackwardTextMatcher<V> extends TextMatcher<V> {
 
+        public MaxBackwardTextMatcher(Node<V> root) {
+            super(root);
+        }
+
+        @Override
+        protected boolean runMatch(final char[] text, final int startPos, final int endPos, final HitHandler<V> handler) {
+            final int len = endPos - startPos, last = endPos - 1;
+            Node<V> currentNode = root;
+            int matchStartPos = -1, matchEndPos = -1, i = 0;
+            V lastMatchValue = null;
+            while (i < len) {
+                Node<V> nextNode = currentNode.getChild(text[last - i]);
+                if (nextNode == null || nextNode.getStatus() == Node.Status.DELETE) {
+                    if (matchEndPos != -1) {
+                        if (!handler.onHit(endPos - matchEndPos, endPos - matchStartPos, lastMatchValue)) return false;
+                        i = matchEndPos;
+                        matchEndPos = -1;
+                    } else if (root == currentNode) {
+                        i++;
+                    } else {
+                        currentNode = root;
+                    }
+                    matchStartPos = -1;
+                } else {
+                    if (matchStartPos == -1) matchStartPos = i;
+                    i++;
+                    if (nextNode.accept()) {
+                        matchEndPos = i;
+                        lastMatchValue = nextNode.getValue();
+                    }
+                    currentNode = nextNode;
+                }
+            }
+            return matchEndPos == -1 || handler.onHit(endPos - matchEndPos, endPos - matchStartPos, lastMatchValue);
+        }
     }
 
 }
@@ -0,0 +1,111 @@
+package com.tqmall.search.commons.nlp;
+
+/**
+ * Created by xing on 26/10/16.
+ * 字符表, 预先计算所有char的类型标记以及文本过滤的转换结果, 每个字符只需要一次数组读取, 不需要多次区间判断以及集合查找
+ * 类型标记通过{@link #is(char, int)}判断, 可以同时判断多个标记, 比如: {@code is(c, CJK | CN_NUM)}
+ * 转换表通过{@link #normalize(char)}获取, 依赖{@link TraditionToSimple}词库, 第一次使用时才构造
+ * <p/>
+ * 量词可以通过{@link com.tqmall.search.commons.analyzer.CjkLexicon#addQuantifier(String)}动态修改, 并且每个词库不同, 不在该表中
+ *
+ * @author xing
+ * @see SegmentFilters#charConvert(char)
+ */
+public final class CharTable {
+
+    /**
+     * cjk字符, 同{@link NlpUtils#isCjkChar(char)}
+     */
+    public static final int CJK = 1;
+
+    /**
+     * 小写英文字母
+     */
+    public static final int EN = 1 << 1;
+
+    /**
+     * 阿拉伯数字
+     */
+    public static final int NUM = 1 << 2;
+
+    /**
+     * 中文数字字符, 见{@link #CN_NUM_CHARS}, 其中'○', '〇'不是cjk字符
+     */
+    public static final int CN_NUM = 1 << 3;
+
+    /**
+     * 中文数字字符
+     */
+    public static final String CN_NUM_CHARS = "零○〇一二两三四五六七八九十壹贰叁肆伍陆柒捌玖拾百千万亿拾佰仟萬億兆卅廿";
+
+    private static final byte[] FLAGS = new byte[Character.MAX_VALUE + 1];
+
+    static {
+        for (char c = NlpConst.CJK_UNIFIED_IDEOGRAPHS_FIRST; c <= NlpConst.CJK_UNIFIED_IDEOGRAPHS_LAST; c++) {
+            FLAGS[c] |= CJK;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            FLAGS[c] |= EN;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            FLAGS[c] |= NUM;
+        }
+        for (int i = 0; i < CN_NUM_CHARS.length(); i++) {
+            FLAGS[CN_NUM_CHARS.charAt(i)] |= CN_NUM;
+        }
+    }
+
+    private CharTable() {
+    }
+
+    /**
+     * 字符是否包含mask中的所有标记
+     */
+    public static boolean is(char c, int mask) {
+        return (FLAGS[c] & mask) == mask;
+    }
+
+    /**
+     * 字符的所有类型标记
+     */
+    public static int flags(char c) {
+        return FLAGS[c];
+    }
+
+    /**
+     * 文本过滤的字符转换: 英文字母大写转小写, 全角转半角, 中文繁体转简体, 其他字符不变
+     * 只转换一次, 比如全角的'Ａ'转换为'A', 不再转小写
+     */
+    public static char normalize(char c) {
+        return NormalizeHolder.MAP[c];
+    }
+
+    /**
+     * 转换表依赖繁体转简体词库, 通过Holder延迟到第一次使用时构造
+     */
+    private static final class NormalizeHolder {
+
+        private static final char[] MAP = new char[Character.MAX_VALUE + 1];
+
+        static {
+            for (int i = 0; i < MAP.length; i++) {
+                MAP[i] = (char) i;
+            }
+            for (char c = 'A'; c <= 'Z'; c++) {
+                //大写转小写
+                MAP[c] = (char) (c + 32);
+            }
+            //全角空格处理
+            MAP['\u3000'] = '\u0020';
+            for (char c = '\uFF01'; c < '\uFF5F'; c++) {
+                //全角字符转半角
+                MAP[c] = (char) (c - 65248);
+            }
+            TraditionToSimple traditionToSimple = TraditionToSimple.instance();
+            for (char c = NlpConst.CJK_UNIFIED_IDEOGRAPHS_FIRST; c <= NlpConst.CJK_UNIFIED_IDEOGRAPHS_LAST; c++) {
+                //中文繁体转简体
+                MAP[c] = traditionToSimple.convert(c);
+            }
+        }
+    }
+}
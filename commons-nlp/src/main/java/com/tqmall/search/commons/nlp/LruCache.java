@@ -0,0 +1,181 @@
+package com.tqmall.search.commons.nlp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Created by xing on 26/10/16.
+ * 有容量上限的LRU缓存, 线程安全, 用于分词, 拼音转换等结果的缓存
+ * key按照hash分到多个段中, 每个段是一个按访问顺序排序的{@link LinkedHashMap}, 单独加锁, 超过段的容量删除最久没有访问的
+ * 每个缓存值带有数据源的版本, 读取时版本不同视为失效, 数据源修改之后缓存自动失效, 不需要主动清除
+ * 缓存的值需要是不可变的
+ *
+ * @author xing
+ * @see SegmentCache
+ * @see PinyinCache
+ */
+public class LruCache<K, V> {
+
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    private final Stripe<K, V>[] stripes;
+
+    private final int mask;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    public LruCache(int maxSize) {
+        this(maxSize, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * @param maxSize          最大缓存数, 平均分到每个段中
+     * @param concurrencyLevel 段数, 向上取2的幂
+     */
+    public LruCache(int maxSize, int concurrencyLevel) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize: " + maxSize + " should be positive");
+        }
+        int stripeCount = 1;
+        while (stripeCount < concurrencyLevel && stripeCount < maxSize) stripeCount <<= 1;
+        //泛型数组不能直接创建, 数组中只会存放Stripe<K, V>
+        @SuppressWarnings("unchecked")
+        Stripe<K, V>[] stripeArray = (Stripe<K, V>[]) new Stripe<?, ?>[stripeCount];
+        int stripeSize = (maxSize + stripeCount - 1) / stripeCount;
+        for (int i = 0; i < stripeCount; i++) {
+            stripeArray[i] = new Stripe<>(stripeSize);
+        }
+        stripes = stripeArray;
+        mask = stripeCount - 1;
+    }
+
+    private Stripe<K, V> stripe(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & mask];
+    }
+
+    /**
+     * 获取缓存, 缓存的版本与version不同则删除该缓存, 返回null
+     *
+     * @param version 当前数据源的版本
+     * @return 没有缓存或者缓存已经失效返回null
+     */
+    public V get(K key, long version) {
+        Objects.requireNonNull(key);
+        Stripe<K, V> stripe = stripe(key);
+        Versioned<V> entry;
+        synchronized (stripe) {
+            entry = stripe.get(key);
+            if (entry != null && entry.version != version) {
+                stripe.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * 添加缓存
+     *
+     * @param version 计算value之前读取的数据源版本, 计算过程中数据源修改了, 该缓存在下次读取时失效
+     */
+    public void put(K key, long version, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        Stripe<K, V> stripe = stripe(key);
+        synchronized (stripe) {
+            stripe.put(key, new Versioned<>(version, value));
+        }
+    }
+
+    public boolean remove(K key) {
+        Stripe<K, V> stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.remove(key) != null;
+        }
+    }
+
+    /**
+     * 清除所有缓存, 统计数据不清除
+     */
+    public void clear() {
+        for (Stripe<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * 当前缓存数, 包括还没有删除的失效缓存
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * 命中率, 没有读取过返回0
+     */
+    public double getHitRate() {
+        long hit = hitCount.get(), total = hit + missCount.get();
+        return total == 0 ? 0.0 : (double) hit / total;
+    }
+
+    @Override
+    public String toString() {
+        return "LruCache{size=" + size() + ", hitCount=" + hitCount + ", missCount=" + missCount + '}';
+    }
+
+    private static final class Versioned<V> {
+
+        private final long version;
+
+        private final V value;
+
+        Versioned(long version, V value) {
+            this.version = version;
+            this.value = value;
+        }
+    }
+
+    private static final class Stripe<K, V> extends LinkedHashMap<K, Versioned<V>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        Stripe(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Versioned<V>> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
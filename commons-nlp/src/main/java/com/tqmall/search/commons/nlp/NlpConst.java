@@ -22,6 +22,10 @@ public interface NlpConst {
      * 繁体转简体词库文件名
      */
     String F2J_FILE_NAME = "/tradition-simple.txt";
+    /**
+     * 繁体转简体短语表文件名
+     */
+    String F2J_PHRASE_FILE_NAME = "/tradition-simple-phrase.txt";
     /**
      * 简体拼音词库文件名
      */
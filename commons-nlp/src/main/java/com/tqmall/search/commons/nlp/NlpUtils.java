@@ -2,19 +2,33 @@ package com.tqmall.search.commons.nlp;
 
 import com.tqmall.search.commons.exception.LoadLexiconException;
 import com.tqmall.search.commons.lang.Function;
+import com.tqmall.search.commons.trie.DoubleArrayTrie;
+import com.tqmall.search.commons.trie.Node;
+import com.tqmall.search.commons.trie.NodeChildHandle;
+import com.tqmall.search.commons.trie.Trie;
 import com.tqmall.search.commons.utils.SearchStringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 /**
  * Created by xing on 16/1/26.
@@ -94,6 +108,65 @@ public final class NlpUtils {
         }
     }
 
+    /**
+     * 将Trie树中的所有词添加到dataMap中, {@link DoubleArrayTrie}直接通过词序号遍历, 其他的Trie树遍历节点
+     * 注意: 对于逆向Trie树, 得到的也是逆序的词
+     */
+    public static <V> void collectWords(Trie<V> trie, Map<String, ? super V> dataMap) {
+        if (trie instanceof DoubleArrayTrie) {
+            DoubleArrayTrie<V> dat = (DoubleArrayTrie<V>) trie;
+            for (int i = 0; i < dat.size(); i++) {
+                dataMap.put(dat.getWord(i), dat.getValue(i));
+            }
+        } else {
+            collectWords(trie.getRoot(), new StringBuilder(), dataMap);
+        }
+    }
+
+    private static <V> void collectWords(Node<V> node, final StringBuilder key, final Map<String, ? super V> dataMap) {
+        node.childHandle(new NodeChildHandle<V>() {
+            @Override
+            public boolean onHandle(Node<V> child) {
+                key.append(child.getChar());
+                if (child.accept()) {
+                    dataMap.put(key.toString(), child.getValue());
+                }
+                collectWords(child, key, dataMap);
+                key.deleteCharAt(key.length() - 1);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * 写入int数组, 先写长度, 再写内容, 通过{@link #readIntBuffer(ByteBuffer)}读取
+     */
+    public static void writeIntBuffer(DataOutput out, IntBuffer array) throws IOException {
+        int length = array.limit();
+        out.writeInt(length);
+        for (int i = 0; i < length; i++) {
+            out.writeInt(array.get(i));
+        }
+    }
+
+    /**
+     * 读取{@link #writeIntBuffer(DataOutput, IntBuffer)}写入的int数组, 读取完成之后buffer的position移到数组之后
+     * 返回的是buffer上的只读视图, 不复制数据, buffer为{@link java.nio.MappedByteBuffer}时直接读取映射的文件, 不占用堆内存
+     *
+     * @throws IllegalArgumentException 数组长度为负数或者超出buffer剩余的长度
+     */
+    public static IntBuffer readIntBuffer(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > (buffer.remaining() >> 2)) {
+            throw new IllegalArgumentException("int array length: " + length + " is invalid, remaining bytes: "
+                    + buffer.remaining());
+        }
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length << 2);
+        buffer.position(buffer.position() + (length << 2));
+        return slice.asIntBuffer().asReadOnlyBuffer();
+    }
+
     /**
      * 获取指定class的{@link Class#getResource(String)} 对应文件的{@link Path}对象
      */
@@ -138,6 +211,72 @@ public final class NlpUtils {
         return lineCount;
     }
 
+    /**
+     * 通过executor并发读取多个词库文件, 读取完成之后按照lexiconPaths的顺序依次回调lineHandle, 所以lineHandle不需要线程安全,
+     * 处理结果与{@link #loadLexicon(Function, Collection)}一致
+     *
+     * @param lineHandle 每行的处理函数, 入参String: 一行内容, 出参Boolean: true 继续, false 停止后续加载
+     * @param executor   读取文件的executor, 为null则在当前线程顺序读取
+     * @return 加载的行数统计
+     * @throws LoadLexiconException 加载词库, 读取文件时发生{@link IOException}, 则抛出{@link LoadLexiconException}, 其为{@link RuntimeException}, 包装了{@link IOException}
+     */
+    public static long loadLexicon(Function<String, Boolean> lineHandle, Collection<Path> lexiconPaths, Executor executor) {
+        if (executor == null || lexiconPaths.size() < 2) return loadLexicon(lineHandle, lexiconPaths);
+        List<Callable<List<String>>> tasks = new ArrayList<>(lexiconPaths.size());
+        for (final Path path : lexiconPaths) {
+            tasks.add(new Callable<List<String>>() {
+                @Override
+                public List<String> call() {
+                    final List<String> lines = new ArrayList<>();
+                    loadLexicon(new Function<String, Boolean>() {
+                        @Override
+                        public Boolean apply(String line) {
+                            return lines.add(line);
+                        }
+                    }, path);
+                    return lines;
+                }
+            });
+        }
+        long lineCount = 0L;
+        for (List<String> lines : invokeAll(tasks, executor)) {
+            for (String line : lines) {
+                lineCount++;
+                //同顺序加载, 只停止当前文件的后续加载
+                if (!lineHandle.apply(line)) break;
+            }
+        }
+        return lineCount;
+    }
+
+    /**
+     * 通过executor执行所有任务, 等待所有任务完成, 按照任务的顺序返回结果
+     * 任务中抛出的{@link RuntimeException}直接抛出, 其他异常包装成{@link IllegalStateException}
+     *
+     * @throws IllegalStateException 等待过程中线程被中断
+     */
+    public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks, Executor executor) {
+        List<FutureTask<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            FutureTask<T> future = new FutureTask<>(task);
+            futures.add(future);
+            executor.execute(future);
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (FutureTask<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("waiting tasks finish is interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("execute task have exception", e.getCause());
+        }
+        return results;
+    }
+
     /**
      * @param lineHandle 每行的处理函数, 入参String: 一行内容, 出参Boolean: true 继续, false 停止后续加载
      * @return 加载的行数统计
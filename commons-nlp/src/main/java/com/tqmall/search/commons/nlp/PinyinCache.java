@@ -0,0 +1,109 @@
+package com.tqmall.search.commons.nlp;
+
+import com.tqmall.search.commons.utils.CommonsUtils;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Created by xing on 26/10/16.
+ * 拼音转换结果缓存, 适用于查询词等重复较多的短文本
+ * 缓存的key为文本以及appendFlag, {@link #convert(String, int)}和{@link #firstLetterConvert(String, int)}共享同一个缓存
+ * 拼音词库修改之后, 通过{@link PinyinConvert#getVersion()}判断, 原先的缓存自动失效
+ *
+ * @author xing
+ * @see LruCache
+ */
+public class PinyinCache {
+
+    /**
+     * 转换结果为null的缓存值
+     */
+    private static final Map.Entry<String, String> NULL_RESULT = CommonsUtils.newImmutableMapEntry(null, null);
+
+    private final PinyinConvert pinyinConvert;
+
+    private final LruCache<Key, Map.Entry<String, String>> cache;
+
+    /**
+     * 使用{@link PinyinConvert#instance()}
+     */
+    public PinyinCache(int maxSize) {
+        this(PinyinConvert.instance(), maxSize);
+    }
+
+    public PinyinCache(PinyinConvert pinyinConvert, int maxSize) {
+        Objects.requireNonNull(pinyinConvert);
+        this.pinyinConvert = pinyinConvert;
+        this.cache = new LruCache<>(maxSize);
+    }
+
+    /**
+     * 结果同{@link PinyinConvert#convert(String, int)}, 优先读取缓存
+     */
+    public String convert(String text, int appendFlag) {
+        Map.Entry<String, String> result = firstLetterConvert(text, appendFlag);
+        return result == null ? null : result.getKey();
+    }
+
+    /**
+     * 结果同{@link PinyinConvert#firstLetterConvert(String, int)}, 优先读取缓存
+     */
+    public Map.Entry<String, String> firstLetterConvert(String text, int appendFlag) {
+        if (text == null) return null;
+        Key key = new Key(text, appendFlag);
+        long version = pinyinConvert.getVersion();
+        Map.Entry<String, String> result = cache.get(key, version);
+        if (result == null) {
+            result = pinyinConvert.firstLetterConvert(text, appendFlag);
+            if (result == null) result = NULL_RESULT;
+            cache.put(key, version, result);
+        }
+        return result == NULL_RESULT ? null : result;
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    public double getHitRate() {
+        return cache.getHitRate();
+    }
+
+    private static final class Key {
+
+        private final String text;
+
+        private final int appendFlag;
+
+        Key(String text, int appendFlag) {
+            this.text = text;
+            this.appendFlag = appendFlag;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return appendFlag == key.appendFlag && text.equals(key.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * text.hashCode() + appendFlag;
+        }
+    }
+}
@@ -13,8 +13,11 @@ import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by xing on 16/1/24.
@@ -40,9 +43,30 @@ public final class PinyinConvert {
 
     private final MatchBinaryReverseTrie<String[]> matchBinaryReverseTrie;
 
+    /**
+     * 修改拼音词库时加1
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * 单独创建一个对象, 通过executor并发构造拼音词库的前缀树, 加快加载
+     * 一般直接使用单例{@link #instance()}即可
+     *
+     * @param executor 构造前缀树的executor, 为null则在当前线程构造
+     * @see MatchBinaryReverseTrie#putAll(Map, Executor)
+     */
+    public static PinyinConvert create(Executor executor) {
+        return new PinyinConvert(executor);
+    }
+
     PinyinConvert() {
+        this(null);
+    }
+
+    PinyinConvert(Executor executor) {
         matchBinaryReverseTrie = new MatchBinaryReverseTrie<>(RootNodeType.CJK.<String[]>defaultTrie());
         log.info("start loading pinyin lexicon file: " + NlpConst.PINYIN_FILE_NAME);
+        final Map<String, String[]> words = new HashMap<>();
         NlpUtils.loadClassPathLexicon(PinyinConvert.class, NlpConst.PINYIN_FILE_NAME, new Function<String, Boolean>() {
             @Override
             public Boolean apply(String line) {
@@ -54,10 +78,11 @@ public final class PinyinConvert {
                 } else {
                     value = new String[]{array[1]};
                 }
-                matchBinaryReverseTrie.put(array[0], value);
+                words.put(array[0], value);
                 return true;
             }
         });
+        matchBinaryReverseTrie.putAll(words, executor);
         log.info("load pinyin lexicon file: " + NlpConst.PINYIN_FILE_NAME + " finish");
     }
 
@@ -184,7 +209,9 @@ public final class PinyinConvert {
         if (word == null || word.length() != pyList.length) {
             throw new IllegalArgumentException("cjk word: " + word + ", py: " + py + " can not match");
         }
-        return matchBinaryReverseTrie.put(word, pyList);
+        boolean added = matchBinaryReverseTrie.put(word, pyList);
+        version.incrementAndGet();
+        return added;
     }
 
     /**
@@ -197,7 +224,18 @@ public final class PinyinConvert {
         if (word == null) {
             throw new IllegalArgumentException("word is empty");
         }
-        return matchBinaryReverseTrie.remove(word);
+        boolean removed = matchBinaryReverseTrie.remove(word);
+        if (removed) version.incrementAndGet();
+        return removed;
+    }
+
+    /**
+     * 拼音词库版本, 每次修改词库加1, 版本不变则转换结果不变
+     *
+     * @see PinyinCache
+     */
+    public long getVersion() {
+        return version.get();
     }
 
     public static class CjkChar implements Serializable {
@@ -4,19 +4,51 @@ import com.tqmall.search.commons.analyzer.*;
 import com.tqmall.search.commons.lang.Supplier;
 import com.tqmall.search.commons.match.AbstractTextMatch;
 import com.tqmall.search.commons.match.Hit;
+import com.tqmall.search.commons.match.HitHandler;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Created by xing on 16/3/13.
  * 分词器, 也是一个{@link AbstractTextMatch}
+ * ascii分词器为{@link AsciiAnalyzer}或者{@link MaxAsciiAnalyzer}, 分词过滤器为空或者{@link SegmentFilters}提供的过滤器时,
+ * 通过单次遍历完成分词: 文本过滤, 词库匹配之后, 从左到右遍历一次, ascii分词, cjk数词, 单字, 数量词合并以及停止词过滤
+ * 在遍历过程中依次完成, 结果按位置顺序直接输出, 不需要排序以及list合并, 见{@link #match(char[], int, int, HitHandler)}
+ * 其他情况通过{@link #pipelineMatch(char[], int, int)}依次执行各个分词器, 再合并结果, 两者的结果完全一致
  *
  * @author xing
  */
 public final class Segment extends AbstractTextMatch<TokenType> {
 
+    /**
+     * 批量分词时, 单个任务处理的最大文本数
+     */
+    private static final int BATCH_THRESHOLD = 32;
+
+    /**
+     * 长文本分词时, 每个分段的最小长度
+     */
+    private static final int LONG_TEXT_CHUNK_SIZE = 8192;
+
+    /**
+     * 批量分词时各个线程复用的文本数组
+     */
+    private static final ThreadLocal<char[]> TEXT_BUFFER = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[256];
+        }
+    };
+
     private final String name;
 
     private final SegmentFilter segmentFilter;
@@ -30,6 +62,11 @@ public final class Segment extends AbstractTextMatch<TokenType> {
      */
     private final NumQuantifierMerge numQuantifierMerge;
 
+    /**
+     * 是否可以单次遍历分词
+     */
+    private final boolean singlePass;
+
     /**
      * @param segmentFilter      分词过滤器
      * @param asciiAnalyzer      英文, 数字分词器
@@ -43,41 +80,554 @@ public final class Segment extends AbstractTextMatch<TokenType> {
         this.asciiAnalyzer = asciiAnalyzer;
         this.cjkAnalyzer = cjkAnalyzer;
         this.numQuantifierMerge = numQuantifierMerge;
+        this.singlePass = (segmentFilter == null || segmentFilter == SegmentFilters.textFilter()
+                || segmentFilter == SegmentFilters.hitsFilter())
+                && (asciiAnalyzer.getClass() == AsciiAnalyzer.class || asciiAnalyzer.getClass() == MaxAsciiAnalyzer.class);
     }
 
     @Override
     public List<Hit<TokenType>> match(final char[] text, final int off, final int len) {
+        textFilter(text, off, len);
+        return len == 0 ? null : matchFiltered(text, off, len);
+    }
+
+    /**
+     * 文本过滤, 没有过滤器则只做下标检查
+     */
+    void textFilter(char[] text, int off, int len) {
         if (segmentFilter != null) segmentFilter.textFilter(text, off, len);
-        List<Hit<TokenType>> asciiHits = asciiAnalyzer.match(text, off, len);
-        List<Hit<TokenType>> cjkHits = cjkAnalyzer.match(text, off, len);
-        List<Hit<TokenType>> hits;
-        if (asciiHits == null && cjkHits == null) return null;
-        else if (cjkHits == null) {
-            hits = asciiHits;
+        else NlpUtils.arrayIndexCheck(text, off, off + len);
+    }
+
+    /**
+     * 对已经过滤的文本分词, len需要大于0
+     */
+    List<Hit<TokenType>> matchFiltered(char[] text, int off, int len) {
+        if (!singlePass) return pipelineHits(text, off, len);
+        List<Hit<TokenType>> hits = new ArrayList<>();
+        singlePassMatch(text, off, len, collectHandler(hits));
+        return hits;
+    }
+
+    /**
+     * 单次遍历分词, 分词结果直接回调, 只在数量词合并时缓存一个数词
+     */
+    @Override
+    public boolean match(char[] text, int off, int len, HitHandler<TokenType> handler) {
+        if (!singlePass) return super.match(text, off, len, handler);
+        textFilter(text, off, len);
+        return len == 0 || singlePassMatch(text, off, len, handler);
+    }
+
+    /**
+     * 分词, 结果带词ID, 词ID为词插入词库时存储在前缀树中的ID, 匹配时直接带出, 不需要查找, 也不需要创建String
+     * 只有词库匹配的结果有ID, ascii分词器的结果(即使与词库中的词相同), 数词, 合并的数量词, 未匹配的单字等为{@link TermDictionary#NO_TERM}
+     * 不能单次遍历分词的话, 通过{@link #pipelineMatch(char[], int, int, TermHitHandler)}分词, 两种方式的词ID完全一致
+     *
+     * @return 是否匹配完, false表示handler终止了匹配
+     * @see #termDictionary()
+     */
+    public boolean match(char[] text, int off, int len, TermHitHandler handler) {
+        if (!singlePass) return pipelineMatch(text, off, len, handler);
+        textFilter(text, off, len);
+        return len == 0 || singlePassMatch(text, off, len, handler);
+    }
+
+    private boolean singlePassMatch(char[] text, int off, int len, final HitHandler<TokenType> handler) {
+        return singlePassMatch(text, off, len, new TermHitHandler() {
+            @Override
+            public boolean onHit(int start, int end, TokenType type, int termId) {
+                return handler.onHit(start, end, type);
+            }
+        });
+    }
+
+    private boolean singlePassMatch(char[] text, int off, int len, TermHitHandler handler) {
+        AsciiScanner asciiScanner = asciiAnalyzer instanceof AsciiAnalyzer
+                ? ((AsciiAnalyzer) asciiAnalyzer).scanner(text, off, len)
+                : ((MaxAsciiAnalyzer) asciiAnalyzer).scanner(text, off, len);
+        SinglePassHandler singlePassHandler = new SinglePassHandler(text, asciiScanner, numQuantifierMerge,
+                segmentFilter == SegmentFilters.hitsFilter(), handler);
+        return cjkAnalyzer.match(text, off, len, singlePassHandler) && singlePassHandler.finish();
+    }
+
+    /**
+     * 依次执行文本过滤, ascii分词, cjk分词, 合并结果之后再数量词合并, 结果过滤, 适用于任意的分词器以及过滤器
+     * 各个步骤都在当前线程复用的{@link HitBuffer}上完成, 最后复制为list返回
+     */
+    List<Hit<TokenType>> pipelineMatch(final char[] text, final int off, final int len) {
+        textFilter(text, off, len);
+        return len == 0 ? null : pipelineHits(text, off, len);
+    }
+
+    /**
+     * 同{@link #pipelineMatch(char[], int, int)}, 同时记录cjk分词器输出的词库匹配结果的ID,
+     * 最终结果中位置以及类型与之相同的才有ID, 其他的为{@link TermDictionary#NO_TERM}
+     *
+     * @return 是否匹配完, false表示handler终止了匹配
+     */
+    boolean pipelineMatch(char[] text, int off, int len, TermHitHandler handler) {
+        textFilter(text, off, len);
+        if (len == 0) return true;
+        LexiconTermIds termIds = new LexiconTermIds();
+        for (Hit<TokenType> h : pipelineHits(text, off, len, termIds)) {
+            if (!handler.onHit(h.getStart(), h.getEnd(), h.getValue(), termIds.termId(h))) return false;
+        }
+        return true;
+    }
+
+    private List<Hit<TokenType>> pipelineHits(final char[] text, final int off, final int len) {
+        return pipelineHits(text, off, len, null);
+    }
+
+    /**
+     * @param termIds 不为null则记录cjk分词器输出的词库匹配结果的ID
+     */
+    private List<Hit<TokenType>> pipelineHits(final char[] text, final int off, final int len,
+                                              final LexiconTermIds termIds) {
+        final HitBuffer hits = HitBuffer.local();
+        if (termIds == null) {
+            cjkAnalyzer.match(text, off, len, hits);
         } else {
-            hits = cjkHits;
-            //合并ascii分词结果, 两个list都是有序的, 所以只直接顺序合并
-            if (asciiHits != null) {
-                ListIterator<Hit<TokenType>> hitsIt = hits.listIterator();
-                for (Hit<TokenType> h : asciiHits) {
-                    while (hitsIt.hasNext()) {
-                        int cmp = h.compareTo(hitsIt.next());
-                        if (cmp <= 0) {
-                            if (cmp < 0) hitsIt.previous();
-                            break;
-                        }
-                    }
-                    hitsIt.add(h);
+            cjkAnalyzer.match(text, off, len, new TermHitHandler() {
+                @Override
+                public boolean onHit(int start, int end, TokenType type, int termId) {
+                    if (termId != TermDictionary.NO_TERM) termIds.add(start, end, type, termId);
+                    return hits.onHit(start, end, type);
                 }
-            }
+            });
         }
+        int cjkSize = hits.size();
+        asciiAnalyzer.match(text, off, len, hits);
+        //合并ascii分词结果, 两部分都是有序的, 相同位置的cjk结果在前
+        hits.mergeSorted(cjkSize);
         if (numQuantifierMerge != null) {
             numQuantifierMerge.merge(hits);
         }
-        if (segmentFilter != null) segmentFilter.hitsFilter(text, hits);
+        if (segmentFilter instanceof SegmentFilters.TextFilter) {
+            ((SegmentFilters.TextFilter) segmentFilter).hitsFilter(text, hits);
+        } else if (segmentFilter != null) {
+            List<Hit<TokenType>> hitList = hits.toList();
+            segmentFilter.hitsFilter(text, hitList);
+            return hitList;
+        }
+        return hits.toList();
+    }
+
+    /**
+     * 单次遍历分词的回调: 接收按位置排序的cjk分词结果, 在每个cjk结果之前读取位置更小的ascii分词结果,
+     * 相同位置的, cjk结果在前, 同{@link #pipelineMatch(char[], int, int)}中的合并规则
+     * 之后的数量词合并以及停止词过滤都在回调中完成, 逻辑同{@link NumQuantifierMerge#merge(HitBuffer)},
+     * {@link SegmentFilter#hitsFilter(char[], List)}
+     */
+    private static final class SinglePassHandler implements TermHitHandler {
+
+        private final char[] text;
+
+        private final AsciiScanner asciiScanner;
+
+        private boolean asciiRemain;
+
+        private final boolean mergeNumQuantifier;
+
+        private final boolean appendNumQuantifier;
+
+        private final boolean filterStopword;
+
+        private final TermHitHandler handler;
+
+        /**
+         * 等待合并数量词的数词, numType为null表示没有
+         */
+        private int numStart, numEnd, numTermId;
+
+        private TokenType numType;
+
+        SinglePassHandler(char[] text, AsciiScanner asciiScanner, NumQuantifierMerge numQuantifierMerge,
+                          boolean filterStopword, TermHitHandler handler) {
+            this.text = text;
+            this.asciiScanner = asciiScanner;
+            this.asciiRemain = asciiScanner.next();
+            this.mergeNumQuantifier = numQuantifierMerge != null;
+            this.appendNumQuantifier = mergeNumQuantifier && numQuantifierMerge.isAppendNumQuantifier();
+            this.filterStopword = filterStopword;
+            this.handler = handler;
+        }
+
+        @Override
+        public boolean onHit(int start, int end, TokenType type, int termId) {
+            while (asciiRemain && (asciiScanner.start() < start
+                    || (asciiScanner.start() == start && asciiScanner.end() < end))) {
+                if (!mergeHit(asciiScanner.start(), asciiScanner.end(), asciiScanner.type(), TermDictionary.NO_TERM)) {
+                    return false;
+                }
+                asciiRemain = asciiScanner.next();
+            }
+            return mergeHit(start, end, type, termId);
+        }
+
+        /**
+         * cjk分词结果已经遍历完, 处理剩余的ascii分词结果以及等待合并的数词
+         */
+        boolean finish() {
+            while (asciiRemain) {
+                if (!mergeHit(asciiScanner.start(), asciiScanner.end(), asciiScanner.type(), TermDictionary.NO_TERM)) {
+                    return false;
+                }
+                asciiRemain = asciiScanner.next();
+            }
+            return numType == null || output(numStart, numEnd, numType, numTermId);
+        }
+
+        private boolean mergeHit(int start, int end, TokenType value, int termId) {
+            if (!mergeNumQuantifier) return output(start, end, value, termId);
+            if (value == TokenType.NUM || value == TokenType.DECIMAL) {
+                boolean ret = numType == null || output(numStart, numEnd, numType, numTermId);
+                numStart = start;
+                numEnd = end;
+                numType = value;
+                numTermId = termId;
+                return ret;
+            }
+            if (numType == null) return output(start, end, value, termId);
+            TokenType preNumType = numType;
+            numType = null;
+            if (numEnd == start && (value == TokenType.QUANTIFIER || value == TokenType.NUM_QUANTIFIER)) {
+                if (appendNumQuantifier) {
+                    return output(numStart, numEnd, preNumType, numTermId)
+                            && output(numStart, end, TokenType.NUM_QUANTIFIER, TermDictionary.NO_TERM)
+                            && output(start, end, value, termId);
+                } else {
+                    return output(numStart, end, TokenType.NUM_QUANTIFIER, TermDictionary.NO_TERM);
+                }
+            }
+            return output(numStart, numEnd, preNumType, numTermId) && output(start, end, value, termId);
+        }
+
+        private boolean output(int start, int end, TokenType value, int termId) {
+            return (filterStopword && StopWords.isStopword(text, start, end - start))
+                    || handler.onHit(start, end, value, termId);
+        }
+    }
+
+    /**
+     * {@link #pipelineMatch(char[], int, int, TermHitHandler)}中cjk分词器输出的词库匹配结果的ID, 输出是按照开始位置, 结束位置排序的, 二分查找
+     * 经过数量词合并, 结果过滤之后, 只有位置以及类型都相同的结果才有ID, 同{@link SinglePassHandler}
+     */
+    private static final class LexiconTermIds {
+
+        private int[] starts = new int[16];
+
+        private int[] ends = new int[16];
+
+        private TokenType[] types = new TokenType[16];
+
+        private int[] termIds = new int[16];
+
+        private int size;
+
+        void add(int start, int end, TokenType type, int termId) {
+            if (size == starts.length) {
+                int capacity = size << 1;
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                types = Arrays.copyOf(types, capacity);
+                termIds = Arrays.copyOf(termIds, capacity);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            types[size] = type;
+            termIds[size++] = termId;
+        }
+
+        int termId(Hit<TokenType> hit) {
+            int start = hit.getStart(), end = hit.getEnd();
+            int low = 0, high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = starts[mid] != start ? Integer.compare(starts[mid], start) : Integer.compare(ends[mid], end);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return types[mid] == hit.getValue() ? termIds[mid] : TermDictionary.NO_TERM;
+                }
+            }
+            return TermDictionary.NO_TERM;
+        }
+    }
+
+    /**
+     * 长文本分词, 文本在不会被任何分词结果跨越的字符处切分, 各个分段通过pool并行分词, 再按顺序拼接, 结果同{@link #match(char[], int, int)}
+     * 切分位置的字符满足: 不是字母, 数字, cjk字符, 也不是小数, 英文合成词的连接字符'.', '-', 并且词库中没有包含该字符的词,
+     * 比如空格, 换行以及大部分标点符号, 具体见{@link CjkAnalyzer#mayInHit(char)}
+     * 从每个分段的最小长度开始向后查找切分位置, 如果一直找不到, 剩下的文本作为一个分段
+     * 分词过滤器以及ascii分词器需要支持单次遍历分词, 否则通过{@link #match(char[], int, int)}在当前线程分词
+     *
+     * @param pool 执行分词的pool, 为null则通过{@link #match(char[], int, int)}在当前线程分词
+     */
+    public List<Hit<TokenType>> matchLongText(final char[] text, final int off, final int len, ForkJoinPool pool) {
+        if (!singlePass || pool == null || len < (LONG_TEXT_CHUNK_SIZE << 1)) return match(text, off, len);
+        textFilter(text, off, len);
+        final int endPos = off + len;
+        int chunkSize = Math.max(LONG_TEXT_CHUNK_SIZE, len / (pool.getParallelism() << 2));
+        //bounds[i], bounds[i + 1]为第i个分段的开始, 结束位置
+        int[] bounds = new int[len / chunkSize + 2];
+        int chunkCount = 0;
+        bounds[0] = off;
+        while (bounds[chunkCount] < endPos) {
+            int pos = bounds[chunkCount] + chunkSize;
+            while (pos < endPos && !isCutPoint(text[pos])) pos++;
+            bounds[++chunkCount] = Math.min(pos, endPos);
+        }
+        List<Hit<TokenType>>[] results = newResults(chunkCount);
+        pool.invoke(new LongTextTask(text, bounds, results, 0, chunkCount));
+        int size = 0;
+        for (List<Hit<TokenType>> r : results) {
+            size += r.size();
+        }
+        List<Hit<TokenType>> hits = new ArrayList<>(size);
+        for (List<Hit<TokenType>> r : results) {
+            hits.addAll(r);
+        }
         return hits;
     }
 
+    /**
+     * 是否可以作为长文本分词的切分位置, 见{@link #matchLongText(char[], int, int, ForkJoinPool)}
+     */
+    private boolean isCutPoint(char c) {
+        return c != '.' && c != '-' && !cjkAnalyzer.mayInHit(c);
+    }
+
+    /**
+     * 批量分词, 通过pool并行执行, 结果顺序同texts, 每个结果同{@link #match(char[], int, int)}, 空文本为null
+     * 文本复制到各个工作线程复用的字符数组中再分词, 不修改入参, 词库在各个线程之间共享
+     *
+     * @param texts 待分词的文本
+     * @param pool  执行分词的pool, 为null则在当前线程依次分词
+     * @return 分词结果, 下标同texts
+     */
+    public List<List<Hit<TokenType>>> matchAll(List<? extends CharSequence> texts, ForkJoinPool pool) {
+        List<Hit<TokenType>>[] results = newResults(texts.size());
+        if (pool == null) matchRange(texts, results, 0, results.length);
+        else pool.invoke(new BatchMatchTask(texts, results, 0, results.length));
+        return Arrays.asList(results);
+    }
+
+    /**
+     * 流式批量分词, 每次从texts读取batchSize个文本, 通过{@link #matchAll(List, ForkJoinPool)}并行分词,
+     * 在读取当前批次结果的同时, 下一个批次已经提交到pool中执行, 结果顺序同texts
+     * texts只在调用返回的迭代器的线程中读取
+     *
+     * @param texts     待分词的文本
+     * @param pool      执行分词的pool, 为null则在当前线程依次分词
+     * @param batchSize 每个批次的文本数
+     * @return 分词结果的迭代器, 不支持remove
+     */
+    public Iterator<List<Hit<TokenType>>> matchAll(Iterator<? extends CharSequence> texts, ForkJoinPool pool,
+                                                   int batchSize) {
+        Objects.requireNonNull(texts);
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize: " + batchSize + " should be positive");
+        }
+        return new BatchMatchIterator(texts, pool, batchSize);
+    }
+
+    /**
+     * 泛型数组不能直接创建, 通过通配符数组转换, 数组中只会存放List<Hit<TokenType>>
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Hit<TokenType>>[] newResults(int size) {
+        return (List<Hit<TokenType>>[]) new List<?>[size];
+    }
+
+    /**
+     * 依次分词texts中[from, to)的文本, 结果写入results对应的下标
+     */
+    private void matchRange(List<? extends CharSequence> texts, List<Hit<TokenType>>[] results, int from, int to) {
+        for (int i = from; i < to; i++) {
+            results[i] = copyMatch(texts.get(i));
+        }
+    }
+
+    /**
+     * 复制到当前线程复用的字符数组中分词
+     */
+    private List<Hit<TokenType>> copyMatch(CharSequence text) {
+        final int len = text.length();
+        char[] buffer = TEXT_BUFFER.get();
+        if (buffer.length < len) {
+            buffer = new char[Math.max(len, buffer.length << 1)];
+            TEXT_BUFFER.set(buffer);
+        }
+        for (int i = 0; i < len; i++) {
+            buffer[i] = text.charAt(i);
+        }
+        return match(buffer, 0, len);
+    }
+
+    /**
+     * 批量分词任务, 文本数超过{@link #BATCH_THRESHOLD}则拆分成两个子任务
+     */
+    private final class BatchMatchTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<? extends CharSequence> texts;
+
+        private final List<Hit<TokenType>>[] results;
+
+        private final int from, to;
+
+        BatchMatchTask(List<? extends CharSequence> texts, List<Hit<TokenType>>[] results, int from, int to) {
+            this.texts = texts;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_THRESHOLD) {
+                matchRange(texts, results, from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new BatchMatchTask(texts, results, from, mid), new BatchMatchTask(texts, results, mid, to));
+            }
+        }
+    }
+
+    /**
+     * 长文本分段分词任务, 文本已经过滤, 分段数大于1则拆分成两个子任务
+     */
+    private final class LongTextTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final char[] text;
+
+        private final int[] bounds;
+
+        private final List<Hit<TokenType>>[] results;
+
+        private final int from, to;
+
+        LongTextTask(char[] text, int[] bounds, List<Hit<TokenType>>[] results, int from, int to) {
+            this.text = text;
+            this.bounds = bounds;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                List<Hit<TokenType>> hits = new ArrayList<>();
+                singlePassMatch(text, bounds[from], bounds[to] - bounds[from], collectHandler(hits));
+                results[from] = hits;
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new LongTextTask(text, bounds, results, from, mid), new LongTextTask(text, bounds, results, mid, to));
+            }
+        }
+    }
+
+    private final class BatchMatchIterator implements Iterator<List<Hit<TokenType>>> {
+
+        private final Iterator<? extends CharSequence> texts;
+
+        private final ForkJoinPool pool;
+
+        private final int batchSize;
+
+        private Iterator<List<Hit<TokenType>>> current = Collections.emptyIterator();
+
+        /**
+         * 下一个批次的结果, null表示texts已经读取完
+         */
+        private List<Hit<TokenType>>[] nextResults;
+
+        /**
+         * 下一个批次已经提交到pool的任务, pool为null时直接分词, 该值为null
+         */
+        private ForkJoinTask<Void> nextTask;
+
+        BatchMatchIterator(Iterator<? extends CharSequence> texts, ForkJoinPool pool, int batchSize) {
+            this.texts = texts;
+            this.pool = pool;
+            this.batchSize = batchSize;
+            submitBatch();
+        }
+
+        private void submitBatch() {
+            nextTask = null;
+            if (!texts.hasNext()) {
+                nextResults = null;
+                return;
+            }
+            List<CharSequence> batch = new ArrayList<>(batchSize);
+            while (batch.size() < batchSize && texts.hasNext()) {
+                batch.add(texts.next());
+            }
+            nextResults = newResults(batch.size());
+            if (pool == null) matchRange(batch, nextResults, 0, nextResults.length);
+            else nextTask = pool.submit(new BatchMatchTask(batch, nextResults, 0, nextResults.length));
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (nextResults == null) return false;
+                if (nextTask != null) nextTask.join();
+                current = Arrays.asList(nextResults).iterator();
+                submitBatch();
+            }
+            return true;
+        }
+
+        @Override
+        public List<Hit<TokenType>> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return current.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * 创建分词结果流, 每个线程单独创建, 多个文本通过reset复用
+     */
+    public SegmentTokenStream tokenStream() {
+        return new SegmentTokenStream(this);
+    }
+
+    /**
+     * 分词结果的版本, 包括词库版本, 如果过滤停止词, 再加上停止词版本, 版本不变则同一个文本的分词结果不变
+     * 自定义的{@link SegmentFilter}的变化不在版本中
+     *
+     * @see SegmentCache
+     */
+    long version() {
+        long version = cjkAnalyzer.lexiconVersion();
+        if (segmentFilter instanceof SegmentFilters.HitsFilter) version += StopWords.instance().getVersion();
+        return version;
+    }
+
+    /**
+     * 词库的词ID表, 通过{@link TermDictionary#term(int)}还原{@link #match(char[], int, int, TermHitHandler)}返回的词ID
+     *
+     * @see CjkLexicon#getTermDictionary()
+     */
+    public TermDictionary termDictionary() {
+        return cjkAnalyzer.termDictionary();
+    }
+
     public String getName() {
         return name;
     }
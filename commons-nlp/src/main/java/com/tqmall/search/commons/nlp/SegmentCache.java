@@ -0,0 +1,123 @@
+package com.tqmall.search.commons.nlp;
+
+import com.tqmall.search.commons.analyzer.TokenType;
+import com.tqmall.search.commons.match.Hit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Created by xing on 26/10/16.
+ * 分词结果缓存, 适用于查询词等重复较多的短文本, 多个{@link Segment}可以共享一个缓存
+ * 缓存的key为{@link Segment}对象本身(按引用比较)以及{@link SegmentFilter#textFilter(char[], int, int)}过滤之后的文本,
+ * 过滤结果相同的文本共享缓存, 不同的Segment即使名称相同也不会共享缓存, 缓存会持有Segment的引用
+ * 词库, 量词或者停止词修改之后, 通过{@link Segment}的版本判断, 原先的缓存自动失效
+ * 缓存的结果不可修改, list以及其中的{@link Hit}修改都会抛出{@link UnsupportedOperationException}
+ *
+ * @author xing
+ * @see LruCache
+ */
+public class SegmentCache {
+
+    private final LruCache<Key, List<Hit<TokenType>>> cache;
+
+    /**
+     * @param maxSize 最大缓存数
+     */
+    public SegmentCache(int maxSize) {
+        cache = new LruCache<>(maxSize);
+    }
+
+    /**
+     * 分词, 结果同{@link Segment#match(String)}, 优先读取缓存
+     *
+     * @return 不可修改的分词结果, text为空返回null
+     */
+    public List<Hit<TokenType>> match(Segment segment, String text) {
+        char[] array = NlpUtils.stringToCharArray(text);
+        if (array == null) return null;
+        segment.textFilter(array, 0, array.length);
+        Key key = new Key(segment, new String(array));
+        long version = segment.version();
+        List<Hit<TokenType>> hits = cache.get(key, version);
+        if (hits == null) {
+            hits = freeze(segment.matchFiltered(array, 0, array.length));
+            cache.put(key, version, hits);
+        }
+        return hits;
+    }
+
+    private static List<Hit<TokenType>> freeze(List<Hit<TokenType>> hits) {
+        List<Hit<TokenType>> frozen = new ArrayList<>(hits.size());
+        for (Hit<TokenType> h : hits) {
+            frozen.add(new FrozenHit(h.getStart(), h.getEnd(), h.getValue()));
+        }
+        return Collections.unmodifiableList(frozen);
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    public double getHitRate() {
+        return cache.getHitRate();
+    }
+
+    /**
+     * 不可修改的{@link Hit}
+     */
+    private static final class FrozenHit extends Hit<TokenType> {
+
+        FrozenHit(int start, int end, TokenType value) {
+            super(start, end, value);
+        }
+
+        @Override
+        public void changePosition(int start, int end) {
+            throw new UnsupportedOperationException("cached hit can not be modified");
+        }
+
+        @Override
+        public void changeValue(TokenType value) {
+            throw new UnsupportedOperationException("cached hit can not be modified");
+        }
+    }
+
+    private static final class Key {
+
+        private final Segment segment;
+
+        private final String text;
+
+        Key(Segment segment, String text) {
+            this.segment = segment;
+            this.text = text;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return segment == key.segment && text.equals(key.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(segment) + text.hashCode();
+        }
+    }
+}
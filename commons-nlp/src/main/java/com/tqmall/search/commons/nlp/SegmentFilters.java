@@ -1,5 +1,6 @@
 package com.tqmall.search.commons.nlp;
 
+import com.tqmall.search.commons.analyzer.HitBuffer;
 import com.tqmall.search.commons.match.Hit;
 import com.tqmall.search.commons.analyzer.StopWords;
 import com.tqmall.search.commons.analyzer.TokenType;
@@ -40,25 +41,13 @@ public final class SegmentFilters {
 
     /**
      * 字符转换, 如果返回{@link Character#MIN_VALUE}, 则表示该字符没有未做转换
+     * 通过{@link CharTable#normalize(char)}查表转换
      *
      * @return 转换结果, 结果为{@link Character#MIN_VALUE}, 则表示该字符没有做任何转换
      */
     public static char charConvert(char c) {
-        if (c >= 'A' && c <= 'Z') {
-            //大写转小写
-            return (char) (c + 32);
-        } else if (c == '\u3000') {
-            //全角空格处理
-            return '\u0020';
-        } else if (c > '\uFF00' && c < '\uFF5F') {
-            //全角字符转半角
-            return (char) (c - 65248);
-        } else if (NlpUtils.isCjkChar(c)) {
-            //中文繁体转简体
-            return TraditionToSimple.instance().convert(c);
-        } else {
-            return Character.MIN_VALUE;
-        }
+        char converted = CharTable.normalize(c);
+        return converted == c ? Character.MIN_VALUE : converted;
     }
 
     /**
@@ -66,7 +55,7 @@ public final class SegmentFilters {
      * 目前的处理有:
      * 1. 英文字母大写转小写
      * 2. 中文全角转半角
-     * 3. 中文字符繁体转简体
+     * 3. 中文字符繁体转简体, 繁体短语优先整体转换, 见{@link TraditionToSimple#replacePhrase(char[], int, int)}
      */
     static class TextFilter implements SegmentFilter {
 
@@ -76,9 +65,17 @@ public final class SegmentFilters {
         public final void textFilter(char[] text, int off, int len) {
             final int endPos = off + len;
             NlpUtils.arrayIndexCheck(text, off, endPos);
-            for (int i = off; i < endPos; i++) {
-                char c = charConvert(text[i]);
-                if (c != Character.MIN_VALUE) text[i] = c;
+            TraditionToSimple traditionToSimple = TraditionToSimple.instance();
+            int i = off;
+            while (i < endPos) {
+                //繁体短语整体替换, 同一次遍历中完成
+                int phraseLength = traditionToSimple.replacePhrase(text, i, endPos);
+                if (phraseLength > 0) {
+                    i += phraseLength;
+                } else {
+                    text[i] = CharTable.normalize(text[i]);
+                    i++;
+                }
             }
         }
 
@@ -86,6 +83,13 @@ public final class SegmentFilters {
         public void hitsFilter(char[] text, List<Hit<TokenType>> hits) {
             //do nothing
         }
+
+        /**
+         * 同{@link #hitsFilter(char[], List)}, 直接在buffer上过滤, 用于{@link Segment}
+         */
+        void hitsFilter(char[] text, HitBuffer hits) {
+            //do nothing
+        }
     }
 
     /**
@@ -98,6 +102,13 @@ public final class SegmentFilters {
 
         private static final HitsFilter INSTANCE = new HitsFilter();
 
+        private static final HitBuffer.Filter STOPWORD_FILTER = new HitBuffer.Filter() {
+            @Override
+            public boolean accept(char[] text, int start, int end, TokenType type) {
+                return !StopWords.isStopword(text, start, end - start);
+            }
+        };
+
         @Override
         public final void hitsFilter(char[] text, List<Hit<TokenType>> hits) {
             Iterator<Hit<TokenType>> it = hits.iterator();
@@ -109,5 +120,10 @@ public final class SegmentFilters {
                 }
             }
         }
+
+        @Override
+        final void hitsFilter(char[] text, HitBuffer hits) {
+            hits.filter(text, STOPWORD_FILTER);
+        }
     }
 }
@@ -0,0 +1,205 @@
+package com.tqmall.search.commons.nlp;
+
+import com.tqmall.search.commons.analyzer.HitBuffer;
+import com.tqmall.search.commons.analyzer.TokenType;
+import com.tqmall.search.commons.match.HitHandler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Created by xing on 26/10/16.
+ * {@link Segment}的分词结果流, 使用方式同Lucene的TokenStream: 先通过{@link #reset(Reader)}或者{@link #reset(char[], int, int)}
+ * 设置文本, 然后循环调用{@link #incrementToken()}, 当前词通过{@link #startOffset()}, {@link #endOffset()}, {@link #type()},
+ * {@link #termBuffer()}, {@link #termLength()}获取
+ * 文本, 分词结果以及词的缓存在多次reset之间复用, 分词结果通过{@link Segment#match(char[], int, int, HitHandler)}记录到{@link HitBuffer}中,
+ * 不创建{@link com.tqmall.search.commons.match.Hit}对象以及list, 适用于大量文档的索引分词
+ * 当前词的属性只有在{@link #incrementToken()}返回true之后才能获取, 否则抛出{@link IllegalStateException}
+ * <p/>
+ * 文本会复制到内部缓存中再分词, 不修改入参数组, 位置都是相对于文本开始的位置, 词为{@link SegmentFilter}过滤之后的文本
+ * <p/>
+ * 对接Lucene的Tokenizer, 每个属性直接对应:
+ * <pre>
+ * public void reset() throws IOException {
+ *     super.reset();
+ *     stream.reset(input);
+ * }
+ *
+ * public boolean incrementToken() {
+ *     clearAttributes();
+ *     if (!stream.incrementToken()) return false;
+ *     termAtt.copyBuffer(stream.termBuffer(), 0, stream.termLength());
+ *     offsetAtt.setOffset(correctOffset(stream.startOffset()), correctOffset(stream.endOffset()));
+ *     typeAtt.setType(stream.type().name());
+ *     return true;
+ * }
+ *
+ * public void end() throws IOException {
+ *     super.end();
+ *     int finalOffset = correctOffset(stream.finalOffset());
+ *     offsetAtt.setOffset(finalOffset, finalOffset);
+ * }
+ * </pre>
+ * 该类有状态, 非线程安全, 每个线程单独创建, 对应的{@link Segment}可以共享
+ *
+ * @author xing
+ * @see Segment#tokenStream()
+ */
+public class SegmentTokenStream implements Closeable {
+
+    private static final int INIT_BUFFER_SIZE = 256;
+
+    private final Segment segment;
+
+    /**
+     * 不能使用{@link HitBuffer#local()}, 分词过程中会使用, 并且结果需要在多次{@link #incrementToken()}之间保留
+     */
+    private final HitBuffer hits = new HitBuffer(INIT_BUFFER_SIZE);
+
+    private char[] text = new char[INIT_BUFFER_SIZE];
+
+    private int textLength;
+
+    private char[] term = new char[16];
+
+    private int termLength;
+
+    /**
+     * 当前词的下标
+     */
+    private int index;
+
+    private Reader reader;
+
+    SegmentTokenStream(Segment segment) {
+        Objects.requireNonNull(segment);
+        this.segment = segment;
+    }
+
+    /**
+     * 读取reader中所有的字符作为待分词文本, reader在{@link #close()}或者下一次reset时关闭
+     */
+    public void reset(Reader reader) throws IOException {
+        Objects.requireNonNull(reader);
+        if (this.reader != reader) closeReader();
+        this.reader = reader;
+        int n = 0, count;
+        while ((count = reader.read(text, n, text.length - n)) != -1) {
+            n += count;
+            if (n == text.length) text = Arrays.copyOf(text, text.length << 1);
+        }
+        segment(n);
+    }
+
+    /**
+     * 设置待分词文本, 文本复制到内部缓存中, 不修改入参数组
+     */
+    public void reset(char[] text, int off, int len) {
+        NlpUtils.arrayIndexCheck(text, off, off + len);
+        if (len > this.text.length) this.text = new char[Math.max(len, this.text.length << 1)];
+        System.arraycopy(text, off, this.text, 0, len);
+        segment(len);
+    }
+
+    private void segment(int len) {
+        textLength = len;
+        hits.clear();
+        index = -1;
+        termLength = 0;
+        segment.match(text, 0, len, hits);
+    }
+
+    /**
+     * 当前是否有词, 没有调用{@link #incrementToken()}或者已经读取完都没有
+     */
+    private void checkToken() {
+        if (index < 0 || index >= hits.size()) {
+            throw new IllegalStateException("no current token, incrementToken() must be called and return true first");
+        }
+    }
+
+    /**
+     * 读取下一个词
+     *
+     * @return 是否还有词, false表示已经读取完
+     */
+    public boolean incrementToken() {
+        if (index + 1 >= hits.size()) {
+            index = hits.size();
+            termLength = 0;
+            return false;
+        }
+        index++;
+        int start = hits.start(index);
+        termLength = hits.end(index) - start;
+        if (termLength > term.length) term = new char[Math.max(termLength, term.length << 1)];
+        System.arraycopy(text, start, term, 0, termLength);
+        return true;
+    }
+
+    public int startOffset() {
+        checkToken();
+        return hits.start(index);
+    }
+
+    public int endOffset() {
+        checkToken();
+        return hits.end(index);
+    }
+
+    public TokenType type() {
+        checkToken();
+        return hits.type(index);
+    }
+
+    /**
+     * 当前词, 有效长度为{@link #termLength()}, 数组在读取下一个词时复用
+     */
+    public char[] termBuffer() {
+        checkToken();
+        return term;
+    }
+
+    public int termLength() {
+        checkToken();
+        return termLength;
+    }
+
+    /**
+     * 当前词, 创建新的字符串
+     */
+    public String term() {
+        checkToken();
+        return new String(term, 0, termLength);
+    }
+
+    /**
+     * 文本的长度, 即Lucene中end()设置的最终位置
+     */
+    public int finalOffset() {
+        return textLength;
+    }
+
+    /**
+     * 关闭{@link #reset(Reader)}传入的reader, 之后可以再次reset
+     */
+    @Override
+    public void close() throws IOException {
+        textLength = 0;
+        hits.clear();
+        index = -1;
+        termLength = 0;
+        closeReader();
+    }
+
+    private void closeReader() throws IOException {
+        if (reader != null) {
+            Reader r = reader;
+            reader = null;
+            r.close();
+        }
+    }
+}
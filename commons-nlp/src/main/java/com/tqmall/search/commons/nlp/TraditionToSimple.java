@@ -3,14 +3,19 @@ package com.tqmall.search.commons.nlp;
 import com.tqmall.search.commons.lang.Function;
 import com.tqmall.search.commons.lang.LazyInit;
 import com.tqmall.search.commons.lang.Supplier;
+import com.tqmall.search.commons.trie.DoubleArrayTrie;
 import com.tqmall.search.commons.utils.SearchStringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.TreeMap;
+
 /**
  * Created by xing on 16/1/26.
  * 繁体转简体, 按需加载词库
  * 目前我们只用到繁体转简体, 至于简体转繁体,暂时不care, 没有用到
+ * 逐字转换对于一简对多繁以及依赖上下文的转换不正确, 比如"乾隆"不能转为"干隆", 所以另外加载短语表, 通过{@link #convertPhrase(char[], int, int)}
+ * 从左向右扫描一遍, 每个位置优先替换最长的短语, 没有匹配到短语的字符再逐字转换, 短语表中繁简短语长度一致, 可以在原数组上直接替换
  */
 public final class TraditionToSimple {
 
@@ -35,6 +40,11 @@ public final class TraditionToSimple {
      */
     private final char[] chars;
 
+    /**
+     * 短语表, value为简体短语, 长度与key一致
+     */
+    private final DoubleArrayTrie<String> phrases;
+
     TraditionToSimple() {
         final int indexOffset = NlpConst.CJK_UNIFIED_IDEOGRAPHS_FIRST;
         log.info("start loading TraditionToSimple lexicon file: " + NlpConst.F2J_FILE_NAME);
@@ -58,6 +68,22 @@ public final class TraditionToSimple {
             }
         }
         log.info("load TraditionToSimple lexicon file: " + NlpConst.F2J_FILE_NAME + " finish");
+        final TreeMap<String, String> phraseMap = new TreeMap<>();
+        NlpUtils.loadClassPathLexicon(TraditionToSimple.class, NlpConst.F2J_PHRASE_FILE_NAME, new Function<String, Boolean>() {
+            @Override
+            public Boolean apply(String line) {
+                String[] array = SearchStringUtils.split(line, '=');
+                if (array.length < 2 || array[0].length() != array[1].length()) {
+                    log.warn("load tradition to simple phrase file, phrase: " + line + " is invalid format");
+                } else {
+                    phraseMap.put(array[0], array[1]);
+                }
+                return true;
+            }
+        });
+        phrases = DoubleArrayTrie.valueOf(phraseMap);
+        log.info("load TraditionToSimple phrase file: " + NlpConst.F2J_PHRASE_FILE_NAME + " finish, total " + phrases.size()
+                + " phrases");
     }
 
     /**
@@ -90,6 +116,51 @@ public final class TraditionToSimple {
         }
     }
 
+    /**
+     * 修改原字符数组转换繁体为简体, 短语优先, 没有匹配到短语的字符逐字转换
+     *
+     * @see #replacePhrase(char[], int, int)
+     */
+    public final void convertPhrase(final char[] text, final int startPos, final int length) {
+        final int endPos = startPos + length;
+        NlpUtils.arrayIndexCheck(text, startPos, endPos);
+        int i = startPos;
+        while (i < endPos) {
+            int phraseLength = replacePhrase(text, i, endPos);
+            if (phraseLength > 0) {
+                i += phraseLength;
+            } else {
+                text[i] = convert(text[i]);
+                i++;
+            }
+        }
+    }
+
+    /**
+     * 查找pos开始的最长短语, 在原数组上替换为简体短语, 供其他逐字处理的扫描在同一次遍历中调用, 比如
+     * {@link SegmentFilters#textFilter()}, 没有匹配到则不修改数组, 调用方继续处理该字符
+     * 沿着双数组状态转移, 最多向后看{@link DoubleArrayTrie#getMaxWordLength()}个字符, 不分配内存
+     *
+     * @param pos    开始位置
+     * @param endPos 文本结束位置, 不包含
+     * @return 替换的短语长度, 没有匹配到短语返回0
+     */
+    public final int replacePhrase(final char[] text, final int pos, final int endPos) {
+        int state = DoubleArrayTrie.ROOT_STATE, matchWordIndex = -1, matchLength = 0;
+        final int maxEnd = Math.min(endPos, pos + phrases.getMaxWordLength());
+        for (int i = pos; i < maxEnd; i++) {
+            if ((state = phrases.transition(state, text[i])) < 0) break;
+            int wordIndex = phrases.wordIndex(state);
+            if (wordIndex >= 0) {
+                matchWordIndex = wordIndex;
+                matchLength = i - pos + 1;
+            }
+        }
+        if (matchWordIndex < 0) return 0;
+        phrases.getValue(matchWordIndex).getChars(0, matchLength, text, pos);
+        return matchLength;
+    }
+
     /**
      * 如果传入的字符串有繁体, 则转换成简体字符串
      * 如果没有繁体, 则不做装换, 原样返回
@@ -1,21 +1,40 @@
 package com.tqmall.search.commons.trie;
 
+import com.tqmall.search.commons.lang.Function;
 import com.tqmall.search.commons.nlp.NlpUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
 /**
  * Created by xing on 16/1/27.
  * 二分查找树, 根节点直接分配, 其他的根据需要再添加
  */
-public class BinaryTrie<V> implements Trie<V> {
+public class BinaryTrie<V> implements CursorTrie<V> {
 
     private static final Logger log = LoggerFactory.getLogger(BinaryTrie.class);
 
+    /**
+     * 批量添加的词数少于该值, 直接在当前线程添加
+     */
+    private static final int PARALLEL_PUT_THRESHOLD = 1024;
+
+    /**
+     * {@link #writeTo(DataOutput, Function)}中每个节点至少占用的字节数: char + int + int
+     */
+    private static final int NODE_BYTES = 10;
+
     private final TrieNodeFactory<V> nodeFactory;
 
     protected final Node<V> root;
@@ -51,6 +70,15 @@ public class BinaryTrie<V> implements Trie<V> {
     }
 
     protected Node<V> getNodeInner(char[] key, int off, int len) {
+        return findNode(key, off, len);
+    }
+
+    /**
+     * 通过树中存储的key查找节点, 即{@link #trieKey(char[])}转换之后的
+     *
+     * @return 返回结果排除了删除的Node
+     */
+    private Node<V> findNode(char[] key, int off, int len) {
         Node<V> currentNode = root;
         int end = off + len;
         for (int i = off; i < end; i++) {
@@ -72,19 +100,90 @@ public class BinaryTrie<V> implements Trie<V> {
 
     protected boolean put(char[] key, V value) {
         if (key == null || key.length == 0) return false;
+        if (insert(trieKey(key), value)) size++;
+        return true;
+    }
+
+    /**
+     * 转换为树中存储的key, 可以直接修改数组, 默认不做转换
+     */
+    protected char[] trieKey(char[] key) {
+        return key;
+    }
+
+    /**
+     * 插入词, 不更新{@link #size}
+     *
+     * @param key 树中存储的key, 即{@link #trieKey(char[])}转换之后的, 不能为空
+     * @return 是否新增了词, 如果词已经存在, 只是更新了value, 返回false
+     */
+    private boolean insert(char[] key, V value) {
         Node<V> current = root;
         for (int i = 0; i < key.length - 1; i++) {
             Node<V> next = current.getChild(key[i]);
             if (next == null) {
                 next = nodeFactory.createNormalNode(key[i]);
                 current.addChild(next);
+            } else if (next.getStatus() == Node.Status.DELETE) {
+                //已经删除的节点需要恢复成普通节点, 不然该词找不到
+                current.addChild(nodeFactory.createNormalNode(key[i]));
             }
             current = next;
         }
-        if (current.addChild(nodeFactory.createChildNode(key[key.length - 1], value))) {
-            size++;
+        return current.addChild(nodeFactory.createChildNode(key[key.length - 1], value));
+    }
+
+    /**
+     * 批量添加词, 如果根节点为{@link BigRootNode}, 根据存储的key的第一个字符分片, 通过executor并发构造各个分片的子树,
+     * 不同的分片对应根节点中不同的子节点, 互不影响, 所有分片完成之后才返回
+     * 根节点不是{@link BigRootNode}或者executor为null, 则在当前线程依次添加
+     * 添加过程中不能有其他的读写操作
+     *
+     * @param words    添加的词
+     * @param executor 构造分片子树的executor
+     */
+    public void putAll(Map<String, ? extends V> words, Executor executor) {
+        if (executor == null || !(root instanceof BigRootNode) || words.size() < PARALLEL_PUT_THRESHOLD) {
+            for (Map.Entry<String, ? extends V> e : words.entrySet()) {
+                put(e.getKey(), e.getValue());
+            }
+            return;
+        }
+        final int shardCount = Runtime.getRuntime().availableProcessors() * 4;
+        List<List<char[]>> shardKeys = new ArrayList<>(shardCount);
+        List<List<V>> shardValues = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shardKeys.add(new ArrayList<char[]>());
+            shardValues.add(new ArrayList<V>());
+        }
+        for (Map.Entry<String, ? extends V> e : words.entrySet()) {
+            char[] key = NlpUtils.stringToCharArray(e.getKey());
+            if (key == null) continue;
+            key = trieKey(key);
+            //同一个首字符的词在同一个分片中
+            int shard = key[0] % shardCount;
+            shardKeys.get(shard).add(key);
+            shardValues.get(shard).add(e.getValue());
+        }
+        List<Callable<Integer>> tasks = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            final List<char[]> keys = shardKeys.get(i);
+            final List<V> values = shardValues.get(i);
+            if (keys.isEmpty()) continue;
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    int count = 0;
+                    for (int j = 0; j < keys.size(); j++) {
+                        if (insert(keys.get(j), values.get(j))) count++;
+                    }
+                    return count;
+                }
+            });
+        }
+        for (Integer count : NlpUtils.invokeAll(tasks, executor)) {
+            size += count;
         }
-        return true;
     }
 
     @Override
@@ -92,7 +191,8 @@ public class BinaryTrie<V> implements Trie<V> {
         //先确保这个词存在, 再执行删除, 这儿里面已经过滤了删除的节点
         char[] charArray = NlpUtils.stringToCharArray(key);
         if (charArray == null) return false;
-        Node<V> node = getNodeInner(charArray, 0, charArray.length);
+        charArray = trieKey(charArray);
+        Node<V> node = findNode(charArray, 0, charArray.length);
         //如果不是词节点, 返回
         if (node == null || node.getStatus() == Node.Status.NORMAL) return false;
         root.deleteNode(charArray, 0);
@@ -104,11 +204,62 @@ public class BinaryTrie<V> implements Trie<V> {
     public List<Map.Entry<String, V>> prefixSearch(String word) {
         char[] charArray = NlpUtils.stringToCharArray(word);
         if (charArray == null) return null;
-        Node<V> node = getNodeInner(charArray, 0, charArray.length);
+        charArray = trieKey(charArray);
+        Node<V> node = findNode(charArray, 0, charArray.length);
         if (node == null) return null;
         return node.allChildWords(charArray);
     }
 
+    /**
+     * 游标按照节点的存储顺序深度优先遍历, 结果顺序同{@link #prefixSearch(String)}
+     */
+    @Override
+    public TrieCursor<V> prefixIterator(String prefix) {
+        return prefixIterator(prefix, null);
+    }
+
+    @Override
+    public TrieCursor<V> prefixIterator(String prefix, String afterKey) {
+        char[] charArray = NlpUtils.stringToCharArray(prefix);
+        if (charArray == null) return null;
+        charArray = trieKey(charArray);
+        Node<V> node = findNode(charArray, 0, charArray.length);
+        if (node == null) return null;
+        if (!(node instanceof NormalNode)) {
+            throw new UnsupportedOperationException("prefix node: " + node + " is not a NormalNode, can not create cursor");
+        }
+        PrefixCursor<V> cursor = new PrefixCursor<>(charArray, (NormalNode<V>) node, reverseKey());
+        char[] afterArray = NlpUtils.stringToCharArray(afterKey);
+        if (afterArray != null) cursor.seekAfter(trieKey(afterArray));
+        return cursor;
+    }
+
+    /**
+     * 模糊查询, 获取与word编辑距离不超过maxDistance的词, 一次遍历完成
+     * 遍历过程中沿着路径计算编辑距离的DP矩阵, 子树中不可能有满足条件的词则剪枝, maxDistance一般为1或者2, 过大的话需要遍历大部分节点
+     * 逆序存储的树中查询词同样逆序, 编辑距离不变
+     *
+     * @param word        查询词
+     * @param maxDistance 最大编辑距离
+     * @return 按照编辑距离从小到大排序, word为空返回null
+     * @see LevenshteinRows
+     */
+    public List<FuzzyHit<V>> fuzzySearch(String word, int maxDistance) {
+        char[] charArray = NlpUtils.stringToCharArray(word);
+        if (charArray == null) return null;
+        FuzzyWalker<V> walker = new FuzzyWalker<>(new LevenshteinRows(trieKey(charArray), maxDistance), reverseKey());
+        root.childHandle(walker);
+        Collections.sort(walker.result, FuzzyHit.DISTANCE_COMPARATOR);
+        return walker.result;
+    }
+
+    /**
+     * 树中存储的key是否为逆序, 为true时{@link #prefixIterator(String)}返回的key逆序回来, 默认false
+     */
+    protected boolean reverseKey() {
+        return false;
+    }
+
     @Override
     public int size() {
         return size;
@@ -128,4 +279,228 @@ public class BinaryTrie<V> implements Trie<V> {
         return nodeFactory;
     }
 
+    /**
+     * 按照先序遍历写入树的结构, 通过{@link #readFrom(ByteBuffer, Object[])}读取, 读取时按照结构直接创建节点, 不需要逐个词从根节点插入
+     * 根节点只写入子节点数量, 其他节点依次写入: 字符, value下标(非词节点为-1), 子节点数量, 子节点按照字符从小到大写入
+     *
+     * @param valueIndex value对应读取时values数组中的下标
+     * @see #readFrom(ByteBuffer, Object[])
+     */
+    public void writeTo(DataOutput out, Function<? super V, Integer> valueIndex) throws IOException {
+        out.writeInt(size);
+        writeChildren(root, out, valueIndex);
+    }
+
+    private static <V> void writeChildren(Node<V> node, DataOutput out, Function<? super V, Integer> valueIndex)
+            throws IOException {
+        final List<Node<V>> children = new ArrayList<>();
+        node.childHandle(new NodeChildHandle<V>() {
+            @Override
+            public boolean onHandle(Node<V> child) {
+                return children.add(child);
+            }
+        });
+        out.writeInt(children.size());
+        for (Node<V> child : children) {
+            out.writeChar(child.c);
+            out.writeInt(child.accept() ? valueIndex.apply(child.value) : -1);
+            writeChildren(child, out, valueIndex);
+        }
+    }
+
+    /**
+     * 读取{@link #writeTo(DataOutput, Function)}写入的树结构, 添加到当前树中, 一般为新创建的空树
+     * 子节点按照字符顺序读取, 依次追加到父节点children的末尾, 读取完之后统一{@link Node#trimChildNodes()}
+     *
+     * @param values value下标对应的值
+     * @throws IllegalArgumentException 数据格式不对
+     * @see #writeTo(DataOutput, Function)
+     */
+    public void readFrom(ByteBuffer buffer, Object[] values) {
+        int wordCount = buffer.getInt();
+        int readCount = readChildren(root, buffer, values);
+        if (readCount != wordCount) {
+            throw new IllegalArgumentException("trie data is invalid, word count: " + wordCount + ", read: " + readCount);
+        }
+        size += readCount;
+        root.trimChildNodes();
+    }
+
+    /**
+     * @return 读取的词数量
+     */
+    @SuppressWarnings("unchecked")
+    private int readChildren(Node<V> parent, ByteBuffer buffer, Object[] values) {
+        int childCount = buffer.getInt();
+        if (childCount < 0 || childCount > buffer.remaining() / NODE_BYTES) {
+            throw new IllegalArgumentException("trie data is invalid, child count: " + childCount);
+        }
+        int words = 0;
+        for (int i = 0; i < childCount; i++) {
+            char c = buffer.getChar();
+            int index = buffer.getInt();
+            if (index < -1 || index >= values.length) {
+                throw new IllegalArgumentException("trie data is invalid, value index: " + index + ", values length: "
+                        + values.length);
+            }
+            Node<V> node = index < 0 ? nodeFactory.createNormalNode(c) : nodeFactory.createChildNode(c, (V) values[index]);
+            parent.addChild(node);
+            words += readChildren(node, buffer, values);
+            if (index >= 0) {
+                words++;
+                if (node.haveChild()) node.status = Node.Status.WORD;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * 模糊查询的深度优先遍历, 通过{@link Node#childHandle(NodeChildHandle)}递归
+     */
+    private static final class FuzzyWalker<V> implements NodeChildHandle<V> {
+
+        private final LevenshteinRows rows;
+
+        private final boolean reverseKey;
+
+        private final List<FuzzyHit<V>> result = new ArrayList<>();
+
+        private char[] key = new char[16];
+
+        private int depth;
+
+        FuzzyWalker(LevenshteinRows rows, boolean reverseKey) {
+            this.rows = rows;
+            this.reverseKey = reverseKey;
+        }
+
+        @Override
+        public boolean onHandle(Node<V> child) {
+            int d = depth + 1;
+            if (!rows.compute(d, child.c)) return true;
+            if (d > key.length) key = Arrays.copyOf(key, key.length << 1);
+            key[depth] = child.c;
+            if (child.accept() && rows.accept(d)) {
+                String word = reverseKey ? NlpUtils.reverseString(new String(key, 0, d)) : new String(key, 0, d);
+                result.add(new FuzzyHit<>(word, child.value, rows.distance(d)));
+            }
+            depth = d;
+            child.childHandle(this);
+            depth = d - 1;
+            return true;
+        }
+    }
+
+    /**
+     * 前缀游标, 通过节点栈深度优先遍历, {@link #indexes}记录每一层下一个要访问的子节点下标
+     */
+    private static final class PrefixCursor<V> extends TrieCursor<V> {
+
+        private NormalNode<?>[] nodes = new NormalNode<?>[8];
+
+        private int[] indexes = new int[8];
+
+        private int depth;
+
+        /**
+         * 前缀节点本身是否已经处理
+         */
+        private boolean started;
+
+        private V value;
+
+        PrefixCursor(char[] prefix, NormalNode<V> prefixNode, boolean reverseKey) {
+            super(prefix.length + 8, reverseKey);
+            System.arraycopy(prefix, 0, keyBuffer, 0, prefix.length);
+            keyLength = prefix.length;
+            push(prefixNode);
+        }
+
+        private void push(NormalNode<?> node) {
+            if (depth == nodes.length) {
+                nodes = Arrays.copyOf(nodes, depth << 1);
+                indexes = Arrays.copyOf(indexes, depth << 1);
+            }
+            nodes[depth] = node;
+            indexes[depth] = 0;
+            depth++;
+        }
+
+        private void pushChild(NormalNode<?> child) {
+            ensureKeyCapacity(keyLength + 1);
+            keyBuffer[keyLength++] = child.c;
+            push(child);
+        }
+
+        /**
+         * 定位到afterKey之后, afterKey所在的路径入栈, 每一层的下标指向afterKey对应子节点的下一个,
+         * 路径中断的那一层下标指向afterKey的字符应该插入的位置
+         *
+         * @param afterKey 树中存储的key, 需要以前缀开头
+         */
+        void seekAfter(char[] afterKey) {
+            int prefixLen = keyLength;
+            if (afterKey.length < prefixLen || !equals(afterKey, keyBuffer, prefixLen)) {
+                throw new IllegalArgumentException("afterKey: " + String.valueOf(afterKey) + " should start with prefix: "
+                        + String.valueOf(keyBuffer, 0, prefixLen));
+            }
+            //前缀节点在所有以其开头的key之前
+            started = true;
+            for (int i = prefixLen; i < afterKey.length; i++) {
+                NormalNode<?> top = nodes[depth - 1];
+                int index = top.childCount == 0 ? ~0 : Node.binarySearch(top.children, 0, top.childCount, afterKey[i]);
+                if (index < 0) {
+                    indexes[depth - 1] = ~index;
+                    return;
+                }
+                indexes[depth - 1] = index + 1;
+                NormalNode<?> child = (NormalNode<?>) top.children[index];
+                if (child.status == Node.Status.DELETE) return;
+                pushChild(child);
+            }
+        }
+
+        private static boolean equals(char[] a, char[] b, int len) {
+            for (int i = 0; i < len; i++) {
+                if (a[i] != b[i]) return false;
+            }
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        protected boolean advance() {
+            if (!started) {
+                started = true;
+                if (nodes[0].accept()) {
+                    value = (V) nodes[0].value;
+                    return true;
+                }
+            }
+            while (depth > 0) {
+                NormalNode<?> top = nodes[depth - 1];
+                int i = indexes[depth - 1];
+                while (i < top.childCount && top.children[i].status == Node.Status.DELETE) i++;
+                if (i >= top.childCount) {
+                    //该节点遍历完, 出栈, 前缀节点对应的key不删除
+                    nodes[--depth] = null;
+                    if (depth > 0) keyLength--;
+                    continue;
+                }
+                indexes[depth - 1] = i + 1;
+                NormalNode<?> child = (NormalNode<?>) top.children[i];
+                pushChild(child);
+                if (child.accept()) {
+                    value = (V) child.value;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public V value() {
+            return value;
+        }
+    }
 }
@@ -0,0 +1,29 @@
+package com.tqmall.search.commons.trie;
+
+/**
+ * Created by xing on 26/10/16.
+ * 支持前缀遍历游标的trie树, 从{@link Trie}中单独拆出来, 已有的{@link Trie}实现不需要实现游标
+ *
+ * @author xing
+ * @see TrieCursor
+ */
+public interface CursorTrie<V> extends Trie<V> {
+
+    /**
+     * 前缀遍历游标, 结果同{@link #prefixSearch(String)}, 但是按需遍历, 可以{@link TrieCursor#skip(int)}, {@link TrieCursor#limit(int)}
+     *
+     * @param prefix 前缀
+     * @return 如果前缀不存在节点, 返回null
+     * @see TrieCursor
+     */
+    TrieCursor<V> prefixIterator(String prefix);
+
+    /**
+     * 从afterKey之后继续遍历前缀下的词, 用于分页
+     *
+     * @param prefix   前缀
+     * @param afterKey 之前游标返回的key, 遍历从该key之后的词开始, 不需要该词存在, 为null则从头开始
+     * @return 如果前缀不存在节点, 返回null
+     */
+    TrieCursor<V> prefixIterator(String prefix, String afterKey);
+}
@@ -0,0 +1,578 @@
+package com.tqmall.search.commons.trie;
+
+import com.tqmall.search.commons.nlp.NlpUtils;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeSet;
+
+/**
+ * Created by xing on 26/10/16.
+ * 最小化的有向无环词图(DAWG, 也叫DAFSA), 论文: Incremental Construction of Minimal Acyclic Finite-State Automata
+ * 不同于{@link BinaryTrie}只共享前缀, 后缀相同的状态也合并为一个, 比如"...地铁站", "...有限公司"这些公共后缀只存储一次
+ * <p/>
+ * 构造完成后只读, 所有状态的转移存储在几个数组中:
+ * 状态s的转移为[{@link #firstEdge}[s], {@link #firstEdge}[s + 1]), 转移字符从小到大排序, 二分查找
+ * 每个转移记录{@link #edgeRank}, 即从状态s出发, 在该转移之前(字典序更小)的词数, 沿着路径累加即为词的序号(最小完美hash),
+ * 词序号即词在字典序中的位置, 通过序号从{@link #values}中拿到value, 反过来通过序号也可以还原词
+ * <p/>
+ * 适合只需要判断是否存在或者value较少的大词库, 需要修改词库的话只能通过{@link Builder}重新构造
+ *
+ * @author xing
+ * @see Builder
+ * @see DoubleArrayTrie
+ */
+public class Dawg<V> {
+
+    private static final int ROOT_STATE = 0;
+
+    private final int[] firstEdge;
+
+    private final char[] edgeChars;
+
+    private final int[] edgeTargets;
+
+    private final int[] edgeRank;
+
+    private final BitSet finals;
+
+    /**
+     * 下标为词序号, 所有value都为null时为null, 不占用内存
+     */
+    private final Object[] values;
+
+    private final int size;
+
+    private final int maxWordLength;
+
+    Dawg(int[] firstEdge, char[] edgeChars, int[] edgeTargets, int[] edgeRank, BitSet finals, Object[] values,
+         int size, int maxWordLength) {
+        this.firstEdge = firstEdge;
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+        this.edgeRank = edgeRank;
+        this.finals = finals;
+        this.values = values;
+        this.size = size;
+        this.maxWordLength = maxWordLength;
+    }
+
+    /**
+     * @return 状态s通过字符c的转移下标, 不存在返回-1
+     */
+    private int edge(int state, char c) {
+        int low = firstEdge[state], high = firstEdge[state + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char midChar = edgeChars[mid];
+            if (midChar < c) low = mid + 1;
+            else if (midChar > c) high = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    /**
+     * 词序号, 即最小完美hash, 参数数组不做数组越界检查
+     *
+     * @return 不存在返回-1
+     */
+    public final int wordIndex(char[] key, int off, int len) {
+        int state = ROOT_STATE, index = 0;
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            int e = edge(state, key[i]);
+            if (e < 0) return -1;
+            index += edgeRank[e];
+            state = edgeTargets[e];
+        }
+        return finals.get(state) ? index : -1;
+    }
+
+    public final int wordIndex(String word) {
+        char[] charArray = NlpUtils.stringToCharArray(word);
+        return charArray == null ? -1 : wordIndex(charArray, 0, charArray.length);
+    }
+
+    public final boolean contains(char[] key, int off, int len) {
+        return len > 0 && wordIndex(key, off, len) >= 0;
+    }
+
+    public final boolean contains(String word) {
+        return wordIndex(word) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public final V getValue(int wordIndex) {
+        if (wordIndex < 0 || wordIndex >= size) {
+            throw new IndexOutOfBoundsException("wordIndex: " + wordIndex + ", size: " + size);
+        }
+        return values == null ? null : (V) values[wordIndex];
+    }
+
+    /**
+     * @return 词不存在返回null
+     */
+    public final V getValue(String word) {
+        int wordIndex = wordIndex(word);
+        return wordIndex < 0 ? null : getValue(wordIndex);
+    }
+
+    /**
+     * 通过词序号还原词, 每个状态中找最后一个edgeRank不大于剩余序号的转移
+     */
+    public final String getWord(int wordIndex) {
+        if (wordIndex < 0 || wordIndex >= size) {
+            throw new IndexOutOfBoundsException("wordIndex: " + wordIndex + ", size: " + size);
+        }
+        StringBuilder sb = new StringBuilder();
+        int state = ROOT_STATE, remain = wordIndex;
+        while (!(remain == 0 && finals.get(state))) {
+            int low = firstEdge[state], high = firstEdge[state + 1] - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (edgeRank[mid] <= remain) low = mid;
+                else high = mid - 1;
+            }
+            remain -= edgeRank[low];
+            sb.append(edgeChars[low]);
+            state = edgeTargets[low];
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 前缀遍历, 结果按照字典序, 前缀下的词序号是连续的, value直接按照序号获取
+     *
+     * @return 前缀不存在返回null
+     * @see TrieCursor
+     */
+    public TrieCursor<V> prefixIterator(String prefix) {
+        char[] charArray = NlpUtils.stringToCharArray(prefix);
+        if (charArray == null) return null;
+        int state = ROOT_STATE, index = 0;
+        for (char c : charArray) {
+            int e = edge(state, c);
+            if (e < 0) return null;
+            index += edgeRank[e];
+            state = edgeTargets[e];
+        }
+        return new PrefixCursor(charArray, state, index);
+    }
+
+    /**
+     * 词数
+     */
+    public final int size() {
+        return size;
+    }
+
+    /**
+     * 最小化之后的状态数
+     */
+    public final int stateCount() {
+        return firstEdge.length - 1;
+    }
+
+    /**
+     * 转移数
+     */
+    public final int edgeCount() {
+        return edgeChars.length;
+    }
+
+    public final int getMaxWordLength() {
+        return maxWordLength;
+    }
+
+    /**
+     * 写入Dawg结构, 不包括value, value由调用方自行序列化, 通过{@link #readFrom(ByteBuffer, Object[])}读取
+     *
+     * @see #readFrom(ByteBuffer, Object[])
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        out.writeInt(maxWordLength);
+        NlpUtils.writeIntBuffer(out, IntBuffer.wrap(firstEdge));
+        out.writeInt(edgeChars.length);
+        for (char c : edgeChars) {
+            out.writeChar(c);
+        }
+        NlpUtils.writeIntBuffer(out, IntBuffer.wrap(edgeTargets));
+        NlpUtils.writeIntBuffer(out, IntBuffer.wrap(edgeRank));
+        long[] finalWords = finals.toLongArray();
+        out.writeInt(finalWords.length);
+        for (long w : finalWords) {
+            out.writeLong(w);
+        }
+    }
+
+    /**
+     * 读取{@link #writeTo(DataOutput)}写入的Dawg结构, 各个数组整块复制到堆中, 不需要重新构造, 也不需要逐个词添加
+     *
+     * @param values 下标为词序号, 长度必须与词的数量一致, 为null表示没有value, 数组直接被引用, 不复制
+     * @throws IllegalArgumentException 数据长度不一致, 或者转移的目标状态超出范围
+     * @see #writeTo(DataOutput)
+     */
+    public static <V> Dawg<V> readFrom(ByteBuffer buffer, Object[] values) {
+        int size = buffer.getInt();
+        int maxWordLength = buffer.getInt();
+        int[] firstEdge = readIntArray(buffer);
+        int edgeCount = buffer.getInt();
+        if (edgeCount < 0 || edgeCount > (buffer.remaining() >> 1)) {
+            throw new IllegalArgumentException("dawg edge count: " + edgeCount + " is invalid, remaining bytes: "
+                    + buffer.remaining());
+        }
+        char[] edgeChars = new char[edgeCount];
+        buffer.asCharBuffer().get(edgeChars);
+        buffer.position(buffer.position() + (edgeCount << 1));
+        int[] edgeTargets = readIntArray(buffer);
+        int[] edgeRank = readIntArray(buffer);
+        int finalCount = buffer.getInt();
+        if (finalCount < 0 || finalCount > (buffer.remaining() >> 3)) {
+            throw new IllegalArgumentException("dawg finals length: " + finalCount + " is invalid, remaining bytes: "
+                    + buffer.remaining());
+        }
+        ByteBuffer slice = buffer.slice();
+        slice.limit(finalCount << 3);
+        buffer.position(buffer.position() + (finalCount << 3));
+        BitSet finals = BitSet.valueOf(slice.asLongBuffer());
+        int stateCount = firstEdge.length - 1;
+        if (size < 0 || maxWordLength < 0 || stateCount <= ROOT_STATE || firstEdge[stateCount] != edgeCount
+                || edgeTargets.length != edgeCount || edgeRank.length != edgeCount
+                || (values != null && values.length != size)) {
+            throw new IllegalArgumentException("dawg data is invalid, size: " + size + ", state count: " + stateCount
+                    + ", edge count: " + edgeCount + ", targets length: " + edgeTargets.length + ", rank length: "
+                    + edgeRank.length);
+        }
+        //状态按照拓扑序编号, 转移的目标状态总是比当前状态大
+        for (int i = 0; i < stateCount; i++) {
+            if (firstEdge[i] < 0 || firstEdge[i] > firstEdge[i + 1]) {
+                throw new IllegalArgumentException("dawg data is invalid, state: " + i + " first edge: " + firstEdge[i]);
+            }
+            for (int e = firstEdge[i]; e < firstEdge[i + 1]; e++) {
+                if (edgeTargets[e] <= i || edgeTargets[e] >= stateCount) {
+                    throw new IllegalArgumentException("dawg data is invalid, edge: " + e + " target: " + edgeTargets[e]
+                            + " is out of state count: " + stateCount);
+                }
+            }
+        }
+        return new Dawg<>(firstEdge, edgeChars, edgeTargets, edgeRank, finals, values, size, maxWordLength);
+    }
+
+    private static int[] readIntArray(ByteBuffer buffer) {
+        IntBuffer intBuffer = NlpUtils.readIntBuffer(buffer);
+        int[] array = new int[intBuffer.limit()];
+        intBuffer.get(array);
+        return array;
+    }
+
+    @Override
+    public String toString() {
+        return "Dawg{size=" + size + ", stateCount=" + stateCount() + ", edgeCount=" + edgeCount() + '}';
+    }
+
+    public static <V> Builder<V> build() {
+        return new Builder<>();
+    }
+
+    public static <V> Dawg<V> valueOf(SortedMap<String, ? extends V> sortedMap) {
+        if (sortedMap.comparator() != null) {
+            throw new IllegalArgumentException("sortedMap should use natural ordering");
+        }
+        Builder<V> builder = build();
+        for (Map.Entry<String, ? extends V> e : sortedMap.entrySet()) {
+            builder.add(e.getKey(), e.getValue());
+        }
+        return builder.create();
+    }
+
+    /**
+     * 只需要判断是否存在的词库, 词不需要有序
+     */
+    public static Dawg<Void> valueOf(Collection<String> words) {
+        Builder<Void> builder = build();
+        for (String word : new TreeSet<>(words)) {
+            builder.add(word, null);
+        }
+        return builder.create();
+    }
+
+    /**
+     * 深度优先遍历前缀状态下的词
+     */
+    private final class PrefixCursor extends TrieCursor<V> {
+
+        private int[] states = new int[8];
+
+        private int[] edges = new int[8];
+
+        private int depth;
+
+        private boolean started;
+
+        private int wordIndex;
+
+        PrefixCursor(char[] prefix, int prefixState, int prefixIndex) {
+            super(Math.max(prefix.length, maxWordLength), false);
+            System.arraycopy(prefix, 0, keyBuffer, 0, prefix.length);
+            keyLength = prefix.length;
+            states[0] = prefixState;
+            edges[0] = firstEdge[prefixState];
+            depth = 1;
+            //第一个词的序号减1, 每返回一个词加1
+            wordIndex = prefixIndex - 1;
+        }
+
+        @Override
+        protected boolean advance() {
+            if (!started) {
+                started = true;
+                if (finals.get(states[0])) {
+                    wordIndex++;
+                    return true;
+                }
+            }
+            while (depth > 0) {
+                int state = states[depth - 1];
+                int e = edges[depth - 1];
+                if (e >= firstEdge[state + 1]) {
+                    if (--depth > 0) keyLength--;
+                    continue;
+                }
+                edges[depth - 1] = e + 1;
+                int target = edgeTargets[e];
+                if (depth == states.length) {
+                    states = Arrays.copyOf(states, depth << 1);
+                    edges = Arrays.copyOf(edges, depth << 1);
+                }
+                states[depth] = target;
+                edges[depth] = firstEdge[target];
+                depth++;
+                ensureKeyCapacity(keyLength + 1);
+                keyBuffer[keyLength++] = edgeChars[e];
+                if (finals.get(target)) {
+                    wordIndex++;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public V value() {
+            return getValue(wordIndex);
+        }
+    }
+
+    /**
+     * 增量构造, 词需要按照字典序({@link String#compareTo(String)})从小到大添加
+     * 添加新词时, 上一个词与新词公共前缀之后的状态已经不会再修改, 从后向前与已经注册的等价状态合并, 所以构造过程中的内存只有
+     * 最小化之后的状态以及当前词路径上的状态
+     * <p/>
+     * 非线程安全
+     */
+    public static class Builder<V> {
+
+        private final BuildState root = new BuildState();
+
+        /**
+         * 已经最小化的状态, key, value为同一个对象, 通过{@link BuildState#equals(Object)}找等价的状态
+         */
+        private final Map<BuildState, BuildState> register = new HashMap<>();
+
+        private final List<Object> values = new ArrayList<>();
+
+        private boolean hasValue;
+
+        private String preWord;
+
+        private int maxWordLength;
+
+        private boolean created;
+
+        /**
+         * 添加词
+         *
+         * @throws IllegalArgumentException 词为空或者不比上一个词大
+         */
+        public Builder<V> add(String word, V value) {
+            if (created) {
+                throw new IllegalStateException("Dawg has been created, can not add word");
+            }
+            if (word == null || word.isEmpty()) {
+                throw new IllegalArgumentException("word can not be empty");
+            }
+            int commonLen = 0;
+            if (preWord != null) {
+                if (word.compareTo(preWord) <= 0) {
+                    throw new IllegalArgumentException("word: " + word + " should be greater than previous word: " + preWord);
+                }
+                int n = Math.min(word.length(), preWord.length());
+                while (commonLen < n && word.charAt(commonLen) == preWord.charAt(commonLen)) commonLen++;
+            }
+            BuildState state = root;
+            for (int i = 0; i < commonLen; i++) {
+                state = state.lastChild();
+            }
+            if (state.childCount > 0) replaceOrRegister(state);
+            for (int i = commonLen; i < word.length(); i++) {
+                state = state.addChild(word.charAt(i));
+            }
+            state.accept = true;
+            values.add(value);
+            if (value != null) hasValue = true;
+            preWord = word;
+            maxWordLength = Math.max(maxWordLength, word.length());
+            return this;
+        }
+
+        private static void postOrder(BuildState state, Map<BuildState, Boolean> visited, List<BuildState> order) {
+            visited.put(state, Boolean.TRUE);
+            for (int i = 0; i < state.childCount; i++) {
+                if (!visited.containsKey(state.children[i])) postOrder(state.children[i], visited, order);
+            }
+            order.add(state);
+        }
+
+        /**
+         * state最后一个子节点之后的状态已经不会再修改, 从后向前替换为已经注册的等价状态
+         */
+        private void replaceOrRegister(BuildState state) {
+            BuildState child = state.lastChild();
+            if (child.childCount > 0) replaceOrRegister(child);
+            BuildState registered = register.get(child);
+            if (registered != null) {
+                state.children[state.childCount - 1] = registered;
+            } else {
+                register.put(child, child);
+            }
+        }
+
+        public Dawg<V> create() {
+            if (created) {
+                throw new IllegalStateException("Dawg has been created");
+            }
+            created = true;
+            if (root.childCount > 0) replaceOrRegister(root);
+            register.clear();
+            //按照后序遍历的逆序编号, 即拓扑序, root编号为0, 子状态的编号总是比父状态大
+            List<BuildState> states = new ArrayList<>();
+            postOrder(root, new IdentityHashMap<BuildState, Boolean>(), states);
+            Collections.reverse(states);
+            Map<BuildState, Integer> ids = new IdentityHashMap<>();
+            int edgeCount = 0;
+            for (BuildState s : states) {
+                ids.put(s, ids.size());
+                edgeCount += s.childCount;
+            }
+            int stateCount = states.size();
+            int[] firstEdge = new int[stateCount + 1];
+            char[] edgeChars = new char[edgeCount];
+            int[] edgeTargets = new int[edgeCount];
+            int[] edgeRank = new int[edgeCount];
+            BitSet finals = new BitSet(stateCount);
+            int e = 0;
+            for (int i = 0; i < stateCount; i++) {
+                BuildState s = states.get(i);
+                firstEdge[i] = e;
+                if (s.accept) finals.set(i);
+                for (int j = 0; j < s.childCount; j++, e++) {
+                    edgeChars[e] = s.chars[j];
+                    edgeTargets[e] = ids.get(s.children[j]);
+                }
+            }
+            firstEdge[stateCount] = e;
+            //从后向前可以算出每个状态下的词数
+            int[] wordCount = new int[stateCount];
+            for (int i = stateCount - 1; i >= 0; i--) {
+                int count = finals.get(i) ? 1 : 0;
+                for (int k = firstEdge[i]; k < firstEdge[i + 1]; k++) {
+                    edgeRank[k] = count;
+                    count += wordCount[edgeTargets[k]];
+                }
+                wordCount[i] = count;
+            }
+            Object[] valueArray = hasValue ? values.toArray() : null;
+            values.clear();
+            return new Dawg<>(firstEdge, edgeChars, edgeTargets, edgeRank, finals, valueArray, wordCount[ROOT_STATE],
+                    maxWordLength);
+        }
+    }
+
+    /**
+     * 构造过程中的状态, 注册之后不再修改, 等价判断: accept相同, 转移字符相同并且转移到同一个已注册的状态
+     */
+    private static final class BuildState {
+
+        private char[] chars;
+
+        private BuildState[] children;
+
+        private int childCount;
+
+        private boolean accept;
+
+        private int hash;
+
+        BuildState lastChild() {
+            return children[childCount - 1];
+        }
+
+        BuildState addChild(char c) {
+            if (children == null) {
+                chars = new char[2];
+                children = new BuildState[2];
+            } else if (childCount == children.length) {
+                chars = Arrays.copyOf(chars, childCount << 1);
+                children = Arrays.copyOf(children, childCount << 1);
+            }
+            BuildState child = new BuildState();
+            chars[childCount] = c;
+            children[childCount++] = child;
+            return child;
+        }
+
+        /**
+         * 状态不再修改之后才会计算hash, 计算之后缓存
+         */
+        private void computeHash() {
+            int h = accept ? 1 : 0;
+            for (int i = 0; i < childCount; i++) {
+                h = 31 * h + chars[i];
+                h = 31 * h + System.identityHashCode(children[i]);
+            }
+            hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            if (hash == 0) computeHash();
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof BuildState)) return false;
+            BuildState other = (BuildState) o;
+            if (accept != other.accept || childCount != other.childCount) return false;
+            for (int i = 0; i < childCount; i++) {
+                if (chars[i] != other.chars[i] || children[i] != other.children[i]) return false;
+            }
+            return true;
+        }
+    }
+}
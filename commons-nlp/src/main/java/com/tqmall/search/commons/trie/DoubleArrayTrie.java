@@ -0,0 +1,789 @@
+package com.tqmall.search.commons.trie;
+
+import com.tqmall.search.commons.nlp.NlpUtils;
+import com.tqmall.search.commons.utils.CommonsUtils;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Created by xing on 26/10/16.
+ * 双数组Trie树, 论文: An Efficient Digital Search Algorithm by Using a Double-Array Structure
+ * 整个树只有{@link #base}, {@link #check}两个int数组, 子节点转移为O(1), 适合只读的大词库
+ * 数组通过{@link IntBuffer}访问, 构造出来的为堆上的数组, 通过{@link #readFrom(ByteBuffer, Object[])}读取的则直接是映射文件上的视图
+ * <p/>
+ * 状态s通过字符c转移到状态t = base[s] + c + 1, 当check[t] == s时转移有效, 词的结束通过编码为0的转移标记,
+ * 该位置的base为负数, 对应词的序号, 词序号即词在字典序中的位置, 通过序号可以从{@link #values}中拿到value
+ * <p/>
+ * 树构造完成后不能添加, 删除词, 对应的{@link #put(String, Object)}, {@link #remove(String)}抛出{@link UnsupportedOperationException},
+ * 只能通过{@link #updateValue(String, Object)}更新已有词的value, 需要修改词库的话只能通过{@link Builder}重新构造
+ *
+ * @author xing
+ * @see Builder
+ * @see #valueOf(Trie)
+ */
+public class DoubleArrayTrie<V> implements CursorTrie<V> {
+
+    /**
+     * 根节点状态
+     */
+    public static final int ROOT_STATE = 0;
+
+    /**
+     * 词结束的转移编码, 字符c的转移编码为c + 1
+     */
+    private static final int END_CODE = 0;
+
+    private final IntBuffer base;
+
+    private final IntBuffer check;
+
+    /**
+     * 下标为词序号
+     */
+    private final Object[] values;
+
+    /**
+     * 下标为词序号, 值为词结束转移的位置, 通过{@link #check}向上回溯可以还原词
+     */
+    private final IntBuffer wordTails;
+
+    /**
+     * 最长词的长度
+     */
+    private final int maxWordLength;
+
+    DoubleArrayTrie(IntBuffer base, IntBuffer check, Object[] values, IntBuffer wordTails, int maxWordLength) {
+        this.base = base;
+        this.check = check;
+        this.values = values;
+        this.wordTails = wordTails;
+        this.maxWordLength = maxWordLength;
+    }
+
+    /**
+     * 状态转移
+     *
+     * @param state 当前状态
+     * @param c     转移字符
+     * @return 转移之后的状态, 不存在返回-1
+     */
+    public final int transition(int state, char c) {
+        int t = base.get(state) + c + 1;
+        return t < check.limit() && check.get(t) == state ? t : -1;
+    }
+
+    /**
+     * 获取key对应的状态, 参数数组不做数组越界检查
+     *
+     * @return 不存在返回-1, len为0时返回{@link #ROOT_STATE}
+     */
+    public final int getState(char[] key, int off, int len) {
+        int state = ROOT_STATE;
+        int end = off + len;
+        for (int i = off; i < end && state >= 0; i++) {
+            state = transition(state, key[i]);
+        }
+        return state;
+    }
+
+    /**
+     * @return 状态对应的词序号, 如果该状态不是词的结尾, 返回-1
+     */
+    public final int wordIndex(int state) {
+        int t = base.get(state) + END_CODE;
+        return t >= 0 && t < check.limit() && check.get(t) == state && base.get(t) < 0 ? -base.get(t) - 1 : -1;
+    }
+
+    /**
+     * 该状态是否为一个词的结尾
+     */
+    public final boolean accept(int state) {
+        return wordIndex(state) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public final V getValue(int wordIndex) {
+        return (V) values[wordIndex];
+    }
+
+    /**
+     * 通过词序号还原词
+     */
+    public final String getWord(int wordIndex) {
+        char[] buffer = new char[maxWordLength];
+        int len = fillWord(wordIndex, buffer);
+        return new String(buffer, 0, len);
+    }
+
+    /**
+     * 词序号对应的词长度
+     */
+    public final int wordLength(int wordIndex) {
+        return depth(check.get(wordTails.get(wordIndex)));
+    }
+
+    /**
+     * 状态的深度, 即对应前缀的长度, 根节点为0
+     */
+    public final int depth(int state) {
+        int depth = 0;
+        while (state != ROOT_STATE) {
+            state = check.get(state);
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * 状态的父状态
+     */
+    public final int parent(int state) {
+        return check.get(state);
+    }
+
+    /**
+     * 转移到该状态的字符
+     */
+    public final char charOf(int state) {
+        return (char) (state - base.get(check.get(state)) - 1);
+    }
+
+    /**
+     * 双数组的容量, 所有状态都小于该值
+     */
+    public final int capacity() {
+        return check.limit();
+    }
+
+    /**
+     * 该位置是否为有效的状态, 词结束转移的位置不是状态
+     */
+    public final boolean isState(int pos) {
+        return pos == ROOT_STATE || (check.get(pos) >= 0 && base.get(pos) >= 0);
+    }
+
+    /**
+     * 最长词的长度
+     */
+    public final int getMaxWordLength() {
+        return maxWordLength;
+    }
+
+    /**
+     * 将词序号对应的词填充到buffer中
+     *
+     * @return 词的长度
+     */
+    private int fillWord(int wordIndex, char[] buffer) {
+        int state = check.get(wordTails.get(wordIndex));
+        int len = depth(state);
+        for (int i = len - 1; i >= 0; i--) {
+            buffer[i] = charOf(state);
+            state = check.get(state);
+        }
+        return len;
+    }
+
+    /**
+     * 比较词的前len个字符与key
+     */
+    private int comparePrefix(int wordIndex, char[] key, int len, char[] buffer) {
+        int wordLen = fillWord(wordIndex, buffer);
+        int n = Math.min(wordLen, len);
+        for (int i = 0; i < n; i++) {
+            if (buffer[i] != key[i]) return buffer[i] - key[i];
+        }
+        return n - len;
+    }
+
+    /**
+     * 词序号在字典序上的分布, 前缀为key的词序号是连续的
+     *
+     * @return 以key为前缀的词的序号区间 [ret[0], ret[1])
+     */
+    private int[] wordRange(char[] key, int len) {
+        char[] buffer = new char[maxWordLength];
+        int low = 0, high = wordTails.limit();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparePrefix(mid, key, len, buffer) < 0) low = mid + 1;
+            else high = mid;
+        }
+        int start = low;
+        high = wordTails.limit();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparePrefix(mid, key, len, buffer) <= 0) low = mid + 1;
+            else high = mid;
+        }
+        return new int[]{start, low};
+    }
+
+    /**
+     * 状态对应的前缀
+     */
+    private char[] prefixOf(int state) {
+        char[] prefix = new char[depth(state)];
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            prefix[i] = charOf(state);
+            state = check.get(state);
+        }
+        return prefix;
+    }
+
+    @Override
+    public boolean put(String key, V value) {
+        throw new UnsupportedOperationException("DoubleArrayTrie can't support put, please rebuild it by DoubleArrayTrie.Builder");
+    }
+
+    @Override
+    public boolean remove(String key) {
+        throw new UnsupportedOperationException("DoubleArrayTrie can't support remove, please rebuild it by DoubleArrayTrie.Builder");
+    }
+
+    /**
+     * 更新key对应的value, 如果key不存在直接返回false
+     *
+     * @return 是否执行了更新
+     */
+    public boolean updateValue(String key, V value) {
+        char[] charArray = NlpUtils.stringToCharArray(key);
+        if (charArray == null) return false;
+        int state = getState(charArray, 0, charArray.length);
+        int wordIndex;
+        if (state < 0 || (wordIndex = wordIndex(state)) < 0) return false;
+        values[wordIndex] = value;
+        return true;
+    }
+
+    @Override
+    public final Node<V> getNode(String key) {
+        char[] charArray = NlpUtils.stringToCharArray(key);
+        return charArray == null ? null : getNode(charArray, 0, charArray.length);
+    }
+
+    /**
+     * 返回的Node对象只是一个视图, 每次调用都会新建, 对性能有要求的地方直接使用{@link #getState(char[], int, int)}
+     *
+     * @see #getState(char[], int, int)
+     */
+    @Override
+    public final Node<V> getNode(char[] key, int off, int len) {
+        int state = getState(key, off, len);
+        return state < 0 ? null : new DoubleArrayNode<>(this, state);
+    }
+
+    @Override
+    public List<Map.Entry<String, V>> prefixSearch(String word) {
+        char[] charArray = NlpUtils.stringToCharArray(word);
+        if (charArray == null || getState(charArray, 0, charArray.length) < 0) return null;
+        return rangeWords(charArray);
+    }
+
+    private List<Map.Entry<String, V>> rangeWords(char[] prefix) {
+        int[] range = wordRange(prefix, prefix.length);
+        List<Map.Entry<String, V>> retList = new ArrayList<>(range[1] - range[0]);
+        for (int i = range[0]; i < range[1]; i++) {
+            retList.add(CommonsUtils.newImmutableMapEntry(getWord(i), getValue(i)));
+        }
+        return retList;
+    }
+
+    /**
+     * 前缀下的词序号是连续的, 游标直接遍历序号区间, 结果按照字典序
+     */
+    @Override
+    public TrieCursor<V> prefixIterator(String prefix) {
+        return prefixIterator(prefix, null);
+    }
+
+    @Override
+    public TrieCursor<V> prefixIterator(String prefix, String afterKey) {
+        char[] charArray = NlpUtils.stringToCharArray(prefix);
+        if (charArray == null || getState(charArray, 0, charArray.length) < 0) return null;
+        int[] range = wordRange(charArray, charArray.length);
+        int start = range[0];
+        char[] afterArray = NlpUtils.stringToCharArray(afterKey);
+        if (afterArray != null) {
+            //第一个大于afterKey的词
+            char[] buffer = new char[maxWordLength];
+            int high = range[1];
+            while (start < high) {
+                int mid = (start + high) >>> 1;
+                if (compareWord(mid, afterArray, buffer) <= 0) start = mid + 1;
+                else high = mid;
+            }
+        }
+        return new RangeCursor(start, range[1]);
+    }
+
+    /**
+     * 模糊查询, 获取与word编辑距离不超过maxDistance的词, 一次遍历完成
+     * 按照字典序遍历词, 与上一个词的公共前缀部分复用已经计算的DP行, 某个前缀的行已经超过maxDistance, 则通过{@link #wordRange(char[], int)}
+     * 跳过该前缀下的所有词
+     *
+     * @param word        查询词
+     * @param maxDistance 最大编辑距离
+     * @return 按照编辑距离从小到大排序, word为空返回null
+     * @see LevenshteinRows
+     */
+    public List<FuzzyHit<V>> fuzzySearch(String word, int maxDistance) {
+        char[] query = NlpUtils.stringToCharArray(word);
+        if (query == null) return null;
+        LevenshteinRows rows = new LevenshteinRows(query, maxDistance);
+        List<FuzzyHit<V>> result = new ArrayList<>();
+        char[] key = new char[maxWordLength], buffer = new char[maxWordLength];
+        //key中前validDepth个字符对应的DP行已经计算
+        int validDepth = 0;
+        int wordIndex = 0;
+        while (wordIndex < wordTails.limit()) {
+            int len = fillWord(wordIndex, buffer);
+            int depth = 0;
+            while (depth < validDepth && depth < len && key[depth] == buffer[depth]) depth++;
+            char[] tmp = key;
+            key = buffer;
+            buffer = tmp;
+            boolean pruned = false;
+            while (depth < len) {
+                if (!rows.compute(depth + 1, key[depth])) {
+                    pruned = true;
+                    break;
+                }
+                depth++;
+            }
+            validDepth = depth;
+            if (pruned) {
+                //前缀key[0, depth]下的词都不满足, 直接跳过
+                wordIndex = wordRange(key, depth + 1)[1];
+            } else {
+                if (rows.accept(len)) {
+                    result.add(new FuzzyHit<>(new String(key, 0, len), getValue(wordIndex), rows.distance(len)));
+                }
+                wordIndex++;
+            }
+        }
+        Collections.sort(result, FuzzyHit.DISTANCE_COMPARATOR);
+        return result;
+    }
+
+    /**
+     * 比较词序号对应的词与key
+     */
+    private int compareWord(int wordIndex, char[] key, char[] buffer) {
+        int cmp = comparePrefix(wordIndex, key, key.length, buffer);
+        return cmp != 0 ? cmp : wordLength(wordIndex) - key.length;
+    }
+
+    @Override
+    public int size() {
+        return wordTails.limit();
+    }
+
+    /**
+     * 双数组Trie树只读, 不需要清理, 直接释放对象引用即可
+     */
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("DoubleArrayTrie is read-only, just release the reference");
+    }
+
+    @Override
+    public Node<V> getRoot() {
+        return new DoubleArrayNode<>(this, ROOT_STATE);
+    }
+
+    /**
+     * 写入双数组结构, 不包括value, value由调用方自行序列化, 通过{@link #readFrom(ByteBuffer, Object[])}读取
+     *
+     * @see #readFrom(ByteBuffer, Object[])
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(maxWordLength);
+        NlpUtils.writeIntBuffer(out, base);
+        NlpUtils.writeIntBuffer(out, check);
+        NlpUtils.writeIntBuffer(out, wordTails);
+    }
+
+    /**
+     * 读取{@link #writeTo(DataOutput)}写入的双数组结构, 不需要重新构造
+     * 各个数组直接使用buffer上的视图, 不复制到堆中, buffer为{@link java.nio.MappedByteBuffer}时, 返回的树持有该映射
+     *
+     * @param values 下标为词序号, 长度必须与词的数量一致, 数组直接被引用, 不复制
+     * @throws IllegalArgumentException 数据长度不一致, 或者词结束的位置超出数组范围
+     * @see #writeTo(DataOutput)
+     */
+    public static <V> DoubleArrayTrie<V> readFrom(ByteBuffer buffer, Object[] values) {
+        int maxWordLength = buffer.getInt();
+        IntBuffer base = NlpUtils.readIntBuffer(buffer);
+        IntBuffer check = NlpUtils.readIntBuffer(buffer);
+        IntBuffer wordTails = NlpUtils.readIntBuffer(buffer);
+        if (maxWordLength < 0 || base.limit() != check.limit() || values.length != wordTails.limit()) {
+            throw new IllegalArgumentException("double array data is invalid, base length: " + base.limit()
+                    + ", check length: " + check.limit() + ", word count: " + wordTails.limit() + ", values length: "
+                    + values.length + ", max word length: " + maxWordLength);
+        }
+        for (int i = 0; i < wordTails.limit(); i++) {
+            int tail = wordTails.get(i);
+            if (tail <= ROOT_STATE || tail >= check.limit()) {
+                throw new IllegalArgumentException("double array data is invalid, word: " + i + " tail: " + tail
+                        + " is out of capacity: " + check.limit());
+            }
+        }
+        return new DoubleArrayTrie<>(base, check, values, wordTails, maxWordLength);
+    }
+
+    /**
+     * 通过已有的Trie树构造, 比如{@link BinaryTrie}
+     * 注意: 对于{@link com.tqmall.search.commons.match.MatchBinaryReverseTrie}, 节点中存储的是逆序的词, 构造出来的也是逆序的
+     */
+    public static <V> DoubleArrayTrie<V> valueOf(Trie<V> trie) {
+        return DoubleArrayTrie.<V>build().putAll(trie).create();
+    }
+
+    /**
+     * 通过排好序的词构造, 空的key忽略
+     *
+     * @param sortedMap key必须是自然排序
+     */
+    public static <V> DoubleArrayTrie<V> valueOf(SortedMap<String, ? extends V> sortedMap) {
+        Objects.requireNonNull(sortedMap);
+        if (sortedMap.comparator() != null) {
+            throw new IllegalArgumentException("sortedMap must use natural ordering of key");
+        }
+        List<char[]> keys = new ArrayList<>(sortedMap.size());
+        List<Object> values = new ArrayList<>(sortedMap.size());
+        for (Map.Entry<String, ? extends V> e : sortedMap.entrySet()) {
+            if (e.getKey().isEmpty()) continue;
+            keys.add(e.getKey().toCharArray());
+            values.add(e.getValue());
+        }
+        return new Compiler(keys.toArray(new char[keys.size()][])).compile(values.toArray());
+    }
+
+    public static <V> Builder<V> build() {
+        return new Builder<>();
+    }
+
+    public static class Builder<V> {
+
+        private final TreeMap<String, V> dataMap = new TreeMap<>();
+
+        public Builder<V> put(String key, V value) {
+            dataMap.put(key, value);
+            return this;
+        }
+
+        public Builder<V> putAll(Map<String, ? extends V> m) {
+            dataMap.putAll(m);
+            return this;
+        }
+
+        /**
+         * 添加trie树中的所有词
+         *
+         * @see NlpUtils#collectWords(Trie, Map)
+         */
+        public Builder<V> putAll(Trie<V> trie) {
+            NlpUtils.collectWords(trie, dataMap);
+            return this;
+        }
+
+        public Builder<V> remove(String key) {
+            dataMap.remove(key);
+            return this;
+        }
+
+        public DoubleArrayTrie<V> create() {
+            return valueOf(dataMap);
+        }
+    }
+
+    /**
+     * 双数组构造, keys必须是有序, 不重复的
+     */
+    static final class Compiler {
+
+        private final char[][] keys;
+
+        private final int[] wordTails;
+
+        private int[] base;
+
+        private int[] check;
+
+        /**
+         * 已经使用的base值, 保证不同的状态base值不同
+         */
+        private final BitSet usedBase = new BitSet();
+
+        private int nextCheckPos;
+
+        private int maxPos;
+
+        Compiler(char[][] keys) {
+            this.keys = keys;
+            this.wordTails = new int[keys.length];
+            base = new int[0];
+            check = new int[0];
+            ensureCapacity(Math.max(keys.length * 2, Character.MAX_VALUE + 2));
+        }
+
+        /**
+         * 数组扩容, 每次至少扩展原先的一半
+         */
+        private void ensureCapacity(int minSize) {
+            int oldSize = base.length;
+            if (minSize <= oldSize) return;
+            int newSize = Math.max(minSize, oldSize + (oldSize >> 1));
+            base = Arrays.copyOf(base, newSize);
+            check = Arrays.copyOf(check, newSize);
+            Arrays.fill(check, oldSize, newSize, -1);
+        }
+
+        <V> DoubleArrayTrie<V> compile(Object[] values) {
+            check[ROOT_STATE] = ROOT_STATE;
+            usedBase.set(0);
+            nextCheckPos = 1;
+            int maxWordLength = 0;
+            for (char[] k : keys) {
+                if (k.length > maxWordLength) maxWordLength = k.length;
+            }
+            if (keys.length > 0) {
+                int rootBase = insert(ROOT_STATE, 0, 0, keys.length);
+                base[ROOT_STATE] = rootBase;
+            }
+            int size = maxPos + 1;
+            return new DoubleArrayTrie<>(IntBuffer.wrap(Arrays.copyOf(base, size)),
+                    IntBuffer.wrap(Arrays.copyOf(check, size)), values, IntBuffer.wrap(wordTails), maxWordLength);
+        }
+
+        /**
+         * 插入状态parent的所有子节点, [left, right)区间的词都以状态parent对应的前缀开始
+         *
+         * @return 状态parent的base值
+         */
+        private int insert(int parent, int depth, int left, int right) {
+            int[] codes = new int[8];
+            int[] lefts = new int[8];
+            int n = 0;
+            for (int i = left; i < right; i++) {
+                int code = keys[i].length == depth ? END_CODE : keys[i][depth] + 1;
+                if (n > 0 && code < codes[n - 1]) {
+                    throw new IllegalArgumentException("the keys is not sorted, key: " + String.valueOf(keys[i]));
+                }
+                if (n == 0 || code != codes[n - 1]) {
+                    if (n == codes.length) {
+                        codes = Arrays.copyOf(codes, n * 2);
+                        lefts = Arrays.copyOf(lefts, n * 2);
+                    }
+                    codes[n] = code;
+                    lefts[n] = i;
+                    n++;
+                } else if (code == END_CODE) {
+                    throw new IllegalArgumentException("the key is duplicate, key: " + String.valueOf(keys[i]));
+                }
+            }
+            int begin = findBegin(codes, n);
+            for (int i = 0; i < n; i++) {
+                check[begin + codes[i]] = parent;
+            }
+            for (int i = 0; i < n; i++) {
+                int pos = begin + codes[i];
+                if (codes[i] == END_CODE) {
+                    base[pos] = -lefts[i] - 1;
+                    wordTails[lefts[i]] = pos;
+                } else {
+                    //insert过程中数组可能扩容, 先用局部变量接收, 避免写到扩容前的数组
+                    int childBase = insert(pos, depth + 1, lefts[i], i + 1 < n ? lefts[i + 1] : right);
+                    base[pos] = childBase;
+                }
+            }
+            return begin;
+        }
+
+        private int findBegin(int[] codes, int n) {
+            int pos = Math.max(codes[0] + 1, nextCheckPos) - 1;
+            int nonZeroNum = 0;
+            boolean first = true;
+            int begin;
+            outer:
+            while (true) {
+                pos++;
+                ensureCapacity(pos + 1);
+                if (check[pos] >= 0) {
+                    nonZeroNum++;
+                    continue;
+                } else if (first) {
+                    nextCheckPos = pos;
+                    first = false;
+                }
+                begin = pos - codes[0];
+                ensureCapacity(begin + codes[n - 1] + 1);
+                if (usedBase.get(begin)) continue;
+                for (int i = 1; i < n; i++) {
+                    if (check[begin + codes[i]] >= 0) continue outer;
+                }
+                break;
+            }
+            //前面的位置基本都已经占用了, 下次就从这儿开始找吧
+            if (nonZeroNum >= 0.95 * (pos - nextCheckPos + 1)) {
+                nextCheckPos = pos;
+            }
+            usedBase.set(begin);
+            maxPos = Math.max(maxPos, begin + codes[n - 1]);
+            return begin;
+        }
+    }
+
+    /**
+     * 遍历词序号区间 [wordIndex, end) 的游标
+     */
+    private final class RangeCursor extends TrieCursor<V> {
+
+        private int wordIndex;
+
+        private final int end;
+
+        private V value;
+
+        RangeCursor(int start, int end) {
+            super(maxWordLength, false);
+            this.wordIndex = start;
+            this.end = end;
+        }
+
+        @Override
+        protected boolean advance() {
+            if (wordIndex >= end) return false;
+            keyLength = fillWord(wordIndex, keyBuffer);
+            value = getValue(wordIndex);
+            wordIndex++;
+            return true;
+        }
+
+        @Override
+        public V value() {
+            return value;
+        }
+    }
+
+    /**
+     * 双数组Trie树的节点视图, 只读
+     */
+    static class DoubleArrayNode<V> extends Node<V> {
+
+        private final DoubleArrayTrie<V> trie;
+
+        private final int state;
+
+        DoubleArrayNode(DoubleArrayTrie<V> trie, int state) {
+            super(state == ROOT_STATE ? '\0' : trie.charOf(state), statusOf(trie, state), valueOf(trie, state));
+            this.trie = trie;
+            this.state = state;
+        }
+
+        private static <V> V valueOf(DoubleArrayTrie<V> trie, int state) {
+            int wordIndex = trie.wordIndex(state);
+            return wordIndex < 0 ? null : trie.getValue(wordIndex);
+        }
+
+        private static Status statusOf(DoubleArrayTrie<?> trie, int state) {
+            int wordIndex = trie.wordIndex(state);
+            if (wordIndex < 0) return Status.NORMAL;
+            //词是有序的, 如果后面的词不在该节点下面, 则为叶子节点
+            int next = wordIndex + 1;
+            if (next == trie.size()) return Status.LEAF_WORD;
+            int s = trie.check.get(trie.wordTails.get(next));
+            while (s != ROOT_STATE && s != state) {
+                s = trie.check.get(s);
+            }
+            return s == state ? Status.WORD : Status.LEAF_WORD;
+        }
+
+        @Override
+        public boolean addChild(Node<V> node) {
+            throw new UnsupportedOperationException("DoubleArrayTrie node is read-only");
+        }
+
+        @Override
+        public Node<V> getChild(char ch) {
+            int next = trie.transition(state, ch);
+            return next < 0 ? null : new DoubleArrayNode<>(trie, next);
+        }
+
+        @Override
+        public boolean haveChild() {
+            return state == ROOT_STATE ? trie.size() > 0 : status != Status.LEAF_WORD;
+        }
+
+        /**
+         * 子节点按照字符从小到大遍历
+         */
+        @Override
+        public void childHandle(NodeChildHandle<V> handle) {
+            if (!haveChild()) return;
+            char[] prefix = trie.prefixOf(state);
+            int[] range = trie.wordRange(prefix, prefix.length);
+            char[] buffer = new char[trie.maxWordLength];
+            int preChar = -1;
+            for (int i = range[0]; i < range[1]; i++) {
+                int len = trie.fillWord(i, buffer);
+                if (len == prefix.length || buffer[prefix.length] == preChar) continue;
+                preChar = buffer[prefix.length];
+                if (!handle.onHandle(new DoubleArrayNode<>(trie, trie.transition(state, (char) preChar)))) break;
+            }
+        }
+
+        @Override
+        public boolean deleteNode(char[] word, int deep) {
+            throw new UnsupportedOperationException("DoubleArrayTrie node is read-only");
+        }
+
+        @Override
+        public void clear() {
+            throw new UnsupportedOperationException("DoubleArrayTrie node is read-only");
+        }
+
+        @Override
+        public void trimChildNodes() {
+            //数组已经是紧凑的, 不需要瘦身
+        }
+
+        @Override
+        public List<Map.Entry<String, V>> allChildWords(char[] prefixKey) {
+            if (state == ROOT_STATE) {
+                throw new UnsupportedOperationException("root node can not been invoke allChildWords method");
+            }
+            if (prefixKey == null || prefixKey.length == 0) return null;
+            if (prefixKey[prefixKey.length - 1] != c) {
+                throw new IllegalArgumentException("the prefixKey: " + String.valueOf(prefixKey) + " last char isn't " + c);
+            }
+            List<Map.Entry<String, V>> ret = trie.rangeWords(trie.prefixOf(state));
+            return ret.isEmpty() ? Collections.<Map.Entry<String, V>>emptyList() : ret;
+        }
+
+        private final static int HASH_CODE_FACTOR = DoubleArrayNode.class.getSimpleName().hashCode();
+
+        @Override
+        public int hashCode() {
+            return 31 * super.hashCode() + HASH_CODE_FACTOR;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof DoubleArrayNode && super.equals(o);
+        }
+    }
+}
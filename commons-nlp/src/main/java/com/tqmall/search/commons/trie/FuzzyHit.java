@@ -0,0 +1,74 @@
+package com.tqmall.search.commons.trie;
+
+import java.util.Comparator;
+
+/**
+ * Created by xing on 26/10/16.
+ * 模糊查询的结果, 包括词, value以及与查询词的编辑距离
+ *
+ * @author xing
+ * @see BinaryTrie#fuzzySearch(String, int)
+ * @see DoubleArrayTrie#fuzzySearch(String, int)
+ */
+public class FuzzyHit<V> {
+
+    /**
+     * 按照编辑距离从小到大排序
+     */
+    public static final Comparator<FuzzyHit<?>> DISTANCE_COMPARATOR = new Comparator<FuzzyHit<?>>() {
+        @Override
+        public int compare(FuzzyHit<?> o1, FuzzyHit<?> o2) {
+            return Integer.compare(o1.distance, o2.distance);
+        }
+    };
+
+    private final String key;
+
+    private final V value;
+
+    private final int distance;
+
+    public FuzzyHit(String key, V value, int distance) {
+        this.key = key;
+        this.value = value;
+        this.distance = distance;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public V getValue() {
+        return value;
+    }
+
+    /**
+     * 与查询词的编辑距离
+     */
+    public int getDistance() {
+        return distance;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FuzzyHit)) return false;
+        FuzzyHit<?> fuzzyHit = (FuzzyHit<?>) o;
+        if (distance != fuzzyHit.distance) return false;
+        if (!key.equals(fuzzyHit.key)) return false;
+        return value != null ? value.equals(fuzzyHit.value) : fuzzyHit.value == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = key.hashCode();
+        result = 31 * result + (value != null ? value.hashCode() : 0);
+        result = 31 * result + distance;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return key + ':' + distance + (value == null ? "" : "." + value);
+    }
+}
@@ -0,0 +1,71 @@
+package com.tqmall.search.commons.trie;
+
+import java.util.Arrays;
+
+/**
+ * Created by xing on 26/10/16.
+ * 沿着trie树路径计算编辑距离的DP矩阵, 每一层对应路径上的一个字符, 每一行为路径前缀与查询词各个前缀的编辑距离
+ * 同一前缀下的词共享上层的行, 遍历子节点时只需要计算新的一行, 行中的最小值超过最大距离则该子树可以剪枝
+ * <p/>
+ * 该类有状态, 非线程安全, 每次查询创建
+ *
+ * @author xing
+ * @see BinaryTrie#fuzzySearch(String, int)
+ * @see DoubleArrayTrie#fuzzySearch(String, int)
+ */
+final class LevenshteinRows {
+
+    private final char[] query;
+
+    private final int maxDistance;
+
+    private int[][] rows;
+
+    LevenshteinRows(char[] query, int maxDistance) {
+        if (maxDistance < 0) {
+            throw new IllegalArgumentException("maxDistance: " + maxDistance + " should not be negative");
+        }
+        this.query = query;
+        this.maxDistance = maxDistance;
+        rows = new int[query.length + maxDistance + 1][];
+        int[] first = new int[query.length + 1];
+        for (int j = 0; j <= query.length; j++) {
+            first[j] = j;
+        }
+        rows[0] = first;
+    }
+
+    /**
+     * 计算路径中第depth个字符(从1开始)为c时的行, 依赖第depth - 1行
+     *
+     * @return 该路径下是否还可能有距离不超过maxDistance的词, false则可以剪枝
+     */
+    boolean compute(int depth, char c) {
+        if (depth >= rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(depth + 1, rows.length << 1));
+        }
+        int[] prev = rows[depth - 1];
+        int[] row = rows[depth];
+        if (row == null) rows[depth] = row = new int[query.length + 1];
+        row[0] = depth;
+        int min = depth;
+        for (int j = 1; j <= query.length; j++) {
+            int d = Math.min(prev[j], row[j - 1]) + 1;
+            int replace = prev[j - 1] + (query[j - 1] == c ? 0 : 1);
+            row[j] = d < replace ? d : replace;
+            if (row[j] < min) min = row[j];
+        }
+        return min <= maxDistance;
+    }
+
+    /**
+     * 长度为depth的路径与整个查询词的编辑距离
+     */
+    int distance(int depth) {
+        return rows[depth][query.length];
+    }
+
+    boolean accept(int depth) {
+        return distance(depth) <= maxDistance;
+    }
+}
@@ -0,0 +1,198 @@
+package com.tqmall.search.commons.trie;
+
+import com.tqmall.search.commons.utils.CommonsUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created by xing on 26/10/16.
+ * 两棵前缀树的只读合并视图, 一棵较小的增量树(overlay)叠加在共享的基础树(base)之上, 两棵树都存在的词以overlay的value为准
+ * 不复制任何一棵树, 遍历时按需创建: 只有两边都存在的路径才创建该视图节点, 只在一边存在的子树直接返回原节点,
+ * 增量树下面没有的路径直接走基础树的节点. 创建的视图子节点缓存在父节点中, 再次经过同一条路径不会创建新对象,
+ * 缓存的节点数不超过增量树的节点数, 两边的节点被替换之后重新创建
+ * 基础树的修改对视图立即可见, 视图本身不支持修改, 修改操作抛出{@link UnsupportedOperationException}
+ *
+ * @author xing
+ * @see com.tqmall.search.commons.match.MatchBinaryReverseTrie#MatchBinaryReverseTrie(TrieNodeFactory, com.tqmall.search.commons.match.MatchBinaryReverseTrie)
+ */
+public final class OverlayNode<V> extends Node<V> {
+
+    private final Node<V> overlay;
+
+    private final Node<V> base;
+
+    /**
+     * 缓存的视图子节点, 按照字符排序, 写时复制
+     */
+    private volatile Node<?>[] children = new Node<?>[0];
+
+    private OverlayNode(Node<V> overlay, Node<V> base) {
+        super(overlay.c, mergeStatus(overlay, base), mergeValue(overlay, base));
+        this.overlay = overlay;
+        this.base = base;
+    }
+
+    private static <V> V mergeValue(Node<V> overlay, Node<V> base) {
+        return overlay.accept() ? overlay.value : base.value;
+    }
+
+    private static Status mergeStatus(Node<?> overlay, Node<?> base) {
+        if (!overlay.accept() && !base.accept()) return Status.NORMAL;
+        return overlay.status == Status.LEAF_WORD && base.status == Status.LEAF_WORD ? Status.LEAF_WORD : Status.WORD;
+    }
+
+    private static boolean isAbsent(Node<?> node) {
+        return node == null || node.status == Status.DELETE;
+    }
+
+    /**
+     * 合并两个相同字符的节点, 只有一边存在则直接返回该节点, 都不存在返回null
+     *
+     * @param overlay 增量树的节点, 优先
+     * @param base    基础树的节点
+     */
+    public static <V> Node<V> of(Node<V> overlay, Node<V> base) {
+        if (isAbsent(overlay)) return isAbsent(base) ? null : base;
+        if (isAbsent(base)) return overlay;
+        return new OverlayNode<>(overlay, base);
+    }
+
+    @Override
+    public boolean addChild(Node<V> node) {
+        throw new UnsupportedOperationException("OverlayNode is read only");
+    }
+
+    @Override
+    public Node<V> getChild(char ch) {
+        return mergeChild(overlay.getChild(ch), base.getChild(ch));
+    }
+
+    /**
+     * 同{@link #of(Node, Node)}, 两边都存在时优先使用缓存的视图节点
+     */
+    @SuppressWarnings("unchecked")
+    private Node<V> mergeChild(Node<V> overlayChild, Node<V> baseChild) {
+        if (isAbsent(overlayChild)) return isAbsent(baseChild) ? null : baseChild;
+        if (isAbsent(baseChild)) return overlayChild;
+        Node<?>[] array = children;
+        int index = binarySearch(array, 0, array.length, overlayChild.c);
+        if (index >= 0) {
+            OverlayNode<V> child = (OverlayNode<V>) array[index];
+            if (child.overlay == overlayChild && child.base == baseChild) {
+                child.refresh();
+                return child;
+            }
+        }
+        return cacheChild(new OverlayNode<>(overlayChild, baseChild));
+    }
+
+    private synchronized OverlayNode<V> cacheChild(OverlayNode<V> child) {
+        Node<?>[] array = children;
+        int index = binarySearch(array, 0, array.length, child.c);
+        Node<?>[] newArray;
+        if (index >= 0) {
+            newArray = array.clone();
+            newArray[index] = child;
+        } else {
+            index = -(index + 1);
+            newArray = new Node<?>[array.length + 1];
+            System.arraycopy(array, 0, newArray, 0, index);
+            newArray[index] = child;
+            System.arraycopy(array, index, newArray, index + 1, array.length - index);
+        }
+        children = newArray;
+        return child;
+    }
+
+    /**
+     * 两边的节点加词, 删词之后状态会变, 缓存的节点使用前同步一下, 没有变化不写
+     */
+    private void refresh() {
+        Status mergedStatus = mergeStatus(overlay, base);
+        if (status != mergedStatus) status = mergedStatus;
+        V mergedValue = mergeValue(overlay, base);
+        if (value != mergedValue) value = mergedValue;
+    }
+
+    @Override
+    public boolean haveChild() {
+        return overlay.haveChild() || base.haveChild();
+    }
+
+    /**
+     * 先处理基础树的child, 增量树中同字符的child合并, 再处理只在增量树中存在的child
+     */
+    @Override
+    public void childHandle(final NodeChildHandle<V> handle) {
+        final boolean[] stopped = new boolean[1];
+        base.childHandle(new NodeChildHandle<V>() {
+            @Override
+            public boolean onHandle(Node<V> child) {
+                if (!handle.onHandle(mergeChild(overlay.getChild(child.c), child))) stopped[0] = true;
+                return !stopped[0];
+            }
+        });
+        if (stopped[0]) return;
+        overlay.childHandle(new NodeChildHandle<V>() {
+            @Override
+            public boolean onHandle(Node<V> child) {
+                return !isAbsent(base.getChild(child.c)) || handle.onHandle(child);
+            }
+        });
+    }
+
+    @Override
+    public boolean deleteNode(char[] word, int deep) {
+        throw new UnsupportedOperationException("OverlayNode is read only");
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("OverlayNode is read only");
+    }
+
+    /**
+     * 视图节点不持有children数组, 不需要瘦身
+     */
+    @Override
+    public void trimChildNodes() {
+    }
+
+    @Override
+    public List<Map.Entry<String, V>> allChildWords(char[] prefixKey) {
+        Map<String, V> words = new LinkedHashMap<>();
+        List<Map.Entry<String, V>> baseWords = base.allChildWords(prefixKey);
+        if (baseWords != null) {
+            for (Map.Entry<String, V> e : baseWords) {
+                words.put(e.getKey(), e.getValue());
+            }
+        }
+        List<Map.Entry<String, V>> overlayWords = overlay.allChildWords(prefixKey);
+        if (overlayWords != null) {
+            for (Map.Entry<String, V> e : overlayWords) {
+                words.put(e.getKey(), e.getValue());
+            }
+        }
+        if (words.isEmpty()) return null;
+        List<Map.Entry<String, V>> retList = new ArrayList<>(words.size());
+        for (Map.Entry<String, V> e : words.entrySet()) {
+            retList.add(CommonsUtils.newImmutableMapEntry(e.getKey(), e.getValue()));
+        }
+        return retList;
+    }
+
+    private final static int HASH_CODE_FACTOR = OverlayNode.class.getSimpleName().hashCode();
+
+    @Override
+    public int hashCode() {
+        return 31 * super.hashCode() + HASH_CODE_FACTOR;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof OverlayNode && super.equals(o);
+    }
+}
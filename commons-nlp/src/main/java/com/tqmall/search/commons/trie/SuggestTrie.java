@@ -0,0 +1,360 @@
+package com.tqmall.search.commons.trie;
+
+import com.tqmall.search.commons.nlp.NlpUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Created by xing on 26/10/16.
+ * 带权重的前缀提示树, 用于查询提示, 获取前缀下权重最高的k个词
+ * 每个节点缓存其子树(包括自身)中最大的权重{@link SuggestNode#maxWeight}, {@link #topK(String, int)}从前缀节点开始,
+ * 按照子树最大权重优先遍历, 取到k个词即结束, 不需要遍历整个子树, 不同于{@link Trie#prefixSearch(String)}返回所有词之后再排序截取
+ * 修改权重时只更新该词到根节点路径上的节点, 不需要重建
+ * <p/>
+ * 该类非线程安全, 修改需要外部同步
+ *
+ * @author xing
+ * @see BinaryTrie
+ */
+public class SuggestTrie<V> {
+
+    private final SuggestNode<V> root = new SuggestNode<>(null, Character.MIN_VALUE);
+
+    private int size;
+
+    /**
+     * 添加词, 如果已经存在则更新权重和value
+     *
+     * @param weight 权重, 必须是有限值, {@link Double#NEGATIVE_INFINITY}用于标记非词节点, NaN, 无穷大都不可比较
+     * @return 是否新增了词
+     * @throws IllegalArgumentException weight不是有限值
+     */
+    public boolean put(String key, double weight, V value) {
+        char[] charArray = NlpUtils.stringToCharArray(key);
+        if (charArray == null) return false;
+        checkWeight(weight);
+        SuggestNode<V> node = root;
+        for (char c : charArray) {
+            node = node.getOrCreateChild(c);
+        }
+        boolean add = !node.word;
+        node.word = true;
+        node.value = value;
+        setWeight(node, weight);
+        if (add) size++;
+        return add;
+    }
+
+    /**
+     * 更新已有词的权重
+     *
+     * @param weight 权重, 必须是有限值
+     * @return 该词不存在返回false
+     * @throws IllegalArgumentException weight不是有限值
+     */
+    public boolean updateWeight(String key, double weight) {
+        checkWeight(weight);
+        SuggestNode<V> node = findWord(key);
+        if (node == null) return false;
+        setWeight(node, weight);
+        return true;
+    }
+
+    /**
+     * 在已有的权重上增加delta, 比如按照搜索次数累加
+     *
+     * @return 该词不存在返回false
+     * @throws IllegalArgumentException 增加之后的权重不是有限值, 此时权重不变
+     */
+    public boolean addWeight(String key, double delta) {
+        SuggestNode<V> node = findWord(key);
+        if (node == null) return false;
+        double weight = node.weight + delta;
+        checkWeight(weight);
+        setWeight(node, weight);
+        return true;
+    }
+
+    /**
+     * @return 该词不存在返回null
+     */
+    public Double getWeight(String key) {
+        SuggestNode<V> node = findWord(key);
+        return node == null ? null : node.weight;
+    }
+
+    /**
+     * 删除词, 没有子节点的节点从树中删除
+     *
+     * @return 该词是否存在
+     */
+    public boolean remove(String key) {
+        SuggestNode<V> node = findWord(key);
+        if (node == null) return false;
+        node.word = false;
+        node.value = null;
+        node.weight = Double.NEGATIVE_INFINITY;
+        size--;
+        while (node != root && !node.word && node.childCount == 0) {
+            SuggestNode<V> parent = node.parent;
+            parent.removeChild(node.c);
+            node = parent;
+        }
+        updateMaxWeight(node);
+        return true;
+    }
+
+    /**
+     * 获取前缀下权重最高的k个词, 包括前缀本身, 结果按照权重从高到低排序, 权重相同的顺序不确定
+     * 从前缀节点开始, 按照节点的子树最大权重放入优先队列, 每次取出权重最高的, 取出的是词则加入结果, 是节点则展开其子节点
+     * 复杂度大约为O(prefix + k * b * log(k * b)), b为展开节点的子节点数, 与前缀下词的总数无关
+     *
+     * @param prefix 前缀, 为空则从所有词中获取
+     * @param k      获取的词数
+     * @return 前缀不存在返回空list
+     */
+    public List<Suggestion<V>> topK(String prefix, int k) {
+        if (k <= 0) return Collections.emptyList();
+        SuggestNode<V> node = root;
+        if (prefix != null) {
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                node = node.getChild(prefix.charAt(i));
+            }
+        }
+        if (node == null || node.maxWeight == Double.NEGATIVE_INFINITY) return Collections.emptyList();
+        List<Suggestion<V>> result = new ArrayList<>(Math.min(k, size));
+        PriorityQueue<Candidate<V>> queue = new PriorityQueue<>();
+        queue.add(new Candidate<>(node, false));
+        while (!queue.isEmpty()) {
+            Candidate<V> candidate = queue.poll();
+            SuggestNode<V> current = candidate.node;
+            if (candidate.word) {
+                result.add(new Suggestion<>(current.key(), current.weight, current.value));
+                if (result.size() == k) break;
+                continue;
+            }
+            if (current.word) queue.add(new Candidate<>(current, true));
+            for (int i = 0; i < current.childCount; i++) {
+                queue.add(new Candidate<>(current.children[i], false));
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        root.children = null;
+        root.childCount = 0;
+        root.maxWeight = Double.NEGATIVE_INFINITY;
+        size = 0;
+    }
+
+    private static void checkWeight(double weight) {
+        if (Double.isNaN(weight) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException("weight: " + weight + " should be finite");
+        }
+    }
+
+    private SuggestNode<V> findWord(String key) {
+        if (key == null || key.isEmpty()) return null;
+        SuggestNode<V> node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.getChild(key.charAt(i));
+        }
+        return node == null || !node.word ? null : node;
+    }
+
+    /**
+     * 修改词的权重, 并更新到根节点路径上的{@link SuggestNode#maxWeight}
+     * 权重增加只需要和原先的最大值比较, 权重减小需要重新计算子节点中的最大值, 路径上最大值不变时停止
+     */
+    private void setWeight(SuggestNode<V> node, double weight) {
+        double preWeight = node.weight;
+        node.weight = weight;
+        if (weight >= preWeight) {
+            while (node != null && node.maxWeight < weight) {
+                node.maxWeight = weight;
+                node = node.parent;
+            }
+        } else {
+            updateMaxWeight(node);
+        }
+    }
+
+    /**
+     * 从node开始向上重新计算{@link SuggestNode#maxWeight}, 值不变时停止
+     */
+    private static <V> void updateMaxWeight(SuggestNode<V> node) {
+        while (node != null) {
+            double maxWeight = node.computeMaxWeight();
+            if (maxWeight == node.maxWeight) break;
+            node.maxWeight = maxWeight;
+            node = node.parent;
+        }
+    }
+
+    /**
+     * 提示结果
+     */
+    public static final class Suggestion<V> {
+
+        private final String key;
+
+        private final double weight;
+
+        private final V value;
+
+        Suggestion(String key, double weight, V value) {
+            this.key = key;
+            this.weight = weight;
+            this.value = value;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public double getWeight() {
+            return weight;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return key + '=' + weight + (value == null ? "" : "." + value);
+        }
+    }
+
+    /**
+     * 优先队列中的元素, word为true表示node对应的词, 否则表示node的子树
+     * 权重相同时词排在子树之前, 尽早返回结果
+     */
+    private static final class Candidate<V> implements Comparable<Candidate<V>> {
+
+        private final SuggestNode<V> node;
+
+        private final boolean word;
+
+        private final double score;
+
+        Candidate(SuggestNode<V> node, boolean word) {
+            this.node = node;
+            this.word = word;
+            this.score = word ? node.weight : node.maxWeight;
+        }
+
+        @Override
+        public int compareTo(Candidate<V> o) {
+            int cmp = Double.compare(o.score, score);
+            if (cmp != 0) return cmp;
+            return word == o.word ? 0 : (word ? -1 : 1);
+        }
+    }
+
+    /**
+     * 树节点, 子节点按照字符有序存储, 二分查找
+     */
+    private static final class SuggestNode<V> {
+
+        private static final int DEFAULT_INFLATE_SIZE = 4;
+
+        private final SuggestNode<V> parent;
+
+        private final char c;
+
+        private char[] childChars;
+
+        private SuggestNode<V>[] children;
+
+        private int childCount;
+
+        private boolean word;
+
+        private V value;
+
+        /**
+         * 该节点对应词的权重, 不是词为{@link Double#NEGATIVE_INFINITY}
+         */
+        private double weight = Double.NEGATIVE_INFINITY;
+
+        /**
+         * 子树中所有词(包括该节点)的最大权重, 子树中没有词为{@link Double#NEGATIVE_INFINITY}
+         */
+        private double maxWeight = Double.NEGATIVE_INFINITY;
+
+        SuggestNode(SuggestNode<V> parent, char c) {
+            this.parent = parent;
+            this.c = c;
+        }
+
+        SuggestNode<V> getChild(char ch) {
+            if (childCount == 0) return null;
+            int index = Arrays.binarySearch(childChars, 0, childCount, ch);
+            return index < 0 ? null : children[index];
+        }
+
+        @SuppressWarnings("unchecked")
+        SuggestNode<V> getOrCreateChild(char ch) {
+            int index = childCount == 0 ? -1 : Arrays.binarySearch(childChars, 0, childCount, ch);
+            if (index >= 0) return children[index];
+            index = -(index + 1);
+            if (children == null) {
+                childChars = new char[DEFAULT_INFLATE_SIZE];
+                children = (SuggestNode<V>[]) new SuggestNode<?>[DEFAULT_INFLATE_SIZE];
+            } else if (childCount == children.length) {
+                childChars = Arrays.copyOf(childChars, childCount * 2);
+                children = Arrays.copyOf(children, childCount * 2);
+            }
+            int moved = childCount - index;
+            if (moved > 0) {
+                System.arraycopy(childChars, index, childChars, index + 1, moved);
+                System.arraycopy(children, index, children, index + 1, moved);
+            }
+            SuggestNode<V> child = new SuggestNode<>(this, ch);
+            childChars[index] = ch;
+            children[index] = child;
+            childCount++;
+            return child;
+        }
+
+        void removeChild(char ch) {
+            int index = Arrays.binarySearch(childChars, 0, childCount, ch);
+            if (index < 0) return;
+            int moved = childCount - index - 1;
+            if (moved > 0) {
+                System.arraycopy(childChars, index + 1, childChars, index, moved);
+                System.arraycopy(children, index + 1, children, index, moved);
+            }
+            children[--childCount] = null;
+        }
+
+        double computeMaxWeight() {
+            double max = weight;
+            for (int i = 0; i < childCount; i++) {
+                if (children[i].maxWeight > max) max = children[i].maxWeight;
+            }
+            return max;
+        }
+
+        /**
+         * 从根节点到该节点的字符串
+         */
+        String key() {
+            int len = 0;
+            for (SuggestNode<V> node = this; node.parent != null; node = node.parent) len++;
+            char[] key = new char[len];
+            for (SuggestNode<V> node = this; node.parent != null; node = node.parent) key[--len] = node.c;
+            return new String(key);
+        }
+    }
+}
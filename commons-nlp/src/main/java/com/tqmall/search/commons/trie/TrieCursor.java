@@ -0,0 +1,161 @@
+package com.tqmall.search.commons.trie;
+
+import com.tqmall.search.commons.utils.CommonsUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created by xing on 26/10/16.
+ * 前缀遍历游标, 通过{@link CursorTrie#prefixIterator(String)}获取, 按需遍历前缀下的词, 不同于{@link Trie#prefixSearch(String)}
+ * 一次创建所有词的String以及Map.Entry, 游标只持有遍历路径以及一个复用的key buffer, 内存占用与前缀下的词数无关
+ * 使用方式:
+ * <pre>
+ *     TrieCursor&lt;V&gt; cursor = trie.prefixIterator(prefix).skip(40).limit(20);
+ *     while (cursor.next()) {
+ *         cursor.key();
+ *         cursor.value();
+ *     }
+ * </pre>
+ * 分页时可以记录上一页最后一个key, 通过{@link CursorTrie#prefixIterator(String, String)}从该key之后继续遍历
+ * <p/>
+ * 遍历过程中树不能修改, 该类非线程安全
+ *
+ * @author xing
+ * @see CursorTrie#prefixIterator(String)
+ * @see CursorTrie#prefixIterator(String, String)
+ */
+public abstract class TrieCursor<V> {
+
+    /**
+     * 当前词的key, 子类在{@link #advance()}中更新
+     */
+    protected char[] keyBuffer;
+
+    protected int keyLength;
+
+    private final KeyView keyView;
+
+    private int remaining = Integer.MAX_VALUE;
+
+    /**
+     * @param reverseKey 树中存储的key是否为逆序, 为true时{@link #key()}返回逆序之后的, 即正向的key
+     */
+    protected TrieCursor(int capacity, boolean reverseKey) {
+        keyBuffer = new char[Math.max(capacity, 1)];
+        keyView = new KeyView(reverseKey);
+    }
+
+    /**
+     * 移动到下一个词, 更新{@link #keyBuffer}, {@link #keyLength}, 遍历完之后再调用依然返回false
+     *
+     * @return 没有更多的词返回false
+     */
+    protected abstract boolean advance();
+
+    /**
+     * 当前词的value
+     */
+    public abstract V value();
+
+    protected final void ensureKeyCapacity(int capacity) {
+        if (capacity > keyBuffer.length) {
+            keyBuffer = Arrays.copyOf(keyBuffer, Math.max(capacity, keyBuffer.length << 1));
+        }
+    }
+
+    /**
+     * 移动到下一个词
+     *
+     * @return 遍历完或者达到{@link #limit(int)}的限制返回false
+     */
+    public final boolean next() {
+        if (remaining <= 0) return false;
+        if (!advance()) {
+            remaining = 0;
+            return false;
+        }
+        remaining--;
+        return true;
+    }
+
+    /**
+     * 之后最多再返回limit个词
+     */
+    public final TrieCursor<V> limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit: " + limit + " should not be negative");
+        }
+        remaining = limit;
+        return this;
+    }
+
+    /**
+     * 跳过n个词, 跳过的词不计入{@link #limit(int)}
+     */
+    public final TrieCursor<V> skip(int n) {
+        while (n-- > 0 && advance()) ;
+        return this;
+    }
+
+    /**
+     * 当前词的key, 返回的对象复用, 调用{@link #next()}之后内容随之改变, 需要保留的话调用{@link CharSequence#toString()}
+     */
+    public final CharSequence key() {
+        return keyView;
+    }
+
+    public final int keyLength() {
+        return keyLength;
+    }
+
+    /**
+     * 剩下的词创建为list返回, 受{@link #limit(int)}限制
+     */
+    public final List<Map.Entry<String, V>> toList() {
+        List<Map.Entry<String, V>> list = new ArrayList<>();
+        while (next()) {
+            list.add(CommonsUtils.newImmutableMapEntry(keyView.toString(), value()));
+        }
+        return list;
+    }
+
+    private final class KeyView implements CharSequence {
+
+        private final boolean reverse;
+
+        KeyView(boolean reverse) {
+            this.reverse = reverse;
+        }
+
+        @Override
+        public int length() {
+            return keyLength;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= keyLength) {
+                throw new IndexOutOfBoundsException("index: " + index + ", length: " + keyLength);
+            }
+            return keyBuffer[reverse ? keyLength - 1 - index : index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            if (!reverse) return new String(keyBuffer, 0, keyLength);
+            char[] key = new char[keyLength];
+            for (int i = 0; i < keyLength; i++) {
+                key[i] = keyBuffer[keyLength - 1 - i];
+            }
+            return new String(key);
+        }
+    }
+}
@@ -1,7 +1,17 @@
 package com.tqmall.search.commons.algorithm;
 
 import com.tqmall.search.commons.ac.AcBinaryTrie;
+import com.tqmall.search.commons.ac.AcDoubleArrayTrie;
+import com.tqmall.search.commons.ac.AcStreamMatcher;
+import com.tqmall.search.commons.ac.AcTrie;
+import com.tqmall.search.commons.ac.CopyOnWriteAcTrie;
+import com.tqmall.search.commons.lang.Function;
+import com.tqmall.search.commons.lang.Supplier;
+import com.tqmall.search.commons.match.AbstractTextMatch;
 import com.tqmall.search.commons.match.Hit;
+import com.tqmall.search.commons.match.HitHandler;
+import com.tqmall.search.commons.match.LeftmostTextMatch;
+import com.tqmall.search.commons.match.MatchBinaryReverseTrie;
 import com.tqmall.search.commons.nlp.Utils;
 import com.tqmall.search.commons.trie.RootNodeType;
 import org.junit.AfterClass;
@@ -9,9 +19,17 @@ import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 /**
  * Created by xing on 16/2/1.
@@ -21,9 +39,11 @@ public class AcTrieTest {
 
     private static AcBinaryTrie<Void> acStrBinaryTrie;
 
+    private static AcDoubleArrayTrie<Void> acDoubleArrayTrie;
+
     @BeforeClass
     public static void init() {
-        acStrBinaryTrie = AcBinaryTrie.<Void>build()
+        AcBinaryTrie.Builder<Void> builder = AcBinaryTrie.<Void>build()
                 .put("he", null)
                 .put("she", null)
                 .put("his", null)
@@ -31,14 +51,16 @@ public class AcTrieTest {
                 .put("nihao", null)
                 .put("hao", null)
                 .put("hs", null)
-                .put("hsr", null)
-                .create(RootNodeType.ASCII.<Void>defaultAcTrie());
+                .put("hsr", null);
+        acStrBinaryTrie = builder.create(RootNodeType.ASCII.<Void>defaultAcTrie());
+        acDoubleArrayTrie = builder.createDoubleArray();
     }
 
     @AfterClass
     public static void clear() {
         acStrBinaryTrie.clear();
         acStrBinaryTrie = null;
+        acDoubleArrayTrie = null;
     }
 
     @Test
@@ -72,4 +94,375 @@ public class AcTrieTest {
         System.out.println(text + ": " + retList);
         Assert.assertEquals(expectList, retList);
     }
+
+    @Test
+    public void acDoubleArrayTrieTest() {
+        for (String text : new String[]{"ushers", "sdmfhsgnshejfgnihaofhsrnihao", "hishershsr"}) {
+            List<Hit<Void>> expectList = acStrBinaryTrie.match(text);
+            List<Hit<Void>> retList = acDoubleArrayTrie.match(text);
+            Assert.assertNotNull(retList);
+            System.out.println(text + ": " + retList);
+            Assert.assertEquals(expectList, retList);
+        }
+        //当前状态不是接收态, 但是其后缀是词, 需要沿着输出链输出
+        AcDoubleArrayTrie<Void> trie = AcBinaryTrie.<Void>build()
+                .put("abcd", null)
+                .put("bc", null)
+                .put("c", null)
+                .createDoubleArray();
+        List<Hit<?>> expectList = new ArrayList<>();
+        expectList.add(Utils.hitValueOf(1, "bc", null));
+        expectList.add(Utils.hitValueOf(2, "c", null));
+        expectList.add(Utils.hitValueOf(0, "abcd", null));
+        Assert.assertEquals(expectList, trie.match("abcd"));
+        Assert.assertTrue(trie.match("xyz").isEmpty());
+    }
+
+    @Test
+    public void hitHandlerMatchTest() {
+        String text = "sdmfhsgnshejfgnihaofhsrnihao";
+        char[] textArray = ("##" + text).toCharArray();
+        for (AcTrie<Void> acTrie : Arrays.<AcTrie<Void>>asList(acStrBinaryTrie, acDoubleArrayTrie)) {
+            final List<Hit<Void>> hits = new ArrayList<>();
+            Assert.assertTrue(acTrie.match(textArray, 2, text.length(), new HitHandler<Void>() {
+                @Override
+                public boolean onHit(int start, int end, Void value) {
+                    hits.add(new Hit<>(start - 2, end - 2, value));
+                    return true;
+                }
+            }));
+            Assert.assertEquals(acTrie.match(text), hits);
+            //第3个结果之后停止
+            hits.clear();
+            Assert.assertFalse(acTrie.match(textArray, 2, text.length(), new HitHandler<Void>() {
+                @Override
+                public boolean onHit(int start, int end, Void value) {
+                    hits.add(new Hit<>(start, end, value));
+                    return hits.size() < 3;
+                }
+            }));
+            Assert.assertEquals(3, hits.size());
+        }
+    }
+
+    @Test
+    public void outputLinkTest() {
+        AcBinaryTrie.Builder<Void> builder = AcBinaryTrie.<Void>build()
+                .put("中华人民共和国", null)
+                .put("人民共和国", null)
+                .put("共和国", null)
+                .put("中华人民", null)
+                .put("人民", null);
+        List<Hit<?>> expectList = new ArrayList<>();
+        expectList.add(Utils.hitValueOf(1, "中华人民", null));
+        expectList.add(Utils.hitValueOf(3, "人民", null));
+        expectList.add(Utils.hitValueOf(1, "中华人民共和国", null));
+        expectList.add(Utils.hitValueOf(3, "人民共和国", null));
+        expectList.add(Utils.hitValueOf(5, "共和国", null));
+        String text = "在中华人民共和国";
+        List<Hit<Void>> retList = builder.create(RootNodeType.CJK.<Void>defaultAcTrie()).match(text);
+        System.out.println(text + ": " + retList);
+        Assert.assertEquals(expectList, retList);
+        Assert.assertEquals(expectList, builder.createDoubleArray().match(text));
+    }
+
+    @Test
+    public void copyOnWriteAcTrieTest() {
+        CopyOnWriteAcTrie<Void> trie = new CopyOnWriteAcTrie<>(AcBinaryTrie.<Void>build().put("he", null).put("she", null),
+                new Function<AcBinaryTrie.Builder<Void>, AcTrie<Void>>() {
+                    @Override
+                    public AcTrie<Void> apply(AcBinaryTrie.Builder<Void> builder) {
+                        return builder.createDoubleArray();
+                    }
+                }, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                //同步执行, 方便测试
+                command.run();
+            }
+        });
+        String text = "ushers";
+        List<Hit<?>> expectList = new ArrayList<>();
+        expectList.add(Utils.hitValueOf(1, "she", null));
+        expectList.add(Utils.hitValueOf(2, "he", null));
+        Assert.assertEquals(expectList, trie.match(text));
+
+        Assert.assertTrue(trie.put("hers", null));
+        Assert.assertTrue(trie.remove("she"));
+        Assert.assertFalse(trie.remove("his"));
+        //没有重建之前不生效
+        Assert.assertEquals(expectList, trie.match(text));
+        Assert.assertTrue(trie.buildFailed());
+        Assert.assertFalse(trie.isRebuilding());
+        expectList = new ArrayList<>();
+        expectList.add(Utils.hitValueOf(2, "he", null));
+        expectList.add(Utils.hitValueOf(2, "hers", null));
+        Assert.assertEquals(expectList, trie.match(text));
+        Assert.assertEquals(2, trie.size());
+        //没有变更不重建, 已经存在的词不算新增
+        Assert.assertFalse(trie.buildFailed());
+        long version = trie.getVersion();
+        Assert.assertFalse(trie.put("he", null));
+        Assert.assertFalse(trie.buildFailed());
+        Assert.assertEquals(version, trie.getVersion());
+        Assert.assertTrue(trie.updateValue("hers", null));
+        Assert.assertFalse(trie.updateValue("she", null));
+    }
+
+    /**
+     * 重建过程中更新value, 替换之后不能丢失
+     */
+    @Test
+    public void copyOnWriteUpdateValueWhileRebuildTest() {
+        final List<CopyOnWriteAcTrie<String>> holder = new ArrayList<>();
+        CopyOnWriteAcTrie<String> trie = new CopyOnWriteAcTrie<>(AcBinaryTrie.<String>build().put("he", "OLD"),
+                new Function<AcBinaryTrie.Builder<String>, AcTrie<String>>() {
+                    @Override
+                    public AcTrie<String> apply(AcBinaryTrie.Builder<String> builder) {
+                        //重建过程中更新
+                        if (!holder.isEmpty()) Assert.assertTrue(holder.get(0).updateValue("he", "NEW"));
+                        return builder.createDoubleArray();
+                    }
+                }, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        holder.add(trie);
+        Assert.assertTrue(trie.put("she", "SHE"));
+        Assert.assertTrue(trie.buildFailed());
+        Assert.assertEquals("NEW", trie.getNode("he").getValue());
+        Assert.assertEquals("SHE", trie.getNode("she").getValue());
+        //暂存词库中也是新的value
+        Assert.assertTrue(trie.put("hers", "HERS"));
+        Assert.assertTrue(trie.buildFailed());
+        Assert.assertEquals("NEW", trie.getNode("he").getValue());
+    }
+
+    /**
+     * 提供匹配的AcBinaryTrie冻结之后不能修改
+     */
+    @Test
+    public void frozenAcBinaryTrieTest() {
+        AcBinaryTrie<Void> binaryTrie = AcBinaryTrie.<Void>build().put("he", null).put("she", null)
+                .create(RootNodeType.ASCII.<Void>defaultAcTrie());
+        Assert.assertFalse(binaryTrie.isFrozen());
+        CopyOnWriteAcTrie<Void> trie = new CopyOnWriteAcTrie<>(binaryTrie, new Function<AcBinaryTrie.Builder<Void>, AcTrie<Void>>() {
+            @Override
+            public AcTrie<Void> apply(AcBinaryTrie.Builder<Void> builder) {
+                return builder.create(RootNodeType.ASCII.<Void>defaultAcTrie());
+            }
+        });
+        Assert.assertTrue(binaryTrie.isFrozen());
+        Assert.assertEquals(2, trie.match("ushers").size());
+        try {
+            binaryTrie.put("hers", null);
+            Assert.fail();
+        } catch (IllegalStateException ignored) {
+        }
+    }
+
+    /**
+     * 随机加词, 删词, 增量维护的结果与重新构造的结果比较
+     */
+    @Test
+    public void incrementalPutRemoveTest() {
+        Random random = new Random(20161026L);
+        AcBinaryTrie<Void> trie = AcBinaryTrie.<Void>build().put("ab", null).put("bc", null)
+                .create(RootNodeType.ASCII.<Void>defaultAcTrie());
+        Set<String> words = new HashSet<>();
+        words.add("ab");
+        words.add("bc");
+        for (int round = 0; round < 2000; round++) {
+            String word = randomString(random, 1 + random.nextInt(5));
+            if (random.nextInt(3) == 0) {
+                Assert.assertEquals(word, words.remove(word), trie.remove(word));
+            } else {
+                words.add(word);
+                Assert.assertTrue(trie.put(word, null));
+            }
+            String text = randomString(random, 30);
+            AcBinaryTrie.Builder<Void> builder = AcBinaryTrie.build();
+            for (String w : words) {
+                builder.put(w, null);
+            }
+            List<Hit<Void>> expectList = builder.create(RootNodeType.ASCII.<Void>defaultAcTrie()).match(text);
+            List<Hit<Void>> retList = trie.match(text);
+            Collections.sort(expectList);
+            Collections.sort(retList);
+            Assert.assertEquals(text + ", words: " + words, expectList, retList);
+        }
+        Assert.assertEquals(words.size(), trie.size());
+    }
+
+    private static String randomString(Random random, int len) {
+        char[] chars = new char[len];
+        for (int i = 0; i < len; i++) {
+            chars[i] = (char) ('a' + random.nextInt(3));
+        }
+        return new String(chars);
+    }
+
+    @Test
+    public void streamMatchTest() throws IOException {
+        final List<Hit<Void>> retList = new ArrayList<>();
+        AcStreamMatcher<Void> matcher = new AcStreamMatcher<>(acStrBinaryTrie, new Function<Hit<Void>, Boolean>() {
+            @Override
+            public Boolean apply(Hit<Void> hit) {
+                return retList.add(hit);
+            }
+        });
+        String text = "sdmfhsgnshejfgnihaofhsrnihao";
+        List<Hit<Void>> expectList = acStrBinaryTrie.match(text);
+        //分块传入, 跨块的词也需要匹配到
+        for (int i = 0; i < text.length(); i += 3) {
+            Assert.assertTrue(matcher.feed(CharBuffer.wrap(text, i, Math.min(i + 3, text.length()))));
+        }
+        Assert.assertEquals(text.length(), matcher.getPosition());
+        Assert.assertEquals(expectList, retList);
+
+        retList.clear();
+        matcher.reset();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append(text);
+        }
+        Assert.assertTrue(matcher.match(new StringReader(sb.toString())));
+        Assert.assertEquals(acStrBinaryTrie.match(sb.toString()), retList);
+
+        //中断匹配
+        retList.clear();
+        matcher = new AcStreamMatcher<>(acStrBinaryTrie, new Function<Hit<Void>, Boolean>() {
+            @Override
+            public Boolean apply(Hit<Void> hit) {
+                retList.add(hit);
+                return retList.size() < 3;
+            }
+        });
+        Assert.assertFalse(matcher.match(new StringReader(sb.toString())));
+        Assert.assertEquals(3, retList.size());
+        Assert.assertFalse(matcher.feed(CharBuffer.wrap(text)));
+    }
+
+    /**
+     * AcDoubleArrayTrie, CopyOnWriteAcTrie的流式匹配, 重建替换之后正在匹配的文本流继续使用原先的AcTrie
+     */
+    @Test
+    public void streamMatchAcTrieTest() {
+        final List<Hit<Void>> retList = new ArrayList<>();
+        Function<Hit<Void>, Boolean> collector = new Function<Hit<Void>, Boolean>() {
+            @Override
+            public Boolean apply(Hit<Void> hit) {
+                return retList.add(hit);
+            }
+        };
+        String text = "sdmfhsgnshejfgnihaofhsrnihao";
+        AcStreamMatcher<Void> matcher = new AcStreamMatcher<>(acDoubleArrayTrie, collector);
+        for (int i = 0; i < text.length(); i += 2) {
+            Assert.assertTrue(matcher.feed(CharBuffer.wrap(text, i, Math.min(i + 2, text.length()))));
+        }
+        Assert.assertEquals(acDoubleArrayTrie.match(text), retList);
+
+        CopyOnWriteAcTrie<Void> trie = new CopyOnWriteAcTrie<>(AcBinaryTrie.<Void>build().put("nihao", null),
+                new Function<AcBinaryTrie.Builder<Void>, AcTrie<Void>>() {
+                    @Override
+                    public AcTrie<Void> apply(AcBinaryTrie.Builder<Void> builder) {
+                        return builder.createDoubleArray();
+                    }
+                }, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        retList.clear();
+        matcher = new AcStreamMatcher<>(trie, collector);
+        Assert.assertTrue(matcher.feed(CharBuffer.wrap("xxni")));
+        trie.remove("nihao");
+        trie.put("hao", null);
+        Assert.assertTrue(trie.buildFailed());
+        //"nihao"跨越两块, 依然在原先的AcTrie上匹配
+        Assert.assertTrue(matcher.feed(CharBuffer.wrap("hao")));
+        List<Hit<Void>> expectList = new ArrayList<>();
+        expectList.add(Utils.<Void>hitValueOf(2, "nihao", null));
+        Assert.assertEquals(expectList, retList);
+        //reset之后使用新的AcTrie
+        retList.clear();
+        matcher.reset();
+        Assert.assertTrue(matcher.feed(CharBuffer.wrap("xxnihao")));
+        expectList.set(0, Utils.<Void>hitValueOf(4, "hao", null));
+        Assert.assertEquals(expectList, retList);
+    }
+
+    @Test
+    public void leftmostMatchTest() {
+        Random random = new Random(17);
+        List<String> words = new ArrayList<>();
+        AcBinaryTrie.Builder<String> builder = AcBinaryTrie.build();
+        for (int i = 0; i < 60; i++) {
+            StringBuilder sb = new StringBuilder();
+            int len = 1 + random.nextInt(6);
+            for (int j = 0; j < len; j++) sb.append((char) ('a' + random.nextInt(3)));
+            words.add(sb.toString());
+            builder.put(sb.toString(), sb.toString());
+        }
+        AcBinaryTrie<String> binaryTrie = builder.create(RootNodeType.ASCII.<String>defaultAcTrie());
+        AcDoubleArrayTrie<String> doubleArrayTrie = builder.createDoubleArray();
+        //词长最大为6
+        Supplier<Integer> maxWordLength = new Supplier<Integer>() {
+            @Override
+            public Integer get() {
+                return 6;
+            }
+        };
+        for (int n = 0; n < 200; n++) {
+            StringBuilder sb = new StringBuilder();
+            int len = random.nextInt(40);
+            for (int j = 0; j < len; j++) sb.append((char) ('a' + random.nextInt(4)));
+            String text = sb.toString();
+            for (boolean longest : new boolean[]{true, false}) {
+                //暴力实现: 每次找开始位置最小的词, 开始位置相同的取最长/最短
+                List<Hit<String>> expected = new ArrayList<>();
+                int start = 0;
+                while (start < text.length()) {
+                    String hit = null;
+                    for (String w : words) {
+                        if (text.startsWith(w, start) && (hit == null || (longest ? w.length() > hit.length() : w.length() < hit.length()))) {
+                            hit = w;
+                        }
+                    }
+                    if (hit == null) {
+                        start++;
+                    } else {
+                        expected.add(new Hit<>(start, start + hit.length(), hit));
+                        start += hit.length();
+                    }
+                }
+                for (AbstractTextMatch<String> fullMatch : Arrays.<AbstractTextMatch<String>>asList(binaryTrie, doubleArrayTrie)) {
+                    LeftmostTextMatch<String> leftmost = new LeftmostTextMatch<>(fullMatch, maxWordLength, longest);
+                    List<Hit<String>> hits = leftmost.match(text);
+                    if (text.isEmpty()) {
+                        Assert.assertNull(hits);
+                        continue;
+                    }
+                    Assert.assertEquals(text + ", longest: " + longest, expected, hits);
+                    for (Hit<String> h : hits) {
+                        Assert.assertEquals(text.substring(h.getStart(), h.getEnd()), h.getValue());
+                    }
+                }
+            }
+        }
+        //最左最长与逆向最大匹配的结果不一样
+        AcBinaryTrie.Builder<String> cnBuilder = AcBinaryTrie.build();
+        MatchBinaryReverseTrie<String> reverseTrie = new MatchBinaryReverseTrie<>(RootNodeType.CJK.<String>defaultTrie());
+        for (String w : new String[]{"研究", "研究生", "生命", "命"}) {
+            cnBuilder.put(w, w);
+            reverseTrie.put(w, w);
+        }
+        LeftmostTextMatch<String> leftmost = LeftmostTextMatch.longest(cnBuilder.create(RootNodeType.CJK.<String>defaultAcTrie()), maxWordLength);
+        Assert.assertEquals(Arrays.asList(new Hit<>(0, 3, "研究生"), new Hit<>(3, 4, "命")), leftmost.match("研究生命"));
+        Assert.assertEquals(Arrays.asList(new Hit<>(0, 2, "研究"), new Hit<>(2, 4, "生命")), reverseTrie.maxMatch("研究生命"));
+    }
 }
+
@@ -0,0 +1,119 @@
+package com.tqmall.search.commons.algorithm;
+
+import com.tqmall.search.commons.lang.Function;
+import com.tqmall.search.commons.nlp.NlpUtils;
+import com.tqmall.search.commons.trie.Dawg;
+import com.tqmall.search.commons.trie.TrieCursor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Created by xing on 26/10/16.
+ * Dawg test
+ *
+ * @author xing
+ */
+public class DawgTest {
+
+    @Test
+    public void suffixMergeTest() {
+        Dawg<Void> dawg = Dawg.valueOf(Arrays.asList("北京地铁站", "清华地铁站", "西湖地铁站", "杭州西湖", "杭州"));
+        Assert.assertEquals(5, dawg.size());
+        //"地铁站"的公共后缀只存储一次
+        Assert.assertEquals(11, dawg.stateCount());
+        Assert.assertTrue(dawg.contains("西湖地铁站"));
+        Assert.assertTrue(dawg.contains("杭州"));
+        Assert.assertFalse(dawg.contains("杭州地铁站"));
+        Assert.assertFalse(dawg.contains("地铁站"));
+        Assert.assertFalse(dawg.contains(""));
+        Assert.assertNull(dawg.getValue("杭州"));
+        Assert.assertNull(dawg.prefixIterator("上海"));
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, Void> e : dawg.prefixIterator("杭州").toList()) {
+            keys.add(e.getKey());
+        }
+        Assert.assertEquals(Arrays.asList("杭州", "杭州西湖"), keys);
+        try {
+            Dawg.<Void>build().add("b", null).add("a", null);
+            Assert.fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void writeReadTest() throws IOException {
+        Dawg<Void> dawg = Dawg.valueOf(Arrays.asList("北京地铁站", "清华地铁站", "西湖地铁站", "杭州西湖", "杭州", "x-1"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        dawg.writeTo(new DataOutputStream(bytes));
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        Dawg<String> readDawg = Dawg.readFrom(buffer, new Object[]{"0", "1", "2", "3", "4", "5"});
+        Assert.assertFalse(buffer.hasRemaining());
+        Assert.assertEquals(dawg.size(), readDawg.size());
+        Assert.assertEquals(dawg.stateCount(), readDawg.stateCount());
+        Assert.assertEquals(dawg.getMaxWordLength(), readDawg.getMaxWordLength());
+        for (int i = 0; i < dawg.size(); i++) {
+            String word = dawg.getWord(i);
+            Assert.assertEquals(word, readDawg.getWord(i));
+            Assert.assertEquals(i, readDawg.wordIndex(word));
+            Assert.assertEquals(String.valueOf(i), readDawg.getValue(word));
+        }
+        Assert.assertFalse(readDawg.contains("杭州地铁站"));
+        //value数量不一致
+        try {
+            Dawg.readFrom(ByteBuffer.wrap(bytes.toByteArray()), new Object[1]);
+            Assert.fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void lexiconTest() {
+        final TreeMap<String, Integer> words = new TreeMap<>();
+        NlpUtils.loadLexicon(new Function<String, Boolean>() {
+            @Override
+            public Boolean apply(String line) {
+                int index = line.indexOf(' ');
+                String word = index < 0 ? line : line.substring(0, index);
+                words.put(word, word.length());
+                return true;
+            }
+        }, NlpUtils.getPathOfClass(DawgTest.class, "/segment.txt"));
+        Dawg<Integer> dawg = Dawg.valueOf(words);
+        Assert.assertEquals(words.size(), dawg.size());
+        Set<String> prefixes = new HashSet<>();
+        int index = 0;
+        for (Map.Entry<String, Integer> e : words.entrySet()) {
+            String word = e.getKey();
+            for (int i = 1; i <= word.length(); i++) {
+                prefixes.add(word.substring(0, i));
+            }
+            //词序号即字典序的位置
+            Assert.assertEquals(index, dawg.wordIndex(word));
+            Assert.assertEquals(word, dawg.getWord(index));
+            Assert.assertEquals(e.getValue(), dawg.getValue(word));
+            index++;
+        }
+        //前缀树的节点数为前缀数, 合并后缀之后的状态数应该少很多
+        Assert.assertTrue(dawg + ", prefixes: " + prefixes.size(), dawg.stateCount() < prefixes.size() / 2);
+        Random random = new Random(11);
+        List<String> wordList = new ArrayList<>(words.keySet());
+        for (int i = 0; i < 1000; i++) {
+            String word = wordList.get(random.nextInt(wordList.size()));
+            String missing = word + (char) ('a' + random.nextInt(26));
+            Assert.assertEquals(words.containsKey(missing), dawg.contains(missing));
+        }
+        for (String prefix : Arrays.asList("一", "中国", "北京", "人")) {
+            List<Map.Entry<String, Integer>> expected = new ArrayList<>(words.subMap(prefix, prefix + Character.MAX_VALUE).entrySet());
+            TrieCursor<Integer> cursor = dawg.prefixIterator(prefix);
+            Assert.assertNotNull(cursor);
+            Assert.assertEquals(expected.size(), cursor.toList().size());
+            Assert.assertEquals(expected.subList(5, 10), dawg.prefixIterator(prefix).skip(5).limit(5).toList());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.tqmall.search.commons.algorithm;
+
+import com.tqmall.search.commons.lang.Function;
+import com.tqmall.search.commons.nlp.NlpUtils;
+import com.tqmall.search.commons.trie.BinaryTrie;
+import com.tqmall.search.commons.trie.DoubleArrayTrie;
+import com.tqmall.search.commons.trie.Node;
+import com.tqmall.search.commons.trie.NodeChildHandle;
+import com.tqmall.search.commons.trie.RootNodeType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+/**
+ * Created by xing on 26/10/16.
+ * DoubleArrayTrie test
+ *
+ * @author xing
+ */
+public class DoubleArrayTrieTest {
+
+    @Test
+    public void readTest() {
+        Map<String, String> dataMap = new HashMap<>();
+        dataMap.put("一", "yi");
+        dataMap.put("一心一意", "yi xin yi yi");
+        dataMap.put("一切", "yi qie");
+        dataMap.put("一心", "yi xin");
+        dataMap.put("王星星", "wang xing xing");
+        dataMap.put("星星", "xing xing");
+        dataMap.put("王星", "wang xing");
+        dataMap.put("王", "wang");
+        dataMap.put("王xing", "wang");
+        dataMap.put("老王", "lao wang");
+        DoubleArrayTrie<String> trie = DoubleArrayTrie.<String>build().putAll(dataMap).create();
+        Assert.assertEquals(dataMap.size(), trie.size());
+        for (Map.Entry<String, String> e : dataMap.entrySet()) {
+            Node<String> node = trie.getNode(e.getKey());
+            Assert.assertNotNull(node);
+            Assert.assertTrue(node.accept());
+            Assert.assertEquals(e.getValue(), node.getValue());
+        }
+        Assert.assertEquals(Node.Status.WORD, trie.getNode("一心").getStatus());
+        Assert.assertEquals(Node.Status.LEAF_WORD, trie.getNode("一切").getStatus());
+        Assert.assertEquals(Node.Status.NORMAL, trie.getNode("一心一").getStatus());
+        Assert.assertNull(trie.getNode("一心二"));
+        Assert.assertNull(trie.getNode("大"));
+
+        Assert.assertEquals(Arrays.asList("一", "一切", "一心", "一心一意"), keys(trie.prefixSearch("一")));
+        Assert.assertEquals(Arrays.asList("王", "王xing", "王星", "王星星"), keys(trie.prefixSearch("王")));
+        Assert.assertEquals(Collections.singletonList("一心一意"), keys(trie.prefixSearch("一心一")));
+        Assert.assertNull(trie.prefixSearch("王星艳"));
+
+        final List<Character> rootChildren = new ArrayList<>();
+        trie.getRoot().childHandle(new NodeChildHandle<String>() {
+            @Override
+            public boolean onHandle(Node<String> child) {
+                rootChildren.add(child.getChar());
+                return true;
+            }
+        });
+        Assert.assertEquals(Arrays.asList('一', '星', '王', '老'), rootChildren);
+
+        Assert.assertTrue(trie.updateValue("王", "xing.wang"));
+        Assert.assertEquals("xing.wang", trie.getNode("王").getValue());
+        Assert.assertFalse(trie.updateValue("王星艳", "xing.wang"));
+    }
+
+    @Test
+    public void lexiconTest() {
+        final BinaryTrie<Integer> binaryTrie = new BinaryTrie<>(RootNodeType.CJK.<Integer>defaultTrie());
+        final List<String> words = new ArrayList<>();
+        NlpUtils.loadLexicon(new Function<String, Boolean>() {
+            @Override
+            public Boolean apply(String line) {
+                int index = line.indexOf(' ');
+                String word = index < 0 ? line : line.substring(0, index);
+                binaryTrie.put(word, word.length());
+                words.add(word);
+                return true;
+            }
+        }, NlpUtils.getPathOfClass(DoubleArrayTrieTest.class, "/segment.txt"));
+        long startTime = System.currentTimeMillis();
+        DoubleArrayTrie<Integer> trie = DoubleArrayTrie.valueOf(binaryTrie);
+        System.out.println("build DoubleArrayTrie of " + trie.size() + " words, capacity: " + trie.capacity()
+                + ", cost: " + (System.currentTimeMillis() - startTime) + "ms");
+        Assert.assertEquals(binaryTrie.size(), trie.size());
+        int count = 0;
+        for (String w : words) {
+            Node<Integer> expect = binaryTrie.getNode(w);
+            Node<Integer> node = trie.getNode(w);
+            Assert.assertNotNull(w, node);
+            Assert.assertEquals(w, expect.accept(), node.accept());
+            Assert.assertEquals(w, trie.prefixSearch(w).size() > 1 ? Node.Status.WORD : Node.Status.LEAF_WORD,
+                    node.getStatus());
+            Assert.assertEquals(w, expect.getValue(), node.getValue());
+            //首字前缀的词比较多, 抽样比较
+            if (count++ % 1000 != 0) continue;
+            String prefix = w.substring(0, 1);
+            Assert.assertEquals(prefix, new HashSet<>(keys(binaryTrie.prefixSearch(prefix))),
+                    new HashSet<>(keys(trie.prefixSearch(prefix))));
+        }
+        for (int i = 0; i < trie.size(); i++) {
+            String w = trie.getWord(i);
+            Assert.assertEquals(w.length(), trie.wordLength(i));
+            char[] array = w.toCharArray();
+            Assert.assertEquals(i, trie.wordIndex(trie.getState(array, 0, array.length)));
+        }
+    }
+
+    private static <V> List<String> keys(List<Map.Entry<String, V>> entries) {
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, V> e : entries) {
+            keys.add(e.getKey());
+        }
+        return keys;
+    }
+}
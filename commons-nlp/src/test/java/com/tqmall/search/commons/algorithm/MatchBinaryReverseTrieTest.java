@@ -1,7 +1,12 @@
 package com.tqmall.search.commons.algorithm;
 
+import com.tqmall.search.commons.analyzer.TokenType;
+import com.tqmall.search.commons.lang.Function;
 import com.tqmall.search.commons.match.Hit;
+import com.tqmall.search.commons.match.HitHandler;
 import com.tqmall.search.commons.match.MatchBinaryReverseTrie;
+import com.tqmall.search.commons.match.TextMatcher;
+import com.tqmall.search.commons.nlp.NlpUtils;
 import com.tqmall.search.commons.nlp.Utils;
 import com.tqmall.search.commons.trie.Node;
 import com.tqmall.search.commons.trie.NormalNode;
@@ -143,4 +148,75 @@ public class MatchBinaryReverseTrieTest {
         Assert.assertTrue(reverseTrie.remove("地铁站"));
     }
 
+    @Test
+    public void hitHandlerMatchTest() {
+        String text = "北京大学地铁站和杭州西湖";
+        char[] textArray = ("和" + text).toCharArray();
+        final List<Hit<Void>> hits = new ArrayList<>();
+        HitHandler<Void> handler = new HitHandler<Void>() {
+            @Override
+            public boolean onHit(int start, int end, Void value) {
+                hits.add(new Hit<>(start - 1, end - 1, value));
+                return true;
+            }
+        };
+        Assert.assertTrue(reverseTrie.maxMatch(textArray, 1, text.length(), handler));
+        Assert.assertEquals(reverseTrie.maxMatch(text), hits);
+        hits.clear();
+        Assert.assertTrue(reverseTrie.minMatch(textArray, 1, text.length(), handler));
+        Assert.assertEquals(reverseTrie.minMatch(text), hits);
+        //handler终止之后不再回调
+        hits.clear();
+        Assert.assertFalse(reverseTrie.minMatch(textArray, 1, text.length(), new HitHandler<Void>() {
+            @Override
+            public boolean onHit(int start, int end, Void value) {
+                hits.add(new Hit<>(start - 1, end - 1, value));
+                return false;
+            }
+        }));
+        Assert.assertEquals(Collections.singletonList(Utils.<Void>hitValueOf(0, "北京", null)), hits);
+    }
+
+    /**
+     * 逆向前缀树从后向前直接匹配, 结果需要与翻转文本之后正向匹配的结果一致
+     */
+    @Test
+    public void backwardMatchTest() {
+        final MatchBinaryReverseTrie<TokenType> trie = new MatchBinaryReverseTrie<>(RootNodeType.CJK.<TokenType>defaultTrie());
+        final StringBuilder chars = new StringBuilder();
+        NlpUtils.loadLexicon(new Function<String, Boolean>() {
+            @Override
+            public Boolean apply(String line) {
+                int index = line.indexOf(' ');
+                String word = index < 0 ? line : line.substring(0, index);
+                trie.put(word, TokenType.CN);
+                if (chars.length() < 20000) chars.append(word);
+                return true;
+            }
+        }, NlpUtils.getPathOfClass(MatchBinaryReverseTrieTest.class, "/segment.txt"));
+        TextMatcher<TokenType> maxMatcher = TextMatcher.maxMatcher(trie.getRoot(), false);
+        TextMatcher<TokenType> minMatcher = TextMatcher.minMatcher(trie.getRoot(), false);
+        Random random = new Random(10);
+        for (int n = 0; n < 2000; n++) {
+            char[] text = new char[5 + random.nextInt(30)];
+            for (int i = 0; i < text.length; i++) {
+                text[i] = chars.charAt(random.nextInt(chars.length()));
+            }
+            int off = random.nextInt(3), len = text.length - off - random.nextInt(3);
+            Assert.assertEquals(reverseMatch(maxMatcher, text, off, len), trie.maxMatch(text, off, len));
+            Assert.assertEquals(reverseMatch(minMatcher, text, off, len), trie.minMatch(text, off, len));
+        }
+    }
+
+    private static List<Hit<TokenType>> reverseMatch(TextMatcher<TokenType> matcher, char[] text, int off, int len) {
+        char[] array = Arrays.copyOfRange(text, off, off + len);
+        NlpUtils.reverseCharArray(array);
+        List<Hit<TokenType>> hits = matcher.match(array, 0, len);
+        List<Hit<TokenType>> result = new ArrayList<>();
+        for (Hit<TokenType> h : hits) {
+            result.add(0, new Hit<>(off + len - h.getEnd(), off + len - h.getStart(), h.getValue()));
+        }
+        return result;
+    }
+
 }
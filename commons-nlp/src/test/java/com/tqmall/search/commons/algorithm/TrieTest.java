@@ -1,18 +1,29 @@
 package com.tqmall.search.commons.algorithm;
 
+import com.tqmall.search.commons.lang.Function;
 import com.tqmall.search.commons.match.Hit;
+import com.tqmall.search.commons.match.MatchBinaryReverseTrie;
 import com.tqmall.search.commons.match.MatchBinaryTrie;
+import com.tqmall.search.commons.nlp.NlpUtils;
 import com.tqmall.search.commons.nlp.Utils;
 import com.tqmall.search.commons.trie.BinaryTrie;
+import com.tqmall.search.commons.trie.CursorTrie;
+import com.tqmall.search.commons.trie.DoubleArrayTrie;
+import com.tqmall.search.commons.trie.FuzzyHit;
 import com.tqmall.search.commons.trie.Node;
+import com.tqmall.search.commons.trie.OverlayNode;
 import com.tqmall.search.commons.trie.RootNodeType;
+import com.tqmall.search.commons.trie.SuggestTrie;
 import com.tqmall.search.commons.trie.Trie;
+import com.tqmall.search.commons.trie.TrieCursor;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Created by xing on 16/1/28.
@@ -155,4 +166,275 @@ public class TrieTest {
         expectedResult.add(Utils.<String>hitValueOf(3, "服务", null));
         Assert.assertEquals(expectedResult, result);
     }
+
+    @Test
+    public void parallelPutAllTest() {
+        final Map<String, Integer> words = new HashMap<>();
+        NlpUtils.loadLexicon(new Function<String, Boolean>() {
+            @Override
+            public Boolean apply(String line) {
+                int index = line.indexOf(' ');
+                String word = index < 0 ? line : line.substring(0, index);
+                words.put(word, word.length());
+                return true;
+            }
+        }, NlpUtils.getPathOfClass(TrieTest.class, "/segment.txt"));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            BinaryTrie<Integer> expectTrie = new BinaryTrie<>(RootNodeType.CJK.<Integer>defaultTrie());
+            expectTrie.putAll(words, null);
+            BinaryTrie<Integer> trie = new BinaryTrie<>(RootNodeType.CJK.<Integer>defaultTrie());
+            trie.putAll(words, executor);
+            Assert.assertEquals(expectTrie.size(), trie.size());
+            Map<String, Integer> expectWords = new TreeMap<>();
+            NlpUtils.collectWords(expectTrie, expectWords);
+            Map<String, Integer> retWords = new TreeMap<>();
+            NlpUtils.collectWords(trie, retWords);
+            Assert.assertEquals(expectWords, retWords);
+
+            MatchBinaryReverseTrie<Integer> expectReverseTrie = new MatchBinaryReverseTrie<>(RootNodeType.CJK.<Integer>defaultTrie());
+            expectReverseTrie.putAll(words, null);
+            MatchBinaryReverseTrie<Integer> reverseTrie = new MatchBinaryReverseTrie<>(RootNodeType.CJK.<Integer>defaultTrie());
+            reverseTrie.putAll(words, executor);
+            Assert.assertEquals(expectReverseTrie.size(), reverseTrie.size());
+            for (String text : new String[]{"北京大学生前来应聘", "结婚的和尚未结婚的", "代表北大的人大代表，代表人大的北大博士"}) {
+                Assert.assertEquals(expectReverseTrie.maxMatch(text), reverseTrie.maxMatch(text));
+                Assert.assertEquals(expectReverseTrie.minMatch(text), reverseTrie.minMatch(text));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void suggestTrieTest() {
+        SuggestTrie<String> suggestTrie = new SuggestTrie<>();
+        Map<String, Double> weights = new HashMap<>();
+        Random random = new Random(7);
+        String chars = "一二三四王星";
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int len = 1 + random.nextInt(5);
+            for (int j = 0; j < len; j++) {
+                sb.append(chars.charAt(random.nextInt(chars.length())));
+            }
+            String key = sb.toString();
+            double weight = random.nextInt(100000);
+            Assert.assertEquals(!weights.containsKey(key), suggestTrie.put(key, weight, key));
+            weights.put(key, weight);
+        }
+        Assert.assertEquals(weights.size(), suggestTrie.size());
+        List<String> keys = new ArrayList<>(weights.keySet());
+        for (int i = 0; i < 500; i++) {
+            String key = keys.get(random.nextInt(keys.size()));
+            int op = random.nextInt(3);
+            if (!weights.containsKey(key)) {
+                Assert.assertFalse(suggestTrie.remove(key));
+                Assert.assertNull(suggestTrie.getWeight(key));
+            } else if (op == 0) {
+                double weight = random.nextInt(100000);
+                Assert.assertTrue(suggestTrie.updateWeight(key, weight));
+                weights.put(key, weight);
+            } else if (op == 1) {
+                Assert.assertTrue(suggestTrie.addWeight(key, 500));
+                weights.put(key, weights.get(key) + 500);
+            } else {
+                Assert.assertTrue(suggestTrie.remove(key));
+                weights.remove(key);
+            }
+        }
+        Assert.assertEquals(weights.size(), suggestTrie.size());
+        Assert.assertFalse(suggestTrie.updateWeight("不存在", 1));
+        Assert.assertTrue(suggestTrie.topK("不存在", 10).isEmpty());
+        for (String prefix : Arrays.asList("", "一", "王星", "三四一")) {
+            for (int k : Arrays.asList(1, 5, 50)) {
+                List<Double> expected = new ArrayList<>();
+                for (Map.Entry<String, Double> e : weights.entrySet()) {
+                    if (e.getKey().startsWith(prefix)) expected.add(e.getValue());
+                }
+                Collections.sort(expected, Collections.reverseOrder());
+                expected = expected.subList(0, Math.min(k, expected.size()));
+                List<Double> actual = new ArrayList<>();
+                for (SuggestTrie.Suggestion<String> s : suggestTrie.topK(prefix, k)) {
+                    Assert.assertTrue(s.getKey().startsWith(prefix));
+                    Assert.assertEquals(weights.get(s.getKey()), s.getWeight(), 0.0);
+                    Assert.assertEquals(s.getKey(), s.getValue());
+                    actual.add(s.getWeight());
+                }
+                Assert.assertEquals(expected, actual);
+            }
+        }
+        //权重必须是有限值
+        for (double weight : new double[]{Double.NaN, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY}) {
+            try {
+                suggestTrie.put("无穷", weight, null);
+                Assert.fail();
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+        Assert.assertNull(suggestTrie.getWeight("无穷"));
+        suggestTrie.put("无穷", Double.MAX_VALUE, null);
+        try {
+            suggestTrie.addWeight("无穷", Double.MAX_VALUE);
+            Assert.fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+        Assert.assertEquals(Double.MAX_VALUE, suggestTrie.getWeight("无穷"), 0.0);
+        Assert.assertEquals("无穷", suggestTrie.topK("无", 1).get(0).getKey());
+    }
+
+    @Test
+    public void prefixIteratorTest() {
+        final Map<String, Integer> words = new HashMap<>();
+        NlpUtils.loadLexicon(new Function<String, Boolean>() {
+            @Override
+            public Boolean apply(String line) {
+                int index = line.indexOf(' ');
+                String word = index < 0 ? line : line.substring(0, index);
+                words.put(word, word.length());
+                return true;
+            }
+        }, NlpUtils.getPathOfClass(TrieTest.class, "/segment.txt"));
+        BinaryTrie<Integer> trie = new BinaryTrie<>(RootNodeType.CJK.<Integer>defaultTrie());
+        trie.putAll(words, null);
+        MatchBinaryReverseTrie<Integer> reverseTrie = new MatchBinaryReverseTrie<>(RootNodeType.CJK.<Integer>defaultTrie());
+        reverseTrie.putAll(words, null);
+        //删除部分词, 遍历时需要跳过删除的节点
+        int i = 0;
+        for (String word : words.keySet()) {
+            if (i++ % 3 == 0) {
+                trie.remove(word);
+                reverseTrie.remove(word);
+            }
+        }
+        DoubleArrayTrie<Integer> doubleArrayTrie = DoubleArrayTrie.valueOf(trie);
+        for (CursorTrie<Integer> t : Arrays.<CursorTrie<Integer>>asList(trie, reverseTrie, doubleArrayTrie)) {
+            for (String prefix : Arrays.asList("一", "中国", "北", "人", "学", "不存在的前缀")) {
+                List<Map.Entry<String, Integer>> expected = t.prefixSearch(prefix);
+                if (expected == null) {
+                    Assert.assertNull(t.prefixIterator(prefix));
+                    continue;
+                }
+                Assert.assertEquals(expected, t.prefixIterator(prefix).toList());
+                Assert.assertEquals(expected.subList(Math.min(3, expected.size()), Math.min(8, expected.size())),
+                        t.prefixIterator(prefix).skip(3).limit(5).toList());
+                //分页遍历
+                List<Map.Entry<String, Integer>> paged = new ArrayList<>();
+                String afterKey = null;
+                while (true) {
+                    List<Map.Entry<String, Integer>> page = t.prefixIterator(prefix, afterKey).limit(7).toList();
+                    if (page.isEmpty()) break;
+                    paged.addAll(page);
+                    afterKey = page.get(page.size() - 1).getKey();
+                }
+                Assert.assertEquals(expected, paged);
+                //afterKey不存在时从其应该在的位置继续
+                if (expected.size() > 1) {
+                    String key = expected.get(0).getKey();
+                    //逆向树中前缀为词的结尾
+                    String missing = t == reverseTrie ? "\uffff" + key : key + "\uffff";
+                    List<Map.Entry<String, Integer>> rest = t.prefixIterator(prefix, missing).toList();
+                    Assert.assertTrue(rest.size() < expected.size());
+                    Assert.assertEquals(expected.subList(expected.size() - rest.size(), expected.size()), rest);
+                }
+            }
+        }
+        TrieCursor<Integer> cursor = trie.prefixIterator("中国");
+        if (cursor != null && cursor.next()) {
+            CharSequence key = cursor.key();
+            Assert.assertTrue(key.toString().startsWith("中国"));
+            Assert.assertEquals(words.get(key.toString()), cursor.value());
+        }
+    }
+
+    @Test
+    public void overlayNodeTest() {
+        BinaryTrie<Integer> base = new BinaryTrie<>(RootNodeType.NORMAL.<Integer>defaultTrie());
+        base.put("abc", 1);
+        base.put("xyz", 2);
+        BinaryTrie<Integer> overlay = new BinaryTrie<>(RootNodeType.NORMAL.<Integer>defaultTrie());
+        overlay.put("abd", 3);
+        Node<Integer> root = OverlayNode.of(overlay.getRoot(), base.getRoot());
+        //两边都有的路径, 视图节点缓存复用
+        Node<Integer> a = root.getChild('a');
+        Assert.assertTrue(a instanceof OverlayNode);
+        Assert.assertSame(a, root.getChild('a'));
+        Node<Integer> ab = a.getChild('b');
+        Assert.assertSame(ab, root.getChild('a').getChild('b'));
+        Assert.assertFalse(ab.accept());
+        //只在一边存在的直接返回原节点
+        Assert.assertSame(base.getNode("x"), root.getChild('x'));
+        Assert.assertSame(base.getNode("abc"), ab.getChild('c'));
+        Assert.assertSame(overlay.getNode("abd"), ab.getChild('d'));
+        //基础树的加词对缓存的节点可见
+        base.put("ab", 4);
+        Assert.assertSame(ab, root.getChild('a').getChild('b'));
+        Assert.assertTrue(ab.accept());
+        Assert.assertEquals(4, ab.getValue().intValue());
+        overlay.put("ab", 5);
+        Assert.assertEquals(5, root.getChild('a').getChild('b').getValue().intValue());
+    }
+
+    @Test
+    public void fuzzySearchTest() {
+        final Map<String, Integer> words = new HashMap<>();
+        NlpUtils.loadLexicon(new Function<String, Boolean>() {
+            @Override
+            public Boolean apply(String line) {
+                int index = line.indexOf(' ');
+                String word = index < 0 ? line : line.substring(0, index);
+                words.put(word, word.length());
+                return words.size() < 20000;
+            }
+        }, NlpUtils.getPathOfClass(TrieTest.class, "/segment.txt"));
+        for (String word : Arrays.asList("bmw320", "bmw325", "bmw", "benz", "x-100", "x-1000")) {
+            words.put(word, word.length());
+        }
+        BinaryTrie<Integer> trie = new BinaryTrie<>(RootNodeType.ALL.<Integer>defaultTrie());
+        trie.putAll(words, null);
+        MatchBinaryReverseTrie<Integer> reverseTrie = new MatchBinaryReverseTrie<>(RootNodeType.ALL.<Integer>defaultTrie());
+        reverseTrie.putAll(words, null);
+        trie.remove("bmw325");
+        reverseTrie.remove("bmw325");
+        words.remove("bmw325");
+        DoubleArrayTrie<Integer> doubleArrayTrie = DoubleArrayTrie.valueOf(trie);
+        for (String query : Arrays.asList("bwm320", "bmw32", "x-10", "一一对", "一一列举", "中华人民")) {
+            for (int maxDistance = 0; maxDistance <= 2; maxDistance++) {
+                Set<String> expected = new HashSet<>();
+                for (String word : words.keySet()) {
+                    int distance = editDistance(query, word);
+                    if (distance <= maxDistance) expected.add(word + ':' + distance);
+                }
+                for (List<FuzzyHit<Integer>> hits : Arrays.asList(trie.fuzzySearch(query, maxDistance),
+                        reverseTrie.fuzzySearch(query, maxDistance), doubleArrayTrie.fuzzySearch(query, maxDistance))) {
+                    Set<String> actual = new HashSet<>();
+                    int preDistance = 0;
+                    for (FuzzyHit<Integer> hit : hits) {
+                        Assert.assertTrue(hit.getDistance() >= preDistance);
+                        preDistance = hit.getDistance();
+                        Assert.assertEquals(words.get(hit.getKey()), hit.getValue());
+                        actual.add(hit.getKey() + ':' + hit.getDistance());
+                    }
+                    Assert.assertEquals(query + ", maxDistance: " + maxDistance, expected, actual);
+                }
+            }
+        }
+        Assert.assertNull(trie.fuzzySearch("", 1));
+    }
+
+    private static int editDistance(String a, String b) {
+        int[] row = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) row[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            int diag = row[0];
+            row[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int tmp = row[j];
+                row[j] = Math.min(Math.min(row[j], row[j - 1]) + 1, diag + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1));
+                diag = tmp;
+            }
+        }
+        return row[b.length()];
+    }
 }
+
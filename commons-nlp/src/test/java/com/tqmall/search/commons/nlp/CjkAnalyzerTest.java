@@ -1,16 +1,27 @@
 package com.tqmall.search.commons.nlp;
 
+import com.tqmall.search.commons.analyzer.CjkAnalyzer;
 import com.tqmall.search.commons.analyzer.CjkLexicon;
+import com.tqmall.search.commons.analyzer.CjkLexiconSnapshot;
+import com.tqmall.search.commons.analyzer.TermDictionary;
+import com.tqmall.search.commons.analyzer.TermHitHandler;
 import com.tqmall.search.commons.analyzer.TokenType;
+import com.tqmall.search.commons.exception.LoadLexiconException;
 import com.tqmall.search.commons.lang.Function;
+import com.tqmall.search.commons.lang.Supplier;
 import com.tqmall.search.commons.match.Hit;
 import com.tqmall.search.commons.match.Hits;
 import com.tqmall.search.commons.trie.RootNodeType;
 import org.junit.AfterClass;
+import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
-import java.util.List;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
 
 /**
  * Created by xing on 16/2/11.
@@ -58,6 +69,247 @@ public class CjkAnalyzerTest {
         System.out.println();
     }
 
+    @Test
+    public void snapshotTest() throws IOException {
+        Path snapshotPath = Files.createTempFile("cjk_lexicon", ".snapshot");
+        Path brokenPath = Files.createTempFile("cjk_lexicon_broken", ".snapshot");
+        try {
+            CjkLexiconSnapshot.write(cjkLexicon, snapshotPath);
+            CjkLexicon snapshotLexicon = CjkLexiconSnapshot.load(snapshotPath, RootNodeType.CJK);
+            for (String text : new String[]{"北京大学生前来应聘", "代表北大的人大代表，代表人大的北大博士", "结婚的和尚未结婚的",
+                    "吉林省长春药店", "蚂蚁金服的员工都分布在哪些工作地点？"}) {
+                char[] array = text.toCharArray();
+                Assert.assertEquals(cjkLexicon.fullMatch(array, 0, array.length), snapshotLexicon.fullMatch(array, 0, array.length));
+                Assert.assertEquals(cjkLexicon.maxMatch(array, 0, array.length), snapshotLexicon.maxMatch(array, 0, array.length));
+                Assert.assertEquals(cjkLexicon.minMatch(array, 0, array.length), snapshotLexicon.minMatch(array, 0, array.length));
+            }
+            Assert.assertTrue(snapshotLexicon.isQuantifier("世纪"));
+            //快照加载的词库ID一致
+            for (String word : new String[]{"北京大学", "代表", "蚂蚁"}) {
+                Assert.assertEquals(cjkLexicon.getTermDictionary().termId(word), snapshotLexicon.getTermDictionary().termId(word));
+            }
+            //加载之后加词依然生效
+            Assert.assertTrue(snapshotLexicon.addWord("詹姆斯哈登", TokenType.CN));
+            char[] array = "詹姆斯哈登".toCharArray();
+            Assert.assertEquals(1, snapshotLexicon.maxMatch(array, 0, array.length).size());
+            //文件损坏, 数量为负数
+            byte[] data = Files.readAllBytes(snapshotPath);
+            data[8] = (byte) 0xFF;
+            Files.write(brokenPath, data);
+            try {
+                CjkLexiconSnapshot.load(brokenPath, RootNodeType.CJK);
+                Assert.fail();
+            } catch (LoadLexiconException ignored) {
+            }
+        } finally {
+            Files.delete(snapshotPath);
+            Files.delete(brokenPath);
+        }
+    }
+
+    /**
+     * 动态添加的词写到快照之后, 所有的词ID都不变
+     */
+    @Test
+    public void snapshotTermIdTest() throws IOException {
+        Path lexiconPath = Files.createTempFile("cjk_lexicon", ".txt");
+        Path snapshotPath = Files.createTempFile("cjk_lexicon", ".snapshot");
+        try {
+            Files.write(lexiconPath, Arrays.asList("北京", "北京大学", "大学", "学生"), StandardCharsets.UTF_8);
+            CjkLexicon lexicon = new CjkLexicon(RootNodeType.CJK, lexiconPath);
+            //字典序在"北京大学"之前
+            Assert.assertTrue(lexicon.addWord("北京人", TokenType.CN));
+            Assert.assertTrue(lexicon.addWord("一个", TokenType.NUM_QUANTIFIER));
+            CjkLexiconSnapshot.write(lexicon, snapshotPath);
+            CjkLexicon snapshotLexicon = CjkLexiconSnapshot.load(snapshotPath, RootNodeType.CJK);
+            TermDictionary termDictionary = lexicon.getTermDictionary();
+            TermDictionary snapshotDictionary = snapshotLexicon.getTermDictionary();
+            Assert.assertEquals(termDictionary.size(), snapshotDictionary.size());
+            for (int i = 0; i < termDictionary.size(); i++) {
+                Assert.assertEquals(termDictionary.term(i), snapshotDictionary.term(i));
+                Assert.assertEquals(i, snapshotDictionary.termId(termDictionary.term(i)));
+            }
+            final char[] array = "北京人在北京大学一个".toCharArray();
+            final List<Integer> termIds = new ArrayList<>();
+            snapshotLexicon.fullMatch(array, 0, array.length, new TermHitHandler() {
+                @Override
+                public boolean onHit(int start, int end, TokenType type, int termId) {
+                    termIds.add(termId);
+                    return true;
+                }
+            });
+            //原词库加的词重建AcTrie之后才能全匹配, 所以通过原词库的ID表查找
+            List<Integer> expected = new ArrayList<>();
+            for (Hit<TokenType> hit : snapshotLexicon.fullMatch(array, 0, array.length)) {
+                expected.add(termDictionary.termId(array, hit));
+            }
+            Assert.assertEquals(expected, termIds);
+            //加载之后再加词继续追加ID
+            Assert.assertTrue(snapshotLexicon.addWord("大学生", TokenType.CN));
+            Assert.assertEquals(termDictionary.size(), snapshotDictionary.termId("大学生"));
+        } finally {
+            Files.delete(lexiconPath);
+            Files.delete(snapshotPath);
+        }
+    }
+
+    @Test
+    public void termDictionaryTest() {
+        TermDictionary termDictionary = cjkLexicon.getTermDictionary();
+        Assert.assertEquals(TermDictionary.NO_TERM, termDictionary.termId("不存在的词词词"));
+        String text = "代表北大的人大代表，代表人大的北大博士";
+        char[] array = text.toCharArray();
+        for (Hit<TokenType> hit : cjkLexicon.fullMatch(array, 0, array.length)) {
+            int termId = termDictionary.termId(array, hit);
+            Assert.assertTrue(termId >= 0 && termId < termDictionary.size());
+            Assert.assertEquals(text.substring(hit.getStart(), hit.getEnd()), termDictionary.term(termId));
+        }
+        //相同的词ID相同, 不同的词ID不同
+        Assert.assertEquals(termDictionary.termId("人大"), termDictionary.termId(array, 5, 2));
+        Assert.assertNotEquals(termDictionary.termId("北大"), termDictionary.termId("人大"));
+        //动态加词追加ID, 已有的ID不变
+        int size = termDictionary.size(), daibiao = termDictionary.termId("代表");
+        Assert.assertTrue(cjkLexicon.addWord("詹詹詹", TokenType.CN));
+        Assert.assertEquals(size, termDictionary.termId("詹詹詹"));
+        Assert.assertEquals("詹詹詹", termDictionary.term(size));
+        Assert.assertEquals(size + 1, termDictionary.size());
+        Assert.assertEquals(daibiao, termDictionary.termId("代表"));
+        try {
+            termDictionary.term(size + 1);
+            Assert.fail();
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+        //匹配结果直接带出插入时存储的ID
+        final List<Integer> fullTermIds = new ArrayList<>();
+        cjkLexicon.fullMatch(array, 0, array.length, new TermHitHandler() {
+            @Override
+            public boolean onHit(int start, int end, TokenType type, int termId) {
+                fullTermIds.add(termId);
+                return true;
+            }
+        });
+        List<Hit<TokenType>> fullHits = cjkLexicon.fullMatch(array, 0, array.length);
+        Assert.assertEquals(fullHits.size(), fullTermIds.size());
+        for (int i = 0; i < fullHits.size(); i++) {
+            Assert.assertEquals(termDictionary.termId(array, fullHits.get(i)), (int) fullTermIds.get(i));
+        }
+        //分词结果直接回调ID
+        Segment segment = Segment.build("termDictionaryTest").cjkSegmentType(CjkAnalyzer.Type.MAX).create(new Supplier<CjkLexicon>() {
+            @Override
+            public CjkLexicon get() {
+                return cjkLexicon;
+            }
+        });
+        Assert.assertSame(termDictionary, segment.termDictionary());
+        final List<Integer> termIds = new ArrayList<>();
+        final char[] segmentText = "北京大学生前来应聘2016".toCharArray();
+        segment.match(segmentText, 0, segmentText.length, new TermHitHandler() {
+            @Override
+            public boolean onHit(int start, int end, TokenType type, int termId) {
+                termIds.add(termId);
+                return true;
+            }
+        });
+        List<Hit<TokenType>> hits = segment.match(segmentText, 0, segmentText.length);
+        Assert.assertEquals(hits.size(), termIds.size());
+        for (int i = 0; i < hits.size(); i++) {
+            Assert.assertEquals(termDictionary.termId(segmentText, hits.get(i)), (int) termIds.get(i));
+        }
+        Assert.assertEquals(TermDictionary.NO_TERM, (int) termIds.get(termIds.size() - 1));
+    }
+
+    @Test
+    public void overlayTest() throws IOException {
+        Map<String, TokenType> overlayWords = new LinkedHashMap<>();
+        overlayWords.put("博观", TokenType.CN);
+        overlayWords.put("蚂蚁金服", TokenType.CN);
+        overlayWords.put("金服", TokenType.CN);
+        overlayWords.put("工作地点", TokenType.CN);
+        overlayWords.put("周杰伦", TokenType.UNKNOWN);
+        overlayWords.put("坨", TokenType.QUANTIFIER);
+        String[] texts = {"博观是什么时候加入阿里的？", "蚂蚁金服的员工都分布在哪些工作地点？", "周杰轮周杰伦，范伟骑范玮琪",
+                "北京大学生前来应聘", "一坨蚂蚁金服"};
+        List<List<Hit<TokenType>>> baseHits = new ArrayList<>();
+        for (String text : texts) {
+            baseHits.add(cjkLexicon.fullMatch(text.toCharArray(), 0, text.length()));
+        }
+        CjkLexicon overlay = CjkLexicon.overlay(cjkLexicon, overlayWords);
+        Assert.assertSame(cjkLexicon, overlay.getBase());
+        //对照: 基础词库文件和增量词文件一起加载的普通词库
+        Path overlayPath = Files.createTempFile("cjk_overlay", ".txt");
+        CjkLexicon merged;
+        try {
+            List<String> lines = new ArrayList<>();
+            for (Map.Entry<String, TokenType> e : overlayWords.entrySet()) {
+                lines.add(e.getKey() + ' ' + e.getValue().name());
+            }
+            Files.write(overlayPath, lines, StandardCharsets.UTF_8);
+            merged = new CjkLexicon(RootNodeType.CJK, Arrays.asList(NlpUtils.getPathOfClass(CjkAnalyzerTest.class,
+                    "/segment.txt"), overlayPath));
+        } finally {
+            Files.delete(overlayPath);
+        }
+        for (int i = 0; i < texts.length; i++) {
+            char[] array = texts[i].toCharArray();
+            Assert.assertEquals(merged.fullMatch(array, 0, array.length), overlay.fullMatch(array, 0, array.length));
+            Assert.assertEquals(merged.maxMatch(array, 0, array.length), overlay.maxMatch(array, 0, array.length));
+            Assert.assertEquals(merged.minMatch(array, 0, array.length), overlay.minMatch(array, 0, array.length));
+            Assert.assertEquals(merged.leftmostLongestMatch(array, 0, array.length),
+                    overlay.leftmostLongestMatch(array, 0, array.length));
+            //基础词库不受影响
+            Assert.assertEquals(baseHits.get(i), cjkLexicon.fullMatch(array, 0, array.length));
+        }
+        Assert.assertTrue(overlay.maxMatch("周杰伦".toCharArray(), 0, 3).contains(new Hit<>(0, 3, TokenType.UNKNOWN)));
+        //增量词库有自己的ID表, 基础词库的ID表不变, 增量的词从基础词库的ID之后分配
+        final TermDictionary baseDictionary = cjkLexicon.getTermDictionary();
+        final TermDictionary overlayDictionary = overlay.getTermDictionary();
+        Assert.assertTrue(baseDictionary != overlayDictionary);
+        int addedCount = 0;
+        for (String word : overlayWords.keySet()) {
+            int baseTermId = baseDictionary.termId(word);
+            if (baseTermId == TermDictionary.NO_TERM) {
+                addedCount++;
+                Assert.assertTrue(overlayDictionary.termId(word) >= baseDictionary.size());
+            } else {
+                Assert.assertEquals(baseTermId, overlayDictionary.termId(word));
+            }
+        }
+        Assert.assertTrue(addedCount > 0);
+        Assert.assertEquals(baseDictionary.size() + addedCount, overlayDictionary.size());
+        Assert.assertEquals(TermDictionary.NO_TERM, baseDictionary.termId("博观"));
+        for (String text : texts) {
+            final char[] array = text.toCharArray();
+            overlay.maxMatch(array, 0, array.length, new TermHitHandler() {
+                @Override
+                public boolean onHit(int start, int end, TokenType type, int termId) {
+                    Assert.assertEquals(overlayDictionary.termId(array, start, end - start), termId);
+                    return true;
+                }
+            });
+        }
+        //基础词库在增量词库创建之后添加的词不在增量词库的ID表中, 不会与增量的词ID冲突
+        Assert.assertTrue(cjkLexicon.addWord("柚柚柚", TokenType.CN));
+        Assert.assertEquals(TermDictionary.NO_TERM, overlayDictionary.termId("柚柚柚"));
+        final char[] addedText = "柚柚柚".toCharArray();
+        final List<Integer> addedTermIds = new ArrayList<>();
+        overlay.maxMatch(addedText, 0, addedText.length, new TermHitHandler() {
+            @Override
+            public boolean onHit(int start, int end, TokenType type, int termId) {
+                addedTermIds.add(termId);
+                return true;
+            }
+        });
+        Assert.assertEquals(Collections.singletonList(TermDictionary.NO_TERM), addedTermIds);
+        Assert.assertTrue(overlay.isQuantifier("坨"));
+        Assert.assertTrue(overlay.isQuantifier("世纪"));
+        Assert.assertFalse(cjkLexicon.isQuantifier("坨"));
+        //基础词库的版本变化同样使增量词库的版本变化
+        long version = overlay.getVersion();
+        Assert.assertTrue(cjkLexicon.addQuantifier("坨坨"));
+        Assert.assertNotEquals(version, overlay.getVersion());
+        Assert.assertTrue(cjkLexicon.removeQuantifier("坨坨"));
+    }
+
     private void runSegment(Function<String, List<Hit<TokenType>>> function) {
         String text = "北京大学";
         List<Hit<TokenType>> list;
@@ -57,4 +57,19 @@ public class PyTest {
         System.out.println("text: " + text + ": " + exceptedEntry);
         Assert.assertEquals(exceptedEntry, flResult);
     }
+
+    @Test
+    public void pinyinCacheTest() {
+        PinyinConvert pinyinConvert = PinyinConvert.create(null);
+        PinyinCache cache = new PinyinCache(pinyinConvert, 100);
+        Assert.assertEquals("changsha", cache.convert("长沙", 0));
+        Assert.assertEquals(new AbstractMap.SimpleImmutableEntry<>("changsha", "cs"), cache.firstLetterConvert("长沙", 0));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertNull(cache.convert("abc", 0));
+        Assert.assertNull(cache.convert("abc", 0));
+        Assert.assertEquals(2, cache.getHitCount());
+        pinyinConvert.addPinyinLexicon("长沙", "zhang sha");
+        Assert.assertEquals("zhangsha", cache.convert("长沙", 0));
+        Assert.assertEquals(3, cache.getMissCount());
+    }
 }
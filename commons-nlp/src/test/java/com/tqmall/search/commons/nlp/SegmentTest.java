@@ -3,14 +3,31 @@ package com.tqmall.search.commons.nlp;
 import com.tqmall.search.commons.analyzer.AsciiAnalyzer;
 import com.tqmall.search.commons.analyzer.CjkAnalyzer;
 import com.tqmall.search.commons.analyzer.CjkLexicon;
+import com.tqmall.search.commons.analyzer.HitBuffer;
+import com.tqmall.search.commons.analyzer.NumQuantifierMerge;
+import com.tqmall.search.commons.analyzer.StopWords;
+import com.tqmall.search.commons.analyzer.TermHitHandler;
+import com.tqmall.search.commons.analyzer.TokenType;
 import com.tqmall.search.commons.lang.Supplier;
+import com.tqmall.search.commons.match.AbstractTextMatch;
+import com.tqmall.search.commons.match.Hit;
 import com.tqmall.search.commons.match.Hits;
 import com.tqmall.search.commons.trie.RootNodeType;
+import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Created by xing on 16/3/14.
@@ -25,9 +42,11 @@ public class SegmentTest {
 
     private static Segment minSegment;
 
+    private static Supplier<CjkLexicon> cjkLexicon;
+
     @BeforeClass
     public static void init() {
-        Supplier<CjkLexicon> cjkLexicon = CjkLexicon.createAsyncSupplier(RootNodeType.CJK,
+        cjkLexicon = CjkLexicon.createAsyncSupplier(RootNodeType.CJK,
                 NlpUtils.getPathOfClass(SegmentTest.class, "/segment.txt"));
         fullSegment = Segment.build("full")
                 .segmentFilter(SegmentFilters.textFilter())
@@ -88,4 +107,313 @@ public class SegmentTest {
         }
     }
 
+    /**
+     * 单次遍历分词的结果需要与依次执行各个分词器的结果完全一致, 遍历所有的{@link SegmentConfig}配置组合
+     */
+    @Test
+    public void singlePassTest() throws IOException {
+        //包含非cjk字符的词
+        Path lexiconPath = Files.createTempFile("segment", ".txt");
+        CjkLexicon mixLexicon;
+        try {
+            Files.write(lexiconPath, Arrays.asList("t恤", "a股", "3d打印", "x-1", "北京", "北京大学", "大学生", "一个 nq",
+                    "三个 nq", "千 n", "个 q", "元 q"), StandardCharsets.UTF_8);
+            mixLexicon = new CjkLexicon(RootNodeType.ALL, lexiconPath);
+        } finally {
+            Files.delete(lexiconPath);
+        }
+        final String chars = "北京大学生前来应聘商品和服务一二三四五六七八九十百千万亿个元年人只件的了是和恤股打印大連華○〇"
+                + "ABCabtdx0123456789..--  ,，ＸＴ１．";
+        Random random = new Random(7);
+        List<char[]> texts = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            char[] text = new char[random.nextInt(40)];
+            for (int j = 0; j < text.length; j++) {
+                text[j] = chars.charAt(random.nextInt(chars.length()));
+            }
+            texts.add(text);
+        }
+        texts.add("Xing-Wang0.5元, 大連理工大学六十年校庆, 500人不是参加华中科技大学".toCharArray());
+        texts.add("a-b-c 1.2.3 a-1.5元 x-1个 3d打印t恤三个五千元".toCharArray());
+        for (Supplier<CjkLexicon> lexicon : Arrays.asList(cjkLexicon, supplier(mixLexicon))) {
+            for (SegmentConfig config : allConfigs()) {
+                Segment segment = config.createSegment(lexicon);
+                for (char[] text : texts) {
+                    int off = text.length < 4 ? 0 : random.nextInt(3);
+                    int len = text.length - off - (text.length < 4 ? 0 : random.nextInt(3));
+                    char[] expectedText = text.clone();
+                    List<Hit<TokenType>> expected = segment.pipelineMatch(expectedText, off, len);
+                    char[] actualText = text.clone();
+                    List<Hit<TokenType>> actual = segment.match(actualText, off, len);
+                    String message = config + ", text: " + new String(text, off, len);
+                    Assert.assertEquals(message, String.valueOf(expected), String.valueOf(actual));
+                    Assert.assertArrayEquals(message, expectedText, actualText);
+                    List<Hit<TokenType>> handlerHits = new ArrayList<>();
+                    segment.match(text.clone(), off, len, AbstractTextMatch.collectHandler(handlerHits));
+                    Assert.assertEquals(message, String.valueOf(expected == null ? new ArrayList<>() : expected),
+                            String.valueOf(handlerHits));
+                    //两种方式的词ID也一致
+                    List<String> expectedTerms = new ArrayList<>(), actualTerms = new ArrayList<>();
+                    segment.pipelineMatch(text.clone(), off, len, termCollector(expectedTerms));
+                    segment.match(text.clone(), off, len, termCollector(actualTerms));
+                    Assert.assertEquals(message, expectedTerms, actualTerms);
+                }
+            }
+        }
+    }
+
+    private static TermHitHandler termCollector(final List<String> terms) {
+        return new TermHitHandler() {
+            @Override
+            public boolean onHit(int start, int end, TokenType type, int termId) {
+                terms.add(start + "," + end + "," + type + "," + termId);
+                return true;
+            }
+        };
+    }
+
+    @Test
+    public void tokenStreamTest() throws IOException {
+        SegmentTokenStream stream = fullSegment.tokenStream();
+        for (String text : new String[]{"Xing-Wang0.5元, 大連理工大学六十年校庆, 500人不是参加华中科技大学", "", "北京大学生前来应聘",
+                "B-tree中的每个结点根据实际情况可以包含大量的关键字信息"}) {
+            char[] array = text.toCharArray();
+            List<Hit<TokenType>> hits = fullSegment.match(array, 0, array.length);
+            for (int i = 0; i < 2; i++) {
+                if (i == 0) stream.reset(text.toCharArray(), 0, text.length());
+                else stream.reset(new StringReader(text));
+                if (hits != null) {
+                    for (Hit<TokenType> h : hits) {
+                        Assert.assertTrue(stream.incrementToken());
+                        Assert.assertEquals(h.getStart(), stream.startOffset());
+                        Assert.assertEquals(h.getEnd(), stream.endOffset());
+                        Assert.assertEquals(h.getValue(), stream.type());
+                        Assert.assertEquals(new String(array, h.getStart(), h.length()), stream.term());
+                    }
+                }
+                Assert.assertFalse(stream.incrementToken());
+                Assert.assertEquals(text.length(), stream.finalOffset());
+            }
+        }
+        stream.close();
+        //读取第一个词之前没有当前词
+        stream.reset("北京大学".toCharArray(), 0, 4);
+        try {
+            stream.startOffset();
+            Assert.fail();
+        } catch (IllegalStateException ignored) {
+        }
+        //再次reset时关闭之前的reader
+        final boolean[] closed = new boolean[1];
+        stream.reset(new StringReader("北京大学") {
+            @Override
+            public void close() {
+                closed[0] = true;
+                super.close();
+            }
+        });
+        stream.reset(new StringReader("北京大学"));
+        Assert.assertTrue(closed[0]);
+        stream.close();
+    }
+
+    @Test
+    public void matchAllTest() {
+        Random random = new Random(11);
+        String chars = "北京大学生前来应聘商品和服务三个五千元Xing-Wang0.5 ,";
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = random.nextInt(30); j > 0; j--) {
+                sb.append(chars.charAt(random.nextInt(chars.length())));
+            }
+            texts.add(sb.toString());
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (Segment segment : Arrays.asList(fullSegment, maxSegment, minSegment)) {
+                List<String> expected = new ArrayList<>();
+                for (String text : texts) {
+                    expected.add(String.valueOf(segment.match(text)));
+                }
+                for (ForkJoinPool p : Arrays.asList(null, pool)) {
+                    List<String> actual = new ArrayList<>();
+                    for (List<Hit<TokenType>> hits : segment.matchAll(texts, p)) {
+                        actual.add(String.valueOf(hits));
+                    }
+                    Assert.assertEquals(expected, actual);
+                    actual.clear();
+                    Iterator<List<Hit<TokenType>>> it = segment.matchAll(texts.iterator(), p, 64);
+                    while (it.hasNext()) {
+                        actual.add(String.valueOf(it.next()));
+                    }
+                    Assert.assertEquals(expected, actual);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * 长文本并行分词的结果需要与顺序分词完全一致, 包括词库中包含标点符号的词
+     */
+    @Test
+    public void matchLongTextTest() throws IOException {
+        Path lexiconPath = Files.createTempFile("segment", ".txt");
+        CjkLexicon punctLexicon;
+        try {
+            Files.write(lexiconPath, Arrays.asList("北京", "北京大学", "大学生", "a,b", "3,000", "个 q", "三个 nq"),
+                    StandardCharsets.UTF_8);
+            punctLexicon = new CjkLexicon(RootNodeType.ALL, lexiconPath);
+        } finally {
+            Files.delete(lexiconPath);
+        }
+        punctLexicon.addWord("t恤 衫", TokenType.CN);
+        //切分位置只能是换行, 空格以及','都在词库的词中
+        final String[] pieces = {"北京大学", "生", "前来应聘", "三个", "五个", "元", "商品", "a,b", "3,000", "t恤 衫", "A", "b-1.5",
+                ",", " ", "0.", "\n"};
+        Random random = new Random(13);
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 50000) {
+            sb.append(pieces[random.nextInt(pieces.length)]);
+        }
+        char[] text = sb.toString().toCharArray();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (Supplier<CjkLexicon> lexicon : Arrays.asList(cjkLexicon, supplier(punctLexicon))) {
+                for (SegmentConfig config : allConfigs()) {
+                    Segment segment = config.createSegment(lexicon);
+                    char[] expectedText = text.clone();
+                    List<Hit<TokenType>> expected = segment.match(expectedText, 3, text.length - 5);
+                    char[] actualText = text.clone();
+                    List<Hit<TokenType>> actual = segment.matchLongText(actualText, 3, text.length - 5, pool);
+                    Assert.assertEquals(config.toString(), expected, actual);
+                    Assert.assertEquals(config.toString(), String.valueOf(expected), String.valueOf(actual));
+                    Assert.assertArrayEquals(config.toString(), expectedText, actualText);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void segmentCacheTest() throws IOException {
+        Path lexiconPath = Files.createTempFile("segment", ".txt");
+        CjkLexicon lexicon;
+        try {
+            Files.write(lexiconPath, Arrays.asList("北京", "大学"), StandardCharsets.UTF_8);
+            lexicon = new CjkLexicon(RootNodeType.CJK, lexiconPath);
+        } finally {
+            Files.delete(lexiconPath);
+        }
+        Segment segment = Segment.build("cache")
+                .segmentFilter(SegmentFilters.hitsFilter())
+                .cjkSegmentType(CjkAnalyzer.Type.MAX)
+                .create(supplier(lexicon));
+        SegmentCache cache = new SegmentCache(100);
+        String text = "北京大学Ipad2";
+        List<Hit<TokenType>> hits = cache.match(segment, text);
+        Assert.assertEquals(segment.match(text), hits);
+        Assert.assertSame(hits, cache.match(segment, "北京大学ipad2"));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        try {
+            hits.get(0).changeValue(TokenType.EN);
+            Assert.fail();
+        } catch (UnsupportedOperationException ignored) {
+        }
+        //加词之后缓存失效
+        lexicon.addWord("北京大学", TokenType.CN);
+        List<Hit<TokenType>> newHits = cache.match(segment, text);
+        Assert.assertEquals(segment.match(text), newHits);
+        Assert.assertNotEquals(hits, newHits);
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertNull(cache.match(segment, ""));
+        //名称相同的不同Segment不共享缓存
+        Segment minSegment = Segment.build("cache")
+                .segmentFilter(SegmentFilters.hitsFilter())
+                .cjkSegmentType(CjkAnalyzer.Type.MIN)
+                .create(supplier(lexicon));
+        Assert.assertEquals(minSegment.match(text), cache.match(minSegment, text));
+        Assert.assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void stopwordTest() {
+        StopWords stopWords = StopWords.instance();
+        long version = stopWords.getVersion();
+        Assert.assertTrue(stopWords.addStopword("StopwordTest"));
+        Assert.assertTrue(StopWords.isStopword("stopwordtest".toCharArray(), 0, 12));
+        //已经存在, 不重建, 版本不变
+        Assert.assertFalse(stopWords.addStopword("stopwordTEST"));
+        Assert.assertEquals(version + 1, stopWords.getVersion());
+        Assert.assertTrue(stopWords.removeStopword("stopwordtest"));
+        Assert.assertFalse(StopWords.isStopword("stopwordtest".toCharArray(), 0, 12));
+    }
+
+    @Test
+    public void hitBufferTest() {
+        HitBuffer hits = HitBuffer.local();
+        hits.add(0, 2, TokenType.CN);
+        hits.add(2, 3, TokenType.QUANTIFIER);
+        hits.add(5, 6, TokenType.CN);
+        hits.add(0, 2, TokenType.NUM);
+        hits.add(3, 5, TokenType.EN);
+        hits.mergeSorted(3);
+        Assert.assertEquals("[0,2:CN, 0,2:NUM, 2,3:QUANTIFIER, 3,5:EN, 5,6:CN]", hits.toString());
+        hits.insertOrdered(2, 3, TokenType.NUM_QUANTIFIER);
+        Assert.assertEquals(4, hits.insertOrdered(2, 4, null));
+        Assert.assertEquals("[0,2:CN, 0,2:NUM, 2,3:QUANTIFIER, 2,3:NUM_QUANTIFIER, 2,4, 3,5:EN, 5,6:CN]", hits.toString());
+        hits.filter(null, new HitBuffer.Filter() {
+            @Override
+            public boolean accept(char[] text, int start, int end, TokenType type) {
+                return type != TokenType.CN;
+            }
+        });
+        Assert.assertEquals("[0,2:NUM, 2,3:QUANTIFIER, 2,3:NUM_QUANTIFIER, 2,4, 3,5:EN]", hits.toString());
+        List<Hit<TokenType>> list = hits.toList();
+        new NumQuantifierMerge(true).merge(hits);
+        Assert.assertEquals("[0,2:NUM, 0,3:NUM_QUANTIFIER, 2,3:QUANTIFIER, 2,3:NUM_QUANTIFIER, 2,4, 3,5:EN]", hits.toString());
+        new NumQuantifierMerge(false).merge(list);
+        Assert.assertEquals("[0,3:NUM_QUANTIFIER, 2,3:NUM_QUANTIFIER, 2,4, 3,5:EN]", list.toString());
+        Assert.assertTrue(HitBuffer.local().isEmpty());
+    }
+
+    private static List<SegmentConfig> allConfigs() {
+        List<SegmentConfig> configs = new ArrayList<>();
+        for (SegmentFilter filter : Arrays.asList(null, SegmentFilters.textFilter(), SegmentFilters.hitsFilter())) {
+            for (int ascii = 0; ascii < 7; ascii++) {
+                for (CjkAnalyzer.Type type : CjkAnalyzer.Type.values()) {
+                    for (int numQuantifier = 0; numQuantifier < 3; numQuantifier++) {
+                        SegmentConfig config = new SegmentConfig("test");
+                        config.setSegmentFilter(filter);
+                        if (ascii == 0) {
+                            config.setMaxAsciiAnalyzer(true);
+                        } else {
+                            config.setAsciiAnalyzerParseDecimal(ascii % 2 == 1);
+                            config.setAsciiAnalyzerParseEnMix(ascii > 2);
+                            config.setAsciiAnalyzerAppendEnMix(ascii > 4);
+                        }
+                        config.setCjkAnalyzerType(type);
+                        config.setMergeNumQuantifier(numQuantifier > 0);
+                        config.setAppendNumQuantifier(numQuantifier > 1);
+                        configs.add(config);
+                    }
+                }
+            }
+        }
+        return configs;
+    }
+
+    private static Supplier<CjkLexicon> supplier(final CjkLexicon cjkLexicon) {
+        return new Supplier<CjkLexicon>() {
+            @Override
+            public CjkLexicon get() {
+                return cjkLexicon;
+            }
+        };
+    }
+
 }
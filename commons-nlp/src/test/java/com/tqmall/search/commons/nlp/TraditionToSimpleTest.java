@@ -1,5 +1,6 @@
 package com.tqmall.search.commons.nlp;
 
+import com.tqmall.search.commons.analyzer.CjkLexicon;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -26,4 +27,47 @@ public class TraditionToSimpleTest {
         str = "head电费as測試12繁體轉xing簡體";
         Assert.assertEquals("head电费as测试12繁体转xing简体", traditionToSimple.convert(str));
     }
+
+    @Test
+    public void phraseTest() {
+        TraditionToSimple traditionToSimple = TraditionToSimple.instance();
+        char[] text = "乾隆皇帝很乾淨, 著名的頭髮發展, 顯著".toCharArray();
+        traditionToSimple.convertPhrase(text, 0, text.length);
+        Assert.assertEquals("乾隆皇帝很干净, 著名的头发发展, 显著", new String(text));
+        //逐字转换的结果不对
+        Assert.assertEquals("干隆皇帝", traditionToSimple.convert("乾隆皇帝"));
+        //最长短语优先, 只转换指定范围
+        text = "宮商角徵羽宮商角徵".toCharArray();
+        traditionToSimple.convertPhrase(text, 0, text.length);
+        Assert.assertEquals("宫商角徵羽宫商角征", new String(text));
+        text = "x乾隆y".toCharArray();
+        Assert.assertEquals(0, traditionToSimple.replacePhrase(text, 0, text.length));
+        Assert.assertEquals(0, traditionToSimple.replacePhrase(text, 1, 2));
+        Assert.assertEquals(2, traditionToSimple.replacePhrase(text, 1, text.length));
+        //分词的文本过滤在同一次遍历中完成短语转换
+        text = "ABC乾隆年間著名的瀋陽".toCharArray();
+        SegmentFilters.textFilter().textFilter(text, 0, text.length);
+        Assert.assertEquals("abc乾隆年间著名的沈阳", new String(text));
+    }
+
+    /**
+     * 字符表与逐个字符判断的结果一致
+     */
+    @Test
+    public void charTableTest() {
+        TraditionToSimple traditionToSimple = TraditionToSimple.instance();
+        for (int i = Character.MIN_VALUE; i <= Character.MAX_VALUE; i++) {
+            char c = (char) i;
+            char expected;
+            if (c >= 'A' && c <= 'Z') expected = (char) (c + 32);
+            else if (NlpUtils.isCjkChar(c)) expected = traditionToSimple.convert(c);
+            else expected = NlpUtils.fullWidthConvert(c);
+            Assert.assertEquals(expected, CharTable.normalize(c));
+            Assert.assertEquals(NlpUtils.isCjkChar(c), CharTable.is(c, CharTable.CJK));
+            Assert.assertEquals(c >= 'a' && c <= 'z', CharTable.is(c, CharTable.EN));
+            Assert.assertEquals(c >= '0' && c <= '9', CharTable.is(c, CharTable.NUM));
+            Assert.assertEquals(CjkLexicon.CN_NUM.contains(c), CharTable.is(c, CharTable.CN_NUM));
+        }
+        Assert.assertEquals('A', CharTable.normalize('Ａ'));
+    }
 }